@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ubicrypt.core.dto.LocalConfig;
+import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.dto.RemoteConfig;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.dto.VClock;
+
+/** serialization of the local and remote configurations */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConfigMarshallBenchmark {
+  @Param({"1000", "10000", "100000"})
+  int files;
+
+  private LocalConfig localConfig;
+  private RemoteConfig remoteConfig;
+  private byte[] localBytes;
+  private byte[] remoteBytes;
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(0);
+    localConfig = new LocalConfig();
+    remoteConfig = new RemoteConfig();
+    for (int i = 0; i < files; i++) {
+      final LocalFile file = new LocalFile();
+      file.setPath(Paths.get("folder" + i % 100, "file" + i));
+      file.setSize(random.nextInt(1 << 24));
+      file.setLastModified(Instant.ofEpochMilli(random.nextInt()));
+      final byte[] sha1 = new byte[20];
+      random.nextBytes(sha1);
+      file.setSha1(sha1);
+      final VClock vclock = new VClock();
+      vclock.increment(random.nextInt(4));
+      file.setVclock(vclock);
+      localConfig.getLocalFiles().add(file);
+      final RemoteFile rfile = RemoteFile.createFrom(file);
+      rfile.setRemoteName(Long.toHexString(random.nextLong()));
+      remoteConfig.getRemoteFiles().add(rfile);
+    }
+    localBytes = Utils.marshall(localConfig);
+    remoteBytes = Utils.marshall(remoteConfig);
+  }
+
+  @Benchmark
+  public byte[] marshallLocal() {
+    return Utils.marshall(localConfig);
+  }
+
+  @Benchmark
+  public LocalConfig unmarshallLocal() {
+    return Utils.unmarshall(localBytes, LocalConfig.class);
+  }
+
+  @Benchmark
+  public byte[] marshallRemote() {
+    return Utils.marshall(remoteConfig);
+  }
+
+  @Benchmark
+  public RemoteConfig unmarshallRemote() {
+    return Utils.unmarshall(remoteBytes, RemoteConfig.class);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** local file writes and reads of the repository */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileIOBenchmark {
+  @Param({"65536", "16777216"})
+  int size;
+
+  private Path dir;
+  private Path source;
+  private byte[] content;
+
+  @Setup
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("ubicrypt-bench");
+    content = new byte[size];
+    new Random(0).nextBytes(content);
+    source = dir.resolve("source");
+    Files.write(source, content);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir.toFile());
+  }
+
+  @Benchmark
+  public Long write() {
+    return Utils.write(dir.resolve("target"), content).toBlocking().last();
+  }
+
+  @Benchmark
+  public long readIs() throws IOException {
+    try (InputStream is = Utils.readIs(source)) {
+      return IOUtils.copyLarge(is, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.crypto;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** PGP encryption used for the configuration files */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PGPECBenchmark {
+  @Param({"1024", "1048576"})
+  int size;
+
+  private PGPKeyPair keyPair;
+  private byte[] plain;
+  private byte[] cipher;
+
+  @Setup
+  public void setUp() throws IOException {
+    keyPair = PGPEC.encryptionKey();
+    plain = new byte[size];
+    new Random(0).nextBytes(plain);
+    try (InputStream is =
+        PGPEC.encrypt(
+            Collections.singletonList(keyPair.getPublicKey()), new ByteArrayInputStream(plain))) {
+      cipher = IOUtils.toByteArray(is);
+    }
+  }
+
+  @Benchmark
+  public long encrypt() throws IOException {
+    try (InputStream is =
+        PGPEC.encrypt(
+            Collections.singletonList(keyPair.getPublicKey()), new ByteArrayInputStream(plain))) {
+      return IOUtils.copyLarge(is, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+  }
+
+  @Benchmark
+  public long decrypt() throws IOException, PGPException {
+    try (InputStream is =
+        PGPEC.decrypt(keyPair.getPrivateKey(), new ByteArrayInputStream(cipher))) {
+      return IOUtils.copyLarge(is, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** deflater levels applied before the encryption, on compressible and random content */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+  private static final int size = 1 << 20;
+
+  @Param({"store", "fast", "best"})
+  Compression compression;
+
+  @Param({"text", "random"})
+  String content;
+
+  private byte[] plain;
+  private byte[] compressed;
+
+  @Setup
+  public void setUp() throws IOException {
+    plain = new byte[size];
+    final Random random = new Random(0);
+    if ("random".equals(content)) {
+      random.nextBytes(plain);
+    } else {
+      final byte[][] words = {
+        "ubicrypt ".getBytes(StandardCharsets.UTF_8),
+        "encrypts ".getBytes(StandardCharsets.UTF_8),
+        "your ".getBytes(StandardCharsets.UTF_8),
+        "files\n".getBytes(StandardCharsets.UTF_8)
+      };
+      for (int i = 0; i < size; ) {
+        final byte[] word = words[random.nextInt(words.length)];
+        final int len = Math.min(word.length, size - i);
+        System.arraycopy(word, 0, plain, i, len);
+        i += len;
+      }
+    }
+    try (InputStream is = compression.compress(new ByteArrayInputStream(plain))) {
+      compressed = IOUtils.toByteArray(is);
+    }
+  }
+
+  @Benchmark
+  public long compress() throws IOException {
+    try (InputStream is = compression.compress(new ByteArrayInputStream(plain))) {
+      return IOUtils.copyLarge(is, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+  }
+
+  @Benchmark
+  public long decompress() throws IOException {
+    try (InputStream is = compression.decompress(new ByteArrayInputStream(compressed))) {
+      return IOUtils.copyLarge(is, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** comparison of the versions of a file, run for every file on each sync */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VClockBenchmark {
+  @Param({"2", "8", "32"})
+  int devices;
+
+  private VClock clock;
+  private VClock same;
+  private VClock newer;
+  private VClock conflicting;
+
+  @Setup
+  public void setUp() throws CloneNotSupportedException {
+    clock = new VClock();
+    for (int device = 0; device < devices; device++) {
+      clock.increment(device);
+    }
+    same = (VClock) clock.clone();
+    newer = (VClock) clock.clone();
+    newer.increment(devices - 1);
+    conflicting = (VClock) clock.clone();
+    conflicting.increment(0);
+  }
+
+  @Benchmark
+  public VClock.Comparison equal() {
+    return clock.compare(same);
+  }
+
+  @Benchmark
+  public VClock.Comparison older() {
+    return clock.compare(newer);
+  }
+
+  @Benchmark
+  public VClock.Comparison conflict() {
+    return conflicting.compare(newer);
+  }
+}
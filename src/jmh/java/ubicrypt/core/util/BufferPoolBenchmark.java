@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import ubicrypt.core.Utils;
+
+/**
+ * Writing a file with a fresh array per chunk, as Utils.write used to do, against the pooled
+ * buffers. The gc profiler of the jmh task reports the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BufferPoolBenchmark {
+  @Param({"16777216", "134217728"})
+  int size;
+
+  private Path dir;
+  private Path file;
+  private byte[] content;
+
+  @Setup
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("ubicrypt-bench");
+    file = Files.createFile(dir.resolve("target"));
+    content = new byte[size];
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir.toFile());
+  }
+
+  @Benchmark
+  public long perChunk() throws IOException {
+    final InputStream is = new ByteArrayInputStream(content);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      long offset = 0;
+      byte[] buf = new byte[1 << 16];
+      int len;
+      while ((len = is.read(buf)) != -1) {
+        offset += channel.write(ByteBuffer.wrap(Arrays.copyOfRange(buf, 0, len)), offset);
+        buf = new byte[1 << 16];
+      }
+      return offset;
+    }
+  }
+
+  @Benchmark
+  public Long pooled() {
+    return Utils.write(file, new ByteArrayInputStream(content)).toBlocking().last();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import ubicrypt.core.Utils;
+
+/** reading a file through the piped streams against the ring pipe */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RingPipeBenchmark {
+  @Param({"16777216", "268435456"})
+  long size;
+
+  private Path dir;
+  private Path file;
+
+  @Setup
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("ubicrypt-bench");
+    file = dir.resolve("source");
+    try (OutputStream os = Files.newOutputStream(file)) {
+      final byte[] block = new byte[1 << 20];
+      for (long i = 0; i < size; i += block.length) {
+        os.write(block);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir.toFile());
+  }
+
+  @Benchmark
+  public long piped() throws IOException {
+    final PipedInputStream pis = new PipedInputStream();
+    final PipedOutputStream pos = new PipedOutputStream(pis);
+    CompletableFuture.runAsync(
+        () -> {
+          try (InputStream is = Files.newInputStream(file)) {
+            IOUtils.copy(is, pos);
+            pos.close();
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+    try (InputStream is = pis) {
+      return IOUtils.copyLarge(is, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+  }
+
+  @Benchmark
+  public long ringPipe() throws IOException {
+    try (InputStream is = Utils.readIs(file)) {
+      return IOUtils.copyLarge(is, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+  }
+}
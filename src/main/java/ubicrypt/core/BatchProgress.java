@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/** progress of a batch of files, aggregated over every enabled provider */
+public class BatchProgress {
+  private final int total;
+  private final int completed;
+  private final int skipped;
+
+  /**
+   * @param total transfers of the batch, one per file and provider
+   * @param completed transfers terminated
+   * @param skipped files left out of the batch, not found or not managed
+   */
+  public BatchProgress(final int total, final int completed, final int skipped) {
+    this.total = total;
+    this.completed = completed;
+    this.skipped = skipped;
+  }
+
+  /** one more transfer terminated */
+  public BatchProgress next() {
+    return new BatchProgress(total, completed + 1, skipped);
+  }
+
+  /** progress of both batches */
+  public BatchProgress plus(final BatchProgress other) {
+    return new BatchProgress(
+        total + other.total, completed + other.completed, skipped + other.skipped);
+  }
+
+  public boolean isDone() {
+    return completed >= total;
+  }
+
+  public int getTotal() {
+    return total;
+  }
+
+  public int getCompleted() {
+    return completed;
+  }
+
+  public int getSkipped() {
+    return skipped;
+  }
+
+  @Override
+  public String toString() {
+    return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
+        .append("total", total)
+        .append("completed", completed)
+        .append("skipped", skipped)
+        .toString();
+  }
+}
@@ -21,8 +21,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -42,6 +49,7 @@ import ubicrypt.core.exp.AlreadyManagedException;
 import ubicrypt.core.local.LocalRepository;
 import ubicrypt.core.provider.FileEvent;
 import ubicrypt.core.provider.ProviderLifeCycle;
+import ubicrypt.core.util.ContentHash;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
@@ -80,17 +88,9 @@ public class FileCommander implements IFileCommander {
                       subscriber.onError(new AlreadyManagedException(absolutePath));
                       return;
                     }
-                    final BasicFileAttributes attrs =
-                        Files.readAttributes(absolutePath, BasicFileAttributes.class);
-                    LocalFile lfile = new LocalFile();
-                    lfile.setLastModified(attrs.lastModifiedTime().toInstant());
-                    lfile.setVclock(new VClock());
-                    lfile.setDeleted(false);
-                    lfile.setPath(relPath);
-                    lfile.setActive(true);
-                    lfile.setRemoved(false);
-                    lfile.setSize(attrs.size());
-                    lfile.getVclock().increment(deviceId);
+                    final LocalFile lfile =
+                        newLocalFile(
+                            relPath, Files.readAttributes(absolutePath, BasicFileAttributes.class));
                     localConfig.getLocalFiles().add(lfile);
                     subscriber.onNext(
                         Tuple.of(
@@ -113,9 +113,99 @@ public class FileCommander implements IFileCommander {
                     subscriber.onError(e);
                   }
                 })
+        .delaySubscription(this::whenProvidersReady)
         .subscribeOn(Schedulers.io());
   }
 
+  @Override
+  public Observable<Tuple2<List<LocalFile>, Observable<BatchProgress>>> addFiles(
+      final Collection<Path> absolutePaths) {
+    return Observable.create(
+            (Observable.OnSubscribe<Tuple2<List<LocalFile>, Observable<BatchProgress>>>)
+                subscriber -> {
+                  final List<LocalFile> files = new ArrayList<>();
+                  stat(absolutePaths)
+                      .forEach(
+                          (absolutePath, attrs) -> {
+                            final Path relPath = basePath.relativize(absolutePath);
+                            if (findLocalFile(relPath, localConfig).isPresent()) {
+                              log.info("file {} already managed", relPath);
+                              return;
+                            }
+                            final LocalFile lfile = newLocalFile(relPath, attrs);
+                            localConfig.getLocalFiles().add(lfile);
+                            files.add(lfile);
+                          });
+                  log.info("adding {} files of {}", files.size(), absolutePaths.size());
+                  subscriber.onNext(
+                      Tuple.of(files, saveAll(files, absolutePaths.size() - files.size())));
+                  subscriber.onCompleted();
+                })
+        .delaySubscription(this::whenProvidersReady)
+        .subscribeOn(Schedulers.io());
+  }
+
+  private LocalFile newLocalFile(final Path relPath, final BasicFileAttributes attrs) {
+    final LocalFile lfile = new LocalFile();
+    lfile.setLastModified(attrs.lastModifiedTime().toInstant());
+    lfile.setVclock(new VClock());
+    lfile.setDeleted(false);
+    lfile.setPath(relPath);
+    lfile.setActive(true);
+    lfile.setRemoved(false);
+    lfile.setSize(attrs.size());
+    lfile.incrementVclock(deviceId);
+    return lfile;
+  }
+
+  /** attributes of the given files read in parallel, unreadable files are left out */
+  private Map<Path, BasicFileAttributes> stat(final Collection<Path> absolutePaths) {
+    final Map<Path, BasicFileAttributes> ret = new ConcurrentHashMap<>();
+    absolutePaths
+        .parallelStream()
+        .filter(Objects::nonNull)
+        .forEach(
+            absolutePath -> {
+              try {
+                ret.put(
+                    absolutePath, Files.readAttributes(absolutePath, BasicFileAttributes.class));
+              } catch (IOException e) {
+                log.warn("can't read attributes of:{}, {}", absolutePath, e.getMessage());
+              }
+            });
+    return ret;
+  }
+
+  /** saves the files in every enabled provider, one batch per provider */
+  private Observable<BatchProgress> saveAll(final List<LocalFile> files, final int skipped) {
+    final List<FileProvenience> fps =
+        files
+            .stream()
+            .map(file -> new FileProvenience(file, localRepository))
+            .collect(Collectors.toList());
+    final List<Observable<Boolean>> jobs =
+        providerLifeCycle
+            .enabledProviders()
+            .stream()
+            .map(hook -> hook.getRepository().saveAll(fps))
+            .collect(Collectors.toList());
+    return Observable.merge(jobs)
+        .scan(
+            new BatchProgress(fps.size() * jobs.size(), 0, skipped),
+            (progress, saved) -> progress.next());
+  }
+
+  /** wait till every enabled provider can accept new uploads */
+  private Observable<Boolean> whenProvidersReady() {
+    return Observable.merge(
+            providerLifeCycle
+                .enabledProviders()
+                .stream()
+                .map(hook -> hook.getRepository().whenReady())
+                .collect(Collectors.toList()))
+        .lastOrDefault(true);
+  }
+
   @Override
   public Observable<Boolean> removeFile(final Path absolutePath) {
     checkNotNull(absolutePath);
@@ -134,6 +224,40 @@ public class FileCommander implements IFileCommander {
     return update(path, file -> file.setDeleted(true));
   }
 
+  @Override
+  public Observable<Boolean> moveFile(final Path fromAbsolutePath, final Path toAbsolutePath) {
+    return Observable.defer(
+        () -> {
+          if (fromAbsolutePath == null || toAbsolutePath == null) {
+            return Observable.error(new IllegalArgumentException("paths must not be null"));
+          }
+          final Path to = basePath.relativize(toAbsolutePath);
+          if (findLocalFile(to, localConfig).isPresent()) {
+            log.info("file {} already managed", to);
+            return Observable.error(new AlreadyManagedException(toAbsolutePath));
+          }
+          //an inode reused by an unrelated file is not a move, its size and version must be read
+          final Optional<LocalFile> moved =
+              findLocalFile(basePath.relativize(fromAbsolutePath), localConfig);
+          try {
+            final BasicFileAttributes attrs =
+                Files.readAttributes(toAbsolutePath, BasicFileAttributes.class);
+            final Instant lastModified = attrs.lastModifiedTime().toInstant();
+            if (moved.isPresent()
+                && (attrs.size() != moved.get().getSize()
+                    || !lastModified.equals(moved.get().getLastModified()))) {
+              return Observable.error(
+                  new IllegalArgumentException(
+                      format("%s is not %s moved", to, moved.get().getPath())));
+            }
+          } catch (final IOException e) {
+            return Observable.error(e);
+          }
+          log.info("moving file:{} to:{}", basePath.relativize(fromAbsolutePath), to);
+          return update(fromAbsolutePath, file -> file.setPath(to));
+        });
+  }
+
   Observable<Boolean> update(final Path absolutePath, final Consumer<LocalFile> localFileConsumer) {
     return Observable.create(
         subscriber -> {
@@ -146,9 +270,10 @@ public class FileCommander implements IFileCommander {
           if (!localFile.isPresent()) {
             log.info("path {} not managed", relPath);
             subscriber.onError(new RuntimeException(format("path %s not managed", relPath)));
+            return;
           }
           localFileConsumer.accept(localFile.get());
-          localFile.get().getVclock().increment(deviceId);
+          localFile.get().incrementVclock(deviceId);
           log.debug(
               "submit update active providers num:{}", providerLifeCycle.enabledProviders().size());
           final List<Observable<Boolean>> jobs =
@@ -166,12 +291,42 @@ public class FileCommander implements IFileCommander {
         });
   }
 
+  @Override
+  public Observable<BatchProgress> deleteFiles(final Collection<Path> absolutePaths) {
+    log.info("deleting {} files", absolutePaths.size());
+    return updateAll(
+        absolutePaths,
+        file -> {
+          fileEvents.onNext(new FileEvent(file, FileEvent.Type.deleted, FileEvent.Location.local));
+          file.setDeleted(true);
+        });
+  }
+
+  /** applies the change to the managed files and saves them in one batch per provider */
+  Observable<BatchProgress> updateAll(
+      final Collection<Path> absolutePaths, final Consumer<LocalFile> localFileConsumer) {
+    return Observable.create(
+        subscriber -> {
+          final List<LocalFile> files =
+              absolutePaths
+                  .stream()
+                  .filter(Objects::nonNull)
+                  .map(
+                      absolutePath -> findLocalFile(basePath.relativize(absolutePath), localConfig))
+                  .filter(Optional::isPresent)
+                  .map(Optional::get)
+                  .collect(Collectors.toList());
+          files.forEach(
+              file -> {
+                localFileConsumer.accept(file);
+                file.incrementVclock(deviceId);
+              });
+          saveAll(files, absolutePaths.size() - files.size()).subscribe(subscriber);
+        });
+  }
+
   private Optional<LocalFile> findLocalFile(final Path path, final LocalConfig localConfig) {
-    return localConfig
-        .getLocalFiles()
-        .stream()
-        .filter(file -> file.getPath().equals(path))
-        .findFirst();
+    return localConfig.getLocalFiles().getByPath(path);
   }
 
   @Override
@@ -182,15 +337,7 @@ public class FileCommander implements IFileCommander {
             subscriber.onError(new IllegalArgumentException("path must not be null"));
             return;
           }
-          final Path relPath = basePath.relativize(absolutePath);
-          log.info("updating file:{}", relPath);
-          final Optional<LocalFile> localFile = findLocalFile(relPath, localConfig);
-          if (!localFile.isPresent()) {
-            log.info("path {} not managed", relPath);
-            subscriber.onError(new RuntimeException(format("path %s not managed", absolutePath)));
-            return;
-          }
-          final LocalFile file = localFile.get();
+          log.info("updating file:{}", basePath.relativize(absolutePath));
           final BasicFileAttributes attrs;
           try {
             attrs = Files.readAttributes(absolutePath, BasicFileAttributes.class);
@@ -198,27 +345,73 @@ public class FileCommander implements IFileCommander {
             subscriber.onError(e);
             return;
           }
-          if (file.getLastModified().isAfter(attrs.lastModifiedTime().toInstant())) {
-            subscriber.onError(
-                new IllegalArgumentException(
-                    format(
-                        "can't update %s, last update:%s, current:%s",
-                        relPath, file.getLastModified(), attrs.lastModifiedTime().toInstant())));
-            return;
-          }
+          changed(absolutePath, attrs)
+              .flatMap(
+                  file ->
+                      Observable.merge(
+                          providerLifeCycle
+                              .enabledProviders()
+                              .stream()
+                              .map(
+                                  hook ->
+                                      hook.getRepository()
+                                          .save(new FileProvenience(file, localRepository)))
+                              .collect(Collectors.toList())))
+              .defaultIfEmpty(false)
+              .subscribe(subscriber);
+        });
+  }
+
+  @Override
+  public Observable<BatchProgress> updateFiles(final Collection<Path> absolutePaths) {
+    log.info("updating {} files", absolutePaths.size());
+    return Observable.defer(
+        () ->
+            Observable.from(stat(absolutePaths).entrySet())
+                .flatMap(
+                    entry ->
+                        changed(entry.getKey(), entry.getValue())
+                            .onErrorResumeNext(
+                                err -> {
+                                  log.warn(err.getMessage());
+                                  return Observable.empty();
+                                }))
+                .toList()
+                .flatMap(files -> saveAll(files, absolutePaths.size() - files.size())));
+  }
+
+  /** the managed file with its new size and version if its content changed, empty otherwise */
+  private Observable<LocalFile> changed(final Path absolutePath, final BasicFileAttributes attrs) {
+    final Path relPath = basePath.relativize(absolutePath);
+    final Optional<LocalFile> localFile = findLocalFile(relPath, localConfig);
+    if (!localFile.isPresent()) {
+      log.info("path {} not managed", relPath);
+      return Observable.error(new RuntimeException(format("path %s not managed", absolutePath)));
+    }
+    final LocalFile file = localFile.get();
+    if (file.getLastModified().isAfter(attrs.lastModifiedTime().toInstant())) {
+      return Observable.error(
+          new IllegalArgumentException(
+              format(
+                  "can't update %s, last update:%s, current:%s",
+                  relPath, file.getLastModified(), attrs.lastModifiedTime().toInstant())));
+    }
+    //same size, it may be a touch or a duplicated event
+    final Observable<Boolean> unchanged =
+        attrs.size() == file.getSize() && file.getSha1() != null
+            ? ContentHash.of(absolutePath, file).map(sha1 -> Arrays.equals(sha1, file.getSha1()))
+            : Observable.just(false);
+    return unchanged.flatMap(
+        same -> {
           file.setLastModified(attrs.lastModifiedTime().toInstant());
+          if (same) {
+            log.info("file:{} content not changed", relPath);
+            file.setFileKey(ContentHash.fileKey(attrs));
+            return Observable.empty();
+          }
           file.setSize(attrs.size());
-          file.getVclock().increment(deviceId);
-
-          Observable.merge(
-                  providerLifeCycle
-                      .enabledProviders()
-                      .stream()
-                      .map(
-                          hook ->
-                              hook.getRepository().save(new FileProvenience(file, localRepository)))
-                      .collect(Collectors.toList()))
-              .subscribe(subscriber);
+          file.incrementVclock(deviceId);
+          return Observable.just(file);
         });
   }
 }
@@ -16,7 +16,12 @@ package ubicrypt.core;
 import org.slf4j.Logger;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
@@ -41,12 +46,7 @@ public class FileFacade implements IFileCommander {
   @Override
   public Observable<Tuple2<LocalFile, Observable<Boolean>>> addFile(final Path absolutePath) {
     final Path relPath = basePath.relativize(absolutePath);
-    final Optional<LocalFile> optFile =
-        localConfig
-            .getLocalFiles()
-            .stream()
-            .filter(lfile -> lfile.getPath().equals(relPath))
-            .findFirst();
+    final Optional<LocalFile> optFile = localConfig.getLocalFiles().getByPath(relPath);
     if (optFile.isPresent()) {
       log.debug("file already present:{} ", optFile.get());
       final LocalFile localFile = optFile.get();
@@ -92,4 +92,71 @@ public class FileFacade implements IFileCommander {
   public Observable<Boolean> updateFile(final Path absolutePath) {
     return fileCommander.updateFile(absolutePath);
   }
+
+  @Override
+  public Observable<Boolean> moveFile(final Path fromAbsolutePath, final Path toAbsolutePath) {
+    return fileCommander
+        .moveFile(fromAbsolutePath, toAbsolutePath)
+        .doOnCompleted(() -> watcher.watchPath(toAbsolutePath));
+  }
+
+  @Override
+  public Observable<Tuple2<List<LocalFile>, Observable<BatchProgress>>> addFiles(
+      final Collection<Path> absolutePaths) {
+    //files removed or deleted before are just tracked again
+    final Map<Boolean, List<Path>> untracked =
+        absolutePaths
+            .stream()
+            .collect(
+                Collectors.partitioningBy(
+                    absolutePath ->
+                        localConfig
+                            .getLocalFiles()
+                            .getByPath(basePath.relativize(absolutePath))
+                            .filter(file -> file.isRemoved() || file.isDeleted())
+                            .isPresent()));
+    final List<LocalFile> restored =
+        untracked
+            .get(true)
+            .stream()
+            .map(
+                absolutePath ->
+                    localConfig.getLocalFiles().getByPath(basePath.relativize(absolutePath)).get())
+            .collect(Collectors.toList());
+    return fileCommander
+        .addFiles(untracked.get(false))
+        .map(
+            ret -> {
+              final List<LocalFile> files = new ArrayList<>(restored);
+              files.addAll(ret.getT1());
+              final Observable<BatchProgress> restoring =
+                  restored.isEmpty()
+                      ? Observable.just(new BatchProgress(0, 0, 0))
+                      : fileCommander.updateAll(
+                          untracked.get(true),
+                          file -> {
+                            file.setRemoved(false);
+                            file.setDeleted(false);
+                          });
+              return Tuple.of(
+                  files,
+                  Observable.combineLatest(restoring, ret.getT2(), BatchProgress::plus)
+                      .doOnCompleted(
+                          () ->
+                              ret.getT1()
+                                  .stream()
+                                  .map(file -> basePath.resolve(file.getPath()))
+                                  .forEach(watcher::watchPath)));
+            });
+  }
+
+  @Override
+  public Observable<BatchProgress> updateFiles(final Collection<Path> absolutePaths) {
+    return fileCommander.updateFiles(absolutePaths);
+  }
+
+  @Override
+  public Observable<BatchProgress> deleteFiles(final Collection<Path> absolutePaths) {
+    return fileCommander.deleteFiles(absolutePaths);
+  }
 }
@@ -19,16 +19,20 @@ import com.google.common.collect.Multimap;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.annotation.Resource;
 import javax.inject.Inject;
@@ -45,10 +49,13 @@ import ubicrypt.core.dto.VClock;
 import ubicrypt.core.events.SyncBeginEvent;
 import ubicrypt.core.events.SynchDoneEvent;
 import ubicrypt.core.local.LocalRepository;
+import ubicrypt.core.metrics.MetricsRegistry;
+import ubicrypt.core.metrics.Timer;
 import ubicrypt.core.provider.FileEvent;
 import ubicrypt.core.provider.ProviderEvent;
 import ubicrypt.core.provider.ProviderHook;
 import ubicrypt.core.provider.ProviderLifeCycle;
+import ubicrypt.core.provider.UbiProvider;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -72,98 +79,40 @@ public class FileSynchronizer implements Observable.OnSubscribe<Boolean> {
   @Qualifier("fileEvents")
   Subject<FileEvent, FileEvent> fileEvents = PublishSubject.create();
 
+  @Value("${sync.parallel:true}")
+  boolean parallel = true;
+
+  /** change sequence of each provider at the last synchronization */
+  private final Map<UbiProvider, Long> sequences = new ConcurrentHashMap<>();
+
   @Autowired(required = false)
   @Qualifier("appEvents")
   private Subject<Object, Object> appEvents = PublishSubject.create();
 
+  @Autowired(required = false)
+  private MetricsRegistry metrics = new MetricsRegistry();
+
   /** return only files which are not in conflict */
   static Multimap<UUID, FileProvenience> withoutConflicts(
       final Multimap<UUID, FileProvenience> all) {
-    return all.asMap()
-        .entrySet()
+    final Reconciliation reconciliation = new Reconciler().call(all);
+    return reconciliation
+        .getWinners()
+        .keySet()
         .stream()
-        .filter(
-            entry ->
-                entry
-                        .getValue()
-                        .stream()
-                        .filter(
-                            fp ->
-                                entry
-                                        .getValue()
-                                        .stream()
-                                        .filter(
-                                            fp2 ->
-                                                fp.getFile().compare(fp2.getFile())
-                                                    != VClock.Comparison.conflict)
-                                        .collect(Collectors.toList())
-                                        .size()
-                                    == entry.getValue().size())
-                        .collect(Collectors.toList())
-                        .size()
-                    == entry.getValue().size())
         .collect(
             LinkedHashMultimap::create,
-            (multimap, entry) -> multimap.putAll(entry.getKey(), all.get(entry.getKey())),
+            (multimap, uuid) -> multimap.putAll(uuid, all.get(uuid)),
             (m1, m2) -> m1.putAll(m2));
   }
 
   static HashMap<UUID, FileProvenience> max(final Multimap<UUID, FileProvenience> input) {
-    return input
-        .keySet()
-        .stream()
-        .collect(
-            HashMap::new,
-            (map, uuid) ->
-                map.put(
-                    uuid,
-                    input
-                        .get(uuid)
-                        .stream()
-                        .max(
-                            (f1, f2) -> {
-                              switch (f1.getFile().getVclock().compare(f2.getFile().getVclock())) {
-                                case newer:
-                                  return 1;
-                                case older:
-                                  return -1;
-                                default:
-                                  return 0;
-                              }
-                            })
-                        .get()),
-            HashMap::putAll);
+    return new HashMap<>(new Reconciler().call(input).getWinners());
   }
 
   /** return only files which are in conflict */
   static Multimap<UUID, FileProvenience> conflicts(final Multimap<UUID, FileProvenience> all) {
-    return all.asMap()
-        .entrySet()
-        .stream()
-        .filter(
-            entry ->
-                entry
-                        .getValue()
-                        .stream()
-                        .filter(
-                            fp ->
-                                entry
-                                        .getValue()
-                                        .stream()
-                                        .filter(
-                                            fp2 ->
-                                                fp.getFile().compare(fp2.getFile())
-                                                    == VClock.Comparison.conflict)
-                                        .collect(Collectors.toList())
-                                        .size()
-                                    == 0)
-                        .collect(Collectors.toList())
-                        .size()
-                    == 0)
-        .collect(
-            LinkedHashMultimap::create,
-            (multimap, entry) -> multimap.putAll(entry.getKey(), all.get(entry.getKey())),
-            (m1, m2) -> m1.putAll(m2));
+    return new Reconciler().call(all).getConflicts();
   }
 
   @Override
@@ -172,7 +121,9 @@ public class FileSynchronizer implements Observable.OnSubscribe<Boolean> {
         .updateAndGet(
             cache -> {
               if (cache == null) {
-                return create()
+                return metrics
+                    .timer("sync.cycle")
+                    .time(create())
                     .doOnSubscribe(
                         () -> {
                           log.info("begin file synchronization... ");
@@ -193,36 +144,94 @@ public class FileSynchronizer implements Observable.OnSubscribe<Boolean> {
   }
 
   private Observable<Boolean> create() {
-    return packFilesById()
+    return phase("configs")
+        .time(remoteConfigs())
         .flatMap(
-            all -> {
-              //conflicting versions
+            configs -> {
+              final long start = System.nanoTime();
+              //local changes not necessarily uploaded anywhere, so missing from the remote logs
+              final Set<UUID> unsynced = localConfig.drainUnsynced();
+              final Multimap<UUID, FileProvenience> all =
+                  pack(configs, changedIds(configs, unsynced));
+              //sequences read along with the configs, they become the baseline once done
+              final Map<UbiProvider, Long> seen =
+                  configs
+                      .stream()
+                      .collect(
+                          Collectors.toMap(
+                              config -> config.getT1().getProvider(),
+                              config -> config.getT2().getSequence(),
+                              (s1, s2) -> s2));
+              //newer files per id, conflicting versions are left out
               //TODO: manage conflicts manually
-              final Multimap<UUID, FileProvenience> noConflicts =
-                  FileSynchronizer.withoutConflicts(all);
-              //newer files per id
-              final Map<UUID, FileProvenience> max = FileSynchronizer.max(noConflicts);
+              final Reconciliation reconciliation = new Reconciler(parallel).call(all);
+              if (!reconciliation.getConflicts().isEmpty()) {
+                log.info("files in conflict:{}", reconciliation.getConflicts().keySet().size());
+              }
+              final Map<UUID, FileProvenience> max = reconciliation.getWinners();
+              phase("reconcile").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
               //overwrite file to local
-              return localChain(max.entrySet())
+              return phase("local")
+                  .time(localChain(max.entrySet()))
                   .flatMap(
                       aVoid ->
                           //copy to all other providers
-                          Observable.merge(
-                                  providers
-                                      .enabledProviders()
-                                      .stream()
-                                      .map(hook -> providerChain(max.entrySet(), hook))
-                                      .collect(Collectors.toList()))
-                              .doOnCompleted(() -> log.info("file synchronization completed")));
+                          phase("providers")
+                              .time(
+                                  Observable.merge(
+                                      providers
+                                          .enabledProviders()
+                                          .stream()
+                                          .map(hook -> providerChain(reconciliation, hook))
+                                          .collect(Collectors.toList())))
+                              .doOnCompleted(
+                                  () -> {
+                                    sequences.clear();
+                                    sequences.putAll(seen);
+                                    log.info("file synchronization completed");
+                                  }))
+                  .doOnError(e -> localConfig.unsynced(unsynced));
             });
   }
 
+  private Timer phase(final String name) {
+    return metrics.timer("sync.phase", "phase", name);
+  }
+
+  /**
+   * ids of the files changed since the last synchronization, locally or on any provider. Empty if
+   * all files have to be reconciled because a provider has not been synchronized yet or its log is
+   * too short
+   */
+  Optional<Set<UUID>> changedIds(
+      final List<Tuple2<ProviderHook, RemoteConfig>> configs, final Set<UUID> unsynced) {
+    final Set<UUID> ids = new HashSet<>(unsynced);
+    for (final Tuple2<ProviderHook, RemoteConfig> config : configs) {
+      final Long last = sequences.get(config.getT1().getProvider());
+      if (last == null) {
+        return Optional.empty();
+      }
+      final Optional<Set<UUID>> changed = config.getT2().changedSince(last);
+      if (!changed.isPresent()) {
+        return Optional.empty();
+      }
+      ids.addAll(changed.get());
+    }
+    return Optional.of(ids);
+  }
+
   private Observable<Boolean> providerChain(
-      final Set<Map.Entry<UUID, FileProvenience>> entries, final ProviderHook hook) {
+      final Reconciliation reconciliation, final ProviderHook hook) {
     return Observable.merge(
-        entries
+        reconciliation
+            .getWinners()
+            .entrySet()
             .stream()
+            .filter(
+                entry ->
+                    reconciliation.action(entry.getKey(), hook.getRepository())
+                        != Reconciliation.Action.none)
             .map(
                 entry ->
                     hook.getRepository()
@@ -246,9 +255,7 @@ public class FileSynchronizer implements Observable.OnSubscribe<Boolean> {
                         if (Utils.trackedFile.test(entry.getValue().getFile())) {
                           localConfig
                               .getLocalFiles()
-                              .stream()
-                              .filter(localFile -> entry.getValue().getFile().equals(localFile))
-                              .findFirst()
+                              .get(entry.getValue().getFile())
                               .ifPresent(
                                   localFile -> {
                                     VClock.Comparison comparison =
@@ -271,6 +278,10 @@ public class FileSynchronizer implements Observable.OnSubscribe<Boolean> {
   }
 
   public Observable<Multimap<UUID, FileProvenience>> packFilesById() {
+    return remoteConfigs().map(configs -> pack(configs, Optional.empty()));
+  }
+
+  private Observable<List<Tuple2<ProviderHook, RemoteConfig>>> remoteConfigs() {
     List<Observable<Tuple2<ProviderHook, RemoteConfig>>> obconfigs =
         providers
             .enabledProviders()
@@ -287,28 +298,58 @@ public class FileSynchronizer implements Observable.OnSubscribe<Boolean> {
     return Observable.zip(
         obconfigs,
         args -> {
-          final Multimap<UUID, FileProvenience> all = LinkedHashMultimap.create();
-          //add local files
-          localConfig
-              .getLocalFiles()
-              .stream()
-              .filter(Utils.trackedFile)
-              .forEach(file -> all.put(file.getId(), new FileProvenience(file, localRepository)));
-          //add all remote files
           Tuple2<ProviderHook, RemoteConfig>[] configs =
               Arrays.copyOf(args, args.length, Tuple2[].class);
-          Stream.of(configs)
-              .forEach(
-                  config ->
-                      config
-                          .getT2()
-                          .getRemoteFiles()
-                          .forEach(
-                              file ->
-                                  all.put(
-                                      file.getId(),
-                                      new FileProvenience(file, config.getT1().getRepository()))));
-          return all;
+          return Arrays.asList(configs);
         });
   }
+
+  /** local and remote files by id, restricted to the given ids if any */
+  private Multimap<UUID, FileProvenience> pack(
+      final List<Tuple2<ProviderHook, RemoteConfig>> configs, final Optional<Set<UUID>> ids) {
+    final Multimap<UUID, FileProvenience> all = LinkedHashMultimap.create();
+    if (ids.isPresent()) {
+      log.debug("reconcile changed files:{}", ids.get().size());
+      ids.get()
+          .forEach(
+              id -> {
+                localConfig
+                    .getLocalFiles()
+                    .getById(id)
+                    .filter(Utils.trackedFile)
+                    .ifPresent(file -> all.put(id, new FileProvenience(file, localRepository)));
+                configs.forEach(
+                    config ->
+                        config
+                            .getT2()
+                            .getRemoteFiles()
+                            .getById(id)
+                            .ifPresent(
+                                file ->
+                                    all.put(
+                                        id,
+                                        new FileProvenience(
+                                            file, config.getT1().getRepository()))));
+              });
+      return all;
+    }
+    //add local files
+    localConfig
+        .getLocalFiles()
+        .stream()
+        .filter(Utils.trackedFile)
+        .forEach(file -> all.put(file.getId(), new FileProvenience(file, localRepository)));
+    //add all remote files
+    configs.forEach(
+        config ->
+            config
+                .getT2()
+                .getRemoteFiles()
+                .forEach(
+                    file ->
+                        all.put(
+                            file.getId(),
+                            new FileProvenience(file, config.getT1().getRepository()))));
+    return all;
+  }
 }
@@ -15,6 +15,7 @@ package ubicrypt.core;
 
 import com.google.common.base.Throwables;
 
+import org.apache.commons.io.IOUtils;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyPair;
 import org.bouncycastle.openpgp.PGPPrivateKey;
@@ -109,6 +110,14 @@ public class FixPassPhraseInitializer
         Throwables.propagate(e);
       }
       config = Utils.unmarshall(configIs, LocalConfig.class);
+      LocalConfigJournal.replay(
+          configFile,
+          config,
+          record ->
+              encrypt
+                  ? IOUtils.toByteArray(
+                      PGPEC.decrypt(keyPair.getPrivateKey(), new ByteArrayInputStream(record)))
+                  : record);
     }
     applicationContext.getBeanFactory().registerSingleton("ubiqConfig", config);
   }
@@ -14,6 +14,8 @@
 package ubicrypt.core;
 
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
 
 import reactor.fn.tuple.Tuple2;
 import rx.Observable;
@@ -27,4 +29,17 @@ public interface IFileCommander {
   Observable<Boolean> deleteFile(Path absolutePath);
 
   Observable<Boolean> updateFile(Path absolutePath);
+
+  /** the managed file gets the new path, keeping its identity and history */
+  Observable<Boolean> moveFile(Path fromAbsolutePath, Path toAbsolutePath);
+
+  /** adds the files in one batch per provider, paths already managed are skipped */
+  Observable<Tuple2<List<LocalFile>, Observable<BatchProgress>>> addFiles(
+      Collection<Path> absolutePaths);
+
+  /** uploads the changed files in one batch per provider */
+  Observable<BatchProgress> updateFiles(Collection<Path> absolutePaths);
+
+  /** marks the files as deleted in one batch per provider */
+  Observable<BatchProgress> deleteFiles(Collection<Path> absolutePaths);
 }
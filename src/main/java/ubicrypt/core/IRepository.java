@@ -15,6 +15,8 @@ package ubicrypt.core;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import rx.Observable;
 import ubicrypt.core.dto.UbiFile;
@@ -33,5 +35,10 @@ public interface IRepository {
     return Observable.just(false);
   }
 
+  /** saves every file of the batch, one result per file */
+  default Observable<Boolean> saveAll(final List<FileProvenience> fileProveniences) {
+    return Observable.merge(fileProveniences.stream().map(this::save).collect(Collectors.toList()));
+  }
+
   default void error(UbiFile file) {}
 }
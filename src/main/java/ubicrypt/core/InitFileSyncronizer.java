@@ -15,10 +15,12 @@ package ubicrypt.core;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.PostConstruct;
@@ -52,6 +54,12 @@ public class InitFileSyncronizer {
   @Qualifier("fileSynchronizer")
   Observable.OnSubscribe<Boolean> fileSynchronizer;
 
+  @Autowired(required = false)
+  InitLocalFiles initLocalFiles;
+
+  /** a provider has become active at least once */
+  private final AtomicBoolean activated = new AtomicBoolean(false);
+
   private Action0 onComplete = Actions.empty();
 
   /** when all provider are not uninitialized, begin the sync for all files */
@@ -70,6 +78,23 @@ public class InitFileSyncronizer {
 
   private void process(ProviderEvent event) {
     log.info("become active:{}", event);
+    if (activated.compareAndSet(false, true) && initLocalFiles != null) {
+      //files found by the scan from now on, those already found are reconciled by this first sync
+      initLocalFiles
+          .modified()
+          .buffer(1, TimeUnit.SECONDS)
+          .filter(files -> !files.isEmpty())
+          .subscribe(
+              files -> {
+                log.info("{} local files modified before startup", files.size());
+                submit();
+              },
+              err -> log.error(err.getMessage(), err));
+    }
+    submit();
+  }
+
+  private void submit() {
     if (processing.compareAndSet(false, true)) {
       doSync();
     } else {
@@ -100,6 +125,10 @@ public class InitFileSyncronizer {
     this.providerEvent = providerEvent;
   }
 
+  public void setInitLocalFiles(final InitLocalFiles initLocalFiles) {
+    this.initLocalFiles = initLocalFiles;
+  }
+
   public void setFileSynchronizer(Observable.OnSubscribe<Boolean> fileSynchronizer) {
     this.fileSynchronizer = fileSynchronizer;
   }
@@ -13,42 +13,170 @@
  */
 package ubicrypt.core;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
+import rx.Observable;
+import rx.subjects.BehaviorSubject;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
 import ubicrypt.core.dto.LocalConfig;
 import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.metrics.MetricsRegistry;
+import ubicrypt.core.util.ContentHash;
 
-/** increment vclock for each local file has been modified before startup. */
+/**
+ * increment vclock for each local file has been modified before startup. Folders are scanned in
+ * parallel in the background, the files of a folder one after the other.
+ */
 public class InitLocalFiles implements Consumer<LocalFile> {
   private final Logger log = LoggerFactory.getLogger(InitLocalFiles.class);
   @Inject LocalConfig localConfig;
   @Inject Path basePath;
   @Inject int deviceId;
 
+  @Autowired(required = false)
+  private MetricsRegistry metrics = new MetricsRegistry();
+
+  @Value("${localfiles.scan.threads:4}")
+  int threads = 4;
+
+  /** not replayed, the files found before a subscription are already journaled as unsynced */
+  private final Subject<LocalFile, LocalFile> modifiedFiles =
+      PublishSubject.<LocalFile>create().toSerialized();
+  private final BehaviorSubject<BatchProgress> progress = BehaviorSubject.create();
+  private ExecutorService executor;
+
   @PostConstruct
-  @Async
   public void init() {
-    localConfig.getLocalFiles().stream().forEach(this);
+    final Map<Path, List<LocalFile>> folders =
+        localConfig
+            .getLocalFiles()
+            .stream()
+            .filter(file -> file.getPath() != null)
+            .collect(
+                Collectors.groupingBy(InitLocalFiles::folder, TreeMap::new, Collectors.toList()));
+    final int total = folders.values().stream().mapToInt(List::size).sum();
+    log.info("scanning {} local files in {} folders", total, folders.size());
+    final AtomicInteger scanned = new AtomicInteger();
+    progress.onNext(new BatchProgress(total, 0, 0));
+    executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, threads),
+            new ThreadFactoryBuilder().setNameFormat("scan-%d").setDaemon(true).build());
+    final long start = System.nanoTime();
+    CompletableFuture.allOf(
+            folders
+                .entrySet()
+                .stream()
+                .map(
+                    entry ->
+                        CompletableFuture.runAsync(
+                            () -> {
+                              scan(entry.getKey(), entry.getValue());
+                              progress.onNext(
+                                  new BatchProgress(
+                                      total, scanned.addAndGet(entry.getValue().size()), 0));
+                            },
+                            executor))
+                .toArray(CompletableFuture[]::new))
+        .whenComplete(
+            (res, err) -> {
+              if (err != null) {
+                log.error(err.getMessage(), err);
+              }
+              final long elapsed = System.nanoTime() - start;
+              metrics.timer("localfiles.scan").record(elapsed, TimeUnit.NANOSECONDS);
+              log.info(
+                  "scanned {} local files in {} ms",
+                  scanned.get(),
+                  TimeUnit.NANOSECONDS.toMillis(elapsed));
+              executor.shutdown();
+              progress.onCompleted();
+              modifiedFiles.onCompleted();
+            });
+  }
+
+  @PreDestroy
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /** total and scanned files, completes when the scan is over */
+  public Observable<BatchProgress> progress() {
+    return progress.asObservable();
+  }
+
+  /** files found modified by the scan since the subscription, completes when the scan is over */
+  public Observable<LocalFile> modified() {
+    return modifiedFiles.asObservable();
+  }
+
+  private static Path folder(final LocalFile file) {
+    final Path parent = file.getPath().getParent();
+    return parent == null ? Paths.get("") : parent;
+  }
+
+  /** one stat for the folder, so the files of a missing folder are not checked one by one */
+  private void scan(final Path folder, final List<LocalFile> files) {
+    if (Files.notExists(basePath.resolve(folder))) {
+      log.info("folder:{} not found", folder);
+      files.stream().filter(file -> !file.isDeleted()).forEach(this::deleted);
+      return;
+    }
+    files.stream().sorted(Comparator.comparing(LocalFile::getPath)).forEach(this);
+  }
+
+  private void deleted(final LocalFile localFile) {
+    log.info("file:{} has been deleted", localFile.getPath());
+    localFile.setDeleted(true);
+    changed(localFile);
+  }
+
+  /** the file is journaled and reconciled by the next synchronization, even an incremental one */
+  private void changed(final LocalFile localFile) {
+    localFile.incrementVclock(deviceId);
+    localConfig.changed(localFile.getId());
+    localConfig.unsynced(Collections.singleton(localFile.getId()));
+    modifiedFiles.onNext(localFile);
   }
 
   @Override
   public void accept(final LocalFile localFile) {
     boolean modified = false;
     try {
-      final BasicFileAttributes attr =
-          Files.readAttributes(basePath.resolve(localFile.getPath()), BasicFileAttributes.class);
+      final Path path = basePath.resolve(localFile.getPath());
+      final BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
       if (attr.lastModifiedTime().toInstant().isAfter(localFile.getLastModified())) {
         log.debug(
             "file:{}, different modified time. Config:{}, actual:{}",
@@ -64,19 +192,24 @@ public class InitLocalFiles implements Consumer<LocalFile> {
               attr.size());
           localFile.setSize(attr.size());
           modified = true;
+        } else if (localFile.getSha1() != null) {
+          modified = !Arrays.equals(ContentHash.of(path).toBlocking().first(), localFile.getSha1());
+          log.debug("file:{}, same size, content modified:{}", localFile.getPath(), modified);
+          if (!modified) {
+            localFile.setFileKey(ContentHash.fileKey(attr));
+          }
         }
       }
     } catch (final NoSuchFileException e) {
-      log.info("file:{} has been deleted", localFile.getPath());
       if (!localFile.isDeleted()) {
-        localFile.setDeleted(true);
-        modified = true;
+        deleted(localFile);
       }
-    } catch (final IOException e) {
+      return;
+    } catch (final IOException | RuntimeException e) {
       log.error(e.getMessage(), e);
     }
     if (modified) {
-      localFile.getVclock().increment(deviceId);
+      changed(localFile);
     }
   }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import ubicrypt.core.dto.LocalConfig;
+import ubicrypt.core.dto.LocalConfigDelta;
+import ubicrypt.core.util.FunctionExp;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only journal of the local config changes, next to the config snapshot. Records are length
+ * prefixed and checksummed, so that a record torn by a crash ends the journal. The journal header
+ * holds the generation of the snapshot it applies to: compaction writes a new snapshot with the
+ * next generation before starting the new journal, so that a crash in between never replays stale
+ * records.
+ */
+public class LocalConfigJournal {
+  private static final Logger log = LoggerFactory.getLogger(LocalConfigJournal.class);
+  private static final int magic = 0x55424a31;
+  private static final int headerSize = 12;
+  private final Path snapshot;
+  private final Path journal;
+  private FileChannel channel;
+
+  public LocalConfigJournal(final Path snapshot) {
+    this.snapshot = snapshot;
+    this.journal = journalOf(snapshot);
+  }
+
+  /**
+   * replays over the config the journal of its generation, the records are decrypted by the given
+   * function
+   */
+  public static int replay(
+      final Path snapshot, final LocalConfig config, final FunctionExp<byte[], byte[]> decrypt) {
+    int count = 0;
+    for (final byte[] record : read(journalOf(snapshot), config.getGeneration())) {
+      try {
+        Utils.unmarshall(decrypt.apply(record), LocalConfigDelta.class).applyTo(config);
+        count++;
+      } catch (final Exception e) {
+        log.warn("journal record {} not readable, the following ones are ignored", count, e);
+        break;
+      }
+    }
+    config.drainChanges();
+    log.info("replayed {} local config changes", count);
+    return count;
+  }
+
+  /** records of the journal of the given generation */
+  static List<byte[]> read(final Path journal, final long generation) {
+    final List<byte[]> records = new ArrayList<>();
+    if (!Files.exists(journal)) {
+      return records;
+    }
+    final ByteBuffer buffer;
+    try {
+      buffer = ByteBuffer.wrap(Files.readAllBytes(journal));
+    } catch (final IOException e) {
+      log.error("journal {} not readable", journal, e);
+      return records;
+    }
+    if (buffer.remaining() < headerSize || buffer.getInt() != magic) {
+      log.warn("invalid journal:{}", journal);
+      return records;
+    }
+    final long journalGeneration = buffer.getLong();
+    if (journalGeneration != generation) {
+      log.info(
+          "journal generation:{} does not apply to snapshot generation:{}",
+          journalGeneration,
+          generation);
+      return records;
+    }
+    final CRC32 crc = new CRC32();
+    while (buffer.remaining() >= 4) {
+      final int length = buffer.getInt();
+      if (length < 0 || buffer.remaining() < length + 8) {
+        log.warn("torn record at the end of journal:{}", journal);
+        break;
+      }
+      final byte[] record = new byte[length];
+      buffer.get(record);
+      crc.reset();
+      crc.update(record);
+      if (buffer.getLong() != crc.getValue()) {
+        log.warn("corrupted record at the end of journal:{}", journal);
+        break;
+      }
+      records.add(record);
+    }
+    return records;
+  }
+
+  /** appends the record and forces it to disk */
+  public synchronized void append(final byte[] record) throws IOException {
+    if (channel == null) {
+      throw new IllegalStateException("journal not started");
+    }
+    final CRC32 crc = new CRC32();
+    crc.update(record);
+    final ByteBuffer buffer = ByteBuffer.allocate(record.length + 12);
+    buffer.putInt(record.length).put(record).putLong(crc.getValue());
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    channel.force(false);
+  }
+
+  /**
+   * atomically replaces the snapshot with the one of the given generation, the journal is reset. If
+   * the snapshot cannot be written, the current journal stays open. Once the snapshot has been
+   * replaced, the journal is closed since it does not apply to it anymore: if it cannot be reset,
+   * the journal is left closed until the next successful compaction.
+   */
+  public synchronized void compact(final byte[] snapshotBytes, final long generation)
+      throws IOException {
+    replace(snapshot, snapshotBytes);
+    close();
+    replace(journal, ByteBuffer.allocate(headerSize).putInt(magic).putLong(generation).array());
+    channel = FileChannel.open(journal, WRITE, APPEND);
+    log.debug("local config compacted, generation:{}", generation);
+  }
+
+  /** whether records can be appended, false until the first compaction succeeds */
+  public synchronized boolean isOpen() {
+    return channel != null;
+  }
+
+  /** bytes appended to the journal */
+  public synchronized long size() throws IOException {
+    return channel == null ? 0 : channel.size() - headerSize;
+  }
+
+  public synchronized void close() {
+    if (channel != null) {
+      Utils.close(channel);
+      channel = null;
+    }
+  }
+
+  private static void replace(final Path target, final byte[] bytes) throws IOException {
+    final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    try (final FileChannel out = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+      out.force(true);
+    }
+    Files.move(tmp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  private static Path journalOf(final Path snapshot) {
+    return snapshot.resolveSibling(snapshot.getFileName() + ".journal");
+  }
+}
@@ -23,7 +23,10 @@ import org.springframework.context.EnvironmentAware;
 import org.springframework.core.env.Environment;
 
 import java.io.ByteArrayInputStream;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -38,15 +41,23 @@ import rx.schedulers.Schedulers;
 import rx.subjects.Subject;
 import ubicrypt.core.crypto.IPGPService;
 import ubicrypt.core.dto.LocalConfig;
+import ubicrypt.core.dto.LocalConfigDelta;
 import ubicrypt.core.events.ShutdownRegistration;
+import ubicrypt.core.metrics.MetricsRegistry;
 
 public class LocalConfigPersistor
     implements Observable.OnSubscribe<Void>, EnvironmentAware, IStoppable {
   private final Logger log = LoggerFactory.getLogger(LocalConfigPersistor.class);
+  /** the journal is not compacted before reaching this size */
+  private static final long minCompactSize = 1 << 20;
+
   private final ScheduledExecutorService executorService = new ScheduledThreadPoolExecutor(1);
   @Inject LocalConfig localConfig;
   @Inject IPGPService ipgpService;
 
+  @Autowired(required = false)
+  private MetricsRegistry metrics = new MetricsRegistry();
+
   @Autowired
   @Value("${localConf.interval.persistSec:1}")
   private long interval;
@@ -57,6 +68,11 @@ public class LocalConfigPersistor
   private Boolean encrypt = true;
 
   private Runnable runnable;
+  private LocalConfigJournal journal;
+  /** settings as last written */
+  private byte[] settings;
+
+  private long snapshotSize;
 
   @Resource
   @Qualifier("appEvents")
@@ -68,23 +84,96 @@ public class LocalConfigPersistor
       encrypt = Boolean.valueOf(env.getProperty("pgp.enabled", "true"));
     }
     log.info("local conf persistor started, pgp enable:{}", encrypt);
+    journal = new LocalConfigJournal(Utils.configFile());
     runnable =
         () -> {
           try {
-            final byte[] clearBytes = Utils.marshall(localConfig);
-            Files.write(
-                Utils.configFile(),
-                encrypt
-                    ? IOUtils.toByteArray(ipgpService.encrypt(new ByteArrayInputStream(clearBytes)))
-                    : clearBytes);
+            persist();
           } catch (final Exception e) {
             log.error(e.getMessage(), e);
           }
         };
+    //the snapshot includes the journal replayed at startup
+    executorService.execute(
+        () -> {
+          try {
+            compact();
+          } catch (final Exception e) {
+            log.error(e.getMessage(), e);
+          }
+        });
     executorService.scheduleWithFixedDelay(runnable, interval, 1, TimeUnit.SECONDS);
     appEvents.onNext(new ShutdownRegistration(this));
   }
 
+  /**
+   * appends the changes since the last call to the journal, nothing is written if there are none.
+   * When the journal outgrows the snapshot, or it is not open because the last compaction failed, a
+   * new snapshot replaces both.
+   */
+  synchronized void persist() throws Exception {
+    final Set<UUID> ids = localConfig.drainChanges();
+    final byte[] current = Utils.marshall(LocalConfigDelta.settingsOf(localConfig));
+    final boolean settingsChanged = !Arrays.equals(current, settings);
+    if (ids.isEmpty() && !settingsChanged) {
+      return;
+    }
+    if (!journal.isOpen() || journal.size() > Math.max(minCompactSize, snapshotSize)) {
+      compact(ids);
+      return;
+    }
+    final long start = System.nanoTime();
+    try {
+      journal.append(
+          encrypt(Utils.marshall(LocalConfigDelta.of(localConfig, ids, settingsChanged))));
+      metrics
+          .timer("localconfig.write", "kind", "journal")
+          .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      settings = current;
+      log.trace("journaled changes of {} local files", ids.size());
+    } catch (final Exception e) {
+      ids.forEach(localConfig::changed);
+      throw e;
+    }
+  }
+
+  /** writes the whole config as a new snapshot and starts an empty journal */
+  synchronized void compact() throws Exception {
+    compact(localConfig.drainChanges());
+  }
+
+  /**
+   * the changes already drained are given back if the compaction fails, so they are written by the
+   * next attempt
+   */
+  private void compact(final Set<UUID> drained) throws Exception {
+    final long start = System.nanoTime();
+    drained.addAll(localConfig.drainChanges());
+    final byte[] current = Utils.marshall(LocalConfigDelta.settingsOf(localConfig));
+    final long generation = localConfig.getGeneration();
+    localConfig.setGeneration(generation + 1);
+    final byte[] bytes;
+    try {
+      bytes = encrypt(Utils.marshall(localConfig));
+      journal.compact(bytes, generation + 1);
+    } catch (final Exception e) {
+      localConfig.setGeneration(generation);
+      drained.forEach(localConfig::changed);
+      throw e;
+    }
+    settings = current;
+    snapshotSize = bytes.length;
+    metrics
+        .timer("localconfig.write", "kind", "snapshot")
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private byte[] encrypt(final byte[] clearBytes) throws IOException {
+    return encrypt
+        ? IOUtils.toByteArray(ipgpService.encrypt(new ByteArrayInputStream(clearBytes)))
+        : clearBytes;
+  }
+
   @Override
   public Observable<Void> stop() {
     return Observable.<Void>create(
@@ -94,6 +183,7 @@ public class LocalConfigPersistor
               try {
                 executorService.awaitTermination(5, TimeUnit.SECONDS);
                 runnable.run();
+                journal.close();
                 subscriber.onCompleted();
               } catch (InterruptedException e) {
                 subscriber.onError(e);
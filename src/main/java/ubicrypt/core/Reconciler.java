@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import rx.functions.Func1;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.dto.VClock;
+
+/**
+ * Reconcile the versions of every file in a single pass. For each id it keeps the set of versions
+ * not dominated by any other: when only one is left it is the winner, otherwise the file is in
+ * conflict. Ids are independent, so they can be processed in parallel.
+ */
+public class Reconciler implements Func1<Multimap<UUID, FileProvenience>, Reconciliation> {
+  private final boolean parallel;
+
+  public Reconciler() {
+    this(false);
+  }
+
+  public Reconciler(final boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  /** versions not older than any other, the first wins on equality */
+  static List<FileProvenience> maxima(final Collection<FileProvenience> versions) {
+    final List<FileProvenience> maxima = new ArrayList<>(2);
+    for (final FileProvenience fp : versions) {
+      boolean dominated = false;
+      for (final Iterator<FileProvenience> it = maxima.iterator(); it.hasNext(); ) {
+        switch (fp.getFile().compare(it.next().getFile())) {
+          case newer:
+            it.remove();
+            break;
+          case conflict:
+            break;
+          default:
+            dominated = true;
+        }
+        if (dominated) {
+          break;
+        }
+      }
+      if (!dominated) {
+        maxima.add(fp);
+      }
+    }
+    return maxima;
+  }
+
+  private static boolean isError(final FileProvenience fp) {
+    final Object file = fp.getFile();
+    return file instanceof RemoteFile && ((RemoteFile) file).isError();
+  }
+
+  @Override
+  public Reconciliation call(final Multimap<UUID, FileProvenience> all) {
+    final Map<UUID, FileProvenience> winners =
+        parallel ? new ConcurrentHashMap<>() : new HashMap<>();
+    final Multimap<UUID, FileProvenience> conflicts =
+        parallel
+            ? Multimaps.synchronizedSetMultimap(LinkedHashMultimap.create())
+            : LinkedHashMultimap.create();
+    final Map<UUID, Map<IRepository, Reconciliation.Action>> actions =
+        parallel ? new ConcurrentHashMap<>() : new HashMap<>();
+    final Stream<Map.Entry<UUID, Collection<FileProvenience>>> stream =
+        parallel ? all.asMap().entrySet().parallelStream() : all.asMap().entrySet().stream();
+    stream.forEach(
+        entry -> {
+          final List<FileProvenience> maxima = maxima(entry.getValue());
+          if (maxima.size() != 1) {
+            conflicts.putAll(entry.getKey(), entry.getValue());
+            return;
+          }
+          final FileProvenience winner = maxima.get(0);
+          winners.put(entry.getKey(), winner);
+          final Map<IRepository, Reconciliation.Action> repos = new HashMap<>();
+          entry
+              .getValue()
+              .forEach(
+                  fp ->
+                      repos.put(
+                          fp.getOrigin(),
+                          (fp == winner
+                                      || fp.getFile().compare(winner.getFile())
+                                          == VClock.Comparison.equal)
+                                  && !isError(fp)
+                              ? Reconciliation.Action.none
+                              : Reconciliation.Action.update));
+          actions.put(entry.getKey(), repos);
+        });
+    return new Reconciliation(winners, conflicts, actions);
+  }
+}
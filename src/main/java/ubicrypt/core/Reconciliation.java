@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+/** outcome of the reconciliation of all the file versions held by local and providers */
+public class Reconciliation {
+  private final Map<UUID, FileProvenience> winners;
+  private final Multimap<UUID, FileProvenience> conflicts;
+  private final Map<UUID, Map<IRepository, Action>> actions;
+
+  Reconciliation(
+      final Map<UUID, FileProvenience> winners,
+      final Multimap<UUID, FileProvenience> conflicts,
+      final Map<UUID, Map<IRepository, Action>> actions) {
+    this.winners = winners;
+    this.conflicts = conflicts;
+    this.actions = actions;
+  }
+
+  /** newest version of every file not in conflict */
+  public Map<UUID, FileProvenience> getWinners() {
+    return Collections.unmodifiableMap(winners);
+  }
+
+  /** all the versions of the files in conflict */
+  public Multimap<UUID, FileProvenience> getConflicts() {
+    return ImmutableMultimap.copyOf(conflicts);
+  }
+
+  /** what the repository has to do in order to hold the winner version of the file */
+  public Action action(final UUID id, final IRepository repository) {
+    if (!winners.containsKey(id)) {
+      return Action.none;
+    }
+    return actions.getOrDefault(id, Collections.emptyMap()).getOrDefault(repository, Action.insert);
+  }
+
+  public enum Action {
+    none,
+    insert,
+    update
+  }
+}
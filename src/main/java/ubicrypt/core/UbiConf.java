@@ -35,6 +35,7 @@ import ubicrypt.core.crypto.PGPService;
 import ubicrypt.core.dto.LocalConfig;
 import ubicrypt.core.local.LocalRepository;
 import ubicrypt.core.local.OnNewLocal;
+import ubicrypt.core.metrics.MetricsConf;
 import ubicrypt.core.provider.ProviderCommander;
 import ubicrypt.core.provider.RemoteCtxConf;
 import ubicrypt.core.util.FileInSync;
@@ -43,7 +44,7 @@ import ubicrypt.core.watch.WatchConf;
 
 @Configuration
 @EnableAsync
-@Import({WatchConf.class, BaseConf.class, RemoteCtxConf.class})
+@Import({WatchConf.class, BaseConf.class, RemoteCtxConf.class, MetricsConf.class})
 public class UbiConf {
   private static final Logger log = LoggerFactory.getLogger(UbiConf.class);
 
@@ -34,13 +34,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ConfigurableApplicationContext;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
@@ -64,23 +64,34 @@ import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import rx.Observable;
+import rx.Producer;
 import rx.Subscriber;
 import rx.functions.Action1;
 import rx.functions.Func1;
+import rx.internal.operators.BackpressureUtils;
+import rx.subscriptions.Subscriptions;
+import ubicrypt.core.codec.BinaryCodec;
 import ubicrypt.core.crypto.PGPEC;
 import ubicrypt.core.dto.UbiFile;
+import ubicrypt.core.dto.VClock;
 import ubicrypt.core.exp.NotFoundException;
+import ubicrypt.core.util.BufferPool;
 import ubicrypt.core.util.PGPKValue;
 import ubicrypt.core.util.PGPKValueDeserializer;
 import ubicrypt.core.util.PGPKValueSerializer;
 import ubicrypt.core.util.PathDeserializer;
 import ubicrypt.core.util.PathSerializer;
+import ubicrypt.core.util.RingPipe;
+import ubicrypt.core.util.VClockDeserializer;
+import ubicrypt.core.util.VClockSerializer;
 
 import static org.apache.commons.lang3.StringUtils.startsWith;
 import static org.apache.commons.lang3.StringUtils.trim;
@@ -118,6 +129,8 @@ public class Utils {
             addDeserializer(PGPKValue.class, new PGPKValueDeserializer(PGPKValue.class));
             addSerializer(new PathSerializer(Path.class));
             addDeserializer(Path.class, new PathDeserializer(Path.class));
+            addSerializer(new VClockSerializer(VClock.class));
+            addDeserializer(VClock.class, new VClockDeserializer(VClock.class));
           }
         });
     mapper.registerModule(new AfterburnerModule());
@@ -166,7 +179,6 @@ public class Utils {
     return Observable.create(
         subscriber -> {
           try {
-            final AtomicLong offset = new AtomicLong(0);
             final AsynchronousFileChannel afc =
                 AsynchronousFileChannel.open(
                     fullPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
@@ -176,65 +188,13 @@ public class Utils {
                   @Override
                   public void completed(final FileLock lock, final Object attachment) {
                     //acquired lock
-                    final byte[] buf = new byte[1 << 16];
-                    try {
-                      final int len = inputStream.read(buf);
-                      if (len == -1) {
-                        unsubscribe(subscriber, inputStream, lock);
-                        return;
-                      }
-                      afc.write(
-                          ByteBuffer.wrap(Arrays.copyOfRange(buf, 0, len)),
-                          offset.get(),
-                          null,
-                          new CompletionHandler<Integer, Object>() {
-                            @Override
-                            public void completed(final Integer result, final Object attachment) {
-                              //written chunk of bytes
-                              subscriber.onNext(offset.addAndGet(result));
-                              final byte[] buf = new byte[1 << 16];
-                              int len;
-                              try {
-                                len = inputStream.read(buf);
-                                if (len == -1) {
-                                  unsubscribe(subscriber, inputStream, lock);
-                                  log.debug("written:{}", fullPath);
-                                  return;
-                                }
-                              } catch (final IOException e) {
-                                subscriber.onError(e);
-                                return;
-                              }
-                              if (len == -1) {
-                                unsubscribe(subscriber, inputStream, lock);
-                                log.debug("written:{}", fullPath);
-                                return;
-                              }
-                              afc.write(
-                                  ByteBuffer.wrap(Arrays.copyOfRange(buf, 0, len)),
-                                  offset.get(),
-                                  null,
-                                  this);
-                            }
-
-                            @Override
-                            public void failed(final Throwable exc, final Object attachment) {
-                              subscriber.onError(exc);
-                            }
-                          });
-                    } catch (final Exception e) {
-                      close(inputStream, lock);
-                      subscriber.onError(e);
-                    }
+                    new ChunkWriter(fullPath, afc, lock, inputStream, subscriber).next();
                   }
 
                   @Override
                   public void failed(final Throwable exc, final Object attachment) {
                     log.error("error on getting lock for:{}, error:{}", fullPath, exc.getMessage());
-                    try {
-                      inputStream.close();
-                    } catch (final IOException e) {
-                    }
+                    close(inputStream, afc);
                     subscriber.onError(exc);
                   }
                 });
@@ -246,127 +206,289 @@ public class Utils {
         });
   }
 
+  /** fills one pooled buffer from the stream and writes it, till the end of the stream */
+  private static class ChunkWriter implements CompletionHandler<Integer, ByteBuffer> {
+    private final Path fullPath;
+    private final AsynchronousFileChannel afc;
+    private final FileLock lock;
+    private final InputStream inputStream;
+    private final Subscriber<? super Long> subscriber;
+    private final ByteBuffer buffer = BufferPool.sharedHeap.acquire();
+    private long offset = 0;
+    private boolean eof = false;
+
+    private ChunkWriter(
+        final Path fullPath,
+        final AsynchronousFileChannel afc,
+        final FileLock lock,
+        final InputStream inputStream,
+        final Subscriber<? super Long> subscriber) {
+      this.fullPath = fullPath;
+      this.afc = afc;
+      this.lock = lock;
+      this.inputStream = inputStream;
+      this.subscriber = subscriber;
+    }
+
+    private void next() {
+      try {
+        buffer.clear();
+        while (buffer.hasRemaining() && !eof) {
+          final int len = inputStream.read(buffer.array(), buffer.position(), buffer.remaining());
+          if (len == -1) {
+            eof = true;
+          } else {
+            buffer.position(buffer.position() + len);
+          }
+        }
+        buffer.flip();
+        if (!buffer.hasRemaining()) {
+          finish();
+          log.debug("written:{}", fullPath);
+          unsubscribe(subscriber, inputStream, lock);
+          return;
+        }
+        afc.write(buffer, offset, buffer, this);
+      } catch (final Exception e) {
+        failed(e, buffer);
+      }
+    }
+
+    @Override
+    public void completed(final Integer result, final ByteBuffer buf) {
+      //written chunk of bytes
+      offset += result;
+      subscriber.onNext(offset);
+      if (buf.hasRemaining()) {
+        afc.write(buf, offset, buf, this);
+        return;
+      }
+      next();
+    }
+
+    @Override
+    public void failed(final Throwable exc, final ByteBuffer buf) {
+      finish();
+      close(inputStream, lock);
+      subscriber.onError(exc);
+    }
+
+    private void finish() {
+      BufferPool.sharedHeap.release(buffer);
+      close(afc);
+    }
+  }
+
   public static InputStream readIs(final Path path) {
-    final PipedInputStream pis = new PipedInputStream();
-    final AtomicLong pos = new AtomicLong(0);
+    return readIs(path, 0, Long.MAX_VALUE);
+  }
+
+  /** at most length bytes of the file, read with positional reads starting from offset */
+  public static InputStream readIs(final Path path, final long offset, final long length) {
+    final RingPipe pipe = new RingPipe(1 << 18);
     try {
-      final PipedOutputStream ostream = new PipedOutputStream(pis);
       final AsynchronousFileChannel channel =
           AsynchronousFileChannel.open(path, StandardOpenOption.READ);
-      final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
-      channel.read(
-          buffer,
-          pos.get(),
-          buffer,
-          new CompletionHandler<Integer, ByteBuffer>() {
-            @Override
-            public void completed(final Integer result, final ByteBuffer buf) {
-              try {
-                if (result == -1) {
-                  ostream.close();
-                  return;
-                }
-                final byte[] bytes = new byte[result];
-                System.arraycopy(buf.array(), 0, bytes, 0, result);
-                ostream.write(bytes);
-                ostream.flush();
-                if (result < 1 << 16) {
-                  ostream.close();
-                  return;
-                }
-                pos.addAndGet(result);
-                final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
-                channel.read(buffer, pos.get(), buffer, this);
-              } catch (final IOException e) {
-                Throwables.propagate(e);
-              }
-            }
-
-            @Override
-            public void failed(final Throwable exc, final ByteBuffer attachment) {
-              log.error(exc.getMessage(), exc);
-            }
-          });
+      new ChannelPump(channel, pipe, offset, length).next();
     } catch (final IOException e) {
       if (e instanceof NoSuchFileException) {
         throw new NotFoundException(path);
       }
       Throwables.propagate(e);
     }
-    return pis;
+    return pipe.inputStream();
   }
 
-  public static InputStream convert(final Observable<byte[]> source) {
-    final PipedOutputStream pos = new PipedOutputStream();
-    try {
-      final PipedInputStream pis = new PipedInputStream(pos);
-      source.subscribe(
-          bytes -> {
-            try {
-              pos.write(bytes);
-              pos.flush();
-            } catch (final IOException e) {
-              Throwables.propagate(e);
-            }
-          },
-          err -> {
-            log.error(err.getMessage(), err);
-            try {
-              pis.close();
-            } catch (final IOException e) {
-            }
-          });
-      return pis;
-    } catch (final IOException e) {
-      Throwables.propagate(e);
+  /** reads the channel directly into the free region of the pipe, as long as there is room */
+  private static class ChannelPump implements CompletionHandler<Integer, RingPipe> {
+    private final AsynchronousFileChannel channel;
+    private final RingPipe pipe;
+    private final long end;
+    private long pos;
+
+    private ChannelPump(
+        final AsynchronousFileChannel channel,
+        final RingPipe pipe,
+        final long offset,
+        final long length) {
+      this.channel = channel;
+      this.pipe = pipe;
+      this.pos = offset;
+      this.end = length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length;
+    }
+
+    private void next() {
+      if (pipe.isReaderClosed()) {
+        close(channel);
+        return;
+      }
+      if (pos >= end) {
+        close(channel);
+        pipe.close();
+        return;
+      }
+      final ByteBuffer region = pipe.claim();
+      if (!region.hasRemaining()) {
+        pipe.whenWritable(this::next);
+        return;
+      }
+      if (region.remaining() > end - pos) {
+        region.limit(region.position() + (int) (end - pos));
+      }
+      channel.read(region, pos, pipe, this);
+    }
+
+    @Override
+    public void completed(final Integer result, final RingPipe attachment) {
+      if (result == -1) {
+        close(channel);
+        pipe.close();
+        return;
+      }
+      pos += result;
+      pipe.commit(result);
+      next();
+    }
+
+    @Override
+    public void failed(final Throwable exc, final RingPipe attachment) {
+      log.error(exc.getMessage(), exc);
+      close(channel);
+      pipe.fail(exc);
     }
-    return null;
   }
 
+  public static InputStream convert(final Observable<byte[]> source) {
+    final RingPipe pipe = new RingPipe(1 << 16);
+    final OutputStream os = pipe.outputStream();
+    source.subscribe(
+        bytes -> {
+          try {
+            os.write(bytes);
+          } catch (final IOException e) {
+            Throwables.propagate(e);
+          }
+        },
+        err -> {
+          log.error(err.getMessage(), err);
+          pipe.fail(err);
+        },
+        pipe::close);
+    return pipe.inputStream();
+  }
+
+  /** the content of the file, each chunk copied into its own array */
   public static Observable<byte[]> read(final Path path) {
+    return readChunks(path)
+        .map(
+            chunk -> {
+              final byte[] bytes = chunk.bytes();
+              chunk.release();
+              return bytes;
+            });
+  }
+
+  /**
+   * the content of the file in pooled chunks, which subscribers must release. A chunk is read only
+   * when requested, and at most {@link ChunkReader#window} chunks are held unreleased at a time, so
+   * a slow subscriber does not make the reader allocate new buffers.
+   */
+  public static Observable<BufferPool.Chunk> readChunks(final Path path) {
     return Observable.create(
         subscriber -> {
-          final AtomicLong pos = new AtomicLong(0);
           try {
-            final AsynchronousFileChannel channel =
-                AsynchronousFileChannel.open(path, StandardOpenOption.READ);
-            read(pos, ByteBuffer.allocate(1 << 16), channel, subscriber);
+            final ChunkReader reader =
+                new ChunkReader(
+                    AsynchronousFileChannel.open(path, StandardOpenOption.READ), subscriber);
+            subscriber.add(Subscriptions.create(reader::next));
+            subscriber.setProducer(reader);
           } catch (final Throwable e) {
             subscriber.onError(e);
           }
         });
   }
 
-  private static void read(
-      final AtomicLong pos,
-      final ByteBuffer buffer,
-      final AsynchronousFileChannel channel,
-      final Subscriber<? super byte[]> subscriber) {
-    channel.read(
-        buffer,
-        pos.get(),
-        pos,
-        new CompletionHandler<Integer, AtomicLong>() {
-          @Override
-          public void completed(final Integer result, final AtomicLong attachment) {
-            if (result == -1) {
-              subscriber.onCompleted();
-              return;
-            }
-            subscriber.onNext(buffer.array());
-            if (result < 1 << 16) {
-              subscriber.onCompleted();
-              return;
-            }
-            pos.addAndGet(result);
-            read(pos, ByteBuffer.allocate(1 << 16), channel, subscriber);
-          }
+  /**
+   * one positional read at a time, issued when the subscriber asked for a chunk and fewer than
+   * window chunks are still unreleased
+   */
+  private static class ChunkReader implements CompletionHandler<Integer, ByteBuffer>, Producer {
+    private static final int window = 4;
+    private final AsynchronousFileChannel channel;
+    private final Subscriber<? super BufferPool.Chunk> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger unreleased = new AtomicInteger();
+    /** a read is in flight, or the reader is over */
+    private final AtomicBoolean reading = new AtomicBoolean();
+    private long pos;
+
+    private ChunkReader(
+        final AsynchronousFileChannel channel,
+        final Subscriber<? super BufferPool.Chunk> subscriber) {
+      this.channel = channel;
+      this.subscriber = subscriber;
+    }
 
-          @Override
-          public void failed(final Throwable exc, final AtomicLong attachment) {
-            subscriber.onError(exc);
-          }
-        });
+    @Override
+    public void request(final long n) {
+      if (n > 0) {
+        BackpressureUtils.getAndAddRequest(requested, n);
+        next();
+      }
+    }
+
+    private boolean readable() {
+      return subscriber.isUnsubscribed() || (requested.get() > 0 && unreleased.get() < window);
+    }
+
+    /** whoever holds the reading flag checks again after giving it up, no wake up is lost */
+    private void next() {
+      while (readable()) {
+        if (!reading.compareAndSet(false, true)) {
+          return;
+        }
+        if (subscriber.isUnsubscribed()) {
+          close(channel);
+          return;
+        }
+        if (readable()) {
+          final ByteBuffer buffer = BufferPool.shared.acquire();
+          channel.read(buffer, pos, buffer, this);
+          return;
+        }
+        reading.set(false);
+      }
+    }
+
+    private void released() {
+      unreleased.decrementAndGet();
+      next();
+    }
+
+    @Override
+    public void completed(final Integer result, final ByteBuffer buffer) {
+      if (result == -1 || subscriber.isUnsubscribed()) {
+        BufferPool.shared.release(buffer);
+        close(channel);
+        subscriber.onCompleted();
+        return;
+      }
+      pos += result;
+      unreleased.incrementAndGet();
+      if (requested.get() != Long.MAX_VALUE) {
+        requested.decrementAndGet();
+      }
+      subscriber.onNext(BufferPool.shared.chunk(buffer, this::released));
+      reading.set(false);
+      next();
+    }
+
+    @Override
+    public void failed(final Throwable exc, final ByteBuffer buffer) {
+      BufferPool.shared.release(buffer);
+      close(channel);
+      subscriber.onError(exc);
+    }
   }
 
   public static Path ubiqFolder() {
@@ -410,6 +532,12 @@ public class Utils {
 
   public static <T> T unmarshall(final InputStream is, final Class<T> remoteConfigClass) {
     try {
+      if (BinaryCodec.supports(remoteConfigClass)) {
+        final BufferedInputStream bis = new BufferedInputStream(is);
+        return BinaryCodec.isBinary(bis)
+            ? BinaryCodec.decode(bis, remoteConfigClass)
+            : mapper.readValue(bis, remoteConfigClass);
+      }
       return mapper.readValue(is, remoteConfigClass);
     } catch (final IOException e) {
       Throwables.propagate(e);
@@ -417,8 +545,12 @@ public class Utils {
     return null;
   }
 
+  /** configs and file indexes are written in the binary format, the other objects as smile */
   public static byte[] marshall(final Object obj) {
     try {
+      if (BinaryCodec.supports(obj.getClass())) {
+        return BinaryCodec.encode(obj);
+      }
       return mapper.writeValueAsBytes(obj);
     } catch (final IOException e) {
       Throwables.propagate(e);
@@ -427,16 +559,14 @@ public class Utils {
   }
 
   public static InputStream marshallIs(final Object obj) {
-    try {
-      return new ByteArrayInputStream(mapper.writeValueAsBytes(obj));
-    } catch (final IOException e) {
-      Throwables.propagate(e);
-      return null;
-    }
+    return new ByteArrayInputStream(marshall(obj));
   }
 
   public static <T> T unmarshall(final byte[] content, final Class<T> clz) {
     try {
+      if (BinaryCodec.supports(clz) && BinaryCodec.isBinary(content)) {
+        return BinaryCodec.decode(new ByteArrayInputStream(content), clz);
+      }
       return mapper.readValue(content, clz);
     } catch (final IOException e) {
       log.debug("error unmarshall:{}", new String(content));
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.codec;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import ubicrypt.core.Utils;
+import ubicrypt.core.dto.ChunkRef;
+import ubicrypt.core.dto.Compression;
+import ubicrypt.core.dto.FileChange;
+import ubicrypt.core.dto.FileIndex;
+import ubicrypt.core.dto.Key;
+import ubicrypt.core.dto.LocalConfig;
+import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.dto.RemoteConfig;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.dto.UbiFile;
+import ubicrypt.core.provider.UbiProvider;
+import ubicrypt.core.util.PGPKValue;
+
+/**
+ * Versioned binary format of the configs and of the file indexes, whose size grows with the number
+ * of files. Every file is written field by field as in the schema below, without names. Strings and
+ * folders are interned, vclocks are varints and keys are raw bytes. The few providers and public
+ * keys are embedded with the generic marshaller, since they hold their own typed settings.
+ *
+ * <p>Configs written with the generic marshaller by the previous versions are still read, see
+ * {@link #isBinary(byte[])}.
+ */
+public final class BinaryCodec {
+  /** first bytes of the binary format, they cannot start a smile document */
+  static final byte[] magic = {'U', 'B', 'C'};
+
+  static final int version = 1;
+
+  private static final int localConfigType = 1;
+  private static final int remoteConfigType = 2;
+  private static final int fileIndexType = 3;
+
+  private BinaryCodec() {}
+
+  public static boolean supports(final Class<?> clz) {
+    return clz == LocalConfig.class || clz == RemoteConfig.class || clz == FileIndex.class;
+  }
+
+  /** whether the content starts as the binary format */
+  public static boolean isBinary(final byte[] content) {
+    return content.length >= magic.length
+        && Arrays.equals(Arrays.copyOf(content, magic.length), magic);
+  }
+
+  /** whether the stream starts as the binary format, the stream must support mark */
+  public static boolean isBinary(final InputStream is) throws IOException {
+    is.mark(magic.length);
+    final byte[] head = new byte[magic.length];
+    final int read = IOUtils.read(is, head);
+    is.reset();
+    return read == magic.length && Arrays.equals(head, magic);
+  }
+
+  public static byte[] encode(final Object obj) throws IOException {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    encode(obj, bos);
+    return bos.toByteArray();
+  }
+
+  public static void encode(final Object obj, final OutputStream os) throws IOException {
+    final CodecOutput out = new CodecOutput(os);
+    for (final byte b : magic) {
+      out.writeByte(b);
+    }
+    out.writeByte(version);
+    if (obj instanceof LocalConfig) {
+      out.writeByte(localConfigType);
+      writeLocalConfig(out, (LocalConfig) obj);
+    } else if (obj instanceof RemoteConfig) {
+      out.writeByte(remoteConfigType);
+      writeRemoteConfig(out, (RemoteConfig) obj);
+    } else if (obj instanceof FileIndex) {
+      out.writeByte(fileIndexType);
+      writeFileIndex(out, (FileIndex) obj);
+    } else {
+      throw new IllegalArgumentException("not supported:" + obj.getClass());
+    }
+    out.flush();
+  }
+
+  /** decodes while reading, the stream is not buffered as a whole */
+  public static <T> T decode(final InputStream is, final Class<T> clz) throws IOException {
+    final CodecInput in =
+        new CodecInput(is instanceof BufferedInputStream ? is : new BufferedInputStream(is));
+    for (final byte b : magic) {
+      if (in.readByte() != b) {
+        throw new StreamCorruptedException("not a binary config");
+      }
+    }
+    final int ver = in.readByte();
+    if (ver != version) {
+      throw new StreamCorruptedException("unsupported version:" + ver);
+    }
+    final int type = in.readByte();
+    final Object ret;
+    switch (type) {
+      case localConfigType:
+        ret = readLocalConfig(in);
+        break;
+      case remoteConfigType:
+        ret = readRemoteConfig(in);
+        break;
+      case fileIndexType:
+        ret = readFileIndex(in);
+        break;
+      default:
+        throw new StreamCorruptedException("unknown type:" + type);
+    }
+    if (!clz.isInstance(ret)) {
+      throw new StreamCorruptedException(ret.getClass() + " is not a " + clz);
+    }
+    return clz.cast(ret);
+  }
+
+  private static void writeLocalConfig(final CodecOutput out, final LocalConfig config)
+      throws IOException {
+    out.writeVarLong(config.getGeneration());
+    writeSettings(out, config.getProviders(), config.getOwnedPKs());
+    out.writeVarLong(config.getTrackedFolders().size());
+    for (final Path folder : config.getTrackedFolders()) {
+      out.writePath(folder);
+    }
+    final List<LocalFile> files = new ArrayList<>(config.getLocalFiles());
+    out.writeVarLong(files.size());
+    for (final LocalFile file : files) {
+      writeUbiFile(out, file);
+      out.writeString(file.getFileKey());
+    }
+  }
+
+  private static LocalConfig readLocalConfig(final CodecInput in) throws IOException {
+    final LocalConfig config = new LocalConfig();
+    config.setGeneration(in.readVarLong());
+    final Settings settings = readSettings(in);
+    config.setProviders(settings.getProviders());
+    config.setOwnedPKs(settings.getOwnedPKs());
+    final Set<Path> folders = ConcurrentHashMap.newKeySet();
+    for (int i = in.readSize(); i > 0; i--) {
+      folders.add(in.readPath());
+    }
+    config.setTrackedFolders(folders);
+    final int size = in.readSize();
+    final Set<LocalFile> files = new HashSet<>(Math.min(size, 1 << 16));
+    for (int i = 0; i < size; i++) {
+      final LocalFile file = new LocalFile();
+      readUbiFile(in, file);
+      file.setFileKey(in.readString());
+      files.add(file);
+    }
+    config.setLocalFiles(files);
+    return config;
+  }
+
+  private static void writeRemoteConfig(final CodecOutput out, final RemoteConfig config)
+      throws IOException {
+    writeSettings(out, config.getProviders(), null);
+    out.writeVarLong(config.getSequence());
+    final List<FileChange> changes = config.getChanges();
+    out.writeVarLong(changes.size());
+    for (final FileChange change : changes) {
+      out.writeVarLong(change.getSequence());
+      out.writeUuid(change.getId());
+    }
+    writeRemoteFiles(out, config.getIndexes());
+    out.writeBytes(config.getChunkSecret());
+    writeRemoteFiles(out, new ArrayList<>(config.getRemoteFiles()));
+    writeNullable(out, config.getNext());
+  }
+
+  private static RemoteConfig readRemoteConfig(final CodecInput in) throws IOException {
+    final RemoteConfig config = new RemoteConfig();
+    config.setProviders(readSettings(in).getProviders());
+    config.setSequence(in.readVarLong());
+    final int size = in.readSize();
+    final List<FileChange> changes = new ArrayList<>(Math.min(size, 1 << 16));
+    for (int i = 0; i < size; i++) {
+      final long sequence = in.readVarLong();
+      changes.add(new FileChange(sequence, in.readUuid()));
+    }
+    config.setChanges(changes);
+    config.setIndexes(readRemoteFiles(in));
+    config.setChunkSecret(in.readBytes());
+    config.setRemoteFiles(new HashSet<>(readRemoteFiles(in)));
+    config.setNext(readNullable(in));
+    return config;
+  }
+
+  private static void writeFileIndex(final CodecOutput out, final FileIndex index)
+      throws IOException {
+    writeRemoteFiles(out, new ArrayList<>(index.getFiles()));
+    writeNullable(out, index.getNextIndex());
+  }
+
+  private static FileIndex readFileIndex(final CodecInput in) throws IOException {
+    final FileIndex index = new FileIndex();
+    final Set<RemoteFile> files = ConcurrentHashMap.newKeySet();
+    files.addAll(readRemoteFiles(in));
+    index.setFiles(files);
+    ifPresent(readNullable(in), index::setNextIndex);
+    return index;
+  }
+
+  private static void writeRemoteFiles(final CodecOutput out, final List<RemoteFile> files)
+      throws IOException {
+    out.writeVarLong(files.size());
+    for (final RemoteFile file : files) {
+      writeRemoteFile(out, file);
+    }
+  }
+
+  private static List<RemoteFile> readRemoteFiles(final CodecInput in) throws IOException {
+    final int size = in.readSize();
+    final List<RemoteFile> ret = new ArrayList<>(Math.min(size, 1 << 16));
+    for (int i = 0; i < size; i++) {
+      ret.add(readRemoteFile(in));
+    }
+    return ret;
+  }
+
+  private static void writeNullable(final CodecOutput out, final RemoteFile file)
+      throws IOException {
+    out.writeBoolean(file != null);
+    if (file != null) {
+      writeRemoteFile(out, file);
+    }
+  }
+
+  private static RemoteFile readNullable(final CodecInput in) throws IOException {
+    return in.readBoolean() ? readRemoteFile(in) : null;
+  }
+
+  /** id, vclock, sha1, last modified, flags, path, size */
+  private static void writeUbiFile(final CodecOutput out, final UbiFile<?> file)
+      throws IOException {
+    out.writeUuid(file.getId());
+    out.writeVClock(file.getVclock());
+    out.writeBytes(file.getSha1());
+    out.writeInstant(file.getLastModified());
+    out.writeByte(
+        (file.isDeleted() ? 1 : 0) | (file.isRemoved() ? 2 : 0) | (file.isActive() ? 4 : 0));
+    out.writePath(file.getPath());
+    out.writeVarLong(file.getSize());
+  }
+
+  private static void readUbiFile(final CodecInput in, final UbiFile<?> file) throws IOException {
+    file.setId(in.readUuid());
+    file.setVclock(in.readVClock());
+    ifPresent(in.readBytes(), file::setSha1);
+    ifPresent(in.readInstant(), file::setLastModified);
+    final int flags = in.readByte();
+    file.setDeleted((flags & 1) != 0);
+    file.setRemoved((flags & 2) != 0);
+    file.setActive((flags & 4) != 0);
+    file.setPath(in.readPath());
+    file.setSize(in.readVarLong());
+  }
+
+  /** common fields, key, remote name, chunks, error */
+  private static void writeRemoteFile(final CodecOutput out, final RemoteFile file)
+      throws IOException {
+    writeUbiFile(out, file);
+    writeKey(out, file.getKey());
+    out.writeString(file.getRemoteName());
+    final List<ChunkRef> chunks = file.getChunks();
+    out.writeVarLong(chunks == null ? 0 : chunks.size() + 1);
+    if (chunks != null) {
+      for (final ChunkRef chunk : chunks) {
+        out.writeString(chunk.getHash());
+        out.writeString(chunk.getRemoteName());
+        writeKey(out, chunk.getKey());
+        out.writeVarLong(chunk.getLength());
+      }
+    }
+    out.writeBoolean(file.isError());
+  }
+
+  private static RemoteFile readRemoteFile(final CodecInput in) throws IOException {
+    final RemoteFile file = new RemoteFile();
+    readUbiFile(in, file);
+    ifPresent(readKey(in), file::setKey);
+    file.setRemoteName(in.readString());
+    final int size = in.readSize();
+    if (size > 0) {
+      final List<ChunkRef> chunks = new ArrayList<>(Math.min(size - 1, 1 << 16));
+      for (int i = 1; i < size; i++) {
+        final String hash = in.readString();
+        final String remoteName = in.readString();
+        final Key key = readKey(in);
+        chunks.add(new ChunkRef(hash, remoteName, key, (int) in.readVarLong()));
+      }
+      file.setChunks(chunks);
+    }
+    file.setError(in.readBoolean());
+    return file;
+  }
+
+  /** enums by name, so that new constants do not break the format */
+  private static void writeKey(final CodecOutput out, final Key key) throws IOException {
+    out.writeBoolean(key != null);
+    if (key == null) {
+      return;
+    }
+    out.writeString(key.getType() != null ? key.getType().name() : null);
+    out.writeBytes(key.getBytes());
+    out.writeString(key.getCompression() != null ? key.getCompression().name() : null);
+  }
+
+  private static Key readKey(final CodecInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    final Key key = new Key();
+    ifPresent(in.readString(), type -> key.setType(UbiFile.KeyType.valueOf(type)));
+    key.setBytes(in.readBytes());
+    ifPresent(in.readString(), compression -> key.setCompression(Compression.valueOf(compression)));
+    return key;
+  }
+
+  /** null values leave the defaults, as the generic marshaller does */
+  private static <T> void ifPresent(final T value, final Consumer<T> setter) {
+    if (value != null) {
+      setter.accept(value);
+    }
+  }
+
+  private static void writeSettings(
+      final CodecOutput out, final Set<UbiProvider> providers, final Set<PGPKValue> ownedPKs)
+      throws IOException {
+    final Settings settings = new Settings();
+    settings.setProviders(providers);
+    settings.setOwnedPKs(ownedPKs);
+    out.writeBytes(Utils.marshall(settings));
+  }
+
+  private static Settings readSettings(final CodecInput in) throws IOException {
+    final Settings ret = Utils.unmarshall(in.readBytes(), Settings.class);
+    if (ret.getProviders() == null) {
+      ret.setProviders(ConcurrentHashMap.newKeySet());
+    }
+    if (ret.getOwnedPKs() == null) {
+      ret.setOwnedPKs(ConcurrentHashMap.newKeySet());
+    }
+    return ret;
+  }
+
+  /** the typed settings embedded with the generic marshaller */
+  public static class Settings {
+    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
+    private Set<UbiProvider> providers;
+
+    private Set<PGPKValue> ownedPKs;
+
+    public Set<UbiProvider> getProviders() {
+      return providers;
+    }
+
+    public void setProviders(final Set<UbiProvider> providers) {
+      this.providers = providers;
+    }
+
+    public Set<PGPKValue> getOwnedPKs() {
+      return ownedPKs;
+    }
+
+    public void setOwnedPKs(final Set<PGPKValue> ownedPKs) {
+      this.ownedPKs = ownedPKs;
+    }
+  }
+}
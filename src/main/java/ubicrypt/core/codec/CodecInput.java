@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.codec;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import ubicrypt.core.dto.VClock;
+
+/** reads what {@link CodecOutput} writes */
+class CodecInput {
+  private final DataInputStream in;
+  private final List<String> strings = new ArrayList<>();
+  private final List<Path> paths = new ArrayList<>();
+
+  CodecInput(final InputStream in) {
+    this.in = new DataInputStream(in);
+  }
+
+  int readByte() throws IOException {
+    return in.readUnsignedByte();
+  }
+
+  boolean readBoolean() throws IOException {
+    return in.readBoolean();
+  }
+
+  long readVarLong() throws IOException {
+    long ret = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = in.readUnsignedByte();
+      ret |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return ret;
+      }
+    }
+    throw new StreamCorruptedException("varint too long");
+  }
+
+  long readSignedVarLong() throws IOException {
+    final long value = readVarLong();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /** a count of items, checked against the corruption of the stream */
+  int readSize() throws IOException {
+    final long size = readVarLong();
+    if (size > Integer.MAX_VALUE) {
+      throw new StreamCorruptedException("invalid size:" + size);
+    }
+    return (int) size;
+  }
+
+  byte[] readBytes() throws IOException {
+    final int length = readSize();
+    if (length == 0) {
+      return null;
+    }
+    final byte[] ret = new byte[length - 1];
+    in.readFully(ret);
+    return ret;
+  }
+
+  String readString() throws IOException {
+    final int ref = readSize();
+    if (ref == 0) {
+      return null;
+    }
+    if (ref == 1) {
+      final String ret = in.readUTF();
+      strings.add(ret);
+      return ret;
+    }
+    if (ref - 2 >= strings.size()) {
+      throw new StreamCorruptedException("unknown string:" + ref);
+    }
+    return strings.get(ref - 2);
+  }
+
+  Path readPath() throws IOException {
+    final int ref = readSize();
+    if (ref == 0) {
+      return null;
+    }
+    if (ref == 1) {
+      final Path parent = readPath();
+      final String name = readString();
+      final Path ret = parent == null ? Paths.get(name) : parent.resolve(name);
+      paths.add(ret);
+      return ret;
+    }
+    if (ref - 2 >= paths.size()) {
+      throw new StreamCorruptedException("unknown path:" + ref);
+    }
+    return paths.get(ref - 2);
+  }
+
+  UUID readUuid() throws IOException {
+    return new UUID(in.readLong(), in.readLong());
+  }
+
+  Instant readInstant() throws IOException {
+    if (!readBoolean()) {
+      return null;
+    }
+    final long seconds = readSignedVarLong();
+    return Instant.ofEpochSecond(seconds, readVarLong());
+  }
+
+  VClock readVClock() throws IOException {
+    final int size = readSize();
+    final long[] pairs = new long[size * 2];
+    for (int i = 0; i < pairs.length; i += 2) {
+      pairs[i] = readSignedVarLong();
+      pairs[i + 1] = readVarLong();
+    }
+    return VClock.fromArray(pairs);
+  }
+}
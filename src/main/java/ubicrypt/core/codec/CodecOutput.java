@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.codec;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import ubicrypt.core.dto.VClock;
+
+/**
+ * Binary writer of varints, interned strings and paths. A string or a path is written once, the
+ * following occurrences refer to the first one by index. Paths are interned by parent folder, hence
+ * the common prefixes are written only once.
+ */
+class CodecOutput implements AutoCloseable {
+  private final DataOutputStream out;
+  private final Map<String, Integer> strings = new HashMap<>();
+  private final Map<Path, Integer> paths = new HashMap<>();
+
+  CodecOutput(final OutputStream out) {
+    this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+  }
+
+  void writeByte(final int value) throws IOException {
+    out.writeByte(value);
+  }
+
+  void writeBoolean(final boolean value) throws IOException {
+    out.writeBoolean(value);
+  }
+
+  /** unsigned variable length, 7 bits per byte */
+  void writeVarLong(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /** zig-zag encoded, small negative values take few bytes too */
+  void writeSignedVarLong(final long value) throws IOException {
+    writeVarLong((value << 1) ^ (value >> 63));
+  }
+
+  void writeBytes(final byte[] bytes) throws IOException {
+    if (bytes == null) {
+      writeVarLong(0);
+      return;
+    }
+    writeVarLong(bytes.length + 1);
+    out.write(bytes);
+  }
+
+  /** 0 for null, 1 followed by a new string, index + 2 for a string already written */
+  void writeString(final String value) throws IOException {
+    if (value == null) {
+      writeVarLong(0);
+      return;
+    }
+    final Integer index = strings.get(value);
+    if (index != null) {
+      writeVarLong(index + 2);
+      return;
+    }
+    strings.put(value, strings.size());
+    writeVarLong(1);
+    out.writeUTF(value);
+  }
+
+  /** 0 for null, 1 followed by parent and name, index + 2 for a path already written */
+  void writePath(final Path value) throws IOException {
+    if (value == null) {
+      writeVarLong(0);
+      return;
+    }
+    final Integer index = paths.get(value);
+    if (index != null) {
+      writeVarLong(index + 2);
+      return;
+    }
+    writeVarLong(1);
+    writePath(value.getParent());
+    writeString(value.getFileName() != null ? value.getFileName().toString() : value.toString());
+    paths.put(value, paths.size());
+  }
+
+  void writeUuid(final UUID value) throws IOException {
+    out.writeLong(value.getMostSignificantBits());
+    out.writeLong(value.getLeastSignificantBits());
+  }
+
+  void writeInstant(final Instant value) throws IOException {
+    if (value == null) {
+      writeBoolean(false);
+      return;
+    }
+    writeBoolean(true);
+    writeSignedVarLong(value.getEpochSecond());
+    writeVarLong(value.getNano());
+  }
+
+  void writeVClock(final VClock value) throws IOException {
+    final long[] pairs = value.toArray();
+    writeVarLong(pairs.length / 2);
+    for (int i = 0; i < pairs.length; i += 2) {
+      writeSignedVarLong(pairs[i]);
+      writeVarLong(pairs[i + 1]);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  void flush() throws IOException {
+    out.flush();
+  }
+}
@@ -15,6 +15,7 @@ package ubicrypt.core.crypto;
 
 import com.google.common.base.Throwables;
 
+import org.apache.commons.io.IOUtils;
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.io.CipherInputStream;
 import org.bouncycastle.crypto.modes.AEADBlockCipher;
@@ -22,6 +23,7 @@ import org.bouncycastle.crypto.modes.GCMBlockCipher;
 import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
@@ -29,18 +31,61 @@ import java.io.SequenceInputStream;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.spec.SecretKeySpec;
 
+import ubicrypt.core.metrics.MetricsRegistry;
+
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
 
 public class AESGCM {
+  private static final Logger log = getLogger(AESGCM.class);
   private static final int keyLenght = 32; //256 bits
   private static final AtomicLong ivl = new AtomicLong(System.currentTimeMillis());
+  private static volatile GCMEngine engine;
 
   static {
     Security.addProvider(new BouncyCastleProvider());
+    engine = selectEngine(System.getProperty("ubicrypt.gcm.engine", "jce"));
+    log.info("AES-GCM engine:{}", engine);
+  }
+
+  /**
+   * JCE engine unless 'bc' is requested or the JVM does not support it, or it does not produce the
+   * same output of BouncyCastle.
+   */
+  static GCMEngine selectEngine(final String name) {
+    final GCMEngine bc = new BouncyCastleGCMEngine();
+    if ("bc".equals(name)) {
+      return bc;
+    }
+    try {
+      final GCMEngine jce = new JceGCMEngine();
+      final byte[] key = new byte[keyLenght];
+      final byte[] nonce = new byte[12];
+      final byte[] aad = {1};
+      final byte[] plain = "ubicrypt".getBytes();
+      if (Arrays.equals(jce.seal(key, nonce, aad, plain), bc.seal(key, nonce, aad, plain))) {
+        return jce;
+      }
+      log.warn("JCE AES-GCM output differs from BouncyCastle");
+    } catch (final Exception e) {
+      log.warn("JCE AES-GCM not available: {}", e.getMessage());
+    }
+    return bc;
+  }
+
+  /** engine sealing the segments */
+  public static GCMEngine engine() {
+    return engine;
+  }
+
+  public static void setEngine(final GCMEngine engine) {
+    checkNotNull(engine, "engine must not be null");
+    AESGCM.engine = engine;
   }
 
   public static byte[] rndKey() {
@@ -53,7 +98,14 @@ public class AESGCM {
     return key;
   }
 
+  /** encrypt into the segmented container, see {@link SegmentedAESGCM} */
   public static InputStream encryptIs(final byte[] key, final InputStream plain) {
+    return MetricsRegistry.global()
+        .count(SegmentedAESGCM.encrypt(key, plain), "crypto.bytes", "op", "encrypt");
+  }
+
+  /** single GCM stream, as written by the previous versions */
+  static InputStream encryptSingleStreamIs(final byte[] key, final InputStream plain) {
     checkNotNull(key, "key must not be null");
     checkNotNull(plain, "plain must not be null");
     final byte[] iv = ByteBuffer.allocate(keyLenght).putLong(ivl.getAndIncrement()).array();
@@ -62,20 +114,30 @@ public class AESGCM {
         new ByteArrayInputStream(iv), new CipherInputStream(plain, cipher));
   }
 
+  /** decrypt both segmented containers and single GCM streams */
   public static InputStream decryptIs(final byte[] key, final InputStream cipherStream) {
     checkNotNull(key, "key must not be null");
     checkNotNull(cipherStream, "cipherStream must not be null");
-    final byte[] iv = new byte[keyLenght];
     try {
-      cipherStream.read(iv);
+      final byte[] head = new byte[SegmentedAESGCM.headerLength];
+      IOUtils.readFully(cipherStream, head);
+      if (SegmentedAESGCM.isSegmented(head)) {
+        return decrypted(SegmentedAESGCM.decrypt(key, head, cipherStream));
+      }
+      final byte[] iv = Arrays.copyOf(head, keyLenght);
+      IOUtils.readFully(cipherStream, iv, head.length, keyLenght - head.length);
       final AEADBlockCipher cipher = cipherObject(false, new SecretKeySpec(key, "AES"), iv);
-      return new CipherInputStream(cipherStream, cipher);
+      return decrypted(new CipherInputStream(cipherStream, cipher));
     } catch (final Exception e) {
       Throwables.propagate(e);
     }
     return null;
   }
 
+  private static InputStream decrypted(final InputStream is) {
+    return MetricsRegistry.global().count(is, "crypto.bytes", "op", "decrypt");
+  }
+
   private static AEADBlockCipher cipherObject(
       final boolean encrypt, final SecretKeySpec key, final byte[] iv) {
     final AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine());
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.crypto;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.AEADBlockCipher;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+
+/** pure java AES of BouncyCastle, available everywhere */
+public class BouncyCastleGCMEngine implements GCMEngine {
+
+  @Override
+  public byte[] seal(final byte[] key, final byte[] nonce, final byte[] aad, final byte[] plain)
+      throws AEADBadTagException {
+    return process(true, key, nonce, aad, plain);
+  }
+
+  @Override
+  public byte[] open(final byte[] key, final byte[] nonce, final byte[] aad, final byte[] cipher)
+      throws AEADBadTagException {
+    return process(false, key, nonce, aad, cipher);
+  }
+
+  private static byte[] process(
+      final boolean encrypt,
+      final byte[] key,
+      final byte[] nonce,
+      final byte[] aad,
+      final byte[] input)
+      throws AEADBadTagException {
+    final AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+    cipher.init(encrypt, new AEADParameters(new KeyParameter(key), 128, nonce, aad));
+    final byte[] out = new byte[cipher.getOutputSize(input.length)];
+    int len = cipher.processBytes(input, 0, input.length, out, 0);
+    try {
+      len += cipher.doFinal(out, len);
+    } catch (InvalidCipherTextException e) {
+      throw new AEADBadTagException(e.getMessage());
+    }
+    return len == out.length ? out : Arrays.copyOf(out, len);
+  }
+
+  @Override
+  public String toString() {
+    return "bouncycastle";
+  }
+}
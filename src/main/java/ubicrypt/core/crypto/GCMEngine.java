@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.crypto;
+
+import java.security.GeneralSecurityException;
+
+/** AES-GCM sealing and opening of whole messages, with 128 bits tags appended to the output. */
+public interface GCMEngine {
+
+  byte[] seal(byte[] key, byte[] nonce, byte[] aad, byte[] plain) throws GeneralSecurityException;
+
+  /** @throws javax.crypto.AEADBadTagException when the authentication fails */
+  byte[] open(byte[] key, byte[] nonce, byte[] aad, byte[] cipher) throws GeneralSecurityException;
+}
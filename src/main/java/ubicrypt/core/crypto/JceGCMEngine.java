@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.crypto;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/** JCE "AES/GCM/NoPadding", which makes use of the AES-NI/CLMUL intrinsics of the JVM. */
+public class JceGCMEngine implements GCMEngine {
+  private static final String transformation = "AES/GCM/NoPadding";
+  private final ThreadLocal<Cipher> ciphers =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return Cipher.getInstance(transformation);
+            } catch (GeneralSecurityException e) {
+              throw new IllegalStateException(e);
+            }
+          });
+
+  public JceGCMEngine() throws GeneralSecurityException {
+    //fail early when the transformation is not available
+    Cipher.getInstance(transformation);
+  }
+
+  @Override
+  public byte[] seal(final byte[] key, final byte[] nonce, final byte[] aad, final byte[] plain)
+      throws GeneralSecurityException {
+    return process(Cipher.ENCRYPT_MODE, key, nonce, aad, plain);
+  }
+
+  @Override
+  public byte[] open(final byte[] key, final byte[] nonce, final byte[] aad, final byte[] cipher)
+      throws GeneralSecurityException {
+    return process(Cipher.DECRYPT_MODE, key, nonce, aad, cipher);
+  }
+
+  private byte[] process(
+      final int mode, final byte[] key, final byte[] nonce, final byte[] aad, final byte[] input)
+      throws GeneralSecurityException {
+    final Cipher cipher = ciphers.get();
+    cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, nonce));
+    cipher.updateAAD(aad);
+    return cipher.doFinal(input);
+  }
+
+  @Override
+  public String toString() {
+    return "jce";
+  }
+}
@@ -63,8 +63,6 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.SecureRandom;
@@ -83,6 +81,7 @@ import rx.schedulers.Schedulers;
 import ubicrypt.core.Utils;
 import ubicrypt.core.util.ConsumerExp;
 import ubicrypt.core.util.OnSubscribeInputStream;
+import ubicrypt.core.util.RingPipe;
 
 import static org.slf4j.LoggerFactory.getLogger;
 import static ubicrypt.core.Utils.toStream;
@@ -298,12 +297,11 @@ public class PGPEC {
   }
 
   public static InputStream encrypt(final List<PGPPublicKey> pks, final InputStream clearBytes) {
-    final PipedInputStream pis = new PipedInputStream();
-    final AtomicReference<PipedOutputStream> pos = new AtomicReference<>();
+    final RingPipe pipe = new RingPipe(1 << 16);
+    final OutputStream pos = pipe.outputStream();
     final AtomicReference<OutputStream> pgpOut = new AtomicReference<>();
     final AtomicReference<OutputStream> lout = new AtomicReference<>();
     try {
-      pos.set(new PipedOutputStream(pis));
       final PGPLiteralDataGenerator lData = new PGPLiteralDataGenerator();
 
       final PGPEncryptedDataGenerator cPk =
@@ -318,29 +316,30 @@ public class PGPEC {
               pk ->
                   cPk.addMethod(
                       new JcePublicKeyKeyEncryptionMethodGenerator(pk).setProvider("BC")));
-      pgpOut.set(cPk.open(pos.get(), new byte[1 << 16]));
+      pgpOut.set(cPk.open(pos, new byte[1 << 16]));
       lout.set(
           lData.open(
               pgpOut.get(),
               PGPLiteralDataGenerator.BINARY,
               PGPLiteralData.CONSOLE,
               new Date(),
-              new byte[1 << 64]));
+              new byte[1 << 16]));
 
-      Observable.create(new OnSubscribeInputStream(clearBytes, 1 << 64))
+      Observable.create(new OnSubscribeInputStream(clearBytes, 1 << 16))
           .subscribeOn(Schedulers.io())
-          .doOnCompleted(() -> Utils.close(lout.get(), pgpOut.get(), pos.get()))
+          .doOnCompleted(() -> Utils.close(lout.get(), pgpOut.get(), pos))
           .doOnError(
               err -> {
                 log.error("error on encrypt", err);
-                Utils.close(clearBytes, lout.get(), pgpOut.get(), pos.get());
+                Utils.close(clearBytes);
+                pipe.fail(err);
               })
-          .subscribe(ConsumerExp.silent(lout.get()::write));
+          .subscribe(ConsumerExp.silent(lout.get()::write), err -> {});
     } catch (final Exception e) {
-      Utils.close(clearBytes, lout.get(), pgpOut.get(), pos.get());
+      Utils.close(clearBytes, lout.get(), pgpOut.get(), pos);
       Throwables.propagate(e);
     }
-    return pis;
+    return pipe.inputStream();
   }
 
   public static InputStream decrypt(final PGPPrivateKey privateKey, final InputStream cipherText)
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.crypto;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Versioned container sealing fixed-size segments of a stream with AES-GCM. Each segment has its
+ * own nonce, made of the file nonce, the segment index and a flag marking the last segment, so that
+ * segments are encrypted and decrypted in parallel, a byte range is readable without decrypting the
+ * whole file and a truncated or reordered stream fails authentication.
+ *
+ * <pre>
+ * header:  magic(4) version(1) segment size(4) nonce(7)
+ * segment: ciphertext(segment size, shorter for the last one) tag(16)
+ * </pre>
+ */
+public class SegmentedAESGCM {
+  public static final int defaultSegmentSize = 1 << 20;
+  /** larger segments are refused, the header of a remote object is not trusted */
+  public static final int maxSegmentSize = 1 << 23;
+  static final int headerLength = 16;
+  static final int tagLength = 16;
+  private static final byte[] magic = {'U', 'B', 'S', 'G'};
+  private static final byte version = 1;
+  private static final int nonceLength = 7;
+  private static final SecureRandom rnd = new SecureRandom();
+  /** segments processed ahead of the reader */
+  private static final int window = Math.min(4, ForkJoinPool.commonPool().getParallelism() + 1);
+
+  public static InputStream encrypt(final byte[] key, final InputStream plain) {
+    return encrypt(key, plain, defaultSegmentSize);
+  }
+
+  public static InputStream encrypt(
+      final byte[] key, final InputStream plain, final int segmentSize) {
+    checkNotNull(key, "key must not be null");
+    checkNotNull(plain, "plain must not be null");
+    checkArgument(
+        segmentSize > 0 && segmentSize <= maxSegmentSize,
+        "segmentSize must be positive and at most %s",
+        maxSegmentSize);
+    final byte[] nonce = new byte[nonceLength];
+    rnd.nextBytes(nonce);
+    final Header header = new Header(segmentSize, nonce);
+    return new SegmentInputStream(key, header, plain, true, 0, header.bytes);
+  }
+
+  public static InputStream decrypt(final byte[] key, final InputStream cipherStream)
+      throws IOException {
+    final byte[] bytes = new byte[headerLength];
+    IOUtils.readFully(cipherStream, bytes);
+    return decrypt(key, bytes, cipherStream);
+  }
+
+  /** decrypt the rest of the stream, whose header has already been read */
+  static InputStream decrypt(final byte[] key, final byte[] header, final InputStream cipherStream)
+      throws IOException {
+    checkNotNull(key, "key must not be null");
+    checkNotNull(cipherStream, "cipherStream must not be null");
+    return new SegmentInputStream(key, Header.parse(header), cipherStream, false, 0, new byte[0]);
+  }
+
+  /**
+   * Plain bytes from offset to offset+length. Only the segments holding the range are decrypted,
+   * the previous ones are skipped.
+   */
+  public static InputStream decrypt(
+      final byte[] key, final InputStream cipherStream, final long offset, final long length)
+      throws IOException {
+    checkNotNull(key, "key must not be null");
+    checkNotNull(cipherStream, "cipherStream must not be null");
+    checkArgument(offset >= 0 && length >= 0, "offset and length must not be negative");
+    final byte[] bytes = new byte[headerLength];
+    IOUtils.readFully(cipherStream, bytes);
+    final Header header = Header.parse(bytes);
+    final long first = offset / header.segmentSize;
+    IOUtils.skipFully(cipherStream, first * (header.segmentSize + tagLength));
+    final InputStream plain =
+        new SegmentInputStream(key, header, cipherStream, false, first, new byte[0]);
+    IOUtils.skipFully(plain, offset - first * header.segmentSize);
+    return new BoundedInputStream(plain, length);
+  }
+
+  /** true when the first bytes of a stream belong to this container */
+  static boolean isSegmented(final byte[] head) {
+    return head.length >= magic.length && Arrays.equals(Arrays.copyOf(head, magic.length), magic);
+  }
+
+  private static class Header {
+    private final int segmentSize;
+    private final byte[] nonce;
+    private final byte[] bytes;
+
+    private Header(final int segmentSize, final byte[] nonce) {
+      this.segmentSize = segmentSize;
+      this.nonce = nonce;
+      this.bytes =
+          ByteBuffer.allocate(headerLength)
+              .put(magic)
+              .put(version)
+              .putInt(segmentSize)
+              .put(nonce)
+              .array();
+    }
+
+    private static Header parse(final byte[] bytes) throws IOException {
+      if (!isSegmented(bytes)) {
+        throw new IOException("not a segmented stream");
+      }
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes, magic.length, headerLength - magic.length);
+      final byte ver = buffer.get();
+      if (ver != version) {
+        throw new IOException("unsupported version:" + ver);
+      }
+      final int segmentSize = buffer.getInt();
+      if (segmentSize <= 0 || segmentSize > maxSegmentSize) {
+        throw new IOException("invalid segment size:" + segmentSize);
+      }
+      final byte[] nonce = new byte[nonceLength];
+      buffer.get(nonce);
+      return new Header(segmentSize, nonce);
+    }
+
+    private byte[] segmentNonce(final long index, final boolean last) {
+      return ByteBuffer.allocate(nonceLength + 5)
+          .put(nonce)
+          .putInt((int) index)
+          .put((byte) (last ? 1 : 0))
+          .array();
+    }
+  }
+
+  /**
+   * Reads the source one segment ahead, to know which one is the last, and seals or opens up to
+   * {@link #window} segments on the common fork-join pool while the reader consumes them in order.
+   */
+  private static class SegmentInputStream extends InputStream {
+    private final byte[] key;
+    private final Header header;
+    private final InputStream source;
+    private final boolean encrypt;
+    private final int chunkLength;
+    private final ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+    private final GCMEngine engine = AESGCM.engine();
+    private long index;
+    private byte[] next;
+    private boolean done = false;
+    private byte[] current;
+    private int pos = 0;
+
+    private SegmentInputStream(
+        final byte[] key,
+        final Header header,
+        final InputStream source,
+        final boolean encrypt,
+        final long firstIndex,
+        final byte[] prefix) {
+      this.key = key;
+      this.header = header;
+      this.source = source;
+      this.encrypt = encrypt;
+      this.chunkLength = encrypt ? header.segmentSize : header.segmentSize + tagLength;
+      this.index = firstIndex;
+      this.current = prefix;
+    }
+
+    private byte[] readChunk() throws IOException {
+      final byte[] buf = new byte[chunkLength];
+      final int n = IOUtils.read(source, buf);
+      return n == buf.length ? buf : Arrays.copyOf(buf, n);
+    }
+
+    private void fill() throws IOException {
+      while (!done && pending.size() < window) {
+        final byte[] chunk = next != null ? next : readChunk();
+        next = chunk.length < chunkLength ? null : readChunk();
+        final boolean last = next == null || next.length == 0;
+        final long idx = index++;
+        pending.add(ForkJoinPool.commonPool().submit(() -> process(idx, last, chunk)));
+        done = last;
+      }
+    }
+
+    private byte[] process(final long idx, final boolean last, final byte[] chunk)
+        throws Exception {
+      final byte[] nonce = header.segmentNonce(idx, last);
+      return encrypt
+          ? engine.seal(key, nonce, header.bytes, chunk)
+          : engine.open(key, nonce, header.bytes, chunk);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (pos == current.length) {
+        fill();
+        if (pending.isEmpty()) {
+          return -1;
+        }
+        current = await(pending.poll());
+        pos = 0;
+      }
+      final int n = Math.min(len, current.length - pos);
+      System.arraycopy(current, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    private byte[] await(final ForkJoinTask<byte[]> task) throws IOException {
+      try {
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause().getMessage(), e.getCause());
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      pending.forEach(task -> task.cancel(false));
+      pending.clear();
+      source.close();
+    }
+  }
+}
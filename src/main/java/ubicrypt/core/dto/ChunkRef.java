@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/** chunk of a file, stored once per provider and shared by every file holding the same bytes */
+public class ChunkRef {
+  /** keyed hash of the plain bytes */
+  private String hash;
+  /** name of the encrypted chunk on the provider */
+  private String remoteName;
+
+  private Key key;
+  /** length of the plain bytes */
+  private int length;
+
+  public ChunkRef() {}
+
+  public ChunkRef(final String hash, final String remoteName, final Key key, final int length) {
+    this.hash = hash;
+    this.remoteName = remoteName;
+    this.key = key;
+    this.length = length;
+  }
+
+  public String getHash() {
+    return hash;
+  }
+
+  public void setHash(final String hash) {
+    this.hash = hash;
+  }
+
+  public String getRemoteName() {
+    return remoteName;
+  }
+
+  public void setRemoteName(final String remoteName) {
+    this.remoteName = remoteName;
+  }
+
+  public Key getKey() {
+    return key;
+  }
+
+  public void setKey(final Key key) {
+    this.key = key;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  public void setLength(final int length) {
+    this.length = length;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final ChunkRef chunkRef = (ChunkRef) o;
+
+    return new EqualsBuilder()
+        .append(hash, chunkRef.hash)
+        .append(remoteName, chunkRef.remoteName)
+        .isEquals();
+  }
+
+  @Override
+  public int hashCode() {
+    return new HashCodeBuilder(17, 37).append(hash).append(remoteName).toHashCode();
+  }
+
+  @Override
+  public String toString() {
+    return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
+        .append("hash", hash)
+        .append("remoteName", remoteName)
+        .append("length", length)
+        .toString();
+  }
+}
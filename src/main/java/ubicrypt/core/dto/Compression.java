@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
+
+import ubicrypt.core.metrics.MetricsRegistry;
+
+/** how the content of a file is compressed before being encrypted */
+public enum Compression {
+  store(Deflater.NO_COMPRESSION),
+  fast(Deflater.BEST_SPEED),
+  best(Deflater.BEST_COMPRESSION);
+
+  private final int level;
+
+  Compression(final int level) {
+    this.level = level;
+  }
+
+  public InputStream compress(final InputStream plain) {
+    if (this == store) {
+      return plain;
+    }
+    return new DeflaterInputStream(counted(plain, "compress"), new Deflater(level));
+  }
+
+  public InputStream decompress(final InputStream compressed) {
+    if (this == store) {
+      return compressed;
+    }
+    return counted(new InflaterInputStream(compressed), "decompress");
+  }
+
+  /** uncompressed bytes, by operation and level */
+  private InputStream counted(final InputStream is, final String op) {
+    return MetricsRegistry.global().count(is, "compression.bytes", "op", op, "level", name());
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import org.slf4j.Logger;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Thread-safe set of files indexed by id and by relative path. Lookups are O(1) by id and follow
+ * the path segments by path, without a linear scan of the whole set. Files with different ids may
+ * share the same path, as when two devices create it independently: they are all kept, and {@link
+ * #getByPath(Path)} returns the first one added. Files keep the catalog informed about changes of
+ * their id or path, so the indexes stay consistent after {@link UbiFile#copyFrom(UbiFile)}.
+ */
+public class FileCatalog<T extends UbiFile> extends AbstractSet<T> {
+  private static final Logger log = getLogger(FileCatalog.class);
+  private final ConcurrentHashMap<UUID, T> byId = new ConcurrentHashMap<>();
+  private final PathTrie<T> byPath = new PathTrie<>();
+  private volatile Consumer<UUID> listener;
+
+  public FileCatalog() {}
+
+  public FileCatalog(final Collection<? extends T> files) {
+    addAll(files);
+  }
+
+  /** file with the same id of the given one */
+  public Optional<T> get(final UbiFile file) {
+    if (file == null || file.getId() == null) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(byId.get(file.getId()));
+  }
+
+  public Optional<T> getById(final UUID id) {
+    if (id == null) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(byId.get(id));
+  }
+
+  public Optional<T> getByPath(final Path path) {
+    if (path == null) {
+      return Optional.empty();
+    }
+    return byPath.get(path);
+  }
+
+  /** all the files with the path, more than one when the path has been created by many devices */
+  public List<T> getAllByPath(final Path path) {
+    if (path == null) {
+      return Collections.emptyList();
+    }
+    return byPath.getAll(path);
+  }
+
+  /** folders directly containing at least one file */
+  public Set<Path> folders() {
+    return byPath.folders(Paths.get(""));
+  }
+
+  @Override
+  public synchronized boolean add(final T file) {
+    if (file == null || file.getId() == null) {
+      return false;
+    }
+    if (byId.putIfAbsent(file.getId(), file) != null) {
+      return false;
+    }
+    indexPath(file);
+    file.catalog = this;
+    notify(file.getId());
+    return true;
+  }
+
+  @Override
+  public synchronized boolean remove(final Object o) {
+    if (!(o instanceof UbiFile)) {
+      return false;
+    }
+    final T removed = byId.remove(((UbiFile) o).getId());
+    if (removed == null) {
+      return false;
+    }
+    if (removed.getPath() != null) {
+      byPath.remove(removed.getPath(), removed);
+    }
+    if (removed.catalog == this) {
+      removed.catalog = null;
+    }
+    notify(removed.getId());
+    return true;
+  }
+
+  @Override
+  public boolean contains(final Object o) {
+    return o instanceof UbiFile && byId.containsKey(((UbiFile) o).getId());
+  }
+
+  @Override
+  public synchronized void clear() {
+    byId.values()
+        .forEach(
+            file -> {
+              file.catalog = null;
+              notify(file.getId());
+            });
+    byId.clear();
+    byPath.clear();
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    final Iterator<T> it = byId.values().iterator();
+    return new Iterator<T>() {
+      private T last;
+
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public T next() {
+        last = it.next();
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        FileCatalog.this.remove(last);
+        last = null;
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return byId.size();
+  }
+
+  /** the listener is notified with the id of every file added, removed or changed */
+  public void setListener(final Consumer<UUID> listener) {
+    this.listener = listener;
+  }
+
+  /** invoked by the file when it has been changed */
+  void touched(final UbiFile file) {
+    final T current = byId.get(file.getId());
+    if (current == file) {
+      notify(file.getId());
+    }
+  }
+
+  private void notify(final UUID id) {
+    final Consumer<UUID> current = listener;
+    if (current != null) {
+      current.accept(id);
+    }
+  }
+
+  /** invoked by the file when its id or path has been changed */
+  synchronized void reindex(final UbiFile file, final UUID oldId, final Path oldPath) {
+    if (oldId == null || byId.get(oldId) != file) {
+      return;
+    }
+    final T tfile = byId.remove(oldId);
+    notify(oldId);
+    if (oldPath != null) {
+      byPath.remove(oldPath, tfile);
+    }
+    if (byId.putIfAbsent(file.getId(), tfile) != null) {
+      //another file already holds the new id
+      file.catalog = null;
+      return;
+    }
+    indexPath(tfile);
+  }
+
+  private void indexPath(final T file) {
+    if (file.getPath() != null && !byPath.add(file.getPath(), file)) {
+      log.warn("path:{} of file:{} is shared with other files", file.getPath(), file.getId());
+    }
+  }
+}
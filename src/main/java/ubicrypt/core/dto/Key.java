@@ -21,6 +21,8 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 public class Key {
   private UbiFile.KeyType type = UbiFile.KeyType.aes;
   private byte[] bytes;
+  /** files stored before the compression became adaptive are all deflated at best level */
+  private Compression compression = Compression.best;
 
   public Key() {}
 
@@ -49,6 +51,14 @@ public class Key {
     this.bytes = bytes;
   }
 
+  public Compression getCompression() {
+    return compression;
+  }
+
+  public void setCompression(Compression compression) {
+    this.compression = compression;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -57,18 +67,23 @@ public class Key {
 
     Key key = (Key) o;
 
-    return new EqualsBuilder().append(type, key.type).append(bytes, key.bytes).isEquals();
+    return new EqualsBuilder()
+        .append(type, key.type)
+        .append(bytes, key.bytes)
+        .append(compression, key.compression)
+        .isEquals();
   }
 
   @Override
   public int hashCode() {
-    return new HashCodeBuilder(17, 37).append(type).append(bytes).toHashCode();
+    return new HashCodeBuilder(17, 37).append(type).append(bytes).append(compression).toHashCode();
   }
 
   @Override
   public String toString() {
     return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
         .append("type", type)
+        .append("compression", compression)
         .toString();
   }
 }
@@ -19,7 +19,10 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 import ubicrypt.core.provider.UbiProvider;
@@ -34,9 +37,19 @@ public class LocalConfig {
   @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
   private Set<UbiProvider> providers = ConcurrentHashMap.newKeySet();
 
-  private Set<LocalFile> localFiles = ConcurrentHashMap.newKeySet();
-  private Set<Path> trackedFolders = ConcurrentHashMap.newKeySet();
+  private FileCatalog<LocalFile> localFiles = new FileCatalog<>();
+  private PathSet trackedFolders = new PathSet();
   private Set<PGPKValue> ownedPKs = ConcurrentHashMap.newKeySet();
+  /** generation of the journal to replay over this config */
+  private long generation;
+  /** ids of the local files changed since the last drain */
+  private final Set<UUID> changes = ConcurrentHashMap.newKeySet();
+  /** ids of the local files changed since they were last handed to the synchronization */
+  private final Set<UUID> unsynced = ConcurrentHashMap.newKeySet();
+
+  public LocalConfig() {
+    localFiles.setListener(this::touched);
+  }
 
   public Set<UbiProvider> getProviders() {
     return providers;
@@ -46,20 +59,50 @@ public class LocalConfig {
     this.providers = copySynchronized(providers);
   }
 
-  public Set<LocalFile> getLocalFiles() {
+  public FileCatalog<LocalFile> getLocalFiles() {
     return localFiles;
   }
 
   public void setLocalFiles(final Set<LocalFile> localFiles) {
-    this.localFiles = copySynchronized(localFiles);
+    this.localFiles = new FileCatalog<>(localFiles);
+    this.localFiles.setListener(this::touched);
+  }
+
+  private void touched(final UUID id) {
+    changes.add(id);
+    unsynced.add(id);
+  }
+
+  /** record a change of the local file with the given id */
+  public void changed(final UUID id) {
+    changes.add(id);
+  }
+
+  /** ids of the local files added, changed or removed since the previous call */
+  public synchronized Set<UUID> drainChanges() {
+    final Set<UUID> ret = new HashSet<>(changes);
+    changes.removeAll(ret);
+    return ret;
   }
 
-  public Set<Path> getTrackedFolders() {
+  /** ids of the local files added, changed or removed since the previous synchronization */
+  public synchronized Set<UUID> drainUnsynced() {
+    final Set<UUID> ret = new HashSet<>(unsynced);
+    unsynced.removeAll(ret);
+    return ret;
+  }
+
+  /** gives back ids that a failed synchronization could not reconcile */
+  public void unsynced(final Collection<UUID> ids) {
+    unsynced.addAll(ids);
+  }
+
+  public PathSet getTrackedFolders() {
     return trackedFolders;
   }
 
   public void setTrackedFolders(Set<Path> trackedFolders) {
-    this.trackedFolders = copySynchronized(trackedFolders);
+    this.trackedFolders = new PathSet(trackedFolders);
   }
 
   public Set<PGPKValue> getOwnedPKs() {
@@ -70,6 +113,14 @@ public class LocalConfig {
     this.ownedPKs = copySynchronized(ownedPKs);
   }
 
+  public long getGeneration() {
+    return generation;
+  }
+
+  public void setGeneration(final long generation) {
+    this.generation = generation;
+  }
+
   @Override
   public String toString() {
     return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
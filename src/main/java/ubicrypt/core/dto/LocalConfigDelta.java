@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import ubicrypt.core.provider.UbiProvider;
+import ubicrypt.core.util.PGPKValue;
+
+/**
+ * Changes of the local config, a record of its journal. Files hold their whole state, so that
+ * replaying a record more than once has no effect. Settings are null when unchanged.
+ */
+public class LocalConfigDelta {
+  private Set<LocalFile> files = new HashSet<>();
+  private Set<UUID> removed = new HashSet<>();
+
+  @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
+  private Set<UbiProvider> providers;
+
+  private Set<Path> trackedFolders;
+  private Set<PGPKValue> ownedPKs;
+
+  /** providers, tracked folders and owned keys of the config */
+  public static LocalConfigDelta settingsOf(final LocalConfig config) {
+    final LocalConfigDelta delta = new LocalConfigDelta();
+    delta.providers = new HashSet<>(config.getProviders());
+    delta.trackedFolders = new HashSet<>(config.getTrackedFolders());
+    delta.ownedPKs = new HashSet<>(config.getOwnedPKs());
+    return delta;
+  }
+
+  /** current state of the files with the given ids, with the settings if requested */
+  public static LocalConfigDelta of(
+      final LocalConfig config, final Collection<UUID> ids, final boolean settings) {
+    final LocalConfigDelta delta = settings ? settingsOf(config) : new LocalConfigDelta();
+    for (final UUID id : ids) {
+      final Optional<LocalFile> file = config.getLocalFiles().getById(id);
+      if (file.isPresent()) {
+        delta.files.add(file.get());
+      } else {
+        delta.removed.add(id);
+      }
+    }
+    return delta;
+  }
+
+  public void applyTo(final LocalConfig config) {
+    removed.forEach(
+        id -> config.getLocalFiles().getById(id).ifPresent(config.getLocalFiles()::remove));
+    for (final LocalFile file : files) {
+      config.getLocalFiles().remove(file);
+      config.getLocalFiles().add(file);
+    }
+    if (providers != null) {
+      config.setProviders(providers);
+    }
+    if (trackedFolders != null) {
+      config.setTrackedFolders(trackedFolders);
+    }
+    if (ownedPKs != null) {
+      config.setOwnedPKs(ownedPKs);
+    }
+  }
+
+  public Set<LocalFile> getFiles() {
+    return files;
+  }
+
+  public void setFiles(final Set<LocalFile> files) {
+    this.files = files;
+  }
+
+  public Set<UUID> getRemoved() {
+    return removed;
+  }
+
+  public void setRemoved(final Set<UUID> removed) {
+    this.removed = removed;
+  }
+
+  public Set<UbiProvider> getProviders() {
+    return providers;
+  }
+
+  public void setProviders(final Set<UbiProvider> providers) {
+    this.providers = providers;
+  }
+
+  public Set<Path> getTrackedFolders() {
+    return trackedFolders;
+  }
+
+  public void setTrackedFolders(final Set<Path> trackedFolders) {
+    this.trackedFolders = trackedFolders;
+  }
+
+  public Set<PGPKValue> getOwnedPKs() {
+    return ownedPKs;
+  }
+
+  public void setOwnedPKs(final Set<PGPKValue> ownedPKs) {
+    this.ownedPKs = ownedPKs;
+  }
+}
@@ -16,6 +16,8 @@ package ubicrypt.core.dto;
 import java.util.Optional;
 
 public class LocalFile extends UbiFile<LocalFile> {
+  /** identity of the file in the file system (inode) when its hash was computed */
+  private String fileKey;
 
   public static LocalFile copy(UbiFile file) {
     LocalFile ret = new LocalFile();
@@ -32,4 +34,13 @@ public class LocalFile extends UbiFile<LocalFile> {
   public String getName() {
     return getPath().toString();
   }
+
+  public String getFileKey() {
+    return fileKey;
+  }
+
+  public void setFileKey(final String fileKey) {
+    this.fileKey = fileKey;
+    touched();
+  }
 }
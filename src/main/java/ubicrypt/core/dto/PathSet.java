@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Thread-safe set of paths indexed by their segments, so the check whether a path is inside one of
+ * the folders of the set does not scan all of them.
+ */
+public class PathSet extends AbstractSet<Path> {
+  private final PathTrie<Path> trie = new PathTrie<>();
+
+  public PathSet() {}
+
+  public PathSet(final Collection<? extends Path> paths) {
+    addAll(paths);
+  }
+
+  /** the path is one of the set or is under one of them */
+  public boolean covers(final Path path) {
+    return path != null && trie.covers(path);
+  }
+
+  @Override
+  public boolean add(final Path path) {
+    return trie.putIfAbsent(path, path);
+  }
+
+  @Override
+  public boolean remove(final Object o) {
+    if (!(o instanceof Path)) {
+      return false;
+    }
+    return trie.get((Path) o).map(path -> trie.remove(path, path)).orElse(false);
+  }
+
+  @Override
+  public boolean contains(final Object o) {
+    return o instanceof Path && trie.get((Path) o).isPresent();
+  }
+
+  @Override
+  public void clear() {
+    trie.clear();
+  }
+
+  /** iterates over a snapshot of the set */
+  @Override
+  public Iterator<Path> iterator() {
+    final Iterator<Path> it = trie.values(Paths.get("")).iterator();
+    return new Iterator<Path>() {
+      private Path last;
+
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public Path next() {
+        last = it.next();
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        PathSet.this.remove(last);
+        last = null;
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return trie.count(Paths.get(""));
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Values indexed by path, one node per path segment. A path usually holds a single value, but may
+ * hold more of them when they are added with {@link #add(Path, Object)}. Each node keeps the number
+ * of the values below it, so the trie is counted without scanning all the values. Lookups take as
+ * many steps as the depth of the path.
+ */
+public class PathTrie<T> {
+  private final Node<T> root = new Node<>();
+
+  private static class Node<T> {
+    private Map<Path, Node<T>> children;
+    private List<T> entries;
+    private int count;
+
+    private Node<T> child(final Path segment) {
+      return children == null ? null : children.get(segment);
+    }
+
+    private Node<T> getOrCreate(final Path segment) {
+      if (children == null) {
+        children = new HashMap<>(4);
+      }
+      return children.computeIfAbsent(segment, key -> new Node<>());
+    }
+
+    private boolean hasValue() {
+      return entries != null && !entries.isEmpty();
+    }
+
+    private boolean holds(final T value) {
+      if (entries == null) {
+        return false;
+      }
+      for (final T entry : entries) {
+        if (entry == value) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** root component first, if any, then the names, the empty path has no segment */
+  private static List<Path> segments(final Path path) {
+    final List<Path> ret = new ArrayList<>(path.getNameCount() + 1);
+    if (path.getRoot() != null) {
+      ret.add(path.getRoot());
+    }
+    for (final Path name : path) {
+      if (!name.toString().isEmpty()) {
+        ret.add(name);
+      }
+    }
+    return ret;
+  }
+
+  private Node<T> find(final Path path) {
+    Node<T> node = root;
+    for (final Path segment : segments(path)) {
+      node = node.child(segment);
+      if (node == null) {
+        return null;
+      }
+    }
+    return node;
+  }
+
+  /** the first value of the path */
+  public synchronized Optional<T> get(final Path path) {
+    final Node<T> node = find(path);
+    return node == null || !node.hasValue()
+        ? Optional.empty()
+        : Optional.of(node.entries.get(0));
+  }
+
+  /** all the values of the path, in the order they were added */
+  public synchronized List<T> getAll(final Path path) {
+    final Node<T> node = find(path);
+    return node == null || node.entries == null ? new ArrayList<>() : new ArrayList<>(node.entries);
+  }
+
+  private List<Node<T>> createPath(final Path path) {
+    final List<Node<T>> nodes = new ArrayList<>();
+    Node<T> node = root;
+    nodes.add(node);
+    for (final Path segment : segments(path)) {
+      node = node.getOrCreate(segment);
+      nodes.add(node);
+    }
+    return nodes;
+  }
+
+  private static <T> void propagate(final List<Node<T>> nodes, final int countDelta) {
+    nodes.forEach(each -> each.count += countDelta);
+  }
+
+  /**
+   * Makes the value the only one of the path.
+   *
+   * @return the first value previously held by the path, or null
+   */
+  public synchronized T put(final Path path, final T value) {
+    final List<Node<T>> nodes = createPath(path);
+    final Node<T> node = nodes.get(nodes.size() - 1);
+    T previous = null;
+    int count = 0;
+    if (node.entries != null) {
+      previous = node.entries.isEmpty() ? null : node.entries.get(0);
+      count = node.entries.size();
+    }
+    node.entries = new ArrayList<>(1);
+    node.entries.add(value);
+    propagate(nodes, 1 - count);
+    return previous;
+  }
+
+  /**
+   * Adds the value to the ones of the path, if the path does not hold it already.
+   *
+   * @return false if the path already holds other values
+   */
+  public synchronized boolean add(final Path path, final T value) {
+    final List<Node<T>> nodes = createPath(path);
+    final Node<T> node = nodes.get(nodes.size() - 1);
+    if (node.holds(value)) {
+      return node.entries.size() == 1;
+    }
+    final boolean alone = !node.hasValue();
+    if (node.entries == null) {
+      node.entries = new ArrayList<>(1);
+    }
+    node.entries.add(value);
+    propagate(nodes, 1);
+    return alone;
+  }
+
+  /** @return false if the path already holds a value */
+  public synchronized boolean putIfAbsent(final Path path, final T value) {
+    if (get(path).isPresent()) {
+      return false;
+    }
+    put(path, value);
+    return true;
+  }
+
+  /** removes the value from the path, only if the path holds exactly the given instance */
+  public synchronized boolean remove(final Path path, final T value) {
+    final List<Node<T>> nodes = new ArrayList<>();
+    final List<Path> segments = segments(path);
+    Node<T> node = root;
+    nodes.add(node);
+    for (final Path segment : segments) {
+      node = node.child(segment);
+      if (node == null) {
+        return false;
+      }
+      nodes.add(node);
+    }
+    if (value == null || !node.holds(value)) {
+      return false;
+    }
+    node.entries.removeIf(entry -> entry == value);
+    if (node.entries.isEmpty()) {
+      node.entries = null;
+    }
+    propagate(nodes, -1);
+    //prune the branches left empty
+    for (int i = nodes.size() - 1; i > 0; i--) {
+      if (nodes.get(i).count == 0) {
+        nodes.get(i - 1).children.remove(segments.get(i - 1));
+      }
+    }
+    return true;
+  }
+
+  public synchronized void clear() {
+    root.children = null;
+    root.entries = null;
+    root.count = 0;
+  }
+
+  /** the values of the path and all the values below it */
+  public synchronized List<T> values(final Path folder) {
+    final List<T> ret = new ArrayList<>();
+    final Node<T> node = find(folder);
+    if (node != null) {
+      collect(node, ret);
+    }
+    return ret;
+  }
+
+  private static <T> void collect(final Node<T> node, final List<T> ret) {
+    if (node.entries != null) {
+      ret.addAll(node.entries);
+    }
+    if (node.children != null) {
+      node.children.values().forEach(child -> collect(child, ret));
+    }
+  }
+
+  /** number of values in the path and below */
+  public synchronized int count(final Path folder) {
+    final Node<T> node = find(folder);
+    return node == null ? 0 : node.count;
+  }
+
+  /** the folders directly holding a value, resolved against the base */
+  public synchronized Set<Path> folders(final Path base) {
+    final Set<Path> ret = new LinkedHashSet<>();
+    folders(root, base, ret);
+    return ret;
+  }
+
+  private static <T> void folders(final Node<T> node, final Path path, final Set<Path> ret) {
+    if (node.children == null) {
+      return;
+    }
+    for (final Map.Entry<Path, Node<T>> entry : node.children.entrySet()) {
+      if (entry.getValue().hasValue()) {
+        ret.add(path);
+      }
+      folders(entry.getValue(), path.resolve(entry.getKey()), ret);
+    }
+  }
+
+  /** whether the path or one of its ancestors holds a value */
+  public synchronized boolean covers(final Path path) {
+    Node<T> node = root;
+    if (node.hasValue()) {
+      return true;
+    }
+    for (final Path segment : segments(path)) {
+      node = node.child(segment);
+      if (node == null) {
+        return false;
+      }
+      if (node.hasValue()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -15,16 +15,32 @@ package ubicrypt.core.dto;
 
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import ubicrypt.core.provider.UbiProvider;
 
 import static ubicrypt.core.Utils.copySynchronized;
 
 public class RemoteConfig extends RemoteFiles {
+  /** max number of entries kept in the change log */
+  static final int maxChanges = 1024;
+
   @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
   private Set<UbiProvider> providers = ConcurrentHashMap.newKeySet();
+  /** sequence of the last change of the remote files */
+  private long sequence = 0;
+  /** most recent changes, oldest first */
+  private List<FileChange> changes = new ArrayList<>();
+  /** descriptors of the file indexes holding the remote files, in chain order */
+  private List<RemoteFile> indexes = new ArrayList<>();
+  /** key of the hashes naming the chunks, so that the provider cannot guess their content */
+  private byte[] chunkSecret;
 
   public RemoteConfig() {}
 
@@ -35,4 +51,62 @@ public class RemoteConfig extends RemoteFiles {
   public void setProviders(Set<UbiProvider> providers) {
     this.providers = copySynchronized(providers);
   }
+
+  /** record a change of the remote file with the given id */
+  public synchronized void changed(final UUID id) {
+    changes.add(new FileChange(++sequence, id));
+    if (changes.size() > maxChanges) {
+      changes.subList(0, changes.size() - maxChanges).clear();
+    }
+  }
+
+  /**
+   * ids of the files changed after the given sequence, empty if the log does not go back that far
+   */
+  public synchronized Optional<Set<UUID>> changedSince(final long since) {
+    if (since > sequence) {
+      return Optional.empty();
+    }
+    if (since < sequence && (changes.isEmpty() || changes.get(0).getSequence() > since + 1)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        changes
+            .stream()
+            .filter(change -> change.getSequence() > since)
+            .map(FileChange::getId)
+            .collect(Collectors.toSet()));
+  }
+
+  public synchronized long getSequence() {
+    return sequence;
+  }
+
+  public synchronized void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  public synchronized List<FileChange> getChanges() {
+    return new ArrayList<>(changes);
+  }
+
+  public synchronized void setChanges(List<FileChange> changes) {
+    this.changes = new ArrayList<>(changes);
+  }
+
+  public List<RemoteFile> getIndexes() {
+    return indexes;
+  }
+
+  public void setIndexes(List<RemoteFile> indexes) {
+    this.indexes = new ArrayList<>(indexes);
+  }
+
+  public synchronized byte[] getChunkSecret() {
+    return chunkSecret;
+  }
+
+  public synchronized void setChunkSecret(byte[] chunkSecret) {
+    this.chunkSecret = chunkSecret;
+  }
 }
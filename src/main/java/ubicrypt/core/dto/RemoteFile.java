@@ -13,9 +13,12 @@
  */
 package ubicrypt.core.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
+import java.util.List;
 import java.util.Optional;
 
 import ubicrypt.core.crypto.AESGCM;
@@ -23,6 +26,8 @@ import ubicrypt.core.crypto.AESGCM;
 public class RemoteFile extends UbiFile<RemoteFile> {
   private Key key = new Key(AESGCM.rndKey());
   private String remoteName;
+  /** chunks of the content in order, null when the content is stored as a single object */
+  private List<ChunkRef> chunks;
   //on uploading error mark it: true
   private boolean error = false;
 
@@ -36,6 +41,7 @@ public class RemoteFile extends UbiFile<RemoteFile> {
     super.copyFrom(file);
     key = file.getKey();
     remoteName = file.getRemoteName();
+    chunks = file.getChunks();
     error = file.isError();
     return this;
   }
@@ -56,6 +62,19 @@ public class RemoteFile extends UbiFile<RemoteFile> {
     this.remoteName = remoteName;
   }
 
+  public List<ChunkRef> getChunks() {
+    return chunks;
+  }
+
+  public void setChunks(List<ChunkRef> chunks) {
+    this.chunks = chunks;
+  }
+
+  @JsonIgnore
+  public boolean isChunked() {
+    return chunks != null;
+  }
+
   @Override
   public Optional<Key> getEncryption() {
     return Optional.ofNullable(key);
@@ -78,6 +97,7 @@ public class RemoteFile extends UbiFile<RemoteFile> {
   public String toString() {
     return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
         .append("remoteName", remoteName)
+        .append("chunks", chunks != null ? chunks.size() : null)
         .append("error", error)
         .append("vclock", vclock)
         .toString();
@@ -14,20 +14,17 @@
 package ubicrypt.core.dto;
 
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-
-import static ubicrypt.core.Utils.copySynchronized;
 
 public class RemoteFiles {
-  private Set<RemoteFile> remoteFiles = ConcurrentHashMap.newKeySet();
+  private FileCatalog<RemoteFile> remoteFiles = new FileCatalog<>();
   private RemoteFile next;
 
-  public Set<RemoteFile> getRemoteFiles() {
+  public FileCatalog<RemoteFile> getRemoteFiles() {
     return remoteFiles;
   }
 
   public void setRemoteFiles(final Set<RemoteFile> remoteFiles) {
-    this.remoteFiles = copySynchronized(remoteFiles);
+    this.remoteFiles = new FileCatalog<>(remoteFiles);
   }
 
   public RemoteFile getNext() {
@@ -24,6 +24,7 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -44,6 +45,8 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
   protected boolean active = true;
   protected Path path;
   protected long size;
+  /** catalog indexing this file, if any */
+  transient FileCatalog catalog;
 
   @JsonIgnore
   public abstract Optional<Key> getEncryption();
@@ -52,6 +55,8 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
   public abstract String getName();
 
   public T copyFrom(UbiFile file) {
+    final UUID oldId = id;
+    final Path oldPath = path;
     id = UUID.fromString(file.getId().toString());
     try {
       vclock = (VClock) file.getVclock().clone();
@@ -65,9 +70,26 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
     active = file.isActive();
     path = file.getPath();
     size = file.getSize();
+    reindex(oldId, oldPath);
     return (T) this;
   }
 
+  private void reindex(final UUID oldId, final Path oldPath) {
+    final FileCatalog current = catalog;
+    if (current != null && !(Objects.equals(oldId, id) && Objects.equals(oldPath, path))) {
+      current.reindex(this, oldId, oldPath);
+    }
+    touched();
+  }
+
+  /** notifies the catalog holding the file about a change */
+  protected void touched() {
+    final FileCatalog current = catalog;
+    if (current != null) {
+      current.touched(this);
+    }
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
@@ -90,15 +112,24 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
   }
 
   public void setId(final UUID id) {
+    final UUID oldId = this.id;
     this.id = id;
+    reindex(oldId, path);
   }
 
   public VClock getVclock() {
     return vclock;
   }
 
+  /** increments the vclock for the device, as a change of the file */
+  public void incrementVclock(final int device) {
+    vclock.increment(device);
+    touched();
+  }
+
   public void setVclock(final VClock vclock) {
     this.vclock = vclock;
+    touched();
   }
 
   public byte[] getSha1() {
@@ -107,6 +138,7 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
 
   public void setSha1(final byte[] sha1) {
     this.sha1 = sha1;
+    touched();
   }
 
   public Instant getLastModified() {
@@ -115,6 +147,7 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
 
   public void setLastModified(final Instant lastModified) {
     this.lastModified = lastModified;
+    touched();
   }
 
   public boolean isDeleted() {
@@ -123,6 +156,7 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
 
   public void setDeleted(final boolean deleted) {
     this.deleted = deleted;
+    touched();
   }
 
   public boolean isRemoved() {
@@ -131,6 +165,7 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
 
   public void setRemoved(final boolean removed) {
     this.removed = removed;
+    touched();
   }
 
   public boolean isActive() {
@@ -139,6 +174,7 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
 
   public void setActive(final boolean active) {
     this.active = active;
+    touched();
   }
 
   public Path getPath() {
@@ -146,7 +182,9 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
   }
 
   public void setPath(final Path path) {
+    final Path oldPath = this.path;
     this.path = path;
+    reindex(id, oldPath);
   }
 
   public long getSize() {
@@ -155,6 +193,7 @@ public abstract class UbiFile<T extends UbiFile> implements Comparable<UbiFile>
 
   public void setSize(final long size) {
     this.size = size;
+    touched();
   }
 
   public VClock.Comparison compare(@NotNull UbiFile file) {
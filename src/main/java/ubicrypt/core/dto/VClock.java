@@ -13,53 +13,118 @@
  */
 package ubicrypt.core.dto;
 
-import com.google.common.collect.ImmutableMap;
-
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Vector clock as the device ids in ascending order along with their counters. The arrays are never
+ * modified, an increment replaces them, hence clones share them and comparisons do not allocate.
+ */
 public class VClock implements Cloneable {
-  final ConcurrentHashMap<Integer, AtomicLong> map;
+  private static final Entries empty = new Entries(new int[0], new long[0]);
+  private volatile Entries entries;
 
   public VClock() {
-    this.map = new ConcurrentHashMap<>();
+    this(empty);
+  }
+
+  private VClock(final Entries entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * clock from device/counter pairs, as returned by {@link #toArray()}
+   *
+   * @throws IllegalArgumentException if a device is repeated or a counter is not positive
+   */
+  public static VClock fromArray(final long[] pairs) {
+    if (pairs.length % 2 != 0) {
+      throw new IllegalArgumentException("vclock must be device/counter pairs");
+    }
+    final int size = pairs.length / 2;
+    final int[] devices = new int[size];
+    final long[] counters = new long[size];
+    for (int i = 0; i < size; i++) {
+      final int device = (int) pairs[i * 2];
+      //insertion sort, clocks are short and usually already sorted
+      int at = i;
+      while (at > 0 && devices[at - 1] > device) {
+        devices[at] = devices[at - 1];
+        counters[at] = counters[at - 1];
+        at--;
+      }
+      if (at > 0 && devices[at - 1] == device) {
+        throw new IllegalArgumentException("repeated device in vclock: " + device);
+      }
+      devices[at] = device;
+      counters[at] = pairs[i * 2 + 1];
+    }
+    return of(devices, counters);
+  }
+
+  /** clock from the counters by device */
+  public static VClock fromMap(final Map<Integer, ? extends Number> map) {
+    final int[] devices = map.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    final long[] counters = new long[devices.length];
+    for (int i = 0; i < devices.length; i++) {
+      counters[i] = map.get(devices[i]).longValue();
+    }
+    return of(devices, counters);
   }
 
-  private VClock(ConcurrentHashMap<Integer, AtomicLong> map) {
-    this.map = map;
+  private static VClock of(final int[] devices, final long[] counters) {
+    for (final long counter : counters) {
+      if (counter <= 0) {
+        throw new IllegalArgumentException("vclock counter must be positive: " + counter);
+      }
+    }
+    return new VClock(new Entries(devices, counters));
   }
 
-  public void increment(int device) {
-    map.computeIfAbsent(device, i -> new AtomicLong(0)).incrementAndGet();
+  public synchronized void increment(final int device) {
+    final Entries current = entries;
+    final int index = Arrays.binarySearch(current.devices, device);
+    if (index >= 0) {
+      final long[] counters = current.counters.clone();
+      counters[index]++;
+      entries = new Entries(current.devices, counters);
+      return;
+    }
+    final int at = -index - 1;
+    final int size = current.devices.length;
+    final int[] devices = new int[size + 1];
+    final long[] counters = new long[size + 1];
+    System.arraycopy(current.devices, 0, devices, 0, at);
+    System.arraycopy(current.counters, 0, counters, 0, at);
+    devices[at] = device;
+    counters[at] = 1;
+    System.arraycopy(current.devices, at, devices, at + 1, size - at);
+    System.arraycopy(current.counters, at, counters, at + 1, size - at);
+    entries = new Entries(devices, counters);
   }
 
-  public Comparison compare(VClock v2) {
-    if (map.size() > v2.getMap().size()) {
+  public Comparison compare(final VClock v2) {
+    final Entries e1 = entries;
+    final Entries e2 = v2.entries;
+    if (e1.devices.length > e2.devices.length) {
       return Comparison.newer;
     }
-    if (v2.getMap().size() > map.size()) {
+    if (e2.devices.length > e1.devices.length) {
       return Comparison.older;
     }
-    for (int node : map.keySet()) {
-      if (v2.map.get(node) == null) {
-        return Comparison.conflict;
-      }
-    }
     boolean v1Bigger = false;
     boolean v2Bigger = false;
-    for (int node : map.keySet()) {
-      if (v1Bigger && v2Bigger) {
-        break;
+    for (int i = 0; i < e1.devices.length; i++) {
+      if (e1.devices[i] != e2.devices[i]) {
+        return Comparison.conflict;
       }
-      long v1Version = map.get(node).get();
-      long v2Version = v2.getMap().get(node).get();
-      if (v1Version > v2Version) {
+      if (e1.counters[i] > e2.counters[i]) {
         v1Bigger = true;
-      } else if (v1Version < v2Version) {
+      } else if (e1.counters[i] < e2.counters[i]) {
         v2Bigger = true;
       }
     }
@@ -80,30 +145,48 @@ public class VClock implements Cloneable {
     }
   }
 
-  public Map<Integer, AtomicLong> getMap() {
-    return ImmutableMap.copyOf(map);
+  /** counter of the device, 0 if it has never been incremented */
+  public long get(final int device) {
+    final Entries current = entries;
+    final int index = Arrays.binarySearch(current.devices, device);
+    return index >= 0 ? current.counters[index] : 0;
+  }
+
+  public int size() {
+    return entries.devices.length;
+  }
+
+  /** device/counter pairs in ascending order of device */
+  public long[] toArray() {
+    final Entries current = entries;
+    final long[] ret = new long[current.devices.length * 2];
+    for (int i = 0; i < current.devices.length; i++) {
+      ret[i * 2] = current.devices[i];
+      ret[i * 2 + 1] = current.counters[i];
+    }
+    return ret;
+  }
+
+  /** counters by device in ascending order of device */
+  public Map<Integer, Long> toMap() {
+    final Entries current = entries;
+    final Map<Integer, Long> ret = new LinkedHashMap<>();
+    for (int i = 0; i < current.devices.length; i++) {
+      ret.put(current.devices[i], current.counters[i]);
+    }
+    return ret;
   }
 
   @Override
   public String toString() {
     return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
-        .append("map", map)
+        .append("map", toMap())
         .toString();
   }
 
   @Override
   public Object clone() throws CloneNotSupportedException {
-    return new VClock(
-        map.entrySet()
-            .stream()
-            .collect(
-                ConcurrentHashMap<Integer, AtomicLong>::new,
-                (ConcurrentHashMap<Integer, AtomicLong> map,
-                        Map.Entry<Integer, AtomicLong> entry) ->
-                    map.put(entry.getKey(), new AtomicLong(entry.getValue().longValue())),
-                (ConcurrentHashMap<Integer, AtomicLong> map1,
-                        ConcurrentHashMap<Integer, AtomicLong> map2) ->
-                    map1.putAll(map2)));
+    return new VClock(entries);
   }
 
   public enum Comparison {
@@ -112,4 +195,14 @@ public class VClock implements Cloneable {
     newer,
     conflict
   }
+
+  private static class Entries {
+    private final int[] devices;
+    private final long[] counters;
+
+    private Entries(final int[] devices, final long[] counters) {
+      this.devices = devices;
+      this.counters = counters;
+    }
+  }
 }
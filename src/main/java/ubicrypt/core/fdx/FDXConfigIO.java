@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.fdx;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import rx.Observable;
+import rx.Subscriber;
+import ubicrypt.core.RemoteIO;
+import ubicrypt.core.crypto.AESGCM;
+import ubicrypt.core.dto.FileIndex;
+import ubicrypt.core.dto.Key;
+import ubicrypt.core.dto.RemoteConfig;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.util.IPersist;
+
+import static org.slf4j.LoggerFactory.getLogger;
+import static rx.Observable.create;
+import static rx.Observable.just;
+import static ubicrypt.core.fdx.IndexRecord.IRStatus.deleted;
+import static ubicrypt.core.fdx.IndexRecord.IRStatus.modified;
+import static ubicrypt.core.fdx.IndexRecord.IRStatus.unchanged;
+
+/**
+ * Store the remote config with its files split in a chain of file indexes. The config file keeps
+ * everything but the files plus the descriptors of the indexes, so that they can be loaded in
+ * parallel. Only the indexes holding files changed since the last load or save are uploaded.
+ * Configs still holding the files inline are read as they are and converted on the first save.
+ */
+public class FDXConfigIO implements RemoteIO<RemoteConfig> {
+  private static final Logger log = getLogger(FDXConfigIO.class);
+  private final IPersist serializer;
+  private final RemoteFile confFile;
+  private final RemoteFile indexListFile;
+  private final int maxFilesPerIndex;
+  /** config the indexes refer to */
+  private RemoteConfig config;
+  /** indexes as they are stored remotely */
+  private List<FileIndex> indexes = new ArrayList<>();
+  /** config sequence of the stored indexes */
+  private long sequence = -1;
+
+  public FDXConfigIO(IPersist serializer, RemoteFile confFile, RemoteFile indexListFile) {
+    this(serializer, confFile, indexListFile, 500);
+  }
+
+  public FDXConfigIO(
+      IPersist serializer, RemoteFile confFile, RemoteFile indexListFile, int maxFilesPerIndex) {
+    this.serializer = serializer;
+    this.confFile = confFile;
+    this.indexListFile = indexListFile;
+    this.maxFilesPerIndex = maxFilesPerIndex;
+  }
+
+  @Override
+  public void call(Subscriber<? super RemoteConfig> subscriber) {
+    serializer
+        .getObject(confFile, RemoteConfig.class)
+        .flatMap(
+            rconfig ->
+                create(new FDXLoader(serializer, rconfig.getIndexes()))
+                    .toList()
+                    .map(
+                        fdxs -> {
+                          fdxs.forEach(fdx -> rconfig.getRemoteFiles().addAll(fdx.getFiles()));
+                          log.debug(
+                              "loaded indexes:{}, files:{}",
+                              fdxs.size(),
+                              rconfig.getRemoteFiles().size());
+                          synchronized (this) {
+                            config = rconfig;
+                            indexes = fdxs;
+                            sequence = rconfig.getSequence();
+                          }
+                          return rconfig;
+                        }))
+        .subscribe(subscriber);
+  }
+
+  @Override
+  public Observable<Boolean> apply(RemoteConfig rconfig) {
+    final List<IndexRecord> records;
+    synchronized (this) {
+      records = plan(rconfig);
+      //the indexes are updated in place
+      config = rconfig;
+      sequence = rconfig.getSequence();
+    }
+    return create(new FDXSaver(serializer, records))
+        .flatMap(
+            saved -> {
+              final List<IndexRecord> alive =
+                  saved
+                      .stream()
+                      .filter(ir -> ir.getStatus() != deleted)
+                      .collect(Collectors.toList());
+              synchronized (this) {
+                indexes =
+                    alive.stream().map(IndexRecord::getFileIndex).collect(Collectors.toList());
+              }
+              return serializer.put(
+                  head(
+                      rconfig,
+                      alive.stream().map(IndexRecord::getRemoteFile).collect(Collectors.toList())),
+                  confFile);
+            })
+        .doOnError(
+            err -> {
+              synchronized (this) {
+                //remote indexes are unknown: rewrite them all next time
+                config = null;
+              }
+            });
+  }
+
+  /** index records to save in order to store the files of the given config */
+  private List<IndexRecord> plan(RemoteConfig rconfig) {
+    final Map<UUID, RemoteFile> stored = new HashMap<>();
+    indexes.forEach(fdx -> fdx.getFiles().forEach(rf -> stored.put(rf.getId(), rf)));
+    final List<RemoteFileAction> actions = new ArrayList<>();
+    rconfig
+        .getRemoteFiles()
+        .stream()
+        .filter(rf -> !stored.containsKey(rf.getId()))
+        .forEach(rf -> actions.add(new RemoteFileAction(RemoteFileAction.Action.add, rf)));
+    stored
+        .values()
+        .stream()
+        .filter(rf -> !rconfig.getRemoteFiles().contains(rf))
+        .forEach(rf -> actions.add(new RemoteFileAction(RemoteFileAction.Action.delete, rf)));
+    //files of an unknown config may all be changed
+    final Optional<Set<UUID>> changed =
+        rconfig == config ? rconfig.changedSince(sequence) : Optional.empty();
+    rconfig
+        .getRemoteFiles()
+        .stream()
+        .filter(rf -> stored.containsKey(rf.getId()))
+        .filter(rf -> !changed.isPresent() || changed.get().contains(rf.getId()))
+        .forEach(rf -> actions.add(new RemoteFileAction(RemoteFileAction.Action.update, rf)));
+    final List<IndexRecord> records =
+        new RemoteFileAction2Record(first(rconfig), indexes, maxFilesPerIndex).call(actions);
+    if (rconfig != config) {
+      records
+          .stream()
+          .filter(ir -> ir.getStatus() == unchanged)
+          .forEach(ir -> ir.setStatus(modified));
+    }
+    log.debug(
+        "file actions:{}, indexes to save:{}",
+        actions.size(),
+        records.stream().filter(ir -> ir.getStatus() != unchanged).count());
+    return records;
+  }
+
+  /** descriptor of the first index */
+  private RemoteFile first(RemoteConfig rconfig) {
+    if (!rconfig.getIndexes().isEmpty()) {
+      return rconfig.getIndexes().get(0);
+    }
+    if (indexListFile.getName() == null) {
+      //the key is kept in the config, which is already encrypted
+      indexListFile.setKey(new Key(AESGCM.rndKey()));
+    }
+    return indexListFile;
+  }
+
+  /** config without the files, pointing to the indexes instead */
+  private static RemoteConfig head(RemoteConfig rconfig, List<RemoteFile> indexFiles) {
+    final RemoteConfig head = new RemoteConfig();
+    head.setProviders(rconfig.getProviders());
+    head.setNext(rconfig.getNext());
+    head.setSequence(rconfig.getSequence());
+    head.setChanges(rconfig.getChanges());
+    head.setChunkSecret(rconfig.getChunkSecret());
+    head.setIndexes(indexFiles);
+    rconfig.setIndexes(indexFiles);
+    return head;
+  }
+}
@@ -15,8 +15,11 @@ package ubicrypt.core.fdx;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.List;
+
 import rx.Observable;
 import rx.Subscriber;
+import rx.schedulers.Schedulers;
 import ubicrypt.core.dto.FileIndex;
 import ubicrypt.core.dto.RemoteFile;
 import ubicrypt.core.util.IPersist;
@@ -26,17 +29,37 @@ import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 import static rx.Observable.create;
 import static rx.Observable.empty;
 
+/**
+ * Load the chain of file indexes. When the descriptors of all the indexes are known they are
+ * downloaded in parallel, otherwise the chain is walked one index after the other.
+ */
 public class FDXLoader implements Observable.OnSubscribe<FileIndex> {
   private final IPersist serializer;
   private final RemoteFile fileIndexFile;
+  private final List<RemoteFile> indexFiles;
 
   public FDXLoader(IPersist serializer, RemoteFile fileIndexFile) {
     this.serializer = serializer;
     this.fileIndexFile = fileIndexFile;
+    this.indexFiles = null;
+  }
+
+  public FDXLoader(IPersist serializer, List<RemoteFile> indexFiles) {
+    this.serializer = serializer;
+    this.fileIndexFile = null;
+    this.indexFiles = indexFiles;
   }
 
   @Override
   public void call(Subscriber<? super FileIndex> subscriber) {
+    if (indexFiles != null) {
+      //keep the chain order while downloading concurrently
+      Observable.from(indexFiles)
+          .concatMapEager(
+              rf -> serializer.getObject(rf, FileIndex.class).subscribeOn(Schedulers.io()))
+          .subscribe(subscriber);
+      return;
+    }
     if (isEmpty(fileIndexFile.getName())) {
       subscriber.onCompleted();
       return;
@@ -29,6 +29,7 @@ import static org.slf4j.LoggerFactory.getLogger;
 import static rx.Observable.error;
 import static rx.Observable.just;
 import static ubicrypt.core.fdx.IndexRecord.IRStatus.created;
+import static ubicrypt.core.fdx.IndexRecord.IRStatus.deleted;
 import static ubicrypt.core.fdx.IndexRecord.IRStatus.modified;
 import static ubicrypt.core.fdx.IndexRecord.IRStatus.unchanged;
 
@@ -70,7 +71,8 @@ public class FDXSaver implements Observable.OnSubscribe<List<IndexRecord>> {
       return chain;
     }
     IndexRecord ir = it.next();
-    if (previousStatus == created) {
+    //the following index has a new location: point to it
+    if ((previousStatus == created || previousStatus == deleted) && ir.getStatus() != deleted) {
       if (ir.getStatus() != created) {
         ir.setStatus(modified);
       }
@@ -91,6 +91,8 @@ public class RemoteFileAction2Record implements Func1<List<RemoteFileAction>, Li
                       .findFirst()
                       .get();
               ir.setStatus(modified);
+              //replace the previous instance of the file
+              ir.getFileIndex().getFiles().remove(changed.getRemoteFile());
               ir.getFileIndex().getFiles().add(changed.getRemoteFile());
               break;
             case delete:
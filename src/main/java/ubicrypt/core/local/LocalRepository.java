@@ -28,9 +28,10 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Stream;
 
 import javax.annotation.Resource;
 import javax.inject.Inject;
@@ -47,6 +48,8 @@ import ubicrypt.core.dto.UbiFile;
 import ubicrypt.core.dto.VClock;
 import ubicrypt.core.exp.NotFoundException;
 import ubicrypt.core.provider.FileEvent;
+import ubicrypt.core.util.ConsumerExp;
+import ubicrypt.core.util.ContentHash;
 import ubicrypt.core.util.CopyFile;
 import ubicrypt.core.util.StoreTempFile;
 
@@ -86,28 +89,38 @@ public class LocalRepository implements IRepository {
     try {
       check(fp);
       final UbiFile rfile = fp.getFile();
-      final Optional<LocalFile> lfile =
-          localConfig.getLocalFiles().stream().filter(lf -> lf.equals(rfile)).findFirst();
+      final Optional<LocalFile> lfile = localConfig.getLocalFiles().get(rfile);
       if (!lfile.isPresent()) {
         //new file
         return onNewFileLocal.call(fp);
       } else {
         final VClock.Comparison comparison = rfile.getVclock().compare(lfile.get().getVclock());
         if (comparison == VClock.Comparison.newer) {
+          final Path oldPath = lfile.get().getPath();
+          final byte[] oldSha1 = lfile.get().getSha1();
           lfile.get().copyFrom(rfile);
           if (!rfile.isDeleted() && !rfile.isRemoved()) {
+            if (move(oldPath, oldSha1, rfile)) {
+              fileEvents.onNext(
+                  new FileEvent(fp.getFile(), FileEvent.Type.updated, FileEvent.Location.local));
+              return Observable.just(true);
+            }
             log.info("update file:{} locally from repo:{}", rfile.getPath(), fp.getOrigin());
             AtomicReference<Path> tempFile = new AtomicReference<>();
+            final AtomicReference<byte[]> sha1 = new AtomicReference<>();
             return fp.getOrigin()
                 .get(fp.getFile())
+                .map(is -> ContentHash.digest(is, sha1::set))
                 .flatMap(new StoreTempFile())
+                .doOnNext(tempFile::set)
+                .doOnNext(ConsumerExp.silent(temp -> ContentHash.verify(rfile, sha1.get())))
                 .map(
                     new CopyFile(
                         rfile.getSize(),
                         basePath.resolve(rfile.getPath()),
                         false,
                         fp.getFile().getLastModified()))
-                .doOnCompleted(
+                .doOnTerminate(
                     () -> {
                       if (tempFile.get() != null) {
                         try {
@@ -117,10 +130,12 @@ public class LocalRepository implements IRepository {
                       }
                     })
                 .doOnCompleted(
-                    () ->
-                        fileEvents.onNext(
-                            new FileEvent(
-                                fp.getFile(), FileEvent.Type.updated, FileEvent.Location.local)));
+                    () -> {
+                      deleteRenamed(oldPath, rfile);
+                      fileEvents.onNext(
+                          new FileEvent(
+                              fp.getFile(), FileEvent.Type.updated, FileEvent.Location.local));
+                    });
           }
           //removed or deleted
           fileEvents.onNext(
@@ -136,8 +151,48 @@ public class LocalRepository implements IRepository {
     }
   }
 
-  private Stream<LocalFile> getPathStream(final UbiFile file) {
-    return localConfig.getLocalFiles().stream().filter(file1 -> file1.equals(file));
+  /**
+   * moves the local copy of a file renamed on another device, when its content did not change, so
+   * it is not downloaded again
+   */
+  private boolean move(final Path oldPath, final byte[] oldSha1, final UbiFile rfile) {
+    if (oldPath == null
+        || oldPath.equals(rfile.getPath())
+        || oldSha1 == null
+        || !Arrays.equals(oldSha1, rfile.getSha1())) {
+      return false;
+    }
+    final Path source = basePath.resolve(oldPath);
+    final Path target = basePath.resolve(rfile.getPath());
+    if (!Files.isRegularFile(source) || Files.exists(target)) {
+      return false;
+    }
+    try {
+      Files.createDirectories(target.getParent());
+      Files.move(source, target);
+      if (rfile.getLastModified() != null) {
+        Files.setLastModifiedTime(target, FileTime.from(rfile.getLastModified()));
+      }
+      log.info("rename file:{} locally to:{}", oldPath, rfile.getPath());
+      return true;
+    } catch (final IOException e) {
+      log.warn("can't rename file:{} to:{}, {}", oldPath, rfile.getPath(), e.getMessage());
+      return false;
+    }
+  }
+
+  /** deletes the copy at the old path of a renamed file, unless another file is tracked there */
+  private void deleteRenamed(final Path oldPath, final UbiFile rfile) {
+    if (oldPath == null
+        || oldPath.equals(rfile.getPath())
+        || localConfig.getLocalFiles().getByPath(oldPath).isPresent()) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(basePath.resolve(oldPath));
+    } catch (final IOException e) {
+      log.warn("can't delete renamed file:{}, {}", oldPath, e.getMessage());
+    }
   }
 
   @Override
@@ -146,13 +201,17 @@ public class LocalRepository implements IRepository {
     return Observable.create(
         subscriber -> {
           try {
+            final LocalFile lfile =
+                localConfig
+                    .getLocalFiles()
+                    .get(file)
+                    .orElseThrow(() -> new NotFoundException(basePath.resolve(file.getPath())));
+            final Path path = basePath.resolve(lfile.getPath());
+            final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            //the content is hashed while it is read for the upload
             subscriber.onNext(
-                getPathStream(file)
-                    .map(LocalFile::getPath)
-                    .map(basePath::resolve)
-                    .map(Utils::readIs)
-                    .findFirst()
-                    .orElseThrow(() -> new NotFoundException(basePath.resolve(file.getPath()))));
+                ContentHash.digest(
+                    Utils.readIs(path), sha1 -> ContentHash.record(lfile, sha1, attrs)));
             subscriber.onCompleted();
           } catch (final Exception e) {
             subscriber.onError(e);
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Resource;
@@ -36,6 +37,8 @@ import ubicrypt.core.dto.LocalFile;
 import ubicrypt.core.dto.UbiFile;
 import ubicrypt.core.exp.NotFoundException;
 import ubicrypt.core.provider.FileEvent;
+import ubicrypt.core.util.ConsumerExp;
+import ubicrypt.core.util.ContentHash;
 import ubicrypt.core.util.CopyFile;
 import ubicrypt.core.util.StoreTempFile;
 import ubicrypt.core.util.SupplierExp;
@@ -67,25 +70,40 @@ public class OnNewLocal implements Func1<FileProvenience, Observable<Boolean>> {
         log.info("can't import file, a folder already exists with the same name:{}", path);
         return Observable.just(false);
       }
-      if (attrs.size() == rfile.getSize()) {
-        log.info("identical file already present locally:{}", path);
-        localConfig.getLocalFiles().add(LocalFile.copy(rfile));
-        return Observable.just(true)
-            .doOnCompleted(
-                () ->
-                    fileEvents.onNext(
-                        new FileEvent(rfile, FileEvent.Type.created, FileEvent.Location.local)));
+      final Observable<Boolean> identical;
+      if (attrs.size() != rfile.getSize()) {
+        identical = Observable.just(false);
+      } else if (rfile.getSha1() == null) {
+        identical = Observable.just(true);
+      } else {
+        identical = ContentHash.of(path).map(sha1 -> Arrays.equals(sha1, rfile.getSha1()));
       }
-      log.info("conflicting file already present locally:{}", path);
-      //            conflictEvents.onNext(rfile);
-      return Observable.just(false);
+      return identical.flatMap(
+          same -> {
+            if (!same) {
+              log.info("conflicting file already present locally:{}", path);
+              //            conflictEvents.onNext(rfile);
+              return Observable.just(false);
+            }
+            log.info("identical file already present locally:{}", path);
+            localConfig.getLocalFiles().add(LocalFile.copy(rfile));
+            return Observable.just(true)
+                .doOnCompleted(
+                    () ->
+                        fileEvents.onNext(
+                            new FileEvent(
+                                rfile, FileEvent.Type.created, FileEvent.Location.local)));
+          });
     }
     AtomicReference<Path> tempFile = new AtomicReference<>();
+    final AtomicReference<byte[]> sha1 = new AtomicReference<>();
     return fp.getOrigin()
         .get(rfile)
         .doOnNext(next -> log.info("copy to:{} from:{}", path, fp.getOrigin()))
+        .map(is -> ContentHash.digest(is, sha1::set))
         .flatMap(new StoreTempFile())
         .doOnNext(tempFile::set)
+        .doOnNext(ConsumerExp.silent(temp -> ContentHash.verify(rfile, sha1.get())))
         .map(new CopyFile(rfile.getSize(), path, true, fp.getFile().getLastModified()))
         .doOnCompleted(
             () -> {
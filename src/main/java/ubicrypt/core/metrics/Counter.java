@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** monotonically increasing count, like bytes transferred */
+public class Counter extends Meter {
+  private final LongAdder count = new LongAdder();
+
+  Counter(final String name, final SortedMap<String, String> tags) {
+    super(name, tags);
+  }
+
+  public void increment() {
+    count.increment();
+  }
+
+  public void increment(final long amount) {
+    count.add(amount);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  public Map<String, Number> measure() {
+    return ImmutableMap.of("count", getCount());
+  }
+}
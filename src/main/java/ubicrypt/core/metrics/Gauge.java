@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.Supplier;
+
+/** value sampled when read, like the length of a queue */
+public class Gauge extends Meter {
+  private volatile Supplier<? extends Number> value;
+
+  Gauge(final String name, final SortedMap<String, String> tags, Supplier<? extends Number> value) {
+    super(name, tags);
+    this.value = value;
+  }
+
+  /** the gauge of a meter registered again follows the new source */
+  void setValue(final Supplier<? extends Number> value) {
+    this.value = value;
+  }
+
+  public double getValue() {
+    try {
+      return value.get().doubleValue();
+    } catch (final RuntimeException e) {
+      return Double.NaN;
+    }
+  }
+
+  @Override
+  public Map<String, Number> measure() {
+    return ImmutableMap.of("value", getValue());
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import org.slf4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/** publishes every meter of the registry as a read-only MBean in the platform server */
+public class JmxExporter {
+  private static final Logger log = getLogger(JmxExporter.class);
+  static final String domain = "ubicrypt";
+
+  private final MetricsRegistry registry;
+  private final MBeanServer server;
+  private final Set<ObjectName> registered = ConcurrentHashMap.newKeySet();
+  private final Consumer<Meter> listener = this::register;
+  private final Consumer<Meter> removalListener = this::unregister;
+
+  public JmxExporter(final MetricsRegistry registry) {
+    this(registry, ManagementFactory.getPlatformMBeanServer());
+  }
+
+  public JmxExporter(final MetricsRegistry registry, final MBeanServer server) {
+    this.registry = registry;
+    this.server = server;
+  }
+
+  @PostConstruct
+  public void start() {
+    registry.addListener(listener);
+    registry.addRemovalListener(removalListener);
+    registry.getMeters().forEach(this::register);
+  }
+
+  @PreDestroy
+  public void stop() {
+    registry.removeListener(listener);
+    registry.removeRemovalListener(removalListener);
+    registered.forEach(
+        name -> {
+          try {
+            server.unregisterMBean(name);
+          } catch (final Exception e) {
+            log.debug("unregister {} failed:{}", name, e.getMessage());
+          }
+        });
+    registered.clear();
+  }
+
+  static ObjectName objectName(final Meter meter) throws Exception {
+    final Hashtable<String, String> props = new Hashtable<>();
+    meter.getTags().forEach((key, value) -> props.put(key, ObjectName.quote(value)));
+    props.put("type", meter.getClass().getSimpleName());
+    props.put("name", meter.getName());
+    return new ObjectName(domain, props);
+  }
+
+  private void register(final Meter meter) {
+    try {
+      final ObjectName name = objectName(meter);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new MeterMBean(meter), name);
+        registered.add(name);
+      }
+    } catch (final Exception e) {
+      log.warn("meter {} not exported to jmx:{}", meter.getId(), e.getMessage());
+    }
+  }
+
+  private void unregister(final Meter meter) {
+    try {
+      final ObjectName name = objectName(meter);
+      if (registered.remove(name)) {
+        server.unregisterMBean(name);
+      }
+    } catch (final Exception e) {
+      log.debug("meter {} not unregistered from jmx:{}", meter.getId(), e.getMessage());
+    }
+  }
+
+  static class MeterMBean implements DynamicMBean {
+    private final Meter meter;
+
+    MeterMBean(final Meter meter) {
+      this.meter = meter;
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+      final Number ret = meter.measure().get(attribute);
+      if (ret == null) {
+        throw new AttributeNotFoundException(attribute);
+      }
+      return ret;
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+      final Map<String, Number> values = meter.measure();
+      final AttributeList ret = new AttributeList();
+      for (final String attribute : attributes) {
+        if (values.containsKey(attribute)) {
+          ret.add(new Attribute(attribute, values.get(attribute)));
+        }
+      }
+      return ret;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) {
+      throw new UnsupportedOperationException("meters are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) {
+      throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      final MBeanAttributeInfo[] attributes =
+          meter
+              .measure()
+              .entrySet()
+              .stream()
+              .map(
+                  entry ->
+                      new MBeanAttributeInfo(
+                          entry.getKey(),
+                          entry.getValue().getClass().getName(),
+                          entry.getKey(),
+                          true,
+                          false,
+                          false))
+              .toArray(MBeanAttributeInfo[]::new);
+      return new MBeanInfo(meter.getClass().getName(), meter.getId(), attributes, null, null, null);
+    }
+  }
+}
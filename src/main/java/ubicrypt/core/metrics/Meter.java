@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** a measure identified by its name and tags */
+public abstract class Meter {
+  private final String name;
+  private final SortedMap<String, String> tags;
+
+  Meter(final String name, final SortedMap<String, String> tags) {
+    this.name = name;
+    this.tags = Collections.unmodifiableSortedMap(tags);
+  }
+
+  /** tags from key/value pairs */
+  static SortedMap<String, String> tags(final String... keyValues) {
+    if (keyValues.length % 2 != 0) {
+      throw new IllegalArgumentException("tags must be key/value pairs");
+    }
+    final SortedMap<String, String> ret = new TreeMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      ret.put(keyValues[i], String.valueOf(keyValues[i + 1]));
+    }
+    return ret;
+  }
+
+  static String id(final String name, final SortedMap<String, String> tags) {
+    return name + tags;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public SortedMap<String, String> getTags() {
+    return tags;
+  }
+
+  public String getId() {
+    return id(name, tags);
+  }
+
+  /** current values by attribute name */
+  public abstract Map<String, Number> measure();
+
+  @Override
+  public String toString() {
+    return getId() + measure();
+  }
+}
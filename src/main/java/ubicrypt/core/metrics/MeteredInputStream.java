@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** counts the bytes read from the wrapped stream */
+public class MeteredInputStream extends FilterInputStream {
+  private final Counter counter;
+
+  public MeteredInputStream(final InputStream in, final Counter counter) {
+    super(in);
+    this.counter = counter;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int ret = super.read();
+    if (ret != -1) {
+      counter.increment();
+    }
+    return ret;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    final int ret = super.read(b, off, len);
+    if (ret > 0) {
+      counter.increment(ret);
+    }
+    return ret;
+  }
+}
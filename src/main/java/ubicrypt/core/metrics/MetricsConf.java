@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConf {
+
+  /** meters of this context, along with the ones of the static paths */
+  @Bean
+  public MetricsRegistry metricsRegistry() {
+    return new MetricsRegistry(MetricsRegistry.global());
+  }
+
+  @Bean
+  public JmxExporter jmxExporter(final MetricsRegistry metricsRegistry) {
+    return new JmxExporter(metricsRegistry);
+  }
+
+  /** disabled unless a port is configured, as metrics.prometheus.port=9464 */
+  @Bean
+  public PrometheusExporter prometheusExporter(
+      final MetricsRegistry metricsRegistry,
+      @Value("${metrics.prometheus.port:0}") final int port) {
+    return new PrometheusExporter(metricsRegistry, port);
+  }
+}
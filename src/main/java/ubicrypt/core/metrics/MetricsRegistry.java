@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Meters looked up by name and tags, exporters read them and follow the new ones. Beans get the
+ * registry of their application context injected. The static paths which no context reaches, as
+ * crypto and compression, register into {@link #global()}: a registry created with it as parent
+ * exposes those meters along with its own.
+ */
+public class MetricsRegistry {
+  private static final MetricsRegistry global = new MetricsRegistry();
+
+  private final ConcurrentHashMap<String, Meter> meters = new ConcurrentHashMap<>();
+  private final List<Consumer<Meter>> listeners = new CopyOnWriteArrayList<>();
+  private final List<Consumer<Meter>> removalListeners = new CopyOnWriteArrayList<>();
+  private final MetricsRegistry parent;
+
+  public MetricsRegistry() {
+    this(null);
+  }
+
+  /** @param parent registry whose meters are exposed along with the ones of this registry */
+  public MetricsRegistry(final MetricsRegistry parent) {
+    this.parent = parent;
+  }
+
+  /** registry of the components not managed by an application context */
+  public static MetricsRegistry global() {
+    return global;
+  }
+
+  public Counter counter(final String name, final String... tags) {
+    return register(name, tags, Counter::new, Counter.class);
+  }
+
+  public Timer timer(final String name, final String... tags) {
+    return register(name, tags, Timer::new, Timer.class);
+  }
+
+  /** registering the same gauge again replaces its source */
+  public Gauge gauge(
+      final String name, final Supplier<? extends Number> value, final String... tags) {
+    final Gauge gauge = register(name, tags, (n, t) -> new Gauge(n, t, value), Gauge.class);
+    gauge.setValue(value);
+    return gauge;
+  }
+
+  /** counts into the counter the bytes read from the stream */
+  public InputStream count(final InputStream is, final String name, final String... tags) {
+    return new MeteredInputStream(is, counter(name, tags));
+  }
+
+  /** the meters of this registry and of its parent */
+  public Collection<Meter> getMeters() {
+    final List<Meter> ret = new ArrayList<>(meters.values());
+    if (parent != null) {
+      ret.addAll(parent.getMeters());
+    }
+    return ret;
+  }
+
+  /** the listener is notified about every meter registered from now on, here or in the parent */
+  public void addListener(final Consumer<Meter> listener) {
+    listeners.add(listener);
+    if (parent != null) {
+      parent.addListener(listener);
+    }
+  }
+
+  public void removeListener(final Consumer<Meter> listener) {
+    listeners.remove(listener);
+    if (parent != null) {
+      parent.removeListener(listener);
+    }
+  }
+
+  /** the listener is notified about every meter removed from now on, here or in the parent */
+  public void addRemovalListener(final Consumer<Meter> listener) {
+    removalListeners.add(listener);
+    if (parent != null) {
+      parent.addRemovalListener(listener);
+    }
+  }
+
+  public void removeRemovalListener(final Consumer<Meter> listener) {
+    removalListeners.remove(listener);
+    if (parent != null) {
+      parent.removeRemovalListener(listener);
+    }
+  }
+
+  /** unregisters the meter, as when what it measures goes away. False if it was not registered */
+  public boolean remove(final Meter meter) {
+    if (meter == null || !meters.remove(meter.getId(), meter)) {
+      return false;
+    }
+    removalListeners.forEach(listener -> listener.accept(meter));
+    return true;
+  }
+
+  private <T extends Meter> T register(
+      final String name,
+      final String[] tags,
+      final BiFunction<String, SortedMap<String, String>, T> factory,
+      final Class<T> type) {
+    final SortedMap<String, String> tagMap = Meter.tags(tags);
+    final String id = Meter.id(name, tagMap);
+    Meter meter = meters.get(id);
+    if (meter == null) {
+      final T created = factory.apply(name, tagMap);
+      meter = meters.putIfAbsent(id, created);
+      if (meter == null) {
+        listeners.forEach(listener -> listener.accept(created));
+        return created;
+      }
+    }
+    if (!type.isInstance(meter)) {
+      throw new IllegalArgumentException(
+          "meter " + id + " already registered as " + meter.getClass().getSimpleName());
+    }
+    return type.cast(meter);
+  }
+}
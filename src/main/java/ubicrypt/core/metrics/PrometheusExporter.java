@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Serves the meters in the Prometheus text format at http://127.0.0.1:port/metrics. The endpoint is
+ * bound to the loopback only, a port not positive disables it.
+ */
+public class PrometheusExporter {
+  private static final Logger log = getLogger(PrometheusExporter.class);
+  static final String prefix = "ubicrypt_";
+  static final String contentType = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final MetricsRegistry registry;
+  private final int port;
+  private HttpServer server;
+
+  public PrometheusExporter(final MetricsRegistry registry, final int port) {
+    this.registry = registry;
+    this.port = port;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (port <= 0) {
+      log.info("prometheus endpoint disabled");
+      return;
+    }
+    try {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext(
+          "/metrics",
+          exchange -> {
+            try {
+              final byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+              exchange.getResponseHeaders().set("Content-Type", contentType);
+              exchange.sendResponseHeaders(200, body.length);
+              try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+              }
+            } finally {
+              exchange.close();
+            }
+          });
+      server.start();
+      log.info("prometheus endpoint on port:{}", getPort());
+    } catch (final IOException e) {
+      log.warn("prometheus endpoint not started on port:{}, {}", port, e.getMessage());
+      server = null;
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  /** the port actually bound, -1 if the endpoint is not running */
+  public int getPort() {
+    return server == null ? -1 : server.getAddress().getPort();
+  }
+
+  /** all the meters in text format */
+  public String scrape() {
+    final Map<String, List<Meter>> byName =
+        registry
+            .getMeters()
+            .stream()
+            .sorted(Comparator.comparing(Meter::getId))
+            .collect(Collectors.groupingBy(Meter::getName));
+    final StringBuilder sb = new StringBuilder();
+    byName
+        .keySet()
+        .stream()
+        .sorted()
+        .forEach(
+            name -> {
+              final List<Meter> meters = byName.get(name);
+              final Meter first = meters.get(0);
+              if (first instanceof Counter) {
+                final String metric = metricName(name) + "_total";
+                sb.append("# TYPE ").append(metric).append(" counter\n");
+                meters.forEach(
+                    meter -> sample(sb, metric, meter.getTags(), ((Counter) meter).getCount()));
+              } else if (first instanceof Gauge) {
+                final String metric = metricName(name);
+                sb.append("# TYPE ").append(metric).append(" gauge\n");
+                meters.forEach(
+                    meter -> sample(sb, metric, meter.getTags(), ((Gauge) meter).getValue()));
+              } else if (first instanceof Timer) {
+                final String metric = metricName(name) + "_seconds";
+                sb.append("# TYPE ").append(metric).append(" histogram\n");
+                meters.forEach(meter -> histogram(sb, metric, (Timer) meter));
+              }
+            });
+    return sb.toString();
+  }
+
+  private static void histogram(final StringBuilder sb, final String metric, final Timer timer) {
+    final long[] counts = timer.getBucketCounts();
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i];
+      final String le = i < Timer.bucketsMs.length ? format(Timer.bucketsMs[i] / 1000d) : "+Inf";
+      sb.append(metric).append("_bucket");
+      labels(sb, timer.getTags(), le);
+      sb.append(' ').append(cumulative).append('\n');
+    }
+    sample(sb, metric + "_count", timer.getTags(), cumulative);
+    sample(sb, metric + "_sum", timer.getTags(), timer.getTotalTime(TimeUnit.SECONDS));
+  }
+
+  private static void sample(
+      final StringBuilder sb,
+      final String metric,
+      final SortedMap<String, String> tags,
+      final double value) {
+    sb.append(metric);
+    labels(sb, tags, null);
+    sb.append(' ').append(format(value)).append('\n');
+  }
+
+  private static void labels(
+      final StringBuilder sb, final SortedMap<String, String> tags, final String le) {
+    if (tags.isEmpty() && le == null) {
+      return;
+    }
+    sb.append('{');
+    sb.append(
+        tags.entrySet()
+            .stream()
+            .map(entry -> sanitize(entry.getKey()) + "=\"" + escape(entry.getValue()) + "\"")
+            .collect(Collectors.joining(",")));
+    if (le != null) {
+      if (!tags.isEmpty()) {
+        sb.append(',');
+      }
+      sb.append("le=\"").append(le).append('"');
+    }
+    sb.append('}');
+  }
+
+  static String metricName(final String name) {
+    return prefix + sanitize(name);
+  }
+
+  static String sanitize(final String name) {
+    return name.replaceAll("[^a-zA-Z0-9_]", "_");
+  }
+
+  static String escape(final String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  static String format(final double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    }
+    if (value == Math.rint(value) && !Double.isInfinite(value)) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import rx.Observable;
+
+/** latency histogram with fixed buckets, along with count, total and max */
+public class Timer extends Meter {
+  /** upper bounds of the buckets in milliseconds, the last bucket is unbounded */
+  static final long[] bucketsMs = {
+    1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000
+  };
+
+  private final LongAdder[] buckets = new LongAdder[bucketsMs.length + 1];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  Timer(final String name, final SortedMap<String, String> tags) {
+    super(name, tags);
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(final long amount, final TimeUnit unit) {
+    final long nanos = Math.max(0, unit.toNanos(amount));
+    final long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int bucket = 0;
+    while (bucket < bucketsMs.length && ms >= bucketsMs[bucket]) {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    count.increment();
+    totalNanos.add(nanos);
+    maxNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  /** records the time from the subscription till the termination of the observable */
+  public <T> Observable<T> time(final Observable<T> observable) {
+    return Observable.defer(
+        () -> {
+          final long start = System.nanoTime();
+          return observable.doOnTerminate(
+              () -> record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public double getTotalTime(final TimeUnit unit) {
+    return (double) totalNanos.sum() / unit.toNanos(1);
+  }
+
+  public double getMax(final TimeUnit unit) {
+    return (double) maxNanos.get() / unit.toNanos(1);
+  }
+
+  /** counts per bucket, not cumulative, the last one counts the values over the largest bound */
+  public long[] getBucketCounts() {
+    final long[] ret = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      ret[i] = buckets[i].sum();
+    }
+    return ret;
+  }
+
+  @Override
+  public Map<String, Number> measure() {
+    final long count = getCount();
+    final double total = getTotalTime(TimeUnit.MILLISECONDS);
+    return ImmutableMap.of(
+        "count",
+        count,
+        "totalMs",
+        total,
+        "meanMs",
+        count == 0 ? 0d : total / count,
+        "maxMs",
+        getMax(TimeUnit.MILLISECONDS));
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.BaseEncoding;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import reactor.fn.tuple.Tuple2;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import ubicrypt.core.Utils;
+import ubicrypt.core.crypto.AESGCM;
+import ubicrypt.core.dto.ChunkRef;
+import ubicrypt.core.dto.Compression;
+import ubicrypt.core.dto.Key;
+import ubicrypt.core.dto.RemoteConfig;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.dto.UbiFile;
+import ubicrypt.core.util.CompressionPolicy;
+import ubicrypt.core.util.ContentChunker;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Stores large files as content-defined chunks, each one encrypted with its own key and stored once
+ * per provider. A chunk is identified by the keyed hash of its bytes: chunks already held by any
+ * remote file are not uploaded again, so that renames, copies and small edits upload only the
+ * chunks they change. Chunks no longer referenced are deleted once the config not referring to them
+ * has been saved.
+ */
+public class ChunkStore {
+  /** files smaller than this are stored as a single object */
+  public static final long minFileSize = 4 << 20;
+
+  private static final Logger log = getLogger(ChunkStore.class);
+  private static final BaseEncoding hex = BaseEncoding.base16().lowerCase();
+  private final UbiProvider provider;
+  private final ContentChunker chunker;
+  private final int concurrency;
+  /** chunks being uploaded, shared by the files holding them */
+  private final Map<String, Observable<ChunkRef>> inflight = new ConcurrentHashMap<>();
+  /** chunks dropped by some file, deleted if no file refers to them anymore */
+  private final Set<ChunkRef> released = ConcurrentHashMap.newKeySet();
+  /** config the index has been built from */
+  private RemoteConfig indexed;
+  /**
+   * chunks held by the files of the indexed config, by hash. Built once per config, then kept up to
+   * date with the uploaded and the deleted chunks
+   */
+  private Map<String, ChunkRef> index = new ConcurrentHashMap<>();
+
+  public ChunkStore(final UbiProvider provider) {
+    this(provider, ContentChunker.standard);
+  }
+
+  public ChunkStore(final UbiProvider provider, final ContentChunker chunker) {
+    this.provider = provider;
+    this.chunker = chunker;
+    this.concurrency = Math.max(1, provider.getMaxConcurrentTransfers());
+  }
+
+  public static boolean shouldChunk(final UbiFile file) {
+    return file.getSize() >= minFileSize;
+  }
+
+  /** splits the stream and uploads the chunks missing on the provider */
+  public Observable<List<ChunkRef>> store(
+      final RemoteConfig rconfig, final Path path, final InputStream is) {
+    return Observable.defer(
+        () -> {
+          final byte[] secret = secret(rconfig);
+          final Map<String, ChunkRef> stored = index(rconfig);
+          return chunker
+              .split(is)
+              .concatMapEager(
+                  bytes -> {
+                    final String hash = hash(secret, bytes);
+                    final ChunkRef ref = stored.get(hash);
+                    if (ref != null) {
+                      log.trace("chunk {} already stored", hash);
+                      return Observable.just(ref);
+                    }
+                    return inflight.computeIfAbsent(hash, h -> upload(h, path, bytes, stored));
+                  },
+                  concurrency,
+                  concurrency)
+              .toList();
+        });
+  }
+
+  private Observable<ChunkRef> upload(
+      final String hash, final Path path, final byte[] bytes, final Map<String, ChunkRef> stored) {
+    return Observable.fromCallable(
+            () -> CompressionPolicy.compress(path, new ByteArrayInputStream(bytes)))
+        .flatMap(
+            (Tuple2<Compression, InputStream> compressed) -> {
+              final Key key = new Key(AESGCM.rndKey());
+              key.setCompression(compressed.getT1());
+              return ProviderMetrics.post(
+                      provider, AESGCM.encryptIs(key.getBytes(), compressed.getT2()))
+                  .map(name -> new ChunkRef(hash, name, key, bytes.length));
+            })
+        .doOnNext(
+            ref -> {
+              log.trace("stored chunk {}", ref);
+              stored.put(hash, ref);
+            })
+        .doOnTerminate(() -> inflight.remove(hash))
+        .cache();
+  }
+
+  /** plain content of the chunked file */
+  public Observable<InputStream> read(final RemoteFile file) {
+    return Observable.fromCallable(
+        () ->
+            Utils.convert(
+                Observable.from(file.getChunks())
+                    .concatMapEager(this::readChunk, concurrency, concurrency)));
+  }
+
+  private Observable<byte[]> readChunk(final ChunkRef ref) {
+    return ProviderMetrics.get(provider, ref.getRemoteName())
+        .map(
+            is -> {
+              try {
+                final byte[] bytes =
+                    IOUtils.toByteArray(
+                        ref.getKey()
+                            .getCompression()
+                            .decompress(AESGCM.decryptIs(ref.getKey().getBytes(), is)));
+                if (bytes.length != ref.getLength()) {
+                  throw new IOException(
+                      "chunk " + ref.getRemoteName() + " has " + bytes.length + " bytes");
+                }
+                return bytes;
+              } catch (IOException e) {
+                Throwables.propagate(e);
+                return null;
+              } finally {
+                Utils.close(is);
+              }
+            })
+        .subscribeOn(Schedulers.io());
+  }
+
+  /** the chunks are no longer held by a file, unless another one refers to them */
+  public void release(final Collection<ChunkRef> chunks) {
+    if (chunks != null) {
+      released.addAll(chunks);
+    }
+  }
+
+  /**
+   * deletes the released chunks not referred by any file of the config. To be called once the
+   * config has been saved, so that a failure leaves unreferenced chunks behind but never deletes
+   * referenced ones.
+   */
+  public Observable<Integer> collectGarbage(final RemoteConfig rconfig) {
+    if (released.isEmpty()) {
+      return Observable.just(0);
+    }
+    final Set<ChunkRef> candidates = new HashSet<>(released);
+    released.removeAll(candidates);
+    final Set<String> referenced = new HashSet<>();
+    rconfig
+        .getRemoteFiles()
+        .stream()
+        .filter(RemoteFile::isChunked)
+        .forEach(rf -> rf.getChunks().forEach(ref -> referenced.add(ref.getRemoteName())));
+    return Observable.from(candidates)
+        .filter(ref -> !referenced.contains(ref.getRemoteName()))
+        .filter(ref -> ref.getHash() == null || !inflight.containsKey(ref.getHash()))
+        .doOnNext(ref -> unindex(rconfig, ref))
+        .flatMap(
+            ref ->
+                ProviderMetrics.delete(provider, ref.getRemoteName())
+                    .doOnNext(deleted -> log.debug("deleted chunk:{}", ref))
+                    .onErrorReturn(
+                        err -> {
+                          log.warn("chunk {} not deleted: {}", ref, err.getMessage());
+                          return false;
+                        }),
+            concurrency)
+        .filter(Boolean::booleanValue)
+        .count();
+  }
+
+  /** chunks held by the files of the config, by hash */
+  private synchronized Map<String, ChunkRef> index(final RemoteConfig rconfig) {
+    if (indexed != rconfig) {
+      final Map<String, ChunkRef> built = new ConcurrentHashMap<>();
+      rconfig
+          .getRemoteFiles()
+          .stream()
+          .filter(RemoteFile::isChunked)
+          .flatMap(rf -> rf.getChunks().stream())
+          .filter(ref -> ref.getHash() != null)
+          .forEach(ref -> built.put(ref.getHash(), ref));
+      indexed = rconfig;
+      index = built;
+    }
+    return index;
+  }
+
+  /** the chunk is being deleted, no file may refer to it from now on */
+  private synchronized void unindex(final RemoteConfig rconfig, final ChunkRef ref) {
+    if (indexed == rconfig && ref.getHash() != null) {
+      index.remove(ref.getHash(), ref);
+    }
+  }
+
+  private static byte[] secret(final RemoteConfig rconfig) {
+    synchronized (rconfig) {
+      if (rconfig.getChunkSecret() == null) {
+        rconfig.setChunkSecret(AESGCM.rndKey());
+      }
+      return rconfig.getChunkSecret();
+    }
+  }
+
+  static String hash(final byte[] secret, final byte[] bytes) {
+    try {
+      final Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+      return hex.encode(mac.doFinal(bytes));
+    } catch (GeneralSecurityException e) {
+      Throwables.propagate(e);
+      return null;
+    }
+  }
+}
@@ -15,6 +15,7 @@ package ubicrypt.core.provider;
 
 import org.slf4j.Logger;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -40,8 +41,9 @@ import rx.internal.operators.BufferUntilSubscriber;
 import rx.subjects.Subject;
 import ubicrypt.core.dto.LocalConfig;
 import ubicrypt.core.dto.ProviderLock;
-import ubicrypt.core.dto.RemoteConfig;
 import ubicrypt.core.exp.NotFoundException;
+import ubicrypt.core.fdx.FDXConfigIO;
+import ubicrypt.core.metrics.MetricsRegistry;
 import ubicrypt.core.provider.lock.ConfigAcquirer;
 import ubicrypt.core.provider.lock.InitLockChecker;
 import ubicrypt.core.provider.lock.LockChecker;
@@ -74,6 +76,9 @@ public class ProviderLifeCycle implements ApplicationContextAware {
   private ConfigurableApplicationContext ctx;
   @Inject private InProgressTracker inProgressTracker;
 
+  @Autowired(required = false)
+  private MetricsRegistry metrics = new MetricsRegistry();
+
   @PostConstruct
   public void init() {
     log.info("init providers");
@@ -104,18 +109,21 @@ public class ProviderLifeCycle implements ApplicationContextAware {
                     provider.getDelayAcquiringLockMs());
             /** renew lock when download/upload in progress */
             lockCheker.setShouldExtendLock(() -> inProgressTracker.inProgress());
-            ObjectIO<RemoteConfig> configIO =
-                new ObjectIO<>(serializer, provider.getConfFile(), RemoteConfig.class);
+            lockCheker.setProviderRef(provider.providerId());
+            lockCheker.setMetrics(metrics);
+            FDXConfigIO configIO =
+                new FDXConfigIO(serializer, provider.getConfFile(), provider.getIndexListFile());
             ConfigAcquirer acquirer =
                 new ConfigAcquirer(new InitLockChecker(provider, deviceId), lockCheker, configIO);
             acquirer.setProviderRef(provider.toString());
+            ChunkStore chunkStore = new ChunkStore(provider);
             RemoteRepository repository =
-                springIt(ctx, new RemoteRepository(acquirer, provider, configIO));
+                springIt(ctx, new RemoteRepository(acquirer, provider, configIO, chunkStore));
             repository.setActions(
                 Arrays.asList(
-                    springIt(ctx, new OnUpdateRemote(provider, repository)),
-                    springIt(ctx, new OnInsertRemote(provider, repository)),
-                    springIt(ctx, new OnErrorRemote(provider, repository))));
+                    springIt(ctx, new OnUpdateRemote(provider, repository, chunkStore)),
+                    springIt(ctx, new OnInsertRemote(provider, repository, chunkStore)),
+                    springIt(ctx, new OnErrorRemote(provider, repository, chunkStore))));
             ProviderHook hook = new ProviderHook(provider, acquirer, repository);
             hook.setConfigSaver(new ProviderConfSaver(acquirer, configIO));
             hook.setStatusEvents(acquirer.getStatuses());
@@ -192,6 +200,7 @@ public class ProviderLifeCycle implements ApplicationContextAware {
       providerListeners.remove(hook).unsubscribe();
       statusProvider.remove(hook);
       currentlyActiveProviders.remove(hook);
+      hook.getRepository().dispose();
       providerEvents.onNext(new ProviderEvent(ProviderStatus.removed, hook));
       return just(true);
     } catch (Exception e) {
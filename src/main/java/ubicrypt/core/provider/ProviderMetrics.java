@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider;
+
+import java.io.InputStream;
+
+import rx.Observable;
+import rx.functions.Func0;
+import ubicrypt.core.metrics.MetricsRegistry;
+
+/**
+ * Calls to a provider, timed (provider.latency) and with their bytes counted (provider.bytes) per
+ * provider and operation. Callers go through these instead of the provider itself.
+ */
+public final class ProviderMetrics {
+  private ProviderMetrics() {}
+
+  public static Observable<String> post(final UbiProvider provider, final InputStream is) {
+    return timed(provider, "post", () -> provider.post(counted(provider, "post", is)));
+  }
+
+  public static Observable<Boolean> put(
+      final UbiProvider provider, final String pid, final InputStream is) {
+    return timed(provider, "put", () -> provider.put(pid, counted(provider, "put", is)));
+  }
+
+  public static Observable<InputStream> get(final UbiProvider provider, final String pid) {
+    return timed(provider, "get", () -> provider.get(pid))
+        .map(is -> counted(provider, "get", is));
+  }
+
+  public static Observable<InputStream> get(
+      final UbiProvider provider, final String pid, final long offset, final long length) {
+    return timed(provider, "get", () -> provider.get(pid, offset, length))
+        .map(is -> counted(provider, "get", is));
+  }
+
+  public static Observable<Boolean> delete(final UbiProvider provider, final String pid) {
+    return timed(provider, "delete", () -> provider.delete(pid));
+  }
+
+  private static <T> Observable<T> timed(
+      final UbiProvider provider, final String operation, final Func0<Observable<T>> call) {
+    return Observable.defer(
+        () ->
+            MetricsRegistry.global()
+                .timer(
+                    "provider.latency", "provider", provider.providerId(), "operation", operation)
+                .time(call.call()));
+  }
+
+  private static InputStream counted(
+      final UbiProvider provider, final String operation, final InputStream is) {
+    return MetricsRegistry.global()
+        .count(is, "provider.bytes", "provider", provider.providerId(), "operation", operation);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider;
+
+import com.google.common.base.Throwables;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import ubicrypt.core.Utils;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads large objects with concurrent ranged reads, reassembled in order into one stream, so that a
+ * download is not bound to a single connection. Small objects, and those of providers not telling
+ * their size, are read in one go.
+ */
+public class RangedReader {
+  public static final int defaultRangeSize = 4 << 20;
+  private final UbiProvider provider;
+  private final long rangeSize;
+  private final int concurrency;
+
+  public RangedReader(final UbiProvider provider) {
+    this(provider, defaultRangeSize, provider.getMaxConcurrentTransfers());
+  }
+
+  public RangedReader(final UbiProvider provider, final long rangeSize, final int concurrency) {
+    checkNotNull(provider, "provider not null");
+    this.provider = provider;
+    this.rangeSize = rangeSize;
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * @param sizeHint expected size of the object, objects hinted smaller than a range are not sized
+   */
+  public Observable<InputStream> get(final String pid, final long sizeHint) {
+    if (concurrency < 2 || sizeHint <= rangeSize) {
+      return ProviderMetrics.get(provider, pid);
+    }
+    return provider
+        .size(pid)
+        .firstOrDefault(-1L)
+        .flatMap(
+            size ->
+                size > rangeSize
+                    ? Observable.just(ranged(pid, size))
+                    : ProviderMetrics.get(provider, pid));
+  }
+
+  private InputStream ranged(final String pid, final long size) {
+    final int ranges = (int) ((size + rangeSize - 1) / rangeSize);
+    return Utils.convert(
+        Observable.range(0, ranges)
+            .concatMapEager(
+                index -> {
+                  final long offset = index * rangeSize;
+                  return range(pid, offset, Math.min(rangeSize, size - offset));
+                },
+                concurrency,
+                concurrency));
+  }
+
+  private Observable<byte[]> range(final String pid, final long offset, final long length) {
+    return ProviderMetrics.get(provider, pid, offset, length)
+        .map(
+            is -> {
+              try {
+                final byte[] bytes = IOUtils.toByteArray(is);
+                if (bytes.length != length) {
+                  throw new IOException(
+                      "range of "
+                          + pid
+                          + " from:"
+                          + offset
+                          + " returned "
+                          + bytes.length
+                          + " bytes instead of "
+                          + length);
+                }
+                return bytes;
+              } catch (IOException e) {
+                Throwables.propagate(e);
+                return null;
+              } finally {
+                Utils.close(is);
+              }
+            })
+        .subscribeOn(Schedulers.io());
+  }
+}
@@ -36,14 +36,14 @@ import ubicrypt.core.events.ShutdownRegistration;
 import ubicrypt.core.provider.gdrive.GDriveAuthorizer;
 import ubicrypt.core.provider.lock.RemoveLockOnShutdown;
 import ubicrypt.core.util.InProgressTracker;
-import ubicrypt.core.util.QueueLiner;
+import ubicrypt.core.util.TransferScheduler;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
 @Configuration
 public class RemoteCtxConf {
   private static final Logger log = getLogger(RemoteCtxConf.class);
-  @Resource private QueueLiner queueLiner;
+  @Resource private TransferScheduler transferScheduler;
 
   @Resource
   @Qualifier("appEvents")
@@ -51,8 +51,8 @@ public class RemoteCtxConf {
 
   @PostConstruct
   public void init() {
-    log.info("register queue-liner for shutdown");
-    appEvents.onNext(new ShutdownRegistration(queueLiner));
+    log.info("register transfer scheduler for shutdown");
+    appEvents.onNext(new ShutdownRegistration(transferScheduler));
   }
 
   @Bean
@@ -112,9 +112,13 @@ public class RemoteCtxConf {
   }
 
   @Bean
-  public QueueLiner queueLiner(
-      @Value("${saveConfIntervalMs:30000}") final Long saveConfIntervalMs) {
-    return new QueueLiner(saveConfIntervalMs);
+  public TransferScheduler transferScheduler(
+      @Value("${saveConfIntervalMs:30000}") final Long saveConfIntervalMs,
+      @Value("${transfer.maxPending:64}") final Integer maxPending,
+      @Value("${transfer.concurrency:}") final String concurrencies) {
+    final TransferScheduler scheduler = new TransferScheduler(saveConfIntervalMs, maxPending);
+    scheduler.setConcurrencies(concurrencies);
+    return scheduler;
   }
 
   @Bean
@@ -16,7 +16,6 @@ package ubicrypt.core.provider;
 import java.io.InputStream;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
-import java.util.function.Predicate;
 
 import rx.Observable;
 import rx.functions.Action0;
@@ -35,26 +34,31 @@ public class RemoteFileGetter
     implements Func1<UbiFile, Observable<InputStream>>,
         Func2<UbiFile, BiFunction<RemoteFile, InputStream, InputStream>, Observable<InputStream>> {
   private final Observable.OnSubscribe<AcquirerReleaser> acquirer;
-  private final UbiProvider provider;
+  private final RangedReader reader;
+  private final ChunkStore chunkStore;
 
   public RemoteFileGetter(Observable.OnSubscribe<AcquirerReleaser> acquirer, UbiProvider provider) {
+    this(acquirer, provider, new ChunkStore(provider));
+  }
+
+  /** chunked files are read already decrypted from the chunk store */
+  public RemoteFileGetter(
+      Observable.OnSubscribe<AcquirerReleaser> acquirer,
+      UbiProvider provider,
+      ChunkStore chunkStore) {
     checkNotNull(acquirer, "acquirer not null");
     checkNotNull(provider, "provider not null");
+    checkNotNull(chunkStore, "chunkStore not null");
     this.acquirer = acquirer;
-    this.provider = provider;
-  }
-
-  private static Predicate<RemoteFile> filterRemote(final UbiFile file) {
-    return (rfile) -> rfile.equals(file);
+    this.reader = new RangedReader(provider);
+    this.chunkStore = chunkStore;
   }
 
   private static Func1<? super RemoteConfig, RemoteFile> remoteFile(final UbiFile file) {
     return remoteConfig ->
         remoteConfig
             .getRemoteFiles()
-            .stream()
-            .filter(filterRemote(file))
-            .findFirst()
+            .get(file)
             .orElseThrow(() -> new IllegalArgumentException("not present in remote file list"));
   }
 
@@ -71,7 +75,10 @@ public class RemoteFileGetter
         .doOnNext(acquirerReleaser -> releaser.set(acquirerReleaser.getReleaser()))
         .map(AcquirerReleaser::getRemoteConfig)
         .map(remoteFile(file))
-        .flatMap(rf -> provider.get(rf.getName()).map(is -> streamTransformer.apply(rf, is)))
+        .flatMap(
+            rf ->
+                (rf.isChunked() ? chunkStore.read(rf) : reader.get(rf.getName(), rf.getSize()))
+                    .map(is -> streamTransformer.apply(rf, is)))
         .doOnCompleted(releaser.get() != null ? releaser.get()::call : Actions.empty())
         .doOnError(releaser.get() != null ? err -> releaser.get().call() : err -> {});
   }
@@ -14,13 +14,18 @@
 package ubicrypt.core.provider;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.base.Throwables;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 import rx.Observable;
+import ubicrypt.core.Utils;
 import ubicrypt.core.dto.Key;
 import ubicrypt.core.dto.RemoteFile;
 import ubicrypt.core.dto.UbiFile;
@@ -69,6 +74,29 @@ public abstract class UbiProvider {
 
   public abstract Observable<InputStream> get(final String pid);
 
+  /**
+   * at most length bytes of the object, starting from offset. Providers without ranged reads skip
+   * the leading bytes of the whole object.
+   */
+  public Observable<InputStream> get(final String pid, final long offset, final long length) {
+    return get(pid)
+        .map(
+            is -> {
+              try {
+                IOUtils.skipFully(is, offset);
+              } catch (IOException e) {
+                Utils.close(is);
+                Throwables.propagate(e);
+              }
+              return new BoundedInputStream(is, length);
+            });
+  }
+
+  /** size of the stored object, empty when the provider does not support ranged reads */
+  public Observable<Long> size(final String pid) {
+    return Observable.empty();
+  }
+
   public abstract String providerId();
 
   public Observable<ProviderStatus> init(final long userId) {
@@ -127,6 +155,12 @@ public abstract class UbiProvider {
     return 5 * 60 * 1000;
   }
 
+  /** number of uploads/downloads running at the same time */
+  @JsonIgnore
+  public int getMaxConcurrentTransfers() {
+    return 1;
+  }
+
   public void close() {}
 
   public abstract String code();
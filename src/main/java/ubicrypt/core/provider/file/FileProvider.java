@@ -88,6 +88,27 @@ public class FileProvider extends UbiProvider {
         });
   }
 
+  @Override
+  public Observable<InputStream> get(final String pid, final long offset, final long length) {
+    checkNotNull(pid, "pid must be not null");
+    return Observable.create(
+        subscriber -> {
+          try {
+            log.debug("get {} from:{} length:{}", conf.getPath().resolve(pid), offset, length);
+            subscriber.onNext(Utils.readIs(conf.getPath().resolve(pid), offset, length));
+            subscriber.onCompleted();
+          } catch (final Exception e) {
+            subscriber.onError(e);
+          }
+        });
+  }
+
+  @Override
+  public Observable<Long> size(final String pid) {
+    checkNotNull(pid, "pid must be not null");
+    return Observable.fromCallable(() -> Files.size(conf.getPath().resolve(pid)));
+  }
+
   @Override
   public String providerId() {
     return "file://" + conf.getPath().toString();
@@ -118,6 +139,11 @@ public class FileProvider extends UbiProvider {
     return "file";
   }
 
+  @Override
+  public int getMaxConcurrentTransfers() {
+    return 4;
+  }
+
   public FileConf getConf() {
     return conf;
   }
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider.ftp;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Bounded pool of logged-in FTP sessions. Transfers lease a session and give it back once done, so
+ * that connection, login and directory change are paid once per session instead of once per
+ * transfer. Idle sessions get a NOOP every keep-alive interval, which keeps them open on the server
+ * and drops the broken ones, and are closed once idle for too long.
+ */
+public class FTPSessionPool {
+  private static final Logger log = getLogger(FTPSessionPool.class);
+  private final Callable<FTPClient> connector;
+  private final int maxSessions;
+  private final long keepAliveMs;
+  private final long maxIdleMs;
+  private final long leaseTimeoutMs;
+  private final Semaphore permits;
+  private final LinkedBlockingDeque<Session> idle = new LinkedBlockingDeque<>();
+  /** idle sessions being checked by the sweeper, guarded by the idle deque */
+  private int checking;
+
+  private final AtomicLong connected = new AtomicLong();
+  private Scheduler.Worker sweeper;
+  /** set under both the pool and the idle deque locks, so either of them is enough to read it */
+  private boolean closed = false;
+
+  /**
+   * @param connector opens a new logged-in session
+   * @param maxSessions sessions open at the same time, leased or idle
+   * @param keepAliveMs interval of the NOOP sent to idle sessions
+   * @param maxIdleMs idle time after which a session is closed
+   * @param leaseTimeoutMs wait for a free session, before failing the lease
+   */
+  public FTPSessionPool(
+      final Callable<FTPClient> connector,
+      final int maxSessions,
+      final long keepAliveMs,
+      final long maxIdleMs,
+      final long leaseTimeoutMs) {
+    this.connector = connector;
+    this.maxSessions = maxSessions;
+    this.keepAliveMs = keepAliveMs;
+    this.maxIdleMs = maxIdleMs;
+    this.leaseTimeoutMs = leaseTimeoutMs;
+    this.permits = new Semaphore(maxSessions, true);
+  }
+
+  /** a healthy session, to be given back with {@link #release} or {@link #invalidate} */
+  public Observable<FTPClient> lease() {
+    return Observable.fromCallable(this::acquire).subscribeOn(Schedulers.io());
+  }
+
+  private FTPClient acquire() throws Exception {
+    if (!permits.tryAcquire(leaseTimeoutMs, TimeUnit.MILLISECONDS)) {
+      throw new IOException("no FTP session available within " + leaseTimeoutMs + " ms");
+    }
+    try {
+      startSweeper();
+      Session session;
+      while ((session = idle.pollFirst()) != null) {
+        if (System.currentTimeMillis() - session.lastChecked < keepAliveMs || isAlive(session)) {
+          return session.client;
+        }
+        disconnect(session.client);
+      }
+      final FTPClient client = connector.call();
+      connected.incrementAndGet();
+      log.debug("new ftp session, opened so far:{}", connected.get());
+      return client;
+    } catch (Exception e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /** gives back a session still usable */
+  public void release(final FTPClient client) {
+    final boolean pool;
+    synchronized (idle) {
+      pool = !closed && client.isConnected();
+      if (pool) {
+        idle.offerFirst(new Session(client));
+      }
+    }
+    if (!pool) {
+      disconnect(client);
+    }
+    permits.release();
+  }
+
+  /** gives back a broken session, which gets closed */
+  public void invalidate(final FTPClient client) {
+    disconnect(client);
+    permits.release();
+  }
+
+  /** closes the idle sessions, the leased ones are closed as they come back */
+  public void close() {
+    synchronized (this) {
+      synchronized (idle) {
+        closed = true;
+      }
+      if (sweeper != null) {
+        sweeper.unsubscribe();
+      }
+    }
+    Session session;
+    while ((session = idle.pollFirst()) != null) {
+      logout(session.client);
+    }
+  }
+
+  /** sessions opened since the creation of the pool */
+  public long getConnected() {
+    return connected.get();
+  }
+
+  public int getIdle() {
+    synchronized (idle) {
+      return idle.size() + checking;
+    }
+  }
+
+  public int getMaxSessions() {
+    return maxSessions;
+  }
+
+  private synchronized void startSweeper() {
+    if (sweeper != null || closed) {
+      return;
+    }
+    sweeper = Schedulers.io().createWorker();
+    sweeper.schedulePeriodically(this::sweep, keepAliveMs, keepAliveMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** closes the sessions idle for too long, keeps the others alive */
+  void sweep() {
+    final long now = System.currentTimeMillis();
+    for (final Session session : new ArrayList<>(idle)) {
+      //sessions are taken out one at a time, the others stay available to leases
+      synchronized (idle) {
+        if (!idle.remove(session)) {
+          continue;
+        }
+        checking++;
+      }
+      boolean alive = false;
+      if (now - session.lastUsed > maxIdleMs) {
+        log.debug("close idle ftp session");
+        logout(session.client);
+      } else if (isAlive(session)) {
+        session.lastChecked = System.currentTimeMillis();
+        alive = true;
+      } else {
+        disconnect(session.client);
+      }
+      final boolean keep;
+      synchronized (idle) {
+        //the pool may have been closed meanwhile, and the idle sessions already logged out
+        keep = alive && !closed;
+        if (keep) {
+          idle.offerLast(session);
+        }
+        checking--;
+      }
+      if (alive && !keep) {
+        logout(session.client);
+      }
+    }
+  }
+
+  private static boolean isAlive(final Session session) {
+    try {
+      return session.client.isConnected() && session.client.sendNoOp();
+    } catch (IOException e) {
+      log.debug("ftp session broken:{}", e.getMessage());
+      return false;
+    }
+  }
+
+  private static void logout(final FTPClient client) {
+    try {
+      client.logout();
+    } catch (IOException e) {
+    }
+    disconnect(client);
+  }
+
+  private static void disconnect(final FTPClient client) {
+    try {
+      if (client.isConnected()) {
+        client.disconnect();
+      }
+    } catch (IOException e) {
+    }
+  }
+
+  private static class Session {
+    private final FTPClient client;
+    private final long lastUsed = System.currentTimeMillis();
+    private volatile long lastChecked = lastUsed;
+
+    private Session(final FTPClient client) {
+      this.client = client;
+    }
+  }
+}
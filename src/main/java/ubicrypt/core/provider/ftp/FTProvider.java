@@ -20,6 +20,7 @@ import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPReply;
 import org.slf4j.Logger;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.ProviderException;
@@ -29,6 +30,7 @@ import java.util.stream.Collectors;
 
 import rx.Observable;
 import rx.schedulers.Schedulers;
+import ubicrypt.core.Utils;
 import ubicrypt.core.exp.NotFoundException;
 import ubicrypt.core.provider.ProviderStatus;
 import ubicrypt.core.provider.UbiProvider;
@@ -42,6 +44,7 @@ public class FTProvider extends UbiProvider {
   private static final transient Logger log = getLogger(FTProvider.class);
 
   protected FTPConf conf;
+  private transient FTPSessionPool pool;
 
   private static String showServerReply(FTPClient ftpClient) {
     final String[] replyStrings = ftpClient.getReplyStrings();
@@ -53,7 +56,13 @@ public class FTProvider extends UbiProvider {
 
   @Override
   public Observable<ProviderStatus> init(final long userId) {
-    return connect().map(bool -> ProviderStatus.initialized);
+    return pool()
+        .lease()
+        .map(
+            client -> {
+              pool().release(client);
+              return ProviderStatus.initialized;
+            });
   }
 
   @Override
@@ -61,59 +70,59 @@ public class FTProvider extends UbiProvider {
     return "ftp";
   }
 
-  private Observable<FTPClient> connect() {
-    return Observable.<FTPClient>create(
-            subscriber -> {
-              final FTPClient client = new FTPClient();
-              try {
-                client.connect(
-                    conf.getHost(), getConf().getPort() == -1 ? 21 : getConf().getPort());
-                final int reply = client.getReplyCode();
-                if (!FTPReply.isPositiveCompletion(reply)) {
-                  log.error("FTP server refused connection:" + client.getReplyString());
-                  if (client.isConnected()) {
-                    client.disconnect();
-                  }
-                  subscriber.onError(
-                      new RuntimeException(
-                          "FTP server refused connection:" + client.getReplyString()));
-                  return;
-                }
-                if (!getConf().isAnonymous()) {
-                  if (!client.login(getConf().getUsername(), new String(getConf().getPassword()))) {
-                    client.disconnect();
-                    log.warn("FTP wrong credentials:" + client.getReplyString());
-                    subscriber.onError(new RuntimeException("FTP wrong credentials"));
-                  }
-                }
-                client.setFileType(FTP.BINARY_FILE_TYPE);
-                client.setBufferSize(1 << 64);
-                client.enterLocalPassiveMode();
-                client.setControlKeepAliveTimeout(60 * 60); //1h
-                if (!isEmpty(conf.getFolder())) {
-                  final String directory =
-                      startsWith("/", conf.getFolder()) ? conf.getFolder() : "/" + conf.getFolder();
-                  if (!client.changeWorkingDirectory(directory)) {
-                    if (!client.makeDirectory(directory)) {
-                      disconnect(client);
-                      subscriber.onError(new ProviderException(showServerReply(client)));
-                      return;
-                    }
-                    if (!client.changeWorkingDirectory(directory)) {
-                      disconnect(client);
-                      subscriber.onError(new ProviderException(showServerReply(client)));
-                      return;
-                    }
-                  }
-                }
-                subscriber.onNext(client);
-                subscriber.onCompleted();
-              } catch (final IOException e) {
-                disconnect(client);
-                subscriber.onError(e);
-              }
-            })
-        .subscribeOn(Schedulers.io());
+  @Override
+  public int getMaxConcurrentTransfers() {
+    return 2;
+  }
+
+  /** sessions are created on the first lease, the configuration is not known before */
+  private synchronized FTPSessionPool pool() {
+    if (pool == null) {
+      //room for conf and lock operations beside the concurrent transfers
+      pool =
+          new FTPSessionPool(
+              this::connect, getMaxConcurrentTransfers() + 2, 30 * 1000, 5 * 60 * 1000, 60 * 1000);
+    }
+    return pool;
+  }
+
+  /** opens a logged-in session in binary passive mode, within the configured folder */
+  private FTPClient connect() throws IOException {
+    final FTPClient client = new FTPClient();
+    try {
+      client.connect(conf.getHost(), getConf().getPort() == -1 ? 21 : getConf().getPort());
+      final int reply = client.getReplyCode();
+      if (!FTPReply.isPositiveCompletion(reply)) {
+        log.error("FTP server refused connection:" + client.getReplyString());
+        throw new ProviderException("FTP server refused connection:" + client.getReplyString());
+      }
+      if (!getConf().isAnonymous()) {
+        if (!client.login(getConf().getUsername(), new String(getConf().getPassword()))) {
+          log.warn("FTP wrong credentials:" + client.getReplyString());
+          throw new ProviderException("FTP wrong credentials");
+        }
+      }
+      client.setFileType(FTP.BINARY_FILE_TYPE);
+      client.setBufferSize(1 << 16);
+      client.enterLocalPassiveMode();
+      client.setControlKeepAliveTimeout(60 * 60); //1h
+      if (!isEmpty(conf.getFolder())) {
+        final String directory =
+            startsWith("/", conf.getFolder()) ? conf.getFolder() : "/" + conf.getFolder();
+        if (!client.changeWorkingDirectory(directory)) {
+          if (!client.makeDirectory(directory)) {
+            throw new ProviderException(showServerReply(client));
+          }
+          if (!client.changeWorkingDirectory(directory)) {
+            throw new ProviderException(showServerReply(client));
+          }
+        }
+      }
+      return client;
+    } catch (IOException | RuntimeException e) {
+      disconnect(client);
+      throw e;
+    }
   }
 
   private void disconnect(FTPClient client) {
@@ -141,7 +150,8 @@ public class FTProvider extends UbiProvider {
 
   @Override
   public Observable<Boolean> delete(final String pid) {
-    return connect()
+    return pool()
+        .lease()
         .flatMap(
             client ->
                 Observable.<Boolean>create(
@@ -149,11 +159,11 @@ public class FTProvider extends UbiProvider {
                           try {
                             log.debug("delete {} {}", pid, this);
                             final boolean deleteFile = client.deleteFile(pid);
-                            close(client);
+                            pool().release(client);
                             subscriber.onNext(deleteFile);
                             subscriber.onCompleted();
                           } catch (IOException e) {
-                            close(client);
+                            pool().invalidate(client);
                             subscriber.onError(e);
                           }
                         })
@@ -162,7 +172,9 @@ public class FTProvider extends UbiProvider {
 
   @Override
   public Observable<Boolean> put(final String pid, final InputStream is) {
-    return connect()
+    return pool()
+        .lease()
+        .doOnError(err -> Utils.close(is))
         .flatMap(
             client ->
                 Observable.<Boolean>create(
@@ -170,11 +182,11 @@ public class FTProvider extends UbiProvider {
                           try {
                             log.debug("put {} {}", pid, this);
                             final boolean result = client.storeFile(pid, is);
-                            close(client);
+                            pool().release(client);
                             subscriber.onNext(result);
                             subscriber.onCompleted();
                           } catch (IOException e) {
-                            close(client);
+                            pool().invalidate(client);
                             subscriber.onError(e);
                           } finally {
                             try {
@@ -188,7 +200,8 @@ public class FTProvider extends UbiProvider {
 
   @Override
   public Observable<InputStream> get(final String pid) {
-    return connect()
+    return pool()
+        .lease()
         .flatMap(
             client ->
                 Observable.<InputStream>create(
@@ -197,27 +210,29 @@ public class FTProvider extends UbiProvider {
                             log.debug("get {} {}", pid, this);
                             InputStream is = client.retrieveFileStream(pid);
                             if (is == null) {
+                              pool().release(client);
                               subscriber.onError(new NotFoundException(pid));
                               return;
                             }
-                            subscriber.onNext(is);
+                            subscriber.onNext(new SessionInputStream(is, client));
                             subscriber.onCompleted();
                           } catch (IOException e) {
-                            close(client);
+                            pool().invalidate(client);
                             subscriber.onError(e);
                           }
                         })
                     .subscribeOn(Schedulers.io()));
   }
 
-  private void close(final FTPClient client) {
-    try {
-      client.logout();
-    } catch (final IOException e1) {
+  @Override
+  public void close() {
+    final FTPSessionPool pool;
+    synchronized (this) {
+      pool = this.pool;
+      this.pool = null;
     }
-    try {
-      client.disconnect();
-    } catch (final IOException e1) {
+    if (pool != null) {
+      pool.close();
     }
   }
 
@@ -244,4 +259,33 @@ public class FTProvider extends UbiProvider {
   public void setConf(final FTPConf conf) {
     this.conf = conf;
   }
+
+  /** download stream, whose session goes back to the pool once the transfer is completed */
+  private class SessionInputStream extends FilterInputStream {
+    private final FTPClient client;
+    private boolean closed = false;
+
+    private SessionInputStream(final InputStream in, final FTPClient client) {
+      super(in);
+      this.client = client;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        super.close();
+        if (client.completePendingCommand()) {
+          pool().release(client);
+          return;
+        }
+      } catch (IOException e) {
+        log.debug("ftp transfer not completed:{}", e.getMessage());
+      }
+      pool().invalidate(client);
+    }
+  }
 }
@@ -159,6 +159,11 @@ public class GDriveProvider extends UbiProvider implements DataStoreFactory {
     return "gdrive";
   }
 
+  @Override
+  public int getMaxConcurrentTransfers() {
+    return 4;
+  }
+
   @Override
   public Observable<String> post(InputStream is) {
     return Observable.create(
@@ -264,6 +269,56 @@ public class GDriveProvider extends UbiProvider implements DataStoreFactory {
         });
   }
 
+  @Override
+  public Observable<InputStream> get(String pid, long offset, long length) {
+    return Observable.create(
+        subscriber -> {
+          if (drive == null) {
+            subscriber.onError(new RuntimeException("gdrive not initialized"));
+            return;
+          }
+          try {
+            Drive.Files.Get get = drive.files().get(pid);
+            get.getRequestHeaders().setRange("bytes=" + offset + "-" + (offset + length - 1));
+            try (InputStream is = get.executeMediaAsInputStream()) {
+              subscriber.onNext(new ByteArrayInputStream(IOUtils.toByteArray(is)));
+            }
+            subscriber.onCompleted();
+          } catch (GoogleJsonResponseException e) {
+            if (e.getDetails().getCode() == 404) {
+              subscriber.onError(new NotFoundException(pid));
+            } else {
+              subscriber.onError(e);
+            }
+          } catch (IOException e) {
+            subscriber.onError(e);
+          }
+        });
+  }
+
+  @Override
+  public Observable<Long> size(String pid) {
+    return Observable.create(
+        subscriber -> {
+          if (drive == null) {
+            subscriber.onError(new RuntimeException("gdrive not initialized"));
+            return;
+          }
+          try {
+            subscriber.onNext(drive.files().get(pid).setFields("size").execute().getSize());
+            subscriber.onCompleted();
+          } catch (GoogleJsonResponseException e) {
+            if (e.getDetails().getCode() == 404) {
+              subscriber.onError(new NotFoundException(pid));
+            } else {
+              subscriber.onError(e);
+            }
+          } catch (IOException e) {
+            subscriber.onError(e);
+          }
+        });
+  }
+
   @Override
   public String providerId() {
     return "gdrive://"
@@ -26,9 +26,11 @@ import rx.Subscriber;
 import rx.functions.Actions;
 import ubicrypt.core.dto.ProviderLock;
 import ubicrypt.core.exp.NotFoundException;
+import ubicrypt.core.metrics.MetricsRegistry;
 
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 import static rx.Observable.empty;
@@ -49,6 +51,10 @@ public class LockChecker implements Observable.OnSubscribe<LockStatus> {
   private final long maxDelayAttempt;
   /** are currently downloads/uploads in progress? By default, not. */
   private Supplier<Boolean> shouldExtendLock = () -> false;
+  /** provider tag of the metrics */
+  private String providerRef = "unknown";
+  /** registry of the lock metrics */
+  private MetricsRegistry metrics = new MetricsRegistry();
 
   public LockChecker(
       int deviceId,
@@ -84,6 +90,11 @@ public class LockChecker implements Observable.OnSubscribe<LockStatus> {
 
   @Override
   public void call(Subscriber<? super LockStatus> subscriber) {
+    attempt(subscriber, System.nanoTime());
+  }
+
+  /** @param start when the acquisition has been requested */
+  private void attempt(Subscriber<? super LockStatus> subscriber, long start) {
     AtomicReference<ProviderLock> lockRef = new AtomicReference<>();
     Observable.create(lockGetter)
         .onErrorResumeNext(
@@ -102,24 +113,25 @@ public class LockChecker implements Observable.OnSubscribe<LockStatus> {
                 if (pl == null) {
                   log.info("lock not present, creating new one");
                   pl = new ProviderLock(deviceId, nextExpires());
-                  grantExclusive(subscriber, pl);
+                  grantExclusive(subscriber, pl, start);
                   return;
                 }
                 if (pl.getDeviceId() == deviceId) {
                   log.info("lock owned");
                   pl.setExpires(nextExpires());
-                  grantExclusive(subscriber, pl);
+                  grantExclusive(subscriber, pl, start);
                   return;
                 }
                 if (pl.getExpires() == null || pl.getExpires().isBefore(Instant.now())) {
                   log.info("lock expired, attempting to acquire it");
                   pl.setDeviceId(deviceId);
                   pl.setExpires(nextExpires());
-                  grantExclusive(subscriber, pl);
+                  grantExclusive(subscriber, pl, start);
                   return;
                 }
                 log.info("lock not available. expires on:{}", pl.getExpires());
-                nextAttempt(subscriber, pl);
+                contended();
+                nextAttempt(subscriber, pl, start);
                 subscriber.onNext(unavailable);
               } catch (Exception e) {
                 subscriber.onError(e);
@@ -127,7 +139,8 @@ public class LockChecker implements Observable.OnSubscribe<LockStatus> {
             });
   }
 
-  private void grantExclusive(Subscriber<? super LockStatus> subscriber, ProviderLock pl) {
+  private void grantExclusive(
+      Subscriber<? super LockStatus> subscriber, ProviderLock pl, long start) {
     lockSetter
         .apply(pl)
         .subscribe(
@@ -139,19 +152,23 @@ public class LockChecker implements Observable.OnSubscribe<LockStatus> {
                         lock -> {
                           if (lock.getDeviceId() == deviceId) {
                             log.info("lock acquired");
+                            metrics
+                                .timer("lock.acquire", "provider", providerRef)
+                                .record(System.nanoTime() - start, NANOSECONDS);
                             subscriber.onNext(available);
                             expire(subscriber);
                             return;
                           }
                           log.info("lock bagged, expires on:{}", lock.getExpires());
+                          contended();
                           subscriber.onNext(unavailable);
-                          nextAttempt(subscriber, lock);
+                          nextAttempt(subscriber, lock, start);
                         },
                         subscriber::onError);
                 return;
               }
               subscriber.onNext(unavailable);
-              timer(3, SECONDS).subscribe(t -> call(subscriber));
+              timer(3, SECONDS).subscribe(t -> attempt(subscriber, start));
             });
   }
 
@@ -175,7 +192,12 @@ public class LockChecker implements Observable.OnSubscribe<LockStatus> {
             });
   }
 
-  private void nextAttempt(Subscriber<? super LockStatus> subscriber, ProviderLock lock) {
+  private void contended() {
+    metrics.counter("lock.contention", "provider", providerRef).increment();
+  }
+
+  private void nextAttempt(
+      Subscriber<? super LockStatus> subscriber, ProviderLock lock, long start) {
     final long delay =
         lock.getExpires().toEpochMilli()
             - System.currentTimeMillis()
@@ -183,7 +205,7 @@ public class LockChecker implements Observable.OnSubscribe<LockStatus> {
     log.debug(
         "lock attempt acquire on:{}", Instant.ofEpochMilli(delay + System.currentTimeMillis()));
     timer(delay, MILLISECONDS)
-        .subscribe(Actions.empty(), subscriber::onError, () -> call(subscriber));
+        .subscribe(Actions.empty(), subscriber::onError, () -> attempt(subscriber, start));
   }
 
   private Instant nextExpires() {
@@ -194,4 +216,13 @@ public class LockChecker implements Observable.OnSubscribe<LockStatus> {
     requireNonNull(shouldExtendLock, "shouldExtendLock must be not null");
     this.shouldExtendLock = shouldExtendLock;
   }
+
+  public void setProviderRef(String providerRef) {
+    this.providerRef = providerRef;
+  }
+
+  public void setMetrics(MetricsRegistry metrics) {
+    requireNonNull(metrics, "metrics must be not null");
+    this.metrics = metrics;
+  }
 }
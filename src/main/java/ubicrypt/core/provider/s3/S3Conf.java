@@ -20,6 +20,8 @@ public class S3Conf {
   private String accessKeyId;
   private Regions region;
   private String bucket;
+  /** endpoint of an S3 compatible store, AWS when not set */
+  private String endpoint;
 
   public String getSecrectKey() {
     return secrectKey;
@@ -52,4 +54,12 @@ public class S3Conf {
   public void setBucket(String bucket) {
     this.bucket = bucket;
   }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public void setEndpoint(String endpoint) {
+    this.endpoint = endpoint;
+  }
 }
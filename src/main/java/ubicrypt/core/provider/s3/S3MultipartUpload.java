@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import reactor.fn.tuple.Tuple;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.observables.SyncOnSubscribe;
+import rx.schedulers.Schedulers;
+import ubicrypt.core.Utils;
+import ubicrypt.core.util.BufferPool;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Streams an input stream to S3 with a multipart upload. Parts are read from the stream only when
+ * there is room for them, so the encryption upstream runs along with the transfer and at most
+ * {@code concurrency} parts are in memory. A failed part is retried on its own. Streams shorter
+ * than one part are stored with a single put. An upload failed or unsubscribed before completion
+ * is aborted.
+ */
+public class S3MultipartUpload {
+  /** smallest part accepted by S3, except for the last one */
+  public static final int minPartSize = 5 << 20;
+
+  private static final Logger log = getLogger(S3MultipartUpload.class);
+  private final AmazonS3 client;
+  private final int partSize;
+  private final int concurrency;
+  private final int retries;
+  private final long backoffMs;
+  private final BufferPool pool;
+
+  public S3MultipartUpload(
+      final AmazonS3 client,
+      final int partSize,
+      final int concurrency,
+      final int retries,
+      final long backoffMs) {
+    this.client = client;
+    this.partSize = partSize;
+    this.concurrency = concurrency;
+    this.retries = retries;
+    this.backoffMs = backoffMs;
+    this.pool = new BufferPool(partSize, concurrency, false);
+  }
+
+  public Observable<Boolean> upload(final String bucket, final String key, final InputStream is) {
+    return Observable.defer(
+            () -> {
+              final Part first;
+              try {
+                first = read(is, 1);
+              } catch (IOException e) {
+                return Observable.error(e);
+              }
+              if (first.length < partSize) {
+                return putObject(bucket, key, first);
+              }
+              final String uploadId =
+                  client
+                      .initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key))
+                      .getUploadId();
+              log.debug("multipart upload {} of {}:{}", uploadId, bucket, key);
+              //parts of an upload neither completed nor aborted are kept, and billed, by S3
+              final AtomicBoolean completed = new AtomicBoolean();
+              final AtomicBoolean aborted = new AtomicBoolean();
+              final Action0 abort =
+                  () -> {
+                    if (completed.get() || !aborted.compareAndSet(false, true)) {
+                      return;
+                    }
+                    log.warn("abort multipart upload {} of {}:{}", uploadId, bucket, key);
+                    try {
+                      client.abortMultipartUpload(
+                          new AbortMultipartUploadRequest(bucket, key, uploadId));
+                    } catch (Exception e) {
+                      log.error(e.getMessage(), e);
+                    }
+                  };
+              return Observable.just(first)
+                  .concatWith(Observable.create(parts(is)))
+                  .flatMap(part -> uploadPart(bucket, key, uploadId, part), concurrency)
+                  .toSortedList((a, b) -> Integer.compare(a.getPartNumber(), b.getPartNumber()))
+                  .map(
+                      etags -> {
+                        client.completeMultipartUpload(
+                            new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+                        completed.set(true);
+                        return true;
+                      })
+                  .doOnError(err -> abort.call())
+                  .doOnUnsubscribe(abort);
+            })
+        .doOnTerminate(() -> Utils.close(is))
+        .doOnUnsubscribe(() -> Utils.close(is));
+  }
+
+  private Observable<Boolean> putObject(final String bucket, final String key, final Part part) {
+    return Observable.fromCallable(
+            () -> {
+              final ObjectMetadata metadata = new ObjectMetadata();
+              metadata.setContentLength(part.length);
+              client.putObject(bucket, key, part.inputStream(), metadata);
+              return true;
+            })
+        .doOnTerminate(() -> pool.release(part.buffer));
+  }
+
+  private Observable<PartETag> uploadPart(
+      final String bucket, final String key, final String uploadId, final Part part) {
+    return Observable.fromCallable(
+            () ->
+                client
+                    .uploadPart(
+                        new UploadPartRequest()
+                            .withBucketName(bucket)
+                            .withKey(key)
+                            .withUploadId(uploadId)
+                            .withPartNumber(part.number)
+                            .withInputStream(part.inputStream())
+                            .withPartSize(part.length))
+                    .getPartETag())
+        .subscribeOn(Schedulers.io())
+        .retryWhen(
+            errors ->
+                errors
+                    .zipWith(Observable.range(1, retries + 1), Tuple::of)
+                    .flatMap(
+                        tuple -> {
+                          if (tuple.getT2() > retries) {
+                            return Observable.error(tuple.getT1());
+                          }
+                          log.debug("retry part {} of {}", part.number, uploadId);
+                          return Observable.timer(backoffMs * tuple.getT2(), TimeUnit.MILLISECONDS);
+                        }))
+        .doOnTerminate(() -> pool.release(part.buffer));
+  }
+
+  /** parts from the second on, read one at a time as they are requested */
+  private SyncOnSubscribe<Integer, Part> parts(final InputStream is) {
+    return SyncOnSubscribe.createStateful(
+        () -> 2,
+        (number, observer) -> {
+          try {
+            final Part part = read(is, number);
+            if (part.length == 0) {
+              pool.release(part.buffer);
+              observer.onCompleted();
+            } else {
+              observer.onNext(part);
+            }
+          } catch (IOException e) {
+            observer.onError(e);
+          }
+          return number + 1;
+        });
+  }
+
+  private Part read(final InputStream is, final int number) throws IOException {
+    final ByteBuffer buffer = pool.acquire();
+    try {
+      return new Part(number, buffer, IOUtils.read(is, buffer.array(), 0, partSize));
+    } catch (IOException e) {
+      pool.release(buffer);
+      throw e;
+    }
+  }
+
+  private static class Part {
+    private final int number;
+    private final ByteBuffer buffer;
+    private final int length;
+
+    private Part(final int number, final ByteBuffer buffer, final int length) {
+      this.number = number;
+      this.buffer = buffer;
+      this.length = length;
+    }
+
+    private InputStream inputStream() {
+      return new ByteArrayInputStream(buffer.array(), 0, length);
+    }
+  }
+}
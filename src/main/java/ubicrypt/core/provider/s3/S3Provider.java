@@ -15,16 +15,16 @@ package ubicrypt.core.provider.s3;
 
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.HeadBucketRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
@@ -38,13 +38,15 @@ import ubicrypt.core.Utils;
 import ubicrypt.core.exp.NotFoundException;
 import ubicrypt.core.provider.ProviderStatus;
 import ubicrypt.core.provider.UbiProvider;
-import ubicrypt.core.util.StoreTempFile;
 
 import static java.lang.Character.MAX_RADIX;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 import static org.apache.commons.lang3.StringUtils.substringAfter;
 
 public class S3Provider extends UbiProvider {
+  private static final int partSize = 8 << 20;
+  private static final int partConcurrency = 4;
+  private static final int partRetries = 3;
   private final transient AtomicBoolean initialized = new AtomicBoolean(false);
   private final transient AtomicLong maxKey = new AtomicLong(0);
   private final transient Function<String, Observable<Tuple2<String, String>>> checker =
@@ -74,6 +76,7 @@ public class S3Provider extends UbiProvider {
   private S3Conf conf;
   private transient AmazonS3 client;
   private transient String prefix;
+  private transient S3MultipartUpload uploader;
 
   @Override
   public Observable<ProviderStatus> init(long userId) {
@@ -106,10 +109,19 @@ public class S3Provider extends UbiProvider {
                               @Override
                               public void refresh() {}
                             });
-                if (conf.getRegion() != null) {
+                if (conf.getEndpoint() != null) {
+                  clientb
+                      .withEndpointConfiguration(
+                          new EndpointConfiguration(
+                              conf.getEndpoint(),
+                              conf.getRegion() != null ? conf.getRegion().getName() : null))
+                      .withPathStyleAccessEnabled(true);
+                } else if (conf.getRegion() != null) {
                   clientb.withRegion(conf.getRegion());
                 }
                 client = clientb.build();
+                uploader =
+                    new S3MultipartUpload(client, partSize, partConcurrency, partRetries, 500);
                 prefix = Long.toString(userId, MAX_RADIX) + "/";
                 try {
                   client.headBucket(new HeadBucketRequest(conf.getBucket()));
@@ -184,32 +196,34 @@ public class S3Provider extends UbiProvider {
 
   @Override
   public Observable<Boolean> put(String pid, InputStream is) {
+    return checker
+        .apply(pid)
+        .flatMap(pids -> uploader.upload(pids.getT1(), pids.getT2(), is))
+        .doOnError(err -> Utils.close(is))
+        .subscribeOn(Schedulers.io());
+  }
+
+  @Override
+  public Observable<InputStream> get(String pid) {
     return checker
         .apply(pid)
         .flatMap(
             pids ->
-                Observable.<Boolean>create(
+                Observable.<InputStream>create(
                     subscriber -> {
+                      if (!initialized.get()) {
+                        subscriber.onError(new RuntimeException("s3 not initialized"));
+                        return;
+                      }
+                      InputStream is = null;
                       try {
-                        new StoreTempFile()
-                            .call(is)
-                            .subscribe(
-                                path -> {
-                                  try {
-                                    client.putObject(pids.getT1(), pids.getT2(), path.toFile());
-                                    subscriber.onNext(true);
-                                    subscriber.onCompleted();
-                                  } catch (Exception e) {
-                                    subscriber.onError(e);
-                                    return;
-                                  }
-                                  try {
-                                    Files.delete(path);
-                                  } catch (IOException e) {
-                                  }
-                                },
-                                subscriber::onError);
-
+                        S3Object obj = client.getObject(pids.getT1(), pids.getT2());
+                        is = obj.getObjectContent();
+                        subscriber.onNext(is);
+                        subscriber.onCompleted();
+                      } catch (AmazonS3Exception e) {
+                        Utils.close(is);
+                        error(pid, subscriber, e);
                       } catch (Exception e) {
                         subscriber.onError(e);
                         Utils.close(is);
@@ -219,20 +233,19 @@ public class S3Provider extends UbiProvider {
   }
 
   @Override
-  public Observable<InputStream> get(String pid) {
+  public Observable<InputStream> get(String pid, long offset, long length) {
     return checker
         .apply(pid)
         .flatMap(
             pids ->
                 Observable.<InputStream>create(
                     subscriber -> {
-                      if (!initialized.get()) {
-                        subscriber.onError(new RuntimeException("s3 not initialized"));
-                        return;
-                      }
                       InputStream is = null;
                       try {
-                        S3Object obj = client.getObject(pids.getT1(), pids.getT2());
+                        S3Object obj =
+                            client.getObject(
+                                new GetObjectRequest(pids.getT1(), pids.getT2())
+                                    .withRange(offset, offset + length - 1));
                         is = obj.getObjectContent();
                         subscriber.onNext(is);
                         subscriber.onCompleted();
@@ -247,6 +260,33 @@ public class S3Provider extends UbiProvider {
         .subscribeOn(Schedulers.io());
   }
 
+  @Override
+  public Observable<Long> size(String pid) {
+    return checker
+        .apply(pid)
+        .flatMap(
+            pids ->
+                Observable.<Long>create(
+                    subscriber -> {
+                      try {
+                        subscriber.onNext(
+                            client
+                                .getObjectMetadata(pids.getT1(), pids.getT2())
+                                .getContentLength());
+                        subscriber.onCompleted();
+                      } catch (AmazonS3Exception e) {
+                        if (e.getStatusCode() == 404) {
+                          subscriber.onError(new NotFoundException(pid));
+                        } else {
+                          subscriber.onError(e);
+                        }
+                      } catch (Exception e) {
+                        subscriber.onError(e);
+                      }
+                    }))
+        .subscribeOn(Schedulers.io());
+  }
+
   @Override
   public void close() {
     initialized.set(false);
@@ -257,6 +297,11 @@ public class S3Provider extends UbiProvider {
     return "s3";
   }
 
+  @Override
+  public int getMaxConcurrentTransfers() {
+    return 8;
+  }
+
   @Override
   public String providerId() {
     return "s3://" + conf.getBucket();
@@ -22,6 +22,7 @@ import ubicrypt.core.IRepository;
 import ubicrypt.core.dto.RemoteConfig;
 import ubicrypt.core.dto.RemoteFile;
 import ubicrypt.core.dto.UbiFile;
+import ubicrypt.core.provider.ChunkStore;
 import ubicrypt.core.provider.UbiProvider;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -33,11 +34,14 @@ public class OnErrorRemote extends OnUpdateRemote {
     super(provider, repository);
   }
 
+  public OnErrorRemote(UbiProvider provider, IRepository repository, ChunkStore chunkStore) {
+    super(provider, repository, chunkStore);
+  }
+
   @Override
   public boolean test(FileProvenience fileProvenience, RemoteConfig remoteConfig) {
     UbiFile file = fileProvenience.getFile();
-    Optional<RemoteFile> rfile =
-        remoteConfig.getRemoteFiles().stream().filter(file1 -> file1.equals(file)).findFirst();
+    Optional<RemoteFile> rfile = remoteConfig.getRemoteFiles().get(file);
     log.trace(
         "path:{}, local v:{}, remote v:{}, comparison:{}, test:{}",
         file.getPath(),
@@ -16,8 +16,6 @@ package ubicrypt.core.remote;
 import org.slf4j.Logger;
 
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterInputStream;
 
 import rx.Observable;
 import ubicrypt.core.FileProvenience;
@@ -28,12 +26,15 @@ import ubicrypt.core.dto.Key;
 import ubicrypt.core.dto.RemoteConfig;
 import ubicrypt.core.dto.RemoteFile;
 import ubicrypt.core.dto.UbiFile;
+import ubicrypt.core.provider.ChunkStore;
 import ubicrypt.core.provider.FileEvent;
+import ubicrypt.core.provider.ProviderMetrics;
 import ubicrypt.core.provider.UbiProvider;
+import ubicrypt.core.util.CompressionPolicy;
 
-import static java.util.zip.Deflater.BEST_COMPRESSION;
 import static org.slf4j.LoggerFactory.getLogger;
 import static rx.Observable.just;
+import static ubicrypt.core.util.FunctionExp.silentFunc1;
 
 public class OnInsertRemote extends RemoteAction {
   private static final Logger log = getLogger(OnInsertRemote.class);
@@ -42,24 +43,16 @@ public class OnInsertRemote extends RemoteAction {
     super(provider, repository);
   }
 
+  public OnInsertRemote(UbiProvider provider, IRepository repository, ChunkStore chunkStore) {
+    super(provider, repository, chunkStore);
+  }
+
   @Override
   public boolean test(FileProvenience fileProvenience, RemoteConfig remoteConfig) {
     UbiFile file = fileProvenience.getFile();
-    log.trace(
-        "path:{}, test:{}",
-        file.getPath(),
-        !remoteConfig
-            .getRemoteFiles()
-            .stream()
-            .filter(file1 -> file1.equals(file))
-            .findFirst()
-            .isPresent());
-    return !remoteConfig
-        .getRemoteFiles()
-        .stream()
-        .filter(file1 -> file1.equals(file))
-        .findFirst()
-        .isPresent();
+    final boolean test = !remoteConfig.getRemoteFiles().contains(file);
+    log.trace("path:{}, test:{}", file.getPath(), test);
+    return test;
   }
 
   @Override
@@ -75,22 +68,43 @@ public class OnInsertRemote extends RemoteAction {
     final byte[] key = AESGCM.rndKey();
     rf.setKey(new Key(key));
     fileEventType.set(FileEvent.Type.created);
+    if (ChunkStore.shouldChunk(file)) {
+      return fp.getOrigin()
+          .get(file)
+          .flatMap(is -> chunkStore.store(rconfig, file.getPath(), monitor(fp, is)))
+          .map(
+              chunks -> {
+                log.info(
+                    "created file:{}, chunks:{}, to provider:{}",
+                    rf.getPath(),
+                    chunks.size(),
+                    provider);
+                rf.setChunks(chunks);
+                //hashed while read
+                rf.setSha1(file.getSha1());
+                rconfig.getRemoteFiles().add(rf);
+                rconfig.changed(rf.getId());
+                return true;
+              })
+          .defaultIfEmpty(false)
+          .doOnCompleted(fileEvents(fp, fileEventType.get()));
+    }
     return fp.getOrigin()
         .get(file)
+        .map(silentFunc1(is -> CompressionPolicy.compress(file.getPath(), monitor(fp, is))))
         .flatMap(
-            is ->
-                provider
-                    .post(
-                        AESGCM.encryptIs(
-                            key,
-                            new DeflaterInputStream(
-                                monitor(fp, is), new Deflater(BEST_COMPRESSION))))
+            compressed ->
+                ProviderMetrics.post(provider, AESGCM.encryptIs(key, compressed.getT2()))
                     .map(
                         name -> {
                           log.info("created file:{}, to provider:{}", rf.getPath(), provider);
                           //add name and add to config
                           rf.setRemoteName(name);
+                          rf.getKey().setCompression(compressed.getT1());
+                          //hashed while read
+                          rf.setSha1(file.getSha1());
                           rconfig.getRemoteFiles().add(rf);
+                          rconfig.changed(rf.getId());
                           return true;
                         }))
         .defaultIfEmpty(false)
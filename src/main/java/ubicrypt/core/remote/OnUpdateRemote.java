@@ -15,26 +15,32 @@ package ubicrypt.core.remote;
 
 import org.slf4j.Logger;
 
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterInputStream;
 
 import rx.Observable;
 import ubicrypt.core.FileProvenience;
 import ubicrypt.core.IRepository;
 import ubicrypt.core.Utils;
 import ubicrypt.core.crypto.AESGCM;
+import ubicrypt.core.dto.ChunkRef;
 import ubicrypt.core.dto.Key;
 import ubicrypt.core.dto.RemoteConfig;
 import ubicrypt.core.dto.RemoteFile;
 import ubicrypt.core.dto.UbiFile;
 import ubicrypt.core.dto.VClock;
+import ubicrypt.core.provider.ChunkStore;
 import ubicrypt.core.provider.FileEvent;
+import ubicrypt.core.provider.ProviderMetrics;
 import ubicrypt.core.provider.UbiProvider;
+import ubicrypt.core.util.CompressionPolicy;
 
-import static java.util.zip.Deflater.BEST_COMPRESSION;
 import static org.slf4j.LoggerFactory.getLogger;
+import static ubicrypt.core.util.FunctionExp.silentFunc1;
 
 public class OnUpdateRemote extends RemoteAction {
   private static final Logger log = getLogger(OnUpdateRemote.class);
@@ -43,11 +49,14 @@ public class OnUpdateRemote extends RemoteAction {
     super(provider, repository);
   }
 
+  public OnUpdateRemote(UbiProvider provider, IRepository repository, ChunkStore chunkStore) {
+    super(provider, repository, chunkStore);
+  }
+
   @Override
   public boolean test(FileProvenience fileProvenience, RemoteConfig remoteConfig) {
     UbiFile file = fileProvenience.getFile();
-    Optional<RemoteFile> rfile =
-        remoteConfig.getRemoteFiles().stream().filter(file1 -> file1.equals(file)).findFirst();
+    Optional<RemoteFile> rfile = remoteConfig.getRemoteFiles().get(file);
     if (!rfile.isPresent()) {
       return false;
     }
@@ -64,8 +73,7 @@ public class OnUpdateRemote extends RemoteAction {
   @Override
   public Observable<Boolean> apply(final FileProvenience fp, final RemoteConfig rconfig) {
     UbiFile file = fp.getFile();
-    RemoteFile rfile =
-        rconfig.getRemoteFiles().stream().filter(file1 -> file1.equals(file)).findFirst().get();
+    RemoteFile rfile = rconfig.getRemoteFiles().get(file).get();
 
     log.debug("override file:{} on provider:{}", file.getPath(), provider);
     final AtomicReference<FileEvent.Type> fileEventType = new AtomicReference<>();
@@ -77,33 +85,60 @@ public class OnUpdateRemote extends RemoteAction {
       if (file.isDeleted()) {
         fileEventType.set(FileEvent.Type.deleted);
       }
-      return provider
-          .delete(rfile.getName())
+      final Observable<Boolean> deleted;
+      if (rfile.isChunked()) {
+        //chunks are deleted once the config is saved, if no other file refers to them
+        chunkStore.release(rfile.getChunks());
+        deleted = Observable.just(true);
+      } else {
+        deleted = ProviderMetrics.delete(provider, rfile.getName());
+      }
+      return deleted
           .doOnNext(
               saved -> log.info("deleted:{} file:{}, in:{}", saved, rfile.getPath(), provider))
           .doOnNext(
               saved -> {
                 if (saved) {
                   rfile.copyFrom(file);
+                  if (rfile.isChunked()) {
+                    rfile.setChunks(Collections.emptyList());
+                  }
+                  rconfig.changed(rfile.getId());
                 }
               })
-          .doOnError(err -> rfile.setError(true))
+          .doOnError(err -> error(rconfig, rfile))
           .doOnCompleted(fileEvents(fp, fileEventType.get()));
     }
     //update remotely
     fileEventType.set(FileEvent.Type.updated);
+    if (ChunkStore.shouldChunk(file)) {
+      return updateChunks(fp, rconfig, rfile, fileEventType.get());
+    }
     return fp.getOrigin()
         .get(file)
+        .map(silentFunc1(is -> CompressionPolicy.compress(file.getPath(), monitor(fp, is))))
         .flatMap(
-            is -> {
+            compressed -> {
               //renew encryption key
               final Key key = new Key(AESGCM.rndKey(), UbiFile.KeyType.aes);
-              return provider
-                  .put(
-                      rfile.getName(),
-                      AESGCM.encryptIs(
-                          key.getBytes(),
-                          new DeflaterInputStream(monitor(fp, is), new Deflater(BEST_COMPRESSION))))
+              key.setCompression(compressed.getT1());
+              final InputStream encrypted = AESGCM.encryptIs(key.getBytes(), compressed.getT2());
+              final Observable<Boolean> stored;
+              if (rfile.isChunked()) {
+                //the file shrank: the chunks leave room to a single object
+                stored =
+                    ProviderMetrics.post(provider, encrypted)
+                        .map(
+                            name -> {
+                              chunkStore.release(rfile.getChunks());
+                              rfile.setChunks(null);
+                              rfile.setRemoteName(name);
+                              return true;
+                            });
+              } else {
+                stored = ProviderMetrics.put(provider, rfile.getName(), encrypted);
+              }
+              return stored
                   .doOnNext(
                       saved ->
                           log.info("updated:{} file:{}, in:{}", saved, rfile.getPath(), provider))
@@ -112,9 +147,60 @@ public class OnUpdateRemote extends RemoteAction {
                         rfile.copyFrom(file);
                         rfile.setKey(key);
                         rfile.setError(false);
+                        rconfig.changed(rfile.getId());
                       })
-                  .doOnError(err -> rfile.setError(true))
+                  .doOnError(err -> error(rconfig, rfile))
                   .doOnCompleted(fileEvents(fp, fileEventType.get()));
             });
   }
+
+  /** delta update: unchanged chunks keep their objects and keys, only new ones are uploaded */
+  private Observable<Boolean> updateChunks(
+      final FileProvenience fp,
+      final RemoteConfig rconfig,
+      final RemoteFile rfile,
+      final FileEvent.Type fileEventType) {
+    final UbiFile file = fp.getFile();
+    return fp.getOrigin()
+        .get(file)
+        .flatMap(is -> chunkStore.store(rconfig, file.getPath(), monitor(fp, is)))
+        .map(
+            chunks -> {
+              if (log.isInfoEnabled()) {
+                final Set<ChunkRef> previous =
+                    rfile.isChunked() ? new HashSet<>(rfile.getChunks()) : Collections.emptySet();
+                log.info(
+                    "updated file:{}, chunks:{}, changed bytes:{}, in:{}",
+                    rfile.getPath(),
+                    chunks.size(),
+                    chunks
+                        .stream()
+                        .filter(ref -> !previous.contains(ref))
+                        .mapToLong(ChunkRef::getLength)
+                        .sum(),
+                    provider);
+              }
+              if (rfile.isChunked()) {
+                chunkStore.release(rfile.getChunks());
+              } else if (rfile.getRemoteName() != null) {
+                //the single object is deleted along with the unreferenced chunks
+                chunkStore.release(
+                    Collections.singletonList(
+                        new ChunkRef(null, rfile.getRemoteName(), rfile.getKey(), 0)));
+              }
+              rfile.copyFrom(file);
+              rfile.setChunks(chunks);
+              rfile.setRemoteName(null);
+              rfile.setError(false);
+              rconfig.changed(rfile.getId());
+              return true;
+            })
+        .doOnError(err -> error(rconfig, rfile))
+        .doOnCompleted(fileEvents(fp, fileEventType));
+  }
+
+  private static void error(final RemoteConfig rconfig, final RemoteFile rfile) {
+    rfile.setError(true);
+    rconfig.changed(rfile.getId());
+  }
 }
@@ -27,6 +27,7 @@ import ubicrypt.core.FileProvenience;
 import ubicrypt.core.IRepository;
 import ubicrypt.core.MonitorInputStream;
 import ubicrypt.core.ProgressFile;
+import ubicrypt.core.provider.ChunkStore;
 import ubicrypt.core.provider.FileEvent;
 import ubicrypt.core.provider.UbiProvider;
 
@@ -36,6 +37,7 @@ public abstract class RemoteAction implements IRemoteAction {
   private static final Logger log = getLogger(RemoteAction.class);
   protected final UbiProvider provider;
   protected final IRepository repository;
+  protected final ChunkStore chunkStore;
 
   @Resource
   @Qualifier("progressEvents")
@@ -46,8 +48,13 @@ public abstract class RemoteAction implements IRemoteAction {
   protected Subject<FileEvent, FileEvent> fileEvents;
 
   protected RemoteAction(UbiProvider provider, IRepository repository) {
+    this(provider, repository, new ChunkStore(provider));
+  }
+
+  protected RemoteAction(UbiProvider provider, IRepository repository, ChunkStore chunkStore) {
     this.provider = provider;
     this.repository = repository;
+    this.chunkStore = chunkStore;
   }
 
   Action0 fileEvents(final FileProvenience fp, final FileEvent.Type fileEventType) {
@@ -20,7 +20,7 @@ import org.slf4j.Logger;
 import java.io.InputStream;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.InflaterInputStream;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -28,7 +28,6 @@ import javax.annotation.Resource;
 import rx.Observable;
 import rx.functions.Action0;
 import rx.functions.Actions;
-import rx.functions.Func1;
 import rx.subjects.PublishSubject;
 import rx.subjects.Subject;
 import ubicrypt.core.FileProvenience;
@@ -40,11 +39,12 @@ import ubicrypt.core.Utils;
 import ubicrypt.core.crypto.AESGCM;
 import ubicrypt.core.dto.RemoteConfig;
 import ubicrypt.core.dto.UbiFile;
+import ubicrypt.core.provider.ChunkStore;
 import ubicrypt.core.provider.FileEvent;
 import ubicrypt.core.provider.RemoteFileGetter;
 import ubicrypt.core.provider.UbiProvider;
 import ubicrypt.core.provider.lock.AcquirerReleaser;
-import ubicrypt.core.util.QueueLiner;
+import ubicrypt.core.util.TransferScheduler;
 
 import static org.slf4j.LoggerFactory.getLogger;
 import static rx.Observable.create;
@@ -56,11 +56,12 @@ public class RemoteRepository implements IRepository {
   private final Observable.OnSubscribe<AcquirerReleaser> acquirer;
   private final RemoteIO<RemoteConfig> configIO;
   private final UbiProvider provider;
+  private final ChunkStore chunkStore;
   @Resource private PublishSubject<ProgressFile> progressEvents = PublishSubject.create();
   @Resource private Subject<FileEvent, FileEvent> fileEvents = PublishSubject.create();
-  @Resource private QueueLiner queueLiner;
-  private Func1<Observable<Boolean>, Observable<Boolean>> outboundQueue;
-  private Func1<Observable<InputStream>, Observable<InputStream>> inboundQueue;
+  @Resource private TransferScheduler transferScheduler;
+  private TransferScheduler.Lane<Boolean> outboundQueue;
+  private TransferScheduler.Lane<InputStream> inboundQueue;
   private RemoteFileGetter fileGetter;
   private List<IRemoteAction> actions;
 
@@ -68,18 +69,43 @@ public class RemoteRepository implements IRepository {
       final Observable.OnSubscribe<AcquirerReleaser> acquirer,
       final UbiProvider provider,
       final RemoteIO<RemoteConfig> configIO) {
+    this(acquirer, provider, configIO, new ChunkStore(provider));
+  }
+
+  public RemoteRepository(
+      final Observable.OnSubscribe<AcquirerReleaser> acquirer,
+      final UbiProvider provider,
+      final RemoteIO<RemoteConfig> configIO,
+      final ChunkStore chunkStore) {
     this.acquirer = acquirer;
     this.provider = provider;
     this.configIO = configIO;
-    fileGetter = new RemoteFileGetter(acquirer, provider);
-    this.outboundQueue = (booleanObservable -> booleanObservable);
+    this.chunkStore = chunkStore;
+    fileGetter = new RemoteFileGetter(acquirer, provider, chunkStore);
   }
 
   @PostConstruct
   public void init() {
+    final int concurrency =
+        transferScheduler.concurrency(provider.code(), provider.getMaxConcurrentTransfers());
     this.outboundQueue =
-        queueLiner.createEpiloguer(() -> saveConf(releaserRef.get().getRemoteConfig()));
-    this.inboundQueue = queueLiner.createEpiloguer();
+        transferScheduler.createLane(
+            provider.providerId() + "/outbound",
+            concurrency,
+            () -> epilogue(releaserRef.get().getRemoteConfig()));
+    this.inboundQueue =
+        transferScheduler.createLane(provider.providerId() + "/inbound", concurrency);
+  }
+
+  /** releases the transfer lanes, once the provider is not used anymore */
+  public void dispose() {
+    transferScheduler.removeLane(outboundQueue);
+    transferScheduler.removeLane(inboundQueue);
+  }
+
+  /** emits when the provider can accept more uploads */
+  public Observable<Boolean> whenReady() {
+    return outboundQueue.whenReady();
   }
 
   @Override
@@ -91,10 +117,12 @@ public class RemoteRepository implements IRepository {
         .flatMap(
             rc -> {
               rc.getRemoteFiles()
-                  .stream()
-                  .filter(f -> f.equals(file))
-                  .findFirst()
-                  .ifPresent(rcf -> rcf.setError(true));
+                  .get(file)
+                  .ifPresent(
+                      rcf -> {
+                        rcf.setError(true);
+                        rc.changed(rcf.getId());
+                      });
               return saveConf(rc);
             })
         .doOnError(
@@ -120,7 +148,12 @@ public class RemoteRepository implements IRepository {
                 file,
                 (rfile, is) ->
                     new MonitorInputStream(
-                        new InflaterInputStream(AESGCM.decryptIs(rfile.getKey().getBytes(), is))))
+                        rfile.isChunked()
+                            ? is
+                            : rfile
+                                .getKey()
+                                .getCompression()
+                                .decompress(AESGCM.decryptIs(rfile.getKey().getBytes(), is))))
             .cast(MonitorInputStream.class)
             .flatMap(
                 is ->
@@ -145,6 +178,22 @@ public class RemoteRepository implements IRepository {
                         })));
   }
 
+  /** saves the config, then deletes the chunks it does not refer to anymore */
+  private Observable<Boolean> epilogue(final RemoteConfig remoteConfig) {
+    return saveConf(remoteConfig)
+        .flatMap(
+            saved ->
+                chunkStore
+                    .collectGarbage(remoteConfig)
+                    .doOnNext(
+                        deleted -> {
+                          if (deleted > 0) {
+                            log.info("deleted {} chunks from {}", deleted, provider);
+                          }
+                        })
+                    .map(deleted -> saved));
+  }
+
   private Observable<Boolean> saveConf(final RemoteConfig remoteConfig) {
     AtomicReference<Action0> releaser = new AtomicReference<>();
     return create(acquirer)
@@ -164,42 +213,77 @@ public class RemoteRepository implements IRepository {
 
   @Override
   public Observable<Boolean> save(final FileProvenience fp) {
-    //only one remote save at time
-    return outboundQueue.call(saveSerial(fp));
+    //only one save at time for the same file
+    return outboundQueue.call(fp.getFile().getId(), saveSerial(fp));
   }
 
-  private Observable<Boolean> saveSerial(final FileProvenience fp) {
-    //acquire permission
+  /** saves the files holding the provider's lock once for the whole batch */
+  @Override
+  public Observable<Boolean> saveAll(final List<FileProvenience> fps) {
+    if (fps.isEmpty()) {
+      return Observable.empty();
+    }
     return create(acquirer)
         .flatMap(
             releaser -> {
               releaserRef.set(releaser);
               final RemoteConfig remoteConfig = releaser.getRemoteConfig();
-              UbiFile<UbiFile> file = fp.getFile();
-              return actions
-                  .stream()
-                  .filter(test -> test.test(fp, remoteConfig))
-                  .map(action -> action.apply(fp, remoteConfig))
-                  .findFirst()
-                  .orElseGet(
-                      () -> {
-                        log.trace("no action for file:{} provider:{}", file.getPath(), provider);
-                        return just(false);
-                      });
-            })
-        .doOnError(
-            releaserRef.get() != null
-                ? err -> releaserRef.get().getReleaser().call()
-                : Actions.empty())
-        .doOnError(err -> progressEvents.onNext(new ProgressFile(fp, this, false, true)))
+              return Observable.merge(
+                      fps.stream()
+                          .map(
+                              fp ->
+                                  outboundQueue.call(
+                                      fp.getFile().getId(),
+                                      onError(fp, Observable.defer(() -> apply(fp, remoteConfig)))))
+                          .collect(Collectors.toList()))
+                  .doOnTerminate(releaser.getReleaser());
+            });
+  }
+
+  private Observable<Boolean> saveSerial(final FileProvenience fp) {
+    final AtomicReference<Action0> releaserAction = new AtomicReference<>();
+    //acquire permission
+    return onError(
+        fp,
+        create(acquirer)
+            .flatMap(
+                releaser -> {
+                  releaserRef.set(releaser);
+                  releaserAction.set(releaser.getReleaser());
+                  return apply(fp, releaser.getRemoteConfig());
+                })
+            .doOnTerminate(
+                () -> {
+                  if (releaserAction.get() != null) {
+                    releaserAction.get().call();
+                  }
+                }));
+  }
+
+  /** runs the first action applicable to the file */
+  private Observable<Boolean> apply(final FileProvenience fp, final RemoteConfig remoteConfig) {
+    final UbiFile<UbiFile> file = fp.getFile();
+    return actions
+        .stream()
+        .filter(test -> test.test(fp, remoteConfig))
+        .map(action -> action.apply(fp, remoteConfig))
+        .findFirst()
+        .orElseGet(
+            () -> {
+              log.trace("no action for file:{} provider:{}", file.getPath(), provider);
+              return just(false);
+            });
+  }
+
+  /** a failed save is notified and results false */
+  private Observable<Boolean> onError(final FileProvenience fp, final Observable<Boolean> save) {
+    return save.doOnError(err -> progressEvents.onNext(new ProgressFile(fp, this, false, true)))
         .doOnError(err -> fileEvents(fp, FileEvent.Type.error))
         .onErrorReturn(
             err -> {
               log.error(err.getMessage(), err);
               return false;
-            })
-        .doOnCompleted(
-            releaserRef.get() != null ? releaserRef.get().getReleaser()::call : Actions.empty());
+            });
   }
 
   private Action0 fileEvents(final FileProvenience fp, final FileEvent.Type fileEventType) {
@@ -252,8 +336,12 @@ public class RemoteRepository implements IRepository {
     return new HashCodeBuilder(17, 37).append(provider).toHashCode();
   }
 
-  public void setQueueLiner(final QueueLiner queueLiner) {
-    this.queueLiner = queueLiner;
+  public void setTransferScheduler(final TransferScheduler transferScheduler) {
+    this.transferScheduler = transferScheduler;
+  }
+
+  public ChunkStore getChunkStore() {
+    return chunkStore;
   }
 
   public void setActions(List<IRemoteAction> actions) {
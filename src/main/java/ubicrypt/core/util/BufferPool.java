@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of buffers of the same size. Buffers return to the pool once released, so that file
+ * transfers do not allocate a new buffer per chunk. When every pooled buffer is in use a new one is
+ * allocated, and dropped on release if the pool is already full: readers bound the buffers they
+ * hold, as {@link ubicrypt.core.Utils#readChunks} does.
+ */
+public class BufferPool {
+  /** 64 KiB direct buffers, filled straight by file channels */
+  public static final BufferPool shared = new BufferPool(1 << 16, 64, true);
+  /** 64 KiB heap buffers, filled by input streams through their backing array */
+  public static final BufferPool sharedHeap = new BufferPool(1 << 16, 64, false);
+
+  private final int bufferSize;
+  private final int maxPooled;
+  private final boolean direct;
+  private final ConcurrentLinkedDeque<ByteBuffer> free = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+  private final AtomicLong acquired = new AtomicLong();
+  private final AtomicLong allocated = new AtomicLong();
+
+  public BufferPool(final int bufferSize, final int maxPooled, final boolean direct) {
+    this.bufferSize = bufferSize;
+    this.maxPooled = maxPooled;
+    this.direct = direct;
+  }
+
+  /** a cleared buffer, to be given back with {@link #release(ByteBuffer)} */
+  public ByteBuffer acquire() {
+    acquired.incrementAndGet();
+    final ByteBuffer buffer = free.poll();
+    if (buffer == null) {
+      allocated.incrementAndGet();
+      return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+    pooled.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  public void release(final ByteBuffer buffer) {
+    if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+      return;
+    }
+    if (pooled.incrementAndGet() <= maxPooled) {
+      free.push(buffer);
+    } else {
+      pooled.decrementAndGet();
+    }
+  }
+
+  /** the bytes of a buffer, bounded to the read ones, released once consumed */
+  public Chunk chunk(final ByteBuffer buffer) {
+    return new Chunk(buffer, () -> {});
+  }
+
+  /** @param onRelease run once the chunk has been released */
+  public Chunk chunk(final ByteBuffer buffer, final Runnable onRelease) {
+    return new Chunk(buffer, onRelease);
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /** buffers waiting in the pool */
+  public int getPooled() {
+    return pooled.get();
+  }
+
+  public long getAcquired() {
+    return acquired.get();
+  }
+
+  /** buffers allocated because the pool was empty */
+  public long getAllocated() {
+    return allocated.get();
+  }
+
+  public class Chunk {
+    private final ByteBuffer buffer;
+    private final ByteBuffer data;
+    private final Runnable onRelease;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Chunk(final ByteBuffer buffer, final Runnable onRelease) {
+      this.buffer = buffer;
+      this.onRelease = onRelease;
+      this.data = ((ByteBuffer) buffer.duplicate().flip()).asReadOnlyBuffer();
+    }
+
+    /** read-only view from 0 to the position of the buffer when the chunk was created */
+    public ByteBuffer data() {
+      return data;
+    }
+
+    public int length() {
+      return data.limit();
+    }
+
+    /** copy of the bytes */
+    public byte[] bytes() {
+      final byte[] bytes = new byte[data.limit()];
+      data.duplicate().get(bytes);
+      return bytes;
+    }
+
+    /** give the buffer back to the pool, the chunk must not be used anymore */
+    public void release() {
+      if (released.compareAndSet(false, true)) {
+        BufferPool.this.release(buffer);
+        onRelease.run();
+      }
+    }
+  }
+}
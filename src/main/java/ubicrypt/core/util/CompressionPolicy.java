@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import reactor.fn.tuple.Tuple;
+import reactor.fn.tuple.Tuple2;
+import ubicrypt.core.dto.Compression;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Chooses how to compress a file: already compressed formats, recognized by extension or magic
+ * number, are stored as they are. Otherwise the first block is deflated at the fastest level and
+ * the ratio decides between storing, fast and best compression.
+ */
+public class CompressionPolicy {
+  private static final Logger log = getLogger(CompressionPolicy.class);
+  static final int sampleSize = 64 * 1024;
+  /** ratio over which compression is not worth the cpu */
+  static final double storeRatio = 0.9;
+  /** ratio under which the best compression pays off */
+  static final double bestRatio = 0.5;
+
+  private static final Set<String> compressedExtensions =
+      ImmutableSet.of(
+          "jpg", "jpeg", "png", "gif", "webp", "heic", "mp3", "aac", "ogg", "flac", "mp4", "m4v",
+          "m4a", "mov", "mkv", "avi", "webm", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "jar",
+          "docx", "xlsx", "pptx", "odt", "ods", "epub", "apk");
+
+  private static final byte[][] compressedMagics = {
+    {(byte) 0xff, (byte) 0xd8, (byte) 0xff}, //jpeg
+    {(byte) 0x89, 'P', 'N', 'G'},
+    {'G', 'I', 'F', '8'},
+    {'P', 'K', 3, 4}, //zip
+    {0x1f, (byte) 0x8b}, //gzip
+    {'B', 'Z', 'h'},
+    {(byte) 0xfd, '7', 'z', 'X', 'Z'},
+    {'7', 'z', (byte) 0xbc, (byte) 0xaf},
+    {'R', 'a', 'r', '!'}
+  };
+
+  /** compression chosen for the file and its compressed content */
+  public static Tuple2<Compression, InputStream> compress(final Path path, final InputStream is)
+      throws IOException {
+    final byte[] buffer = new byte[sampleSize];
+    final byte[] sample = Arrays.copyOf(buffer, IOUtils.read(is, buffer));
+    final Compression compression = choose(path, sample);
+    log.debug("compression of {}: {}", path, compression);
+    return Tuple.of(
+        compression,
+        compression.compress(new SequenceInputStream(new ByteArrayInputStream(sample), is)));
+  }
+
+  static Compression choose(final Path path, final byte[] sample) {
+    if (path != null
+        && path.getFileName() != null
+        && compressedExtensions.contains(
+            FilenameUtils.getExtension(path.getFileName().toString()).toLowerCase())) {
+      return Compression.store;
+    }
+    if (sample.length == 0 || isCompressed(sample)) {
+      return Compression.store;
+    }
+    final double ratio = (double) deflatedSize(sample) / sample.length;
+    if (ratio > storeRatio) {
+      return Compression.store;
+    }
+    return ratio < bestRatio ? Compression.best : Compression.fast;
+  }
+
+  private static boolean isCompressed(final byte[] sample) {
+    //mp4/mov/heic
+    if (sample.length >= 8
+        && sample[4] == 'f'
+        && sample[5] == 't'
+        && sample[6] == 'y'
+        && sample[7] == 'p') {
+      return true;
+    }
+    for (final byte[] magic : compressedMagics) {
+      if (sample.length >= magic.length
+          && Arrays.equals(Arrays.copyOf(sample, magic.length), magic)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long deflatedSize(final byte[] sample) {
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(sample);
+      deflater.finish();
+      final byte[] out = new byte[sample.length];
+      long size = 0;
+      while (!deflater.finished()) {
+        size += deflater.deflate(out);
+      }
+      return size;
+    } finally {
+      deflater.end();
+    }
+  }
+}
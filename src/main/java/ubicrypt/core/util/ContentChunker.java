@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import rx.Observable;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Splits a stream into content-defined chunks with a gear rolling hash. A chunk ends where the hash
+ * of the last bytes matches a mask, so inserting or removing bytes moves only the boundaries around
+ * the edit and the other chunks keep their content. Chunks are at least minSize long, at most
+ * maxSize, and about minSize plus 2^maskBits on average.
+ */
+public class ContentChunker {
+  /** 256 KiB to 4 MiB, about 1.25 MiB on average */
+  public static final ContentChunker standard = new ContentChunker(1 << 18, 20, 1 << 22);
+
+  private static final long[] gear = new long[256];
+
+  static {
+    //the table must be the same everywhere, otherwise the boundaries would change
+    final Random random = new Random(0x5eedc0deL);
+    for (int i = 0; i < gear.length; i++) {
+      gear[i] = random.nextLong();
+    }
+  }
+
+  private final int minSize;
+  private final int maxSize;
+  private final long mask;
+
+  public ContentChunker(final int minSize, final int maskBits, final int maxSize) {
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    //the high bits of the hash depend on the most bytes
+    this.mask = ((1L << maskBits) - 1) << (64 - maskBits);
+  }
+
+  /** chunks of the stream, read only as they are requested */
+  public Observable<byte[]> split(final InputStream is) {
+    return Observable.create(
+        SyncOnSubscribe.<Window, byte[]>createStateful(
+            Window::new,
+            (window, observer) -> {
+              try {
+                final byte[] chunk = window.next(is);
+                if (chunk == null) {
+                  observer.onCompleted();
+                } else {
+                  observer.onNext(chunk);
+                }
+              } catch (IOException e) {
+                observer.onError(e);
+              }
+              return window;
+            },
+            window -> IOUtils.closeQuietly(is)));
+  }
+
+  /** length of the first chunk of the given bytes */
+  int boundary(final byte[] bytes, final int length) {
+    if (length <= minSize) {
+      return length;
+    }
+    final int end = Math.min(length, maxSize);
+    long hash = 0;
+    for (int i = minSize; i < end; i++) {
+      hash = (hash << 1) + gear[bytes[i] & 0xff];
+      if ((hash & mask) == 0) {
+        return i + 1;
+      }
+    }
+    return end;
+  }
+
+  /** bytes read ahead, up to the longest chunk */
+  private class Window {
+    private final byte[] buffer = new byte[maxSize];
+    private int length = 0;
+    private boolean eof = false;
+
+    private byte[] next(final InputStream is) throws IOException {
+      if (!eof && length < maxSize) {
+        final int read = IOUtils.read(is, buffer, length, maxSize - length);
+        length += read;
+        eof = length < maxSize;
+      }
+      if (length == 0) {
+        return null;
+      }
+      final int cut = eof && length <= minSize ? length : boundary(buffer, length);
+      final byte[] chunk = Arrays.copyOf(buffer, cut);
+      System.arraycopy(buffer, cut, buffer, 0, length - cut);
+      length -= cut;
+      return chunk;
+    }
+  }
+}
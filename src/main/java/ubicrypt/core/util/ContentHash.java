@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+import ubicrypt.core.Utils;
+import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.dto.UbiFile;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * SHA-1 of file contents. Hashes are computed while the content is read for other purposes (upload
+ * or download), or on a dedicated pool when it is needed upfront. The local file records the
+ * modification time, size and file key of the content it has been hashed from, so that an unchanged
+ * file is not read again.
+ */
+public class ContentHash {
+  private static final Logger log = getLogger(ContentHash.class);
+  private static final String algorithm = "SHA-1";
+  private static final Scheduler hashing =
+      Schedulers.from(
+          Executors.newFixedThreadPool(
+              Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+              new ThreadFactoryBuilder().setNameFormat("hash-%d").setDaemon(true).build()));
+
+  private ContentHash() {}
+
+  /** hash of the file, reused from the local file if the file has not changed since */
+  public static Observable<byte[]> of(final Path path, final LocalFile recorded) {
+    return Observable.defer(
+            () -> {
+              final BasicFileAttributes attrs;
+              try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+              } catch (final IOException e) {
+                return Observable.error(e);
+              }
+              if (recorded != null && recorded.getSha1() != null && matches(recorded, attrs)) {
+                log.trace("hash of:{} from cache", path);
+                return Observable.just(recorded.getSha1());
+              }
+              //pooled chunks digested as they are, without copies
+              return Utils.readChunks(path)
+                  .observeOn(hashing)
+                  .reduce(
+                      newDigest(),
+                      (digest, chunk) -> {
+                        try {
+                          digest.update(chunk.data());
+                        } finally {
+                          chunk.release();
+                        }
+                        return digest;
+                      })
+                  .map(MessageDigest::digest);
+            })
+        .subscribeOn(hashing);
+  }
+
+  public static Observable<byte[]> of(final Path path) {
+    return of(path, null);
+  }
+
+  /** wraps the stream, the hash of the content is passed to the action once fully read */
+  public static InputStream digest(final InputStream is, final Action1<byte[]> onHash) {
+    final MessageDigest digest = newDigest();
+    return new FilterInputStream(is) {
+      private boolean done;
+
+      @Override
+      public int read() throws IOException {
+        final int ret = super.read();
+        if (ret == -1) {
+          end();
+        } else {
+          digest.update((byte) ret);
+        }
+        return ret;
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int ret = super.read(b, off, len);
+        if (ret == -1) {
+          end();
+        } else {
+          digest.update(b, off, ret);
+        }
+        return ret;
+      }
+
+      @Override
+      public long skip(final long n) throws IOException {
+        throw new IOException("skip not supported while hashing");
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+
+      private void end() {
+        if (!done) {
+          done = true;
+          onHash.call(digest.digest());
+        }
+      }
+    };
+  }
+
+  /** records the hash of the content the file had with the given attributes */
+  public static void record(
+      final LocalFile file, final byte[] sha1, final BasicFileAttributes attrs) {
+    file.setSha1(sha1);
+    file.setFileKey(fileKey(attrs));
+  }
+
+  /** the file has the same attributes recorded in the local file */
+  public static boolean matches(final LocalFile file, final BasicFileAttributes attrs) {
+    return attrs.size() == file.getSize()
+        && attrs.lastModifiedTime().toInstant().equals(file.getLastModified())
+        && Objects.equals(fileKey(attrs), file.getFileKey());
+  }
+
+  /**
+   * fails if the content has not the expected hash. Files without hash, created by older versions,
+   * are not verified.
+   */
+  public static void verify(final UbiFile expected, final byte[] sha1) throws IOException {
+    if (expected.getSha1() != null && !Arrays.equals(expected.getSha1(), sha1)) {
+      throw new IOException("content of " + expected.getPath() + " does not match its hash");
+    }
+  }
+
+  public static String fileKey(final BasicFileAttributes attrs) {
+    return attrs.fileKey() == null ? null : attrs.fileKey().toString();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      Throwables.propagate(e);
+      return null;
+    }
+  }
+}
@@ -43,14 +43,11 @@ public class FileInSync implements Func1<UbiFile, Observable.OnSubscribe<Boolean
               releaser -> {
                 releaser.getReleaser().call();
                 RemoteConfig remoteConfig = releaser.getRemoteConfig();
-                return remoteConfig.getRemoteFiles().contains(file)
-                    && remoteConfig
-                        .getRemoteFiles()
-                        .stream()
-                        .filter(file::equals)
-                        .map(rfile -> rfile.compare(file) == VClock.Comparison.equal)
-                        .findFirst()
-                        .orElse(false);
+                return remoteConfig
+                    .getRemoteFiles()
+                    .get(file)
+                    .map(rfile -> rfile.compare(file) == VClock.Comparison.equal)
+                    .orElse(false);
               })
           .defaultIfEmpty(false)
           .contains(false)
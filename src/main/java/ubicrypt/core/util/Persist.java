@@ -19,9 +19,6 @@ import org.springframework.context.EnvironmentAware;
 import org.springframework.core.env.Environment;
 
 import java.io.InputStream;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterInputStream;
-import java.util.zip.InflaterInputStream;
 
 import javax.inject.Inject;
 
@@ -31,10 +28,10 @@ import ubicrypt.core.crypto.AESGCM;
 import ubicrypt.core.crypto.IPGPService;
 import ubicrypt.core.dto.RemoteFile;
 import ubicrypt.core.exp.NotFoundException;
+import ubicrypt.core.provider.ProviderMetrics;
 import ubicrypt.core.provider.UbiProvider;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static java.util.zip.Deflater.BEST_COMPRESSION;
 import static org.slf4j.LoggerFactory.getLogger;
 import static ubicrypt.core.Utils.marshallIs;
 
@@ -57,15 +54,14 @@ public class Persist implements IPersist, EnvironmentAware {
     checkNotNull(descriptor, "file descriptor must not be null");
     checkNotNull(obj, "object must not be null");
     if (descriptor.getName() == null) {
-      return provider
-          .post(encrypt(descriptor, marshallIs(obj)))
+      return ProviderMetrics.post(provider, encrypt(descriptor, marshallIs(obj)))
           .doOnNext(descriptor::setRemoteName)
           .last()
           .map(i -> obj)
           .defaultIfEmpty(obj);
     }
-    return provider
-        .put(descriptor.getName(), encrypt(descriptor, marshallIs(obj)))
+    return ProviderMetrics.put(
+            provider, descriptor.getName(), encrypt(descriptor, marshallIs(obj)))
         .last()
         .map(i -> obj)
         .defaultIfEmpty(obj);
@@ -74,8 +70,7 @@ public class Persist implements IPersist, EnvironmentAware {
   @Override
   public Observable<Boolean> delete(final RemoteFile descriptor) {
     checkNotNull(descriptor, "file descriptor must not be null");
-    return provider
-        .delete(descriptor.getName())
+    return ProviderMetrics.delete(provider, descriptor.getName())
         .doOnNext(
             res -> {
               if (res) {
@@ -89,12 +84,12 @@ public class Persist implements IPersist, EnvironmentAware {
     checkNotNull(descriptor, "file descriptor must not be null");
     checkNotNull(obj, "object must not be null");
     if (descriptor.getName() == null) {
-      return provider
-          .post(encrypt(descriptor, marshallIs(obj)))
+      return ProviderMetrics.post(provider, encrypt(descriptor, marshallIs(obj)))
           .doOnNext(descriptor::setRemoteName)
           .map(str -> true);
     }
-    return provider.put(descriptor.getName(), encrypt(descriptor, marshallIs(obj)));
+    return ProviderMetrics.put(
+        provider, descriptor.getName(), encrypt(descriptor, marshallIs(obj)));
   }
 
   @Override
@@ -104,9 +99,15 @@ public class Persist implements IPersist, EnvironmentAware {
     if (descriptor.getName() == null) {
       return Observable.error(new NotFoundException("pid null"));
     }
-    return provider
-        .get(descriptor.getName())
-        .map(is -> Utils.unmarshall(decrypt(descriptor, is), type));
+    return ProviderMetrics.get(provider, descriptor.getName())
+        .map(
+            is -> {
+              try {
+                return Utils.unmarshall(decrypt(descriptor, is), type);
+              } finally {
+                Utils.close(is);
+              }
+            });
   }
 
   protected InputStream encrypt(final RemoteFile file, final InputStream inputStream) {
@@ -116,8 +117,7 @@ public class Persist implements IPersist, EnvironmentAware {
     switch (file.getKey().getType()) {
       case aes:
         return AESGCM.encryptIs(
-            file.getKey().getBytes(),
-            new DeflaterInputStream(inputStream, new Deflater(BEST_COMPRESSION)));
+            file.getKey().getBytes(), file.getKey().getCompression().compress(inputStream));
       default:
         return pgpService.encrypt(inputStream);
     }
@@ -129,7 +129,9 @@ public class Persist implements IPersist, EnvironmentAware {
     }
     switch (file.getKey().getType()) {
       case aes:
-        return new InflaterInputStream(AESGCM.decryptIs(file.getKey().getBytes(), inputStream));
+        return file.getKey()
+            .getCompression()
+            .decompress(AESGCM.decryptIs(file.getKey().getBytes(), inputStream));
       default:
         return pgpService.decrypt(inputStream);
     }
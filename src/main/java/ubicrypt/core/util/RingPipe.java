@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded byte pipe between a producer and a consumer, replacing java.io piped streams. Bytes are
+ * kept in a fixed ring buffer: blocking producers write through {@link #outputStream()}, which
+ * waits while the ring is full, asynchronous producers fill directly the free region returned by
+ * {@link #claim()} and get notified by {@link #whenWritable(Runnable)} when the consumer makes
+ * room. Errors of the producer are rethrown to the consumer.
+ */
+public class RingPipe {
+  private final ByteBuffer ring;
+  private final int capacity;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final AtomicLong stalls = new AtomicLong();
+  /** total bytes read */
+  private long head = 0;
+  /** total bytes written */
+  private long tail = 0;
+
+  private boolean closed = false;
+  private boolean readerClosed = false;
+  private Throwable error;
+  private Runnable onWritable;
+
+  public RingPipe(final int capacity) {
+    this.capacity = capacity;
+    this.ring = ByteBuffer.allocate(capacity);
+  }
+
+  /**
+   * contiguous free region of the ring, empty when full. Bytes put there are published by commit
+   */
+  public ByteBuffer claim() {
+    lock.lock();
+    try {
+      final int offset = (int) (tail % capacity);
+      final int free = capacity - (int) (tail - head);
+      final ByteBuffer region = ring.duplicate();
+      region.position(offset);
+      region.limit(offset + Math.min(free, capacity - offset));
+      return region.slice();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** publish the bytes written into the claimed region */
+  public void commit(final int length) {
+    lock.lock();
+    try {
+      if (length > capacity - (tail - head)) {
+        throw new IllegalStateException("commit exceeds free space");
+      }
+      tail += length;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Run the action once there is free space or the reader has gone.
+   *
+   * @return false when the action is executed immediately
+   */
+  public boolean whenWritable(final Runnable action) {
+    lock.lock();
+    try {
+      if (tail - head == capacity && !readerClosed) {
+        stalls.incrementAndGet();
+        onWritable = action;
+        return true;
+      }
+    } finally {
+      lock.unlock();
+    }
+    action.run();
+    return false;
+  }
+
+  /** the producer has finished */
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** the producer has failed, the consumer gets the error on its next read */
+  public void fail(final Throwable err) {
+    lock.lock();
+    try {
+      error = err;
+      closed = true;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean isReaderClosed() {
+    lock.lock();
+    try {
+      return readerClosed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** bytes waiting to be read */
+  public int size() {
+    lock.lock();
+    try {
+      return (int) (tail - head);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /** times the producer had to wait for the consumer */
+  public long getStalls() {
+    return stalls.get();
+  }
+
+  public InputStream inputStream() {
+    return new InputStream() {
+      @Override
+      public int read() throws IOException {
+        final byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        final Runnable writable;
+        final int n;
+        lock.lock();
+        try {
+          while (tail == head) {
+            if (error != null) {
+              throw new IOException(error.getMessage(), error);
+            }
+            if (closed || readerClosed) {
+              return -1;
+            }
+            notEmpty.await();
+          }
+          final int offset = (int) (head % capacity);
+          n = Math.min(len, Math.min((int) (tail - head), capacity - offset));
+          final ByteBuffer region = ring.duplicate();
+          region.position(offset);
+          region.get(b, off, n);
+          head += n;
+          notFull.signalAll();
+          writable = onWritable;
+          onWritable = null;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        } finally {
+          lock.unlock();
+        }
+        if (writable != null) {
+          writable.run();
+        }
+        return n;
+      }
+
+      @Override
+      public int available() {
+        return size();
+      }
+
+      @Override
+      public void close() {
+        final Runnable writable;
+        lock.lock();
+        try {
+          readerClosed = true;
+          notFull.signalAll();
+          writable = onWritable;
+          onWritable = null;
+        } finally {
+          lock.unlock();
+        }
+        if (writable != null) {
+          writable.run();
+        }
+      }
+    };
+  }
+
+  public OutputStream outputStream() {
+    return new OutputStream() {
+      @Override
+      public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+          lock.lock();
+          try {
+            if (tail - head == capacity && !readerClosed) {
+              stalls.incrementAndGet();
+            }
+            while (tail - head == capacity && !readerClosed) {
+              notFull.await();
+            }
+            if (readerClosed) {
+              throw new IOException("pipe closed by the reader");
+            }
+            final int offset = (int) (tail % capacity);
+            final int n =
+                Math.min(len, Math.min(capacity - (int) (tail - head), capacity - offset));
+            final ByteBuffer region = ring.duplicate();
+            region.position(offset);
+            region.put(b, off, n);
+            tail += n;
+            off += n;
+            len -= n;
+            notEmpty.signalAll();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+          } finally {
+            lock.unlock();
+          }
+        }
+      }
+
+      @Override
+      public void close() {
+        RingPipe.this.close();
+      }
+    };
+  }
+}
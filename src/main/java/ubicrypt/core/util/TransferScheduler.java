@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Func1;
+import rx.internal.operators.BufferUntilSubscriber;
+import rx.schedulers.Schedulers;
+import rx.subjects.Subject;
+import ubicrypt.core.IStoppable;
+import ubicrypt.core.metrics.Meter;
+import ubicrypt.core.metrics.MetricsRegistry;
+import ubicrypt.core.metrics.Timer;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.slf4j.LoggerFactory.getLogger;
+import static rx.functions.Actions.empty;
+
+/**
+ * Runs transfers concurrently in lanes, usually one lane per provider, each one with its own
+ * concurrency. A lane terminates every batch of transfers with its epilogue: it runs once no
+ * transfer is running, when the lane is idle or when the last epilogue is older than the given
+ * delay. Meanwhile no new transfer is started. Subscribers complete only after the epilogue
+ * following their transfer.
+ */
+public class TransferScheduler implements IStoppable {
+  private static final Logger log = getLogger(TransferScheduler.class);
+  private final long delayMs;
+  private final int maxPending;
+  private final CopyOnWriteArrayList<Lane> lanes = new CopyOnWriteArrayList<>();
+  private final AtomicReference<Status> status = new AtomicReference<>(Status.running);
+  private final Map<String, Integer> concurrencies = new HashMap<>();
+  private final Subject<Void, Void> shutdownProducer = BufferUntilSubscriber.create();
+  private final Observable<Void> sharedShutdownEvents = shutdownProducer.share();
+
+  @Autowired(required = false)
+  private MetricsRegistry metrics = new MetricsRegistry();
+
+  /** @param delayMs minimum delay between epilogues while a lane is busy */
+  public TransferScheduler(final long delayMs) {
+    this(delayMs, 64);
+  }
+
+  /** @param maxPending number of enqueued transfers over which new ones are asked to wait */
+  public TransferScheduler(final long delayMs, final int maxPending) {
+    log.info("epilogue delay:{} ms, max pending transfers:{}", delayMs, maxPending);
+    this.delayMs = delayMs;
+    this.maxPending = maxPending;
+  }
+
+  /** registry of the lane meters, set before creating lanes */
+  public void setMetrics(final MetricsRegistry metrics) {
+    this.metrics = metrics;
+  }
+
+  /** concurrency overrides per provider code, in the form 's3=8,ftp=2' */
+  public void setConcurrencies(final String concurrencies) {
+    if (isBlank(concurrencies)) {
+      return;
+    }
+    for (final String entry : concurrencies.split(",")) {
+      final String[] kv = entry.split("=");
+      this.concurrencies.put(kv[0].trim(), Integer.valueOf(kv[1].trim()));
+    }
+  }
+
+  /** concurrency of the given provider code */
+  public int concurrency(final String code, final int defaultConcurrency) {
+    return concurrencies.getOrDefault(code, defaultConcurrency);
+  }
+
+  /** Creates a lane terminating its batches with the given epilogue. */
+  public <T, R> Lane<T> createLane(final int concurrency, final Supplier<Observable<R>> epilogue) {
+    return createLane("lane" + lanes.size(), concurrency, epilogue);
+  }
+
+  /** Creates a lane without epilogue. */
+  public <T> Lane<T> createLane(final int concurrency) {
+    return createLane("lane" + lanes.size(), concurrency);
+  }
+
+  /** Creates a lane terminating its batches with the given epilogue, named in the metrics. */
+  public <T, R> Lane<T> createLane(
+      final String name, final int concurrency, final Supplier<Observable<R>> epilogue) {
+    final Lane<T> lane = new Lane<>(name, concurrency, Optional.of(epilogue));
+    lanes.add(lane);
+    return lane;
+  }
+
+  /** Creates a lane without epilogue, named in the metrics. */
+  public <T> Lane<T> createLane(final String name, final int concurrency) {
+    final Lane<T> lane = new Lane<>(name, concurrency, Optional.empty());
+    lanes.add(lane);
+    return lane;
+  }
+
+  /**
+   * Removes the lane, as when its provider goes away. The running transfers are executed till their
+   * end, followed by the epilogue. The pending ones are just terminated with 'complete' signal.
+   */
+  public void removeLane(final Lane<?> lane) {
+    if (lane != null && lanes.remove(lane)) {
+      lane.close();
+    }
+  }
+
+  /**
+   * Stop gracefully the service. The running transfers are executed till their end, followed by
+   * their epilogue. The pending ones are just terminated with 'complete' signal.
+   */
+  @Override
+  public Observable<Void> stop() {
+    log.debug("shutting down transfer scheduler...");
+    if (status.compareAndSet(Status.running, Status.stopping)) {
+      if (lanes.isEmpty()) {
+        stopped();
+      }
+      lanes.forEach(Lane::drain);
+    }
+    return sharedShutdownEvents;
+  }
+
+  private void stopped() {
+    if (status.get() == Status.stopping && lanes.stream().allMatch(Lane::isIdle)) {
+      if (status.compareAndSet(Status.stopping, Status.stopped)) {
+        log.info("transfer scheduler stopped");
+        shutdownProducer.onCompleted();
+      }
+    }
+  }
+
+  enum Status {
+    running,
+    stopping,
+    stopped
+  }
+
+  private static class Job<T> {
+    private final Object key;
+    private final Observable<T> observable;
+    private final Subscriber<? super T> subscriber;
+    private final long enqueuedNanos = System.nanoTime();
+
+    private Job(Object key, Observable<T> observable, Subscriber<? super T> subscriber) {
+      this.key = key;
+      this.observable = observable;
+      this.subscriber = subscriber;
+    }
+  }
+
+  public class Lane<T> implements Func1<Observable<T>, Observable<T>> {
+    private final int concurrency;
+    private final Optional<? extends Supplier<? extends Observable<?>>> epilogue;
+    private final LinkedList<Job<T>> pending = new LinkedList<>();
+    private final Set<Object> runningKeys = new HashSet<>();
+    private final List<Subscriber<? super Boolean>> waiters = new LinkedList<>();
+    private List<Subscriber<? super T>> awaiting = new ArrayList<>();
+    private int running = 0;
+    private volatile boolean closed = false;
+    private boolean dirty = false;
+    private boolean epilogueRunning = false;
+    private long lastEpilogue = System.currentTimeMillis();
+    private final Timer waitTimer;
+    private final List<Meter> meters = new ArrayList<>();
+
+    private Lane(
+        final String name,
+        final int concurrency,
+        final Optional<? extends Supplier<? extends Observable<?>>> epilogue) {
+      this.concurrency = Math.max(1, concurrency);
+      this.epilogue = epilogue;
+      meters.add(metrics.gauge("transfer.pending", this::pending, "lane", name));
+      meters.add(metrics.gauge("transfer.running", this::running, "lane", name));
+      waitTimer = metrics.timer("transfer.wait", "lane", name);
+      meters.add(waitTimer);
+    }
+
+    /** the lane accepts transfers until the scheduler stops or the lane is removed */
+    private boolean accepting() {
+      return status.get() == Status.running && !closed;
+    }
+
+    private void close() {
+      closed = true;
+      meters.forEach(metrics::remove);
+      drain();
+    }
+
+    private synchronized int pending() {
+      return pending.size();
+    }
+
+    private synchronized int running() {
+      return running;
+    }
+
+    /** Enqueue the transfer, it runs when the lane has room. */
+    @Override
+    public Observable<T> call(final Observable<T> enqueable) {
+      return call(new Object(), enqueable);
+    }
+
+    /** Enqueue the transfer, it never runs along with another one with the same key. */
+    public Observable<T> call(final Object key, final Observable<T> enqueable) {
+      if (!accepting()) {
+        log.info("service {}, lane closed:{}", status.get(), closed);
+        return Observable.empty();
+      }
+      return Observable.create(
+          subscriber -> {
+            synchronized (this) {
+              pending.add(new Job<>(key, enqueable, subscriber));
+            }
+            drain();
+          });
+    }
+
+    /** Emits once the lane can accept more transfers. */
+    public Observable<Boolean> whenReady() {
+      return Observable.create(
+          subscriber -> {
+            synchronized (this) {
+              if (pending.size() >= maxPending && accepting()) {
+                waiters.add(subscriber);
+                return;
+              }
+            }
+            subscriber.onNext(true);
+            subscriber.onCompleted();
+          });
+    }
+
+    private synchronized boolean isIdle() {
+      return running == 0 && !epilogueRunning && !dirty && pending.isEmpty();
+    }
+
+    private boolean due() {
+      return lastEpilogue + delayMs < System.currentTimeMillis();
+    }
+
+    /** Start as many transfers as possible, or the epilogue when it is time. */
+    private void drain() {
+      final List<Job<T>> toStart = new ArrayList<>();
+      final List<Job<T>> toCancel = new ArrayList<>();
+      final List<Subscriber<? super Boolean>> toSignal = new ArrayList<>();
+      List<Subscriber<? super T>> covered = null;
+      synchronized (this) {
+        if (!accepting()) {
+          toCancel.addAll(pending);
+          pending.clear();
+        }
+        if (!epilogueRunning) {
+          final boolean batchOver = pending.isEmpty() || due() || !accepting();
+          if (running == 0 && dirty && batchOver) {
+            epilogueRunning = true;
+            dirty = false;
+            covered = awaiting;
+            awaiting = new ArrayList<>();
+          } else if (!(dirty && due())) {
+            for (final Iterator<Job<T>> it = pending.iterator();
+                it.hasNext() && running < concurrency;
+                ) {
+              final Job<T> job = it.next();
+              if (runningKeys.add(job.key)) {
+                it.remove();
+                running++;
+                toStart.add(job);
+              }
+            }
+          }
+        }
+        if (!accepting()) {
+          toSignal.addAll(waiters);
+          waiters.clear();
+        }
+        while (!waiters.isEmpty() && pending.size() + toSignal.size() < maxPending) {
+          toSignal.add(waiters.remove(0));
+        }
+      }
+      toCancel.forEach(job -> job.subscriber.onCompleted());
+      toSignal.forEach(
+          subscriber -> {
+            subscriber.onNext(true);
+            subscriber.onCompleted();
+          });
+      toStart.forEach(this::start);
+      if (covered != null) {
+        runEpilogue(covered);
+      }
+      stopped();
+    }
+
+    private void start(final Job<T> job) {
+      waitTimer.record(System.nanoTime() - job.enqueuedNanos, TimeUnit.NANOSECONDS);
+      job.observable
+          .subscribeOn(Schedulers.io())
+          .subscribe(
+              job.subscriber::onNext,
+              err -> {
+                try {
+                  job.subscriber.onError(err);
+                } catch (Exception e) {
+                  log.warn(e.getMessage(), e);
+                }
+                finished(job, false);
+              },
+              () -> finished(job, true));
+    }
+
+    private void finished(final Job<T> job, final boolean success) {
+      final boolean complete;
+      synchronized (this) {
+        running--;
+        runningKeys.remove(job.key);
+        complete = success && !epilogue.isPresent();
+        if (epilogue.isPresent()) {
+          dirty = true;
+          if (success) {
+            awaiting.add(job.subscriber);
+          }
+        }
+      }
+      if (complete) {
+        job.subscriber.onCompleted();
+      }
+      drain();
+    }
+
+    private void runEpilogue(final List<Subscriber<? super T>> covered) {
+      log.trace("run epilogue for transfers:{}", covered.size());
+      epilogue
+          .get()
+          .get()
+          .subscribe(
+              empty(),
+              err -> {
+                epilogueDone();
+                covered.forEach(subscriber -> subscriber.onError(err));
+                drain();
+              },
+              () -> {
+                epilogueDone();
+                covered.forEach(Subscriber::onCompleted);
+                drain();
+              });
+    }
+
+    private synchronized void epilogueDone() {
+      epilogueRunning = false;
+      lastEpilogue = System.currentTimeMillis();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ubicrypt.core.dto.VClock;
+
+/**
+ * Reads the flat array of device/counter pairs, or the map of counters by device written by the
+ * previous versions, as in {"map":{"12":3}}.
+ */
+public class VClockDeserializer extends StdDeserializer<VClock> {
+  public VClockDeserializer(Class<?> vc) {
+    super(vc);
+  }
+
+  @Override
+  public VClock deserialize(JsonParser p, DeserializationContext ctxt)
+      throws IOException, JsonProcessingException {
+    try {
+      if (p.getCurrentToken() == JsonToken.START_ARRAY) {
+        return VClock.fromArray(readPairs(p));
+      }
+      if (p.getCurrentToken() == JsonToken.START_OBJECT) {
+        return VClock.fromMap(readLegacy(p));
+      }
+    } catch (IllegalArgumentException e) {
+      throw JsonMappingException.from(p, e.getMessage(), e);
+    }
+    return (VClock) ctxt.handleUnexpectedToken(VClock.class, p);
+  }
+
+  private static long[] readPairs(JsonParser p) throws IOException {
+    long[] pairs = new long[8];
+    int size = 0;
+    while (p.nextToken() != JsonToken.END_ARRAY) {
+      if (size == pairs.length) {
+        pairs = Arrays.copyOf(pairs, size * 2);
+      }
+      pairs[size++] = p.getLongValue();
+    }
+    return Arrays.copyOf(pairs, size);
+  }
+
+  private static Map<Integer, Long> readLegacy(JsonParser p) throws IOException {
+    final Map<Integer, Long> ret = new HashMap<>();
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = p.getCurrentName();
+      p.nextToken();
+      if (!"map".equals(field)) {
+        p.skipChildren();
+        continue;
+      }
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        final int device = Integer.parseInt(p.getCurrentName());
+        p.nextToken();
+        ret.put(device, p.getLongValue());
+      }
+    }
+    return ret;
+  }
+}
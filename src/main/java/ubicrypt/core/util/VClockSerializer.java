@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+import ubicrypt.core.dto.VClock;
+
+/** writes the clock as a flat array of device/counter pairs */
+public class VClockSerializer extends StdSerializer<VClock> {
+  public VClockSerializer(Class<VClock> t) {
+    super(t);
+  }
+
+  @Override
+  public void serialize(VClock value, JsonGenerator gen, SerializerProvider provider)
+      throws IOException {
+    final long[] pairs = value.toArray();
+    gen.writeArray(pairs, 0, pairs.length);
+  }
+}
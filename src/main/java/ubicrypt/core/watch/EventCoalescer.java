@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.watch;
+
+import org.slf4j.Logger;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+import rx.Scheduler;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Coalesces the file system events of each path until the path has been quiet for a while, then
+ * emits the settled events as one batch. The last event of a path wins, except that a delete
+ * followed by a create is an update, and a create followed by a delete is nothing at all. A delete
+ * and a create settled together are a rename when they refer to the same file. Time is read from
+ * the scheduler running the flushes, so a test scheduler drives the coalescer deterministically.
+ */
+class EventCoalescer {
+  private static final Logger log = getLogger(EventCoalescer.class);
+  private final ConcurrentHashMap<Path, Pending> pending = new ConcurrentHashMap<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+  private final long quietMs;
+  private final Scheduler scheduler;
+  private final Scheduler.Worker worker;
+  private final BiPredicate<Path, Path> sameFile;
+  private final Consumer<List<PathEvent>> emitter;
+
+  /**
+   * @param quietMs time without events after which the events of a path are emitted
+   * @param scheduler runs the flushes and tells the time
+   * @param sameFile tells whether a deleted and a created path are the same file
+   * @param emitter receives the batches of settled events
+   */
+  EventCoalescer(
+      final long quietMs,
+      final Scheduler scheduler,
+      final BiPredicate<Path, Path> sameFile,
+      final Consumer<List<PathEvent>> emitter) {
+    this.quietMs = quietMs;
+    this.scheduler = scheduler;
+    this.worker = scheduler.createWorker();
+    this.sameFile = sameFile;
+    this.emitter = emitter;
+  }
+
+  static PathEvent.Event merge(final PathEvent.Event previous, final PathEvent.Event next) {
+    if (previous == null || previous == next) {
+      return next;
+    }
+    switch (previous) {
+      case create:
+        //a file created and deleted in the same window never existed
+        return next == PathEvent.Event.delete ? null : PathEvent.Event.create;
+      case delete:
+        return PathEvent.Event.update;
+      default:
+        return next == PathEvent.Event.delete ? PathEvent.Event.delete : PathEvent.Event.update;
+    }
+  }
+
+  void offer(final PathEvent.Event event, final Path path) {
+    final long deadline = scheduler.now() + quietMs;
+    pending.compute(
+        path,
+        (key, previous) -> {
+          final PathEvent.Event merged = merge(previous == null ? null : previous.event, event);
+          return merged == null ? null : new Pending(merged, deadline);
+        });
+    schedule(quietMs);
+  }
+
+  /** emits the events of the paths quiet since the quiet period */
+  synchronized void flush() {
+    scheduled.set(false);
+    final long now = scheduler.now();
+    final List<PathEvent> creates = new ArrayList<>();
+    final List<PathEvent> deletes = new ArrayList<>();
+    final List<PathEvent> batch = new ArrayList<>();
+    long next = Long.MAX_VALUE;
+    for (final Map.Entry<Path, Pending> entry : pending.entrySet()) {
+      final Pending value = entry.getValue();
+      if (value.deadline > now) {
+        next = Math.min(next, value.deadline);
+        continue;
+      }
+      if (!pending.remove(entry.getKey(), value)) {
+        //changed meanwhile, it is settled later
+        continue;
+      }
+      final PathEvent event = new PathEvent(value.event, entry.getKey());
+      switch (value.event) {
+        case create:
+          creates.add(event);
+          break;
+        case delete:
+          deletes.add(event);
+          break;
+        default:
+          batch.add(event);
+      }
+    }
+    for (final PathEvent create : creates) {
+      final Iterator<PathEvent> it = deletes.iterator();
+      PathEvent renamed = null;
+      while (it.hasNext()) {
+        final PathEvent delete = it.next();
+        if (sameFile.test(delete.getPath(), create.getPath())) {
+          it.remove();
+          renamed = new PathEvent(create.getPath(), delete.getPath());
+          break;
+        }
+      }
+      batch.add(renamed != null ? renamed : create);
+    }
+    batch.addAll(deletes);
+    try {
+      if (!batch.isEmpty()) {
+        log.debug("settled {} file system events", batch.size());
+        emitter.accept(batch);
+      }
+    } catch (final Exception e) {
+      log.error(e.getMessage(), e);
+    } finally {
+      if (next != Long.MAX_VALUE) {
+        schedule(Math.max(1, next - now));
+      }
+    }
+  }
+
+  int getPending() {
+    return pending.size();
+  }
+
+  private void schedule(final long delayMs) {
+    if (scheduled.compareAndSet(false, true)) {
+      worker.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static class Pending {
+    final PathEvent.Event event;
+    final long deadline;
+
+    Pending(final PathEvent.Event event, final long deadline) {
+      this.event = event;
+      this.deadline = deadline;
+    }
+  }
+}
@@ -13,6 +13,8 @@
  */
 package ubicrypt.core.watch;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
@@ -22,10 +24,20 @@ public class PathEvent {
 
   private final Event event;
   private final Path path;
+  /** previous path of a renamed file */
+  private final Path from;
 
   public PathEvent(final Event event, final Path path) {
     this.event = event;
     this.path = path;
+    this.from = null;
+  }
+
+  /** file renamed */
+  public PathEvent(final Path path, final Path from) {
+    this.event = Event.rename;
+    this.path = path;
+    this.from = from;
   }
 
   public Event getEvent() {
@@ -36,17 +48,44 @@ public class PathEvent {
     return path;
   }
 
+  public Path getFrom() {
+    return from;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final PathEvent that = (PathEvent) o;
+    return new EqualsBuilder()
+        .append(event, that.event)
+        .append(path, that.path)
+        .append(from, that.from)
+        .isEquals();
+  }
+
+  @Override
+  public int hashCode() {
+    return new HashCodeBuilder(17, 37).append(event).append(path).append(from).toHashCode();
+  }
+
   @Override
   public String toString() {
     return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
         .append("event", event)
         .append("path", path)
+        .append("from", from)
         .toString();
   }
 
   enum Event {
     create,
     update,
-    delete
+    delete,
+    rename
   }
 }
@@ -13,11 +13,13 @@
  */
 package ubicrypt.core.watch;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 import rx.subjects.PublishSubject;
 
@@ -25,8 +27,9 @@ import rx.subjects.PublishSubject;
 public class WatchConf {
 
   @Bean
-  public WatcherBroadcaster watcher(final Path basePath) throws IOException {
-    return new WatcherBroadcaster(basePath);
+  public WatcherBroadcaster watcher(
+      final Path basePath, @Value("${watcher.quietMs:200}") final long quietMs) throws IOException {
+    return new WatcherBroadcaster(basePath, quietMs);
   }
 
   @Bean
@@ -35,7 +38,7 @@ public class WatchConf {
   }
 
   @Bean
-  public PublishSubject<PathEvent> pathStream() {
+  public PublishSubject<List<PathEvent>> pathStream() {
     return PublishSubject.create();
   }
 }
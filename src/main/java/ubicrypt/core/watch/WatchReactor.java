@@ -16,6 +16,9 @@ package ubicrypt.core.watch;
 import org.slf4j.Logger;
 
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -33,7 +36,7 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 public class WatchReactor {
   private static final Logger log = getLogger(WatchReactor.class);
-  @Inject PublishSubject<PathEvent> pathStream;
+  @Inject PublishSubject<List<PathEvent>> pathStream;
   @Inject IFileCommander fileCommander;
   @Inject Path basePath;
   @Resource private Subject<FileEvent, FileEvent> fileEvents;
@@ -56,46 +59,94 @@ public class WatchReactor {
               }
             });
     //react to filesystem changes
-    pathStream.subscribe(
-        pathEvent -> {
-          log.debug("incoming {}", pathEvent);
-          try {
-            switch (pathEvent.getEvent()) {
-              case create:
-                fileCommander
-                    .addFile(pathEvent.getPath())
-                    .flatMap(Tuple2::getT2)
-                    .onErrorResumeNext(
-                        err -> {
-                          if (err instanceof AlreadyManagedException) {
-                            return fileCommander.updateFile(pathEvent.getPath());
-                          }
-                          return Observable.error(err);
-                        })
-                    .subscribe(
-                        res -> log.info("add/update file:{}, result:{}", pathEvent.getPath(), res),
-                        err -> log.error("error event:", pathEvent, err));
-                break;
-              case update:
-                fileCommander
-                    .updateFile(pathEvent.getPath())
-                    .subscribe(
-                        res -> log.info("update file:{}, result:{}", pathEvent.getPath(), res),
-                        err -> log.error("error event:", pathEvent, err));
-                break;
-              case delete:
-                fileCommander
-                    .deleteFile(pathEvent.getPath())
-                    .subscribe(
-                        res -> log.info("remove file:{}, result:{}", pathEvent.getPath(), res),
-                        err -> log.error("error event:", pathEvent, err));
-                break;
-            }
-          } catch (final Exception e) {
-            log.error("error on path event:{}", pathEvent.getPath(), e);
-          }
-        },
-        err -> log.error(err.getMessage(), err));
+    pathStream.subscribe(this::onPathEvents, err -> log.error(err.getMessage(), err));
     log.info("file change reactor started");
   }
+
+  /** updates and deletes of the same batch are submitted together */
+  private void onPathEvents(final List<PathEvent> events) {
+    final Map<PathEvent.Event, List<Path>> paths =
+        events
+            .stream()
+            .collect(
+                Collectors.groupingBy(
+                    PathEvent::getEvent,
+                    Collectors.mapping(PathEvent::getPath, Collectors.toList())));
+    if (paths.containsKey(PathEvent.Event.update)) {
+      fileCommander
+          .updateFiles(paths.get(PathEvent.Event.update))
+          .lastOrDefault(null)
+          .subscribe(
+              res -> log.info("update files:{}, result:{}", paths.get(PathEvent.Event.update), res),
+              err -> log.error("error updating files", err));
+    }
+    if (paths.containsKey(PathEvent.Event.delete)) {
+      fileCommander
+          .deleteFiles(paths.get(PathEvent.Event.delete))
+          .lastOrDefault(null)
+          .subscribe(
+              res -> log.info("remove files:{}, result:{}", paths.get(PathEvent.Event.delete), res),
+              err -> log.error("error deleting files", err));
+    }
+    events
+        .stream()
+        .filter(
+            event ->
+                event.getEvent() == PathEvent.Event.create
+                    || event.getEvent() == PathEvent.Event.rename)
+        .forEach(this::onPathEvent);
+  }
+
+  private void onPathEvent(final PathEvent pathEvent) {
+    log.debug("incoming {}", pathEvent);
+    try {
+      switch (pathEvent.getEvent()) {
+        case create:
+          add(pathEvent.getPath())
+              .subscribe(
+                  res -> log.info("add/update file:{}, result:{}", pathEvent.getPath(), res),
+                  err -> log.error("error event:", pathEvent, err));
+          break;
+        case rename:
+          //the file keeps its id and version history, other devices see it moving
+          fileCommander
+              .moveFile(pathEvent.getFrom(), pathEvent.getPath())
+              .lastOrDefault(false)
+              .onErrorResumeNext(
+                  err -> {
+                    //the new path is already managed, or holds another file: track it there
+                    log.info("can't move file:{}, {}", pathEvent.getFrom(), err.getMessage());
+                    return fileCommander
+                        .deleteFile(pathEvent.getFrom())
+                        .lastOrDefault(false)
+                        .onErrorReturn(e -> false)
+                        .flatMap(deleted -> add(pathEvent.getPath()));
+                  })
+              .subscribe(
+                  res ->
+                      log.info(
+                          "rename file:{} to:{}, result:{}",
+                          pathEvent.getFrom(),
+                          pathEvent.getPath(),
+                          res),
+                  err -> log.error("error event:", pathEvent, err));
+          break;
+      }
+    } catch (final Exception e) {
+      log.error("error on path event:{}", pathEvent.getPath(), e);
+    }
+  }
+
+  private Observable<Boolean> add(final Path path) {
+    return fileCommander
+        .addFile(path)
+        .flatMap(Tuple2::getT2)
+        .onErrorResumeNext(
+            err -> {
+              if (err instanceof AlreadyManagedException) {
+                return fileCommander.updateFile(path);
+              }
+              return Observable.error(err);
+            });
+  }
 }
@@ -29,11 +29,12 @@ import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.HashMap;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -45,27 +46,30 @@ import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.inject.Inject;
 
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
 import rx.subjects.PublishSubject;
 import rx.subjects.Subject;
-import ubicrypt.core.Utils;
 import ubicrypt.core.dto.LocalConfig;
 import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.util.ContentHash;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
 public class WatcherBroadcaster {
+  public static final long defaultQuietMs = 200;
   private static final Logger log = LoggerFactory.getLogger(WatcherBroadcaster.class);
   final WatchService watchService = FileSystems.getDefault().newWatchService();
   private final AtomicBoolean filesChanging = new AtomicBoolean(false);
   private final ScheduledExecutorService executorService = new ScheduledThreadPoolExecutor(10);
   private final Path basePath;
   private final Map<WatchKey, Path> watchers = new ConcurrentHashMap<>();
-  private final HashMap<Path, Long> fileLastmodified = new HashMap<>();
-  private final List<Path> deletes = new CopyOnWriteArrayList();
+  private final Map<Path, Long> fileLastmodified = new ConcurrentHashMap<>();
+  private final EventCoalescer coalescer;
   @Inject LocalConfig localConfig;
-  @Inject PublishSubject<PathEvent> pathStream;
+  @Inject PublishSubject<List<PathEvent>> pathStream;
 
   @Resource
   @Qualifier("synchProcessing")
@@ -89,20 +93,32 @@ public class WatcherBroadcaster {
       };
 
   public WatcherBroadcaster(final Path basePath) throws IOException {
+    this(basePath, defaultQuietMs);
+  }
+
+  /** @param quietMs time without events after which the events of a file are dispatched */
+  public WatcherBroadcaster(final Path basePath, final long quietMs) throws IOException {
+    this.basePath = basePath;
+    this.coalescer =
+        new EventCoalescer(
+            quietMs, Schedulers.from(executorService), this::sameFile, this::dispatch);
+  }
+
+  /** @param scheduler runs the dispatch of the settled events, and tells the time */
+  WatcherBroadcaster(final Path basePath, final long quietMs, final Scheduler scheduler)
+      throws IOException {
     this.basePath = basePath;
+    this.coalescer = new EventCoalescer(quietMs, scheduler, this::sameFile, this::dispatch);
   }
 
   /** register parent folder's file */
   private void registerFileFolders() {
     localConfig
         .getLocalFiles()
+        .folders()
         .stream()
-        .filter(Utils.trackedFile)
-        .map(LocalFile::getPath)
         .map(basePath::resolve)
-        .filter(Files::isRegularFile)
-        .map(path -> path.toFile().getParentFile().toPath())
-        .distinct()
+        .filter(Files::isDirectory)
         .forEach(register);
   }
 
@@ -167,44 +183,64 @@ public class WatcherBroadcaster {
 
   void filterDeleteThenCreate(final PathEvent.Event event, final Path path) {
     if (event == PathEvent.Event.delete) {
-      deletes.add(path);
-      executorService.schedule(
-          () -> {
-            if (!deletes.contains(path)) {
-              dispatch(PathEvent.Event.update, path);
-              return;
-            }
-            deletes.remove(path);
-            dispatch(PathEvent.Event.delete, path);
-          },
-          10,
-          TimeUnit.MILLISECONDS);
-    } else {
-      if (!deletes.contains(path)) {
-        dispatch(event, path);
-        return;
+      fileLastmodified.remove(path);
+    }
+    coalescer.offer(event, path);
+  }
+
+  /** dispatches the settled events of tracked files, paths are relative to the base path */
+  void dispatch(final List<PathEvent> events) {
+    final List<PathEvent> batch = new ArrayList<>(events.size());
+    for (final PathEvent event : events) {
+      if (event.getEvent() == PathEvent.Event.rename) {
+        final boolean from = localConfig.getLocalFiles().getByPath(event.getFrom()).isPresent();
+        final boolean to = isTracked(event.getPath());
+        if (from && to) {
+          batch.add(
+              new PathEvent(basePath.resolve(event.getPath()), basePath.resolve(event.getFrom())));
+        } else if (from) {
+          batch.add(new PathEvent(PathEvent.Event.delete, basePath.resolve(event.getFrom())));
+        } else if (to) {
+          batch.add(new PathEvent(PathEvent.Event.create, basePath.resolve(event.getPath())));
+        }
+        continue;
+      }
+      if (isTracked(event.getPath())) {
+        batch.add(new PathEvent(event.getEvent(), basePath.resolve(event.getPath())));
       }
-      deletes.remove(path);
+    }
+    if (!batch.isEmpty()) {
+      pathStream.onNext(batch);
     }
   }
 
-  void dispatch(final PathEvent.Event event, final Path path) {
-    if (localConfig.getTrackedFolders().stream().filter(path::startsWith).findFirst().isPresent()) {
+  /** the path is a tracked file, or a new file in a tracked folder */
+  private boolean isTracked(final Path path) {
+    if (localConfig.getTrackedFolders().covers(path)) {
       final Path resolve = basePath.resolve(path);
       if (Files.isDirectory(resolve)) {
         register.accept(resolve);
-        return;
+        return false;
       }
-      pathStream.onNext(new PathEvent(event, resolve));
-      return;
+      return true;
     }
-    if (localConfig
-        .getLocalFiles()
-        .stream()
-        .filter(file -> file.getPath().equals(path))
-        .findFirst()
-        .isPresent()) {
-      pathStream.onNext(new PathEvent(event, basePath.resolve(path)));
+    return localConfig.getLocalFiles().getByPath(path).isPresent();
+  }
+
+  /**
+   * the created file is the deleted one, moved. Freed inodes are reused right away, so size and
+   * modified time have to match as well
+   */
+  private boolean sameFile(final Path deleted, final Path created) {
+    final Optional<LocalFile> file = localConfig.getLocalFiles().getByPath(deleted);
+    if (!file.isPresent() || file.get().getFileKey() == null) {
+      return false;
+    }
+    try {
+      return ContentHash.matches(
+          file.get(), Files.readAttributes(basePath.resolve(created), BasicFileAttributes.class));
+    } catch (final IOException e) {
+      return false;
     }
   }
 
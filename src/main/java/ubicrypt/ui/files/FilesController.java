@@ -13,8 +13,6 @@
  */
 package ubicrypt.ui.files;
 
-import com.google.common.base.Throwables;
-
 import org.slf4j.Logger;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -55,7 +53,6 @@ import ubicrypt.core.dto.LocalFile;
 import ubicrypt.core.dto.UbiFile;
 import ubicrypt.core.events.SyncBeginEvent;
 import ubicrypt.core.events.SynchDoneEvent;
-import ubicrypt.core.exp.AlreadyManagedException;
 import ubicrypt.core.provider.FileEvent;
 import ubicrypt.core.util.ClassMatcher;
 import ubicrypt.core.util.FileInSync;
@@ -67,7 +64,6 @@ import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.substringAfterLast;
 import static org.apache.commons.lang3.StringUtils.substringBefore;
 import static org.slf4j.LoggerFactory.getLogger;
-import static rx.functions.Actions.empty;
 import static ubicrypt.core.util.SupplierExp.silent;
 import static ubicrypt.ui.UItils.emptyPath;
 import static ubicrypt.ui.UItils.searchFile;
@@ -82,38 +78,27 @@ public class FilesController implements Initializable, ApplicationContextAware {
   @Inject FileFacade fileCommander;
   @Resource Path basePath;
   private final Consumer<List<File>> filesAdder =
-      files ->
-          Observable.merge(
-                  files
-                      .stream()
-                      .map(
-                          file -> {
-                            log.debug("adding file:{}", file);
-                            final Path relPath = basePath.relativize(file.toPath());
-                            return fileCommander
-                                .addFile(file.toPath())
-                                .flatMap(
-                                    tupla -> {
-                                      addFiles(relPath.iterator(), basePath, root, tupla.getT1());
-                                      return tupla.getT2();
-                                    })
-                                .onErrorReturn(
-                                    err -> {
-                                      if (err instanceof AlreadyManagedException) {
-                                        return true;
-                                      }
-                                      throw Throwables.propagate(err);
-                                    })
-                                .doOnNext(
-                                    result -> log.info("file:{} add result:{}", file, result));
-                          })
-                      .collect(toList()))
-              .subscribe(
-                  empty(),
-                  err -> {
-                    log.error(err.getMessage(), err);
-                  },
-                  () -> {});
+      files -> {
+        log.debug("adding {} files", files.size());
+        fileCommander
+            .addFiles(files.stream().map(File::toPath).collect(toList()))
+            .flatMap(
+                tupla -> {
+                  tupla
+                      .getT1()
+                      .forEach(
+                          localFile ->
+                              addFiles(localFile.getPath().iterator(), basePath, root, localFile));
+                  return tupla.getT2();
+                })
+            .last()
+            .subscribe(
+                progress -> log.info("files add result:{}", progress),
+                err -> {
+                  log.error(err.getMessage(), err);
+                },
+                () -> {});
+      };
   private final Consumer<Path> folderAdder =
       fromFolder -> {
         DirectoryChooser dc = new DirectoryChooser();
@@ -214,9 +199,7 @@ public class FilesController implements Initializable, ApplicationContextAware {
                 optfile =
                     localConfig
                         .getLocalFiles()
-                        .stream()
-                        .filter(fileEvent.getFile()::equals)
-                        .findFirst()
+                        .get(fileEvent.getFile())
                         .map(
                             fe ->
                                 addFiles(
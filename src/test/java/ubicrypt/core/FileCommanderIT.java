@@ -45,6 +45,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -66,6 +67,7 @@ import ubicrypt.core.dto.LocalConfig;
 import ubicrypt.core.dto.LocalFile;
 import ubicrypt.core.dto.RemoteConfig;
 import ubicrypt.core.dto.UbiFile;
+import ubicrypt.core.dto.VClock;
 import ubicrypt.core.local.LocalRepository;
 import ubicrypt.core.local.OnNewLocal;
 import ubicrypt.core.provider.FileEvent;
@@ -75,9 +77,10 @@ import ubicrypt.core.provider.ProviderLifeCycle;
 import ubicrypt.core.provider.ProviderStatus;
 import ubicrypt.core.provider.lock.AcquirerReleaser;
 import ubicrypt.core.util.InProgressTracker;
-import ubicrypt.core.util.QueueLiner;
+import ubicrypt.core.util.TransferScheduler;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(
@@ -110,7 +113,7 @@ public class FileCommanderIT implements ApplicationContextAware {
         .toBlocking()
         .first();
     Files.createDirectories(localRepository.getBasePath());
-    LogManager.getLogger(QueueLiner.class).setLevel(Level.TRACE);
+    LogManager.getLogger(TransferScheduler.class).setLevel(Level.TRACE);
   }
 
   @After
@@ -199,6 +202,36 @@ public class FileCommanderIT implements ApplicationContextAware {
     assertThat(localConfig.getLocalFiles().iterator().next().isDeleted()).isTrue();
   }
 
+  @Test
+  public void moveFile() throws Exception {
+    addFile();
+    final LocalFile file = localConfig.getLocalFiles().iterator().next();
+    final UUID id = file.getId();
+    final VClock vclock = (VClock) file.getVclock().clone();
+    final Path from = localRepository.getBasePath().resolve(file.getPath());
+    final Path to = localRepository.getBasePath().resolve("moved-" + file.getPath());
+    Files.move(from, to);
+    fileCommander.moveFile(from, to).toBlocking().lastOrDefault(null);
+    assertThat(localConfig.getLocalFiles()).hasSize(1);
+    assertThat(localConfig.getLocalFiles().getByPath(Paths.get("moved-" + file.getPath())))
+        .contains(file);
+    assertThat(file.getId()).isEqualTo(id);
+    assertThat(file.getVclock().compare(vclock)).isEqualTo(VClock.Comparison.newer);
+  }
+
+  @Test
+  public void moveFileOtherContent() throws Exception {
+    addFile();
+    final LocalFile file = localConfig.getLocalFiles().iterator().next();
+    final Path from = localRepository.getBasePath().resolve(file.getPath());
+    final Path to = localRepository.getBasePath().resolve("other-" + file.getPath());
+    Files.delete(from);
+    Files.write(to, "another content".getBytes());
+    assertThatThrownBy(() -> fileCommander.moveFile(from, to).toBlocking().lastOrDefault(null))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(localConfig.getLocalFiles().getByPath(file.getPath())).contains(file);
+  }
+
   @Test
   public void updateFile() throws Exception {
     addFile();
@@ -336,9 +369,9 @@ public class FileCommanderIT implements ApplicationContextAware {
     }
 
     @Bean
-    public QueueLiner queueLiner(
+    public TransferScheduler transferScheduler(
         @Value("${saveConfIntervalMs:10000}") final Long saveConfIntervalMs) {
-      return new QueueLiner(saveConfIntervalMs);
+      return new TransferScheduler(saveConfIntervalMs);
     }
   }
 }
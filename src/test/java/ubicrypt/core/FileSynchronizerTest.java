@@ -19,8 +19,10 @@ import com.google.common.collect.Multimap;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -304,4 +306,21 @@ public class FileSynchronizerTest {
 
   @Test
   public void updateLocal() throws Exception {}
+
+  @Test
+  public void localChangesReconciled() throws Exception {
+    final LocalConfig config = new LocalConfig();
+    final LocalFile file = new LocalFile();
+    config.getLocalFiles().add(file);
+    final Set<UUID> unsynced = config.drainUnsynced();
+    assertThat(unsynced).containsOnly(file.getId());
+    assertThat(config.drainUnsynced()).isEmpty();
+    assertThat(new FileSynchronizer().changedIds(Collections.emptyList(), unsynced))
+        .contains(unsynced);
+    file.incrementVclock(deviceId);
+    assertThat(config.drainUnsynced()).containsOnly(file.getId());
+    //a failed synchronization gives them back
+    config.unsynced(unsynced);
+    assertThat(config.drainUnsynced()).containsOnly(file.getId());
+  }
 }
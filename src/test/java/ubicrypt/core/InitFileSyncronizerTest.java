@@ -17,7 +17,9 @@ import org.junit.Test;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
+import rx.Observable;
 import rx.subjects.PublishSubject;
+import ubicrypt.core.dto.LocalFile;
 import ubicrypt.core.provider.ProviderEvent;
 import ubicrypt.core.provider.ProviderStatus;
 
@@ -56,4 +58,38 @@ public class InitFileSyncronizerTest {
     sleep(50);
     assertThat(invokedCounter.get()).isEqualTo(2);
   }
+
+  @Test
+  public void modifiedAfterActivation() throws Exception {
+    AtomicInteger invokedCounter = new AtomicInteger(0);
+    InitFileSyncronizer fileSyncronizer = new InitFileSyncronizer();
+    final PublishSubject<ProviderEvent> providerEvent = PublishSubject.create();
+    final PublishSubject<LocalFile> modified = PublishSubject.create();
+    fileSyncronizer.setProviderEvent(providerEvent);
+    fileSyncronizer.setInitLocalFiles(
+        new InitLocalFiles() {
+          @Override
+          public Observable<LocalFile> modified() {
+            return modified;
+          }
+        });
+    fileSyncronizer.setFileSynchronizer(
+        subscriber -> {
+          invokedCounter.incrementAndGet();
+          subscriber.onNext(true);
+          subscriber.onCompleted();
+        });
+    fileSyncronizer.init();
+
+    //found before the activation, reconciled by its sync
+    modified.onNext(new LocalFile());
+    sleep(50);
+    assertThat(invokedCounter.get()).isEqualTo(0);
+    providerEvent.onNext(new ProviderEvent(ProviderStatus.active, null));
+    sleep(50);
+    assertThat(invokedCounter.get()).isEqualTo(1);
+    modified.onNext(new LocalFile());
+    sleep(1500);
+    assertThat(invokedCounter.get()).isEqualTo(2);
+  }
 }
@@ -13,6 +13,8 @@
  */
 package ubicrypt.core;
 
+import com.google.common.hash.Hashing;
+
 import org.junit.Test;
 
 import java.nio.file.Files;
@@ -21,8 +23,12 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import rx.observers.TestSubscriber;
+import ubicrypt.core.dto.LocalConfig;
 import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.dto.VClock;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -44,4 +50,76 @@ public class InitLocalFilesTest {
         .isEqualTo(Files.readAttributes(file, BasicFileAttributes.class).size());
     Files.delete(file);
   }
+
+  @Test
+  public void sameSizeModified() throws Exception {
+    final Path file =
+        Files.write(TestUtils.tmp.resolve(UUID.randomUUID().toString()), "abc".getBytes());
+    assertThat(accept(file, "xyz").getVclock().compare(new VClock()))
+        .isEqualTo(VClock.Comparison.newer);
+    Files.delete(file);
+  }
+
+  @Test
+  public void sameSizeSameContent() throws Exception {
+    final Path file =
+        Files.write(TestUtils.tmp.resolve(UUID.randomUUID().toString()), "abc".getBytes());
+    final LocalFile ufile = accept(file, "abc");
+    assertThat(ufile.getVclock().compare(new VClock())).isEqualTo(VClock.Comparison.equal);
+    assertThat(ufile.getFileKey()).isNotNull();
+    Files.delete(file);
+  }
+
+  @Test
+  public void scan() throws Exception {
+    final Path folder =
+        Files.createDirectories(TestUtils.tmp.resolve(UUID.randomUUID().toString()));
+    final Path file = Files.write(folder.resolve("file"), "abc".getBytes());
+    final LocalConfig config = new LocalConfig();
+    final LocalFile modified = new LocalFile();
+    modified.setPath(TestUtils.tmp.relativize(file));
+    modified.setLastModified(Instant.MIN);
+    config.getLocalFiles().add(modified);
+    final LocalFile missing = new LocalFile();
+    missing.setPath(Paths.get(UUID.randomUUID().toString(), "file"));
+    config.getLocalFiles().add(missing);
+    final InitLocalFiles fi = new InitLocalFiles();
+    fi.basePath = TestUtils.tmp;
+    fi.localConfig = config;
+    fi.deviceId = 1;
+    final TestSubscriber<LocalFile> modifiedFiles = new TestSubscriber<>();
+    final TestSubscriber<BatchProgress> progress = new TestSubscriber<>();
+    fi.progress().subscribe(progress);
+    fi.modified().subscribe(modifiedFiles);
+    config.drainUnsynced();
+    fi.init();
+    progress.awaitTerminalEvent(5, TimeUnit.SECONDS);
+    modifiedFiles.awaitTerminalEvent(5, TimeUnit.SECONDS);
+    //files are not replayed to a subscriber coming after the scan
+    final TestSubscriber<LocalFile> late = new TestSubscriber<>();
+    fi.modified().subscribe(late);
+    late.assertNoValues();
+    late.assertCompleted();
+    assertThat(progress.getOnNextEvents()).last().matches(BatchProgress::isDone);
+    assertThat(progress.getOnNextEvents().get(0).getTotal()).isEqualTo(2);
+    assertThat(modifiedFiles.getOnNextEvents()).containsOnly(modified, missing);
+    assertThat(missing.isDeleted()).isTrue();
+    assertThat(config.drainUnsynced()).contains(modified.getId(), missing.getId());
+    assertThat(modified.getSize()).isEqualTo(3);
+    Files.delete(file);
+    Files.delete(folder);
+  }
+
+  private static LocalFile accept(final Path file, final String recorded) {
+    final LocalFile ufile = new LocalFile();
+    ufile.setPath(file.getFileName());
+    ufile.setLastModified(Instant.MIN);
+    ufile.setSize(recorded.length());
+    ufile.setSha1(Hashing.sha1().hashBytes(recorded.getBytes()).asBytes());
+    final InitLocalFiles fi = new InitLocalFiles();
+    fi.basePath = TestUtils.tmp;
+    fi.localConfig = new LocalConfig();
+    fi.accept(ufile);
+    return ufile;
+  }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import ubicrypt.core.dto.LocalConfig;
+import ubicrypt.core.dto.LocalConfigDelta;
+import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.dto.VClock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LocalConfigJournalTest {
+  private Path snapshot;
+  private LocalConfigJournal journal;
+  private LocalConfig config;
+  private LocalFile a;
+  private LocalFile b;
+
+  @Before
+  public void setUp() throws Exception {
+    TestUtils.createDirs();
+    snapshot = TestUtils.tmp.resolve("config");
+    journal = new LocalConfigJournal(snapshot);
+    config = new LocalConfig();
+    a = file("a");
+    b = file("b");
+    config.getLocalFiles().add(a);
+    config.getLocalFiles().add(b);
+    config.setGeneration(1);
+    journal.compact(Utils.marshall(config), 1);
+    config.drainChanges();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    journal.close();
+    TestUtils.deleteDirs();
+  }
+
+  @Test
+  public void changes() throws Exception {
+    assertThat(config.drainChanges()).isEmpty();
+    a.setSize(10);
+    b.incrementVclock(1);
+    assertThat(config.drainChanges()).containsOnly(a.getId(), b.getId());
+    config.getLocalFiles().remove(a);
+    a.setSize(20);
+    assertThat(config.drainChanges()).containsOnly(a.getId());
+    //files not held by the config are not tracked
+    final LocalFile c = file("c");
+    c.setSize(1);
+    assertThat(config.drainChanges()).isEmpty();
+  }
+
+  @Test
+  public void replay() throws Exception {
+    a.setSize(10);
+    a.incrementVclock(1);
+    config.getLocalFiles().remove(b);
+    final LocalFile c = file("c");
+    config.getLocalFiles().add(c);
+    append(false);
+    config.getTrackedFolders().add(Paths.get("folder"));
+    append(true);
+
+    final LocalConfig loaded = load();
+    assertThat(LocalConfigJournal.replay(snapshot, loaded, record -> record)).isEqualTo(2);
+    assertThat(loaded.getLocalFiles()).containsOnly(a, c);
+    assertThat(loaded.getLocalFiles().getByPath(Paths.get("a")).get().getSize()).isEqualTo(10);
+    assertThat(loaded.getLocalFiles().getById(a.getId()).get().getVclock().compare(a.getVclock()))
+        .isEqualTo(VClock.Comparison.equal);
+    assertThat(loaded.getTrackedFolders()).containsOnly(Paths.get("folder"));
+    assertThat(loaded.drainChanges()).isEmpty();
+  }
+
+  @Test
+  public void tornRecord() throws Exception {
+    a.setSize(10);
+    append(false);
+    b.setSize(20);
+    append(false);
+    final Path file = TestUtils.tmp.resolve("config.journal");
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+    final LocalConfig loaded = load();
+    assertThat(LocalConfigJournal.replay(snapshot, loaded, record -> record)).isEqualTo(1);
+    assertThat(loaded.getLocalFiles().getById(a.getId()).get().getSize()).isEqualTo(10);
+    assertThat(loaded.getLocalFiles().getById(b.getId()).get().getSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void staleJournal() throws Exception {
+    a.setSize(10);
+    append(false);
+    //snapshot of the next generation without the journal reset, as after a crash
+    final LocalConfig next = load();
+    next.setGeneration(2);
+    Files.write(snapshot, Utils.marshall(next));
+    assertThat(LocalConfigJournal.replay(snapshot, load(), record -> record)).isZero();
+  }
+
+  @Test
+  public void compact() throws Exception {
+    a.setSize(10);
+    append(false);
+    assertThat(journal.size()).isGreaterThan(0);
+    config.setGeneration(2);
+    journal.compact(Utils.marshall(config), 2);
+    assertThat(journal.size()).isZero();
+    final LocalConfig loaded = load();
+    assertThat(loaded.getGeneration()).isEqualTo(2);
+    assertThat(LocalConfigJournal.replay(snapshot, loaded, record -> record)).isZero();
+    assertThat(loaded.getLocalFiles().getById(a.getId()).get().getSize()).isEqualTo(10);
+    assertThat(Files.exists(TestUtils.tmp.resolve("config.tmp"))).isFalse();
+  }
+
+  @Test
+  public void failedCompaction() throws Exception {
+    //the temporary files cannot be created where a directory is in the way
+    final Path snapshotTmp = Files.createDirectory(TestUtils.tmp.resolve("config.tmp"));
+    config.setGeneration(2);
+    assertThatThrownBy(() -> journal.compact(Utils.marshall(config), 2))
+        .isInstanceOf(IOException.class);
+    //the previous journal is still in use
+    assertThat(journal.isOpen()).isTrue();
+    a.setSize(10);
+    append(false);
+    Files.delete(snapshotTmp);
+
+    final Path journalTmp = Files.createDirectory(TestUtils.tmp.resolve("config.journal.tmp"));
+    assertThatThrownBy(() -> journal.compact(Utils.marshall(config), 2))
+        .isInstanceOf(IOException.class);
+    assertThat(journal.isOpen()).isFalse();
+    assertThat(journal.size()).isZero();
+    Files.delete(journalTmp);
+
+    journal.compact(Utils.marshall(config), 2);
+    assertThat(journal.isOpen()).isTrue();
+    b.setSize(20);
+    append(false);
+    final LocalConfig loaded = load();
+    assertThat(LocalConfigJournal.replay(snapshot, loaded, record -> record)).isEqualTo(1);
+    assertThat(loaded.getLocalFiles().getById(a.getId()).get().getSize()).isEqualTo(10);
+    assertThat(loaded.getLocalFiles().getById(b.getId()).get().getSize()).isEqualTo(20);
+  }
+
+  private void append(final boolean settings) throws Exception {
+    journal.append(Utils.marshall(LocalConfigDelta.of(config, config.drainChanges(), settings)));
+  }
+
+  private LocalConfig load() throws Exception {
+    return Utils.unmarshall(Files.readAllBytes(snapshot), LocalConfig.class);
+  }
+
+  private static LocalFile file(final String path) {
+    final LocalFile file = new LocalFile();
+    file.setPath(Paths.get(path));
+    return file;
+  }
+}
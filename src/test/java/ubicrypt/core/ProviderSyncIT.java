@@ -139,6 +139,7 @@ public class ProviderSyncIT {
     AcquirerReleaser acquirer = Observable.create(opt.get().getAcquirer()).toBlocking().first();
     assertThat(acquirer).isNotNull();
     assertThat(acquirer.getRemoteConfig().getRemoteFiles()).hasSize(20);
-    assertThat(Files.list(tmp3)).hasSize(22);
+    //files, conf, lock and the file index
+    assertThat(Files.list(tmp3)).hasSize(23);
   }
 }
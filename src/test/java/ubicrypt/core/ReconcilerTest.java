@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.dto.UbiFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ReconcilerTest {
+  private final IRepository local = mock(IRepository.class);
+  private final IRepository repo1 = mock(IRepository.class);
+  private final IRepository repo2 = mock(IRepository.class);
+  private final IRepository repo3 = mock(IRepository.class);
+
+  private static <T extends UbiFile> T file(final T file, final UUID id, final int... devices) {
+    file.setId(id);
+    IntStream.of(devices).forEach(device -> file.getVclock().increment(device));
+    return file;
+  }
+
+  @Test
+  public void actions() throws Exception {
+    final UUID uuid = UUID.randomUUID();
+    final FileProvenience winner = new FileProvenience(file(new LocalFile(), uuid, 1, 1), local);
+    final Multimap<UUID, FileProvenience> all = LinkedHashMultimap.create();
+    all.put(uuid, winner);
+    all.put(uuid, new FileProvenience(file(new RemoteFile(), uuid, 1), repo1));
+    all.put(uuid, new FileProvenience(file(new RemoteFile(), uuid, 1, 1), repo2));
+
+    final Reconciliation reconciliation = new Reconciler().call(all);
+    assertThat(reconciliation.getConflicts().isEmpty()).isTrue();
+    assertThat(reconciliation.getWinners()).hasSize(1);
+    assertThat(reconciliation.getWinners().get(uuid)).isSameAs(winner);
+    assertThat(reconciliation.action(uuid, local)).isEqualTo(Reconciliation.Action.none);
+    assertThat(reconciliation.action(uuid, repo1)).isEqualTo(Reconciliation.Action.update);
+    assertThat(reconciliation.action(uuid, repo2)).isEqualTo(Reconciliation.Action.none);
+    assertThat(reconciliation.action(uuid, repo3)).isEqualTo(Reconciliation.Action.insert);
+  }
+
+  @Test
+  public void errorNeedsUpdate() throws Exception {
+    final UUID uuid = UUID.randomUUID();
+    final RemoteFile rfile = file(new RemoteFile(), uuid, 1);
+    rfile.setError(true);
+    final Multimap<UUID, FileProvenience> all = LinkedHashMultimap.create();
+    all.put(uuid, new FileProvenience(file(new LocalFile(), uuid, 1), local));
+    all.put(uuid, new FileProvenience(rfile, repo1));
+
+    final Reconciliation reconciliation = new Reconciler().call(all);
+    assertThat(reconciliation.getWinners().get(uuid).getOrigin()).isSameAs(local);
+    assertThat(reconciliation.action(uuid, repo1)).isEqualTo(Reconciliation.Action.update);
+  }
+
+  @Test
+  public void conflict() throws Exception {
+    final UUID uuid = UUID.randomUUID();
+    final Multimap<UUID, FileProvenience> all = LinkedHashMultimap.create();
+    all.put(uuid, new FileProvenience(file(new LocalFile(), uuid, 1), local));
+    all.put(uuid, new FileProvenience(file(new RemoteFile(), uuid, 2), repo1));
+    //newer than both, still conflicting with the local one
+    all.put(uuid, new FileProvenience(file(new RemoteFile(), uuid, 2, 2), repo2));
+
+    final Reconciliation reconciliation = new Reconciler().call(all);
+    assertThat(reconciliation.getWinners()).isEmpty();
+    assertThat(reconciliation.getConflicts().get(uuid)).hasSize(3);
+    assertThat(reconciliation.action(uuid, repo3)).isEqualTo(Reconciliation.Action.none);
+  }
+
+  @Test
+  public void parallel() throws Exception {
+    final Multimap<UUID, FileProvenience> all = LinkedHashMultimap.create();
+    IntStream.range(0, 1000)
+        .forEach(
+            i -> {
+              final UUID uuid = UUID.randomUUID();
+              all.put(uuid, new FileProvenience(file(new LocalFile(), uuid, 1), local));
+              all.put(
+                  uuid,
+                  new FileProvenience(file(new RemoteFile(), uuid, i % 3 == 0 ? 2 : 1), repo1));
+            });
+    final Reconciliation sequential = new Reconciler().call(all);
+    final Reconciliation parallel = new Reconciler(true).call(all);
+    assertThat(parallel.getWinners()).isEqualTo(sequential.getWinners());
+    assertThat(parallel.getConflicts().keySet())
+        .containsOnlyElementsOf(sequential.getConflicts().keySet());
+    assertThat(parallel.getConflicts().size()).isEqualTo(sequential.getConflicts().size());
+    assertThat(sequential.getWinners()).hasSize(666);
+  }
+}
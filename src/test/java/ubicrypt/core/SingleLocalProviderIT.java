@@ -157,7 +157,8 @@ public class SingleLocalProviderIT {
             });
     assertThat(fileCounter.await(5, TimeUnit.SECONDS)).isTrue();
     sub.unsubscribe();
-    assertThat(Files.list(TestUtils.tmp2).count()).isEqualTo(12);
+    //files, conf, lock and the file index, written by the lane once the uploads are done
+    assertThat(TestUtils.awaitCount(TestUtils.tmp2, 13, 5000)).isEqualTo(13);
     //all files are processed
     assertThat(nums).isEmpty();
   }
@@ -176,7 +177,8 @@ public class SingleLocalProviderIT {
             });
 
     assertThat(fileCounter.await(5, TimeUnit.SECONDS)).isTrue();
-    assertThat(Files.list(TestUtils.tmp2).count()).isEqualTo(2);
+    //conf, lock and the file index
+    assertThat(Files.list(TestUtils.tmp2).count()).isEqualTo(3);
     assertThat(localConfig.getLocalFiles().stream().filter(LocalFile::isRemoved)).hasSize(10);
     ProviderHook hook = providerLifeCycle.currentlyActiveProviders().get(0);
     assertThat(
@@ -27,6 +27,7 @@ import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
 
 import ubicrypt.core.crypto.AESGCM;
 import ubicrypt.core.dto.Key;
@@ -78,6 +79,24 @@ public class TestUtils {
     deleteR(tmp2);
   }
 
+  /** number of entries in the directory, once it has reached the expected one or timed out */
+  public static long awaitCount(final Path dir, final long expected, final long timeoutMillis)
+      throws IOException, InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    long count = count(dir);
+    while (count != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      count = count(dir);
+    }
+    return count;
+  }
+
+  private static long count(final Path dir) throws IOException {
+    try (Stream<Path> list = Files.list(dir)) {
+      return list.count();
+    }
+  }
+
   public static void deleteR(final Path path) {
     try {
       if (!Files.isDirectory(path)) {
@@ -20,18 +20,23 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.SecureRandom;
 import java.time.Instant;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import ubicrypt.core.util.BufferPool;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static ubicrypt.core.Utils.ubiqFolder;
 
@@ -115,6 +120,49 @@ public class UtilsTest {
     }
   }
 
+  @Test
+  public void readChunks() throws Exception {
+    final byte[] content = new byte[3 * (1 << 16) + 100];
+    new SecureRandom().nextBytes(content);
+    final Path path = Files.createTempFile(TestUtils.tmp, "a", "b");
+    Utils.write(path, content).toBlocking().last();
+    final long allocated = BufferPool.shared.getAllocated();
+
+    final List<byte[]> chunks = Utils.read(path).toList().toBlocking().last();
+    assertThat(chunks).hasSize(4);
+    assertThat(chunks.get(3)).hasSize(100);
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    for (final byte[] chunk : chunks) {
+      bos.write(chunk);
+    }
+    assertThat(bos.toByteArray()).isEqualTo(content);
+    //buffers are recycled
+    assertThat(BufferPool.shared.getAllocated() - allocated).isLessThanOrEqualTo(1);
+    Files.delete(path);
+  }
+
+  @Test
+  public void readChunksHeld() throws Exception {
+    final byte[] content = new byte[10 * (1 << 16)];
+    new SecureRandom().nextBytes(content);
+    final Path path = Files.createTempFile(TestUtils.tmp, "a", "b");
+    Utils.write(path, content).toBlocking().last();
+    final List<BufferPool.Chunk> chunks = new CopyOnWriteArrayList<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    Utils.readChunks(path).subscribe(chunks::add, err -> {}, done::countDown);
+    Thread.sleep(200);
+    //chunks not released hold back the reader
+    assertThat(chunks).hasSize(4);
+    chunks.forEach(BufferPool.Chunk::release);
+    Thread.sleep(200);
+    assertThat(chunks).hasSize(8);
+    chunks.forEach(BufferPool.Chunk::release);
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(chunks).hasSize(10);
+    chunks.forEach(BufferPool.Chunk::release);
+    Files.delete(path);
+  }
+
   @Test
   public void instantSerialize() throws Exception {
     final String now = IOUtils.toString(Utils.marshall(Instant.now()));
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+import ubicrypt.core.Utils;
+import ubicrypt.core.dto.ChunkRef;
+import ubicrypt.core.dto.Compression;
+import ubicrypt.core.dto.FileIndex;
+import ubicrypt.core.dto.Key;
+import ubicrypt.core.dto.LocalConfig;
+import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.dto.RemoteConfig;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.dto.VClock;
+import ubicrypt.core.provider.file.FileConf;
+import ubicrypt.core.provider.file.FileProvider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryCodecTest {
+
+  private static LocalConfig localConfig(final int files) {
+    final LocalConfig config = new LocalConfig();
+    config.setGeneration(7);
+    final FileProvider provider = new FileProvider();
+    provider.setConf(new FileConf(Paths.get("/tmp/provider")));
+    config.getProviders().add(provider);
+    config.getTrackedFolders().add(Paths.get("docs"));
+    for (int i = 0; i < files; i++) {
+      final LocalFile file = new LocalFile();
+      file.setPath(Paths.get("docs", "folder" + i % 10, "file" + i));
+      file.setSize(i * 1000);
+      file.setSha1(new byte[] {1, 2, (byte) i});
+      file.setFileKey("(dev=801,ino=" + i + ")");
+      file.incrementVclock(-1234567);
+      file.setDeleted(i % 3 == 0);
+      config.getLocalFiles().add(file);
+    }
+    return config;
+  }
+
+  @Test
+  public void localConfig() throws Exception {
+    final LocalConfig config = localConfig(100);
+    final byte[] bytes = Utils.marshall(config);
+    assertThat(BinaryCodec.isBinary(bytes)).isTrue();
+    final LocalConfig config2 = Utils.unmarshall(bytes, LocalConfig.class);
+    assertThat(config2.getGeneration()).isEqualTo(7);
+    assertThat(config2.getProviders()).containsExactlyElementsOf(config.getProviders());
+    assertThat(config2.getTrackedFolders()).containsExactly(Paths.get("docs"));
+    assertThat(config2.getLocalFiles()).hasSize(100);
+    assertThat(config2.drainChanges()).isEmpty();
+    config
+        .getLocalFiles()
+        .forEach(
+            file -> {
+              final LocalFile file2 = config2.getLocalFiles().get(file).get();
+              assertThat(file2.getPath()).isEqualTo(file.getPath());
+              assertThat(file2.getSize()).isEqualTo(file.getSize());
+              assertThat(file2.getSha1()).isEqualTo(file.getSha1());
+              assertThat(file2.getFileKey()).isEqualTo(file.getFileKey());
+              assertThat(file2.getLastModified()).isEqualTo(file.getLastModified());
+              assertThat(file2.isDeleted()).isEqualTo(file.isDeleted());
+              assertThat(file2.isActive()).isTrue();
+              assertThat(file2.compare(file)).isEqualTo(VClock.Comparison.equal);
+            });
+  }
+
+  @Test
+  public void remoteConfig() throws Exception {
+    final RemoteConfig config = new RemoteConfig();
+    final RemoteFile file = new RemoteFile();
+    file.setPath(Paths.get("a", "b"));
+    file.setRemoteName("remote");
+    file.getKey().setCompression(Compression.fast);
+    final Key key = new Key(new byte[] {3, 4});
+    file.setChunks(
+        Arrays.asList(new ChunkRef("h1", "c1", key, 10), new ChunkRef("h2", "c1", key, 20)));
+    file.setLastModified(Instant.ofEpochSecond(-10, 5));
+    config.getRemoteFiles().add(file);
+    config.changed(file.getId());
+    config.changed(UUID.randomUUID());
+    config.setChunkSecret(new byte[] {9});
+    final RemoteFile index = new RemoteFile();
+    index.setRemoteName("index");
+    config.setIndexes(Arrays.asList(index));
+
+    final RemoteConfig config2 =
+        Utils.unmarshall(new ByteArrayInputStream(Utils.marshall(config)), RemoteConfig.class);
+    assertThat(config2.getSequence()).isEqualTo(2);
+    assertThat(config2.getChanges()).hasSize(2);
+    assertThat(config2.changedSince(1).get()).isEqualTo(config.changedSince(1).get());
+    assertThat(config2.getChunkSecret()).isEqualTo(new byte[] {9});
+    assertThat(config2.getIndexes()).extracting("remoteName").containsExactly("index");
+    assertThat(config2.getNext()).isNull();
+    final RemoteFile file2 = config2.getRemoteFiles().getByPath(Paths.get("a", "b")).get();
+    assertThat(file2.getRemoteName()).isEqualTo("remote");
+    assertThat(file2.getKey()).isEqualTo(file.getKey());
+    assertThat(file2.getChunks()).containsExactlyElementsOf(file.getChunks());
+    assertThat(file2.getLastModified()).isEqualTo(Instant.ofEpochSecond(-10, 5));
+  }
+
+  @Test
+  public void fileIndex() throws Exception {
+    final RemoteFile file = new RemoteFile();
+    file.setRemoteName("f");
+    final FileIndex index =
+        FileIndex.FileIndexBuilder.aFileIndex().addFile(file).withNextIndex(null).build();
+    final FileIndex index2 = Utils.unmarshall(Utils.marshall(index), FileIndex.class);
+    assertThat(index2.getFiles()).extracting("remoteName").containsExactly("f");
+    //as with smile, the default next index is kept
+    assertThat(index2.getNextIndex().getRemoteName()).isNull();
+  }
+
+  @Test
+  public void legacySmile() throws Exception {
+    final ObjectMapper smile = new ObjectMapper(new SmileFactory());
+    Utils.configureMapper(smile);
+    final LocalConfig config = localConfig(1000);
+    final byte[] legacy = smile.writeValueAsBytes(config);
+    final LocalConfig config2 =
+        Utils.unmarshall(new ByteArrayInputStream(legacy), LocalConfig.class);
+    assertThat(config2.getLocalFiles()).hasSize(1000);
+    assertThat(config2.getProviders()).hasSize(1);
+    assertThat(Utils.unmarshall(legacy, LocalConfig.class).getLocalFiles()).hasSize(1000);
+    //interned folders, varint clocks and raw bytes
+    assertThat(Utils.marshall(config).length).isLessThan(legacy.length * 2 / 3);
+  }
+
+  @Test(expected = StreamCorruptedException.class)
+  public void unknownVersion() throws Exception {
+    final byte[] bytes = BinaryCodec.encode(new FileIndex());
+    bytes[BinaryCodec.magic.length] = (byte) (BinaryCodec.version + 1);
+    BinaryCodec.decode(new ByteArrayInputStream(bytes), FileIndex.class);
+  }
+}
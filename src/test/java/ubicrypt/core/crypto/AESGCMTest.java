@@ -19,11 +19,14 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.Random;
 import java.util.zip.DeflaterInputStream;
 import java.util.zip.InflaterInputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static ubicrypt.core.crypto.AESGCM.decryptIs;
 import static ubicrypt.core.crypto.AESGCM.encryptIs;
+import static ubicrypt.core.crypto.AESGCM.encryptSingleStreamIs;
 
 public class AESGCMTest {
 
@@ -35,4 +38,39 @@ public class AESGCMTest {
     final InputStream decrypt2InputStream = decryptIs(key, new InflaterInputStream(cipherStream));
     Assertions.assertThat(IOUtils.toString(decrypt2InputStream)).isEqualTo("Ciao");
   }
+
+  @Test
+  public void singleStream() throws Exception {
+    final byte[] key = AESGCM.rndKey();
+    final InputStream cipherStream =
+        encryptSingleStreamIs(key, new ByteArrayInputStream("Ciao".getBytes()));
+    Assertions.assertThat(IOUtils.toString(decryptIs(key, cipherStream))).isEqualTo("Ciao");
+  }
+
+  @Test
+  public void selectEngine() throws Exception {
+    assertThat(AESGCM.selectEngine("jce")).isInstanceOf(JceGCMEngine.class);
+    assertThat(AESGCM.selectEngine("bc")).isInstanceOf(BouncyCastleGCMEngine.class);
+  }
+
+  @Test
+  public void enginesInteroperate() throws Exception {
+    final byte[] key = AESGCM.rndKey();
+    final byte[] plain = new byte[3 * SegmentedAESGCM.defaultSegmentSize / 2];
+    new Random().nextBytes(plain);
+    final GCMEngine previous = AESGCM.engine();
+    try {
+      AESGCM.setEngine(new BouncyCastleGCMEngine());
+      final byte[] bcCipher = IOUtils.toByteArray(encryptIs(key, new ByteArrayInputStream(plain)));
+      AESGCM.setEngine(new JceGCMEngine());
+      final byte[] jceCipher = IOUtils.toByteArray(encryptIs(key, new ByteArrayInputStream(plain)));
+      assertThat(IOUtils.toByteArray(decryptIs(key, new ByteArrayInputStream(bcCipher))))
+          .isEqualTo(plain);
+      AESGCM.setEngine(new BouncyCastleGCMEngine());
+      assertThat(IOUtils.toByteArray(decryptIs(key, new ByteArrayInputStream(jceCipher))))
+          .isEqualTo(plain);
+    } finally {
+      AESGCM.setEngine(previous);
+    }
+  }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.crypto;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static ubicrypt.core.crypto.SegmentedAESGCM.decrypt;
+import static ubicrypt.core.crypto.SegmentedAESGCM.encrypt;
+import static ubicrypt.core.crypto.SegmentedAESGCM.headerLength;
+import static ubicrypt.core.crypto.SegmentedAESGCM.tagLength;
+
+public class SegmentedAESGCMTest {
+  private static final int segmentSize = 64;
+  private final byte[] key = AESGCM.rndKey();
+
+  private static byte[] rnd(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  private byte[] encrypted(final byte[] plain) throws IOException {
+    return IOUtils.toByteArray(encrypt(key, new ByteArrayInputStream(plain), segmentSize));
+  }
+
+  private byte[] decrypted(final byte[] cipher) throws IOException {
+    return IOUtils.toByteArray(decrypt(key, new ByteArrayInputStream(cipher)));
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    for (final int size : new int[] {0, 1, segmentSize - 1, segmentSize, segmentSize + 1, 1000}) {
+      final byte[] plain = rnd(size);
+      final byte[] cipher = encrypted(plain);
+      final int segments = Math.max(1, (size + segmentSize - 1) / segmentSize);
+      assertThat(cipher).hasSize(headerLength + size + segments * tagLength);
+      assertThat(decrypted(cipher)).isEqualTo(plain);
+    }
+  }
+
+  @Test
+  public void defaultSegmentSize() throws Exception {
+    final byte[] plain = rnd(3 * SegmentedAESGCM.defaultSegmentSize + 10);
+    final byte[] cipher = IOUtils.toByteArray(encrypt(key, new ByteArrayInputStream(plain)));
+    assertThat(decrypted(cipher)).isEqualTo(plain);
+  }
+
+  @Test
+  public void range() throws Exception {
+    final byte[] plain = rnd(1000);
+    final byte[] cipher = encrypted(plain);
+    for (final int[] range : new int[][] {{0, 10}, {63, 2}, {64, 64}, {130, 500}, {990, 100}}) {
+      final byte[] part =
+          IOUtils.toByteArray(decrypt(key, new ByteArrayInputStream(cipher), range[0], range[1]));
+      assertThat(part)
+          .isEqualTo(Arrays.copyOfRange(plain, range[0], Math.min(1000, range[0] + range[1])));
+    }
+  }
+
+  @Test
+  public void tampered() throws Exception {
+    final byte[] cipher = encrypted(rnd(1000));
+    cipher[headerLength + segmentSize + 3] ^= 1;
+    assertFails(cipher);
+  }
+
+  @Test
+  public void truncated() throws Exception {
+    final byte[] cipher = encrypted(rnd(1000));
+    //drop the last segment, the previous one is not flagged as last
+    assertFails(Arrays.copyOf(cipher, headerLength + 2 * (segmentSize + tagLength)));
+    assertFails(Arrays.copyOf(cipher, headerLength));
+  }
+
+  @Test
+  public void reordered() throws Exception {
+    final byte[] cipher = encrypted(rnd(1000));
+    final int len = segmentSize + tagLength;
+    final byte[] first = Arrays.copyOfRange(cipher, headerLength, headerLength + len);
+    System.arraycopy(cipher, headerLength + len, cipher, headerLength, len);
+    System.arraycopy(first, 0, cipher, headerLength + len, len);
+    assertFails(cipher);
+  }
+
+  @Test
+  public void oversizedSegment() throws Exception {
+    final byte[] cipher = encrypted(rnd(100));
+    //segment size of the header, after magic and version
+    ByteBuffer.wrap(cipher).putInt(5, Integer.MAX_VALUE);
+    assertFails(cipher);
+  }
+
+  @Test
+  public void wrongKey() throws Exception {
+    final byte[] cipher = encrypted(rnd(100));
+    try {
+      IOUtils.toByteArray(decrypt(AESGCM.rndKey(), new ByteArrayInputStream(cipher)));
+      fail("wrong key must fail");
+    } catch (IOException e) {
+    }
+  }
+
+  private void assertFails(final byte[] cipher) {
+    try {
+      decrypted(cipher);
+      fail("corrupted stream must fail");
+    } catch (IOException e) {
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.Iterator;
+
+import ubicrypt.core.Utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileCatalogTest {
+
+  @Test
+  public void addLookup() throws Exception {
+    final FileCatalog<LocalFile> catalog = new FileCatalog<>();
+    final LocalFile file =
+        new LocalFile() {
+          {
+            setPath(Paths.get("a/b"));
+          }
+        };
+    assertThat(catalog.add(file)).isTrue();
+    assertThat(catalog.add(LocalFile.copy(file))).isFalse();
+    assertThat(catalog).hasSize(1);
+    assertThat(catalog.get(LocalFile.copy(file)).get()).isSameAs(file);
+    assertThat(catalog.getById(file.getId()).get()).isSameAs(file);
+    assertThat(catalog.getByPath(Paths.get("a/b")).get()).isSameAs(file);
+    assertThat(catalog.getByPath(Paths.get("a/c"))).isEmpty();
+  }
+
+  @Test
+  public void samePath() throws Exception {
+    final FileCatalog<LocalFile> catalog = new FileCatalog<>();
+    final LocalFile file =
+        new LocalFile() {
+          {
+            setPath(Paths.get("a/b"));
+            setSize(1);
+          }
+        };
+    final LocalFile file2 =
+        new LocalFile() {
+          {
+            setPath(Paths.get("a/b"));
+            setSize(2);
+          }
+        };
+    assertThat(catalog.add(file)).isTrue();
+    assertThat(catalog.add(file2)).isTrue();
+    assertThat(catalog).hasSize(2);
+    assertThat(catalog.getByPath(Paths.get("a/b")).get()).isSameAs(file);
+    assertThat(catalog.getAllByPath(Paths.get("a/b"))).containsExactly(file, file2);
+    catalog.remove(file2);
+    assertThat(catalog.getByPath(Paths.get("a/b")).get()).isSameAs(file);
+    catalog.add(file2);
+    catalog.remove(file);
+    assertThat(catalog.getByPath(Paths.get("a/b")).get()).isSameAs(file2);
+  }
+
+  @Test
+  public void addWithoutId() throws Exception {
+    final FileCatalog<LocalFile> catalog = new FileCatalog<>();
+    final LocalFile file = new LocalFile();
+    file.setId(null);
+    assertThat(catalog.add(file)).isFalse();
+    assertThat(catalog.add(null)).isFalse();
+    assertThat(catalog).isEmpty();
+  }
+
+  @Test
+  public void copyFromReindex() throws Exception {
+    final FileCatalog<LocalFile> catalog = new FileCatalog<>();
+    final LocalFile file =
+        new LocalFile() {
+          {
+            setPath(Paths.get("a/b"));
+          }
+        };
+    catalog.add(file);
+    final LocalFile other = LocalFile.copy(file);
+    other.setPath(Paths.get("c/d"));
+    file.copyFrom(other);
+    assertThat(catalog.getByPath(Paths.get("a/b"))).isEmpty();
+    assertThat(catalog.getByPath(Paths.get("c/d")).get()).isSameAs(file);
+    file.setPath(Paths.get("e"));
+    assertThat(catalog.getByPath(Paths.get("c/d"))).isEmpty();
+    assertThat(catalog.getByPath(Paths.get("e")).get()).isSameAs(file);
+  }
+
+  @Test
+  public void remove() throws Exception {
+    final FileCatalog<RemoteFile> catalog = new FileCatalog<>();
+    final RemoteFile file =
+        new RemoteFile() {
+          {
+            setPath(Paths.get("a"));
+          }
+        };
+    final RemoteFile file2 =
+        new RemoteFile() {
+          {
+            setPath(Paths.get("b"));
+          }
+        };
+    catalog.add(file);
+    catalog.add(file2);
+    assertThat(catalog.remove(RemoteFile.createFrom(file))).isTrue();
+    assertThat(catalog.getByPath(Paths.get("a"))).isEmpty();
+    assertThat(catalog.contains(file)).isFalse();
+    final Iterator<RemoteFile> it = catalog.iterator();
+    it.next();
+    it.remove();
+    assertThat(catalog).isEmpty();
+    assertThat(catalog.getByPath(Paths.get("b"))).isEmpty();
+    //detached files do not update the catalog anymore
+    file2.setPath(Paths.get("c"));
+    assertThat(catalog.getByPath(Paths.get("c"))).isEmpty();
+  }
+
+  @Test
+  public void folders() throws Exception {
+    final FileCatalog<LocalFile> catalog = new FileCatalog<>();
+    final LocalFile file =
+        new LocalFile() {
+          {
+            setPath(Paths.get("a/b"));
+          }
+        };
+    final LocalFile file2 =
+        new LocalFile() {
+          {
+            setPath(Paths.get("a/c/d"));
+          }
+        };
+    catalog.add(file);
+    catalog.add(file2);
+    assertThat(catalog.folders()).containsOnly(Paths.get("a"), Paths.get("a/c"));
+    file2.setPath(Paths.get("e"));
+    assertThat(catalog.folders()).containsOnly(Paths.get("a"), Paths.get(""));
+    catalog.remove(file);
+    assertThat(catalog.folders()).containsOnly(Paths.get(""));
+  }
+
+  @Test
+  public void marshall() throws Exception {
+    final LocalConfig config = new LocalConfig();
+    config
+        .getLocalFiles()
+        .add(
+            new LocalFile() {
+              {
+                setPath(Paths.get("a/b"));
+              }
+            });
+    final LocalConfig config2 = Utils.unmarshall(Utils.marshall(config), LocalConfig.class);
+    assertThat(config2.getLocalFiles()).hasSize(1);
+    assertThat(config2.getLocalFiles().getByPath(Paths.get("a/b"))).isPresent();
+  }
+}
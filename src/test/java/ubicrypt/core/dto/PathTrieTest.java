@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PathTrieTest {
+
+  @Test
+  public void aggregates() throws Exception {
+    final PathTrie<String> trie = new PathTrie<>();
+    assertThat(trie.put(Paths.get("a/b/c"), "c")).isNull();
+    trie.put(Paths.get("a/b/d"), "d");
+    trie.put(Paths.get("a/e"), "e");
+    trie.put(Paths.get("f"), "f");
+    assertThat(trie.get(Paths.get("a/b/c"))).contains("c");
+    assertThat(trie.get(Paths.get("a/b"))).isEmpty();
+    assertThat(trie.count(Paths.get("a"))).isEqualTo(3);
+    assertThat(trie.count(Paths.get(""))).isEqualTo(4);
+    assertThat(trie.values(Paths.get("a/b"))).containsOnly("c", "d");
+    assertThat(trie.folders(Paths.get("")))
+        .containsOnly(Paths.get(""), Paths.get("a"), Paths.get("a/b"));
+    assertThat(trie.put(Paths.get("a/b/c"), "c2")).isEqualTo("c");
+    assertThat(trie.count(Paths.get("a"))).isEqualTo(3);
+  }
+
+  @Test
+  public void removePrunes() throws Exception {
+    final PathTrie<String> trie = new PathTrie<>();
+    final String value = "c";
+    trie.put(Paths.get("a/b/c"), value);
+    assertThat(trie.remove(Paths.get("a/b/c"), new String("c"))).isFalse();
+    assertThat(trie.remove(Paths.get("a/b"), value)).isFalse();
+    assertThat(trie.remove(Paths.get("a/b/c"), value)).isTrue();
+    assertThat(trie.count(Paths.get(""))).isZero();
+    assertThat(trie.values(Paths.get(""))).isEmpty();
+    assertThat(trie.folders(Paths.get(""))).isEmpty();
+  }
+
+  @Test
+  public void manyValues() throws Exception {
+    final PathTrie<String> trie = new PathTrie<>();
+    final String c1 = "c1";
+    final String c2 = "c2";
+    assertThat(trie.add(Paths.get("a/c"), c1)).isTrue();
+    assertThat(trie.add(Paths.get("a/c"), c2)).isFalse();
+    assertThat(trie.add(Paths.get("a/c"), c2)).isFalse();
+    assertThat(trie.get(Paths.get("a/c"))).contains(c1);
+    assertThat(trie.getAll(Paths.get("a/c"))).containsExactly(c1, c2);
+    assertThat(trie.count(Paths.get("a"))).isEqualTo(2);
+    assertThat(trie.remove(Paths.get("a/c"), c1)).isTrue();
+    assertThat(trie.get(Paths.get("a/c"))).contains(c2);
+    assertThat(trie.count(Paths.get(""))).isEqualTo(1);
+    assertThat(trie.put(Paths.get("a/c"), c1)).isEqualTo(c2);
+    assertThat(trie.getAll(Paths.get("a/c"))).containsExactly(c1);
+    assertThat(trie.count(Paths.get(""))).isEqualTo(1);
+  }
+
+  @Test
+  public void covers() throws Exception {
+    final PathSet set = new PathSet();
+    assertThat(set.add(Paths.get("a/b"))).isTrue();
+    assertThat(set.add(Paths.get("a/b"))).isFalse();
+    assertThat(set.covers(Paths.get("a/b"))).isTrue();
+    assertThat(set.covers(Paths.get("a/b/c/d"))).isTrue();
+    assertThat(set.covers(Paths.get("a"))).isFalse();
+    assertThat(set.covers(Paths.get("a/bc"))).isFalse();
+    assertThat(set.covers(Paths.get("/a/b"))).isFalse();
+    set.add(Paths.get("/x"));
+    assertThat(set.covers(Paths.get("/x/y"))).isTrue();
+    assertThat(set).containsOnly(Paths.get("a/b"), Paths.get("/x"));
+    assertThat(set.remove(Paths.get("a/b"))).isTrue();
+    assertThat(set.covers(Paths.get("a/b/c"))).isFalse();
+    assertThat(set).hasSize(1);
+  }
+}
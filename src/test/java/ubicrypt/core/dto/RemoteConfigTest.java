@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.dto;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import ubicrypt.core.Utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RemoteConfigTest {
+
+  @Test
+  public void changedSince() throws Exception {
+    final RemoteConfig config = new RemoteConfig();
+    assertThat(config.changedSince(0).get()).isEmpty();
+    final UUID id1 = UUID.randomUUID();
+    final UUID id2 = UUID.randomUUID();
+    config.changed(id1);
+    config.changed(id2);
+    config.changed(id1);
+    assertThat(config.getSequence()).isEqualTo(3);
+    assertThat(config.changedSince(0).get()).containsOnly(id1, id2);
+    assertThat(config.changedSince(2).get()).containsOnly(id1);
+    assertThat(config.changedSince(3).get()).isEmpty();
+    //sequence from a config not seen yet
+    assertThat(config.changedSince(4)).isEmpty();
+  }
+
+  @Test
+  public void truncated() throws Exception {
+    final RemoteConfig config = new RemoteConfig();
+    IntStream.range(0, RemoteConfig.maxChanges + 10)
+        .forEach(i -> config.changed(UUID.randomUUID()));
+    assertThat(config.getChanges()).hasSize(RemoteConfig.maxChanges);
+    assertThat(config.changedSince(0)).isEmpty();
+    assertThat(config.changedSince(9)).isEmpty();
+    assertThat(config.changedSince(10).get()).hasSize(RemoteConfig.maxChanges);
+  }
+
+  @Test
+  public void marshall() throws Exception {
+    final RemoteConfig config = new RemoteConfig();
+    final UUID id = UUID.randomUUID();
+    config.changed(id);
+    final RemoteConfig config2 = Utils.unmarshall(Utils.marshall(config), RemoteConfig.class);
+    assertThat(config2.getSequence()).isEqualTo(1);
+    assertThat(config2.changedSince(0).get()).containsOnly(id);
+  }
+}
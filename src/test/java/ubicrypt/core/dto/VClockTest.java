@@ -13,9 +13,14 @@
  */
 package ubicrypt.core.dto;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.junit.Test;
 
+import ubicrypt.core.Utils;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 public class VClockTest {
   @Test
@@ -87,4 +92,45 @@ public class VClockTest {
     v1.increment(2);
     assertThat(v1.compare(v2)).isEqualTo(VClock.Comparison.newer);
   }
+
+  @Test
+  public void cloneCopyOnIncrement() throws Exception {
+    final VClock v1 = new VClock();
+    v1.increment(3);
+    final VClock v2 = (VClock) v1.clone();
+    v2.increment(1);
+    v2.increment(3);
+    assertThat(v1.toMap()).containsExactly(entry(3, 1L));
+    assertThat(v2.toMap()).containsExactly(entry(1, 1L), entry(3, 2L));
+    assertThat(v2.get(3)).isEqualTo(2);
+    assertThat(v2.get(2)).isEqualTo(0);
+  }
+
+  @Test
+  public void marshall() throws Exception {
+    final VClock v1 = new VClock();
+    v1.increment(5);
+    v1.increment(-3);
+    v1.increment(5);
+    assertThat(v1.toArray()).containsExactly(-3, 1, 5, 2);
+    final VClock v2 = Utils.unmarshall(Utils.marshall(v1), VClock.class);
+    assertThat(v1.compare(v2)).isEqualTo(VClock.Comparison.equal);
+    assertThat(v2.toMap()).isEqualTo(v1.toMap());
+  }
+
+  @Test
+  public void legacyFormat() throws Exception {
+    final ObjectMapper mapper = new ObjectMapper();
+    Utils.configureMapper(mapper);
+    final VClock vclock = mapper.readValue("{\"map\":{\"5\":2,\"-3\":1}}", VClock.class);
+    assertThat(vclock.toArray()).containsExactly(-3, 1, 5, 2);
+    assertThat(mapper.writeValueAsString(vclock)).isEqualTo("[-3,1,5,2]");
+    assertThat(mapper.readValue("[5,2,-3,1]", VClock.class).compare(vclock))
+        .isEqualTo(VClock.Comparison.equal);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void repeatedDevice() throws Exception {
+    VClock.fromArray(new long[] {1, 1, 1, 2});
+  }
 }
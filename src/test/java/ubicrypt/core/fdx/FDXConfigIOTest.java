@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.fdx;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import ubicrypt.core.dto.RemoteConfig;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.dto.VClock;
+import ubicrypt.core.provider.UbiProvider;
+import ubicrypt.core.provider.lock.ObjectIO;
+import ubicrypt.core.util.Persist;
+
+import static java.util.stream.IntStream.range;
+import static org.assertj.core.api.Assertions.assertThat;
+import static rx.Observable.create;
+import static ubicrypt.core.TestUtils.createDirs;
+import static ubicrypt.core.TestUtils.deleteDirs;
+import static ubicrypt.core.TestUtils.fileProvider;
+import static ubicrypt.core.TestUtils.tmp;
+
+public class FDXConfigIOTest {
+  private final AtomicInteger puts = new AtomicInteger();
+  private Persist persist;
+  private UbiProvider provider;
+
+  @Before
+  public void setUp() throws Exception {
+    deleteDirs();
+    createDirs();
+    provider = fileProvider(tmp);
+    persist =
+        new Persist(provider) {
+          {
+            setEncrypt(false);
+          }
+
+          @Override
+          public Observable<Boolean> put(Object obj, RemoteFile descriptor) {
+            puts.incrementAndGet();
+            return super.put(obj, descriptor);
+          }
+        };
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    deleteDirs();
+  }
+
+  private FDXConfigIO configIO() {
+    return new FDXConfigIO(persist, provider.getConfFile(), provider.getIndexListFile(), 5);
+  }
+
+  private RemoteConfig config12() {
+    final RemoteConfig config = new RemoteConfig();
+    range(0, 12)
+        .forEach(
+            i -> {
+              final RemoteFile rf = new RemoteFile();
+              config.getRemoteFiles().add(rf);
+              config.changed(rf.getId());
+            });
+    return config;
+  }
+
+  @Test
+  public void saveLoad() throws Exception {
+    final FDXConfigIO io = configIO();
+    assertThat(io.apply(config12()).toBlocking().last()).isTrue();
+    //3 indexes plus the config
+    assertThat(puts.get()).isEqualTo(4);
+
+    final RemoteConfig head =
+        persist.getObject(provider.getConfFile(), RemoteConfig.class).toBlocking().last();
+    assertThat(head.getRemoteFiles()).isEmpty();
+    assertThat(head.getIndexes()).hasSize(3);
+    assertThat(head.getSequence()).isEqualTo(12);
+
+    final RemoteConfig loaded = create(configIO()).toBlocking().last();
+    assertThat(loaded.getRemoteFiles()).hasSize(12);
+    assertThat(loaded.getIndexes()).hasSize(3);
+  }
+
+  @Test
+  public void saveOnlyChangedIndex() throws Exception {
+    configIO().apply(config12()).toBlocking().last();
+    final FDXConfigIO io = configIO();
+    final RemoteConfig config = create(io).toBlocking().last();
+    puts.set(0);
+
+    final RemoteFile rf = config.getRemoteFiles().iterator().next();
+    rf.getVclock().increment(1);
+    config.changed(rf.getId());
+    io.apply(config).toBlocking().last();
+    assertThat(puts.get()).isEqualTo(2);
+
+    //nothing changed
+    puts.set(0);
+    io.apply(config).toBlocking().last();
+    assertThat(puts.get()).isEqualTo(1);
+
+    final RemoteConfig loaded = create(configIO()).toBlocking().last();
+    assertThat(loaded.getRemoteFiles().get(rf).get().getVclock().compare(rf.getVclock()))
+        .isEqualTo(VClock.Comparison.equal);
+  }
+
+  @Test
+  public void readInlineConfig() throws Exception {
+    new ObjectIO<>(persist, provider.getConfFile(), RemoteConfig.class)
+        .apply(config12())
+        .toBlocking()
+        .last();
+    final FDXConfigIO io = configIO();
+    final RemoteConfig config = create(io).toBlocking().last();
+    assertThat(config.getRemoteFiles()).hasSize(12);
+
+    io.apply(config).toBlocking().last();
+    final RemoteConfig head =
+        persist.getObject(provider.getConfFile(), RemoteConfig.class).toBlocking().last();
+    assertThat(head.getRemoteFiles()).isEmpty();
+    assertThat(create(configIO()).toBlocking().last().getRemoteFiles()).hasSize(12);
+  }
+
+  @Test
+  public void removeFiles() throws Exception {
+    final FDXConfigIO io = configIO();
+    final RemoteConfig config = config12();
+    io.apply(config).toBlocking().last();
+    //empty the first index
+    range(0, 5)
+        .forEach(i -> config.getRemoteFiles().remove(config.getRemoteFiles().iterator().next()));
+    io.apply(config).toBlocking().last();
+
+    final RemoteConfig loaded = create(configIO()).toBlocking().last();
+    assertThat(loaded.getRemoteFiles()).hasSize(7);
+    assertThat(loaded.getRemoteFiles()).containsOnlyElementsOf(config.getRemoteFiles());
+    //the chain is still consistent
+    assertThat(
+            create(new FDXLoader(persist, loaded.getIndexes().get(0)))
+                .map(fdx -> fdx.getFiles().size())
+                .reduce(0, Integer::sum)
+                .toBlocking()
+                .last())
+        .isEqualTo(7);
+  }
+}
@@ -50,7 +50,7 @@ import ubicrypt.core.provider.lock.AcquirerReleaser;
 import ubicrypt.core.provider.lock.ObjectIO;
 import ubicrypt.core.remote.RemoteRepository;
 import ubicrypt.core.util.Persist;
-import ubicrypt.core.util.QueueLiner;
+import ubicrypt.core.util.TransferScheduler;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -115,7 +115,7 @@ public class LocalRepositoryTest {
                 subscriber.onCompleted();
               }
             });
-    repo.setQueueLiner(new QueueLiner(100));
+    repo.setTransferScheduler(new TransferScheduler(100));
     repo.setFileEvents(PublishSubject.create());
     repo.init();
     assertThat(lr.save(new FileProvenience(file, repo)).toBlocking().last()).isFalse();
@@ -175,7 +175,7 @@ public class LocalRepositoryTest {
             //            setSerializer(ser);
           }
         };
-    repo.setQueueLiner(new QueueLiner(100));
+    repo.setTransferScheduler(new TransferScheduler(100));
     repo.init();
     assertThat(IOUtils.readLines(repo.get(rf).toBlocking().first())).contains("ciao");
 
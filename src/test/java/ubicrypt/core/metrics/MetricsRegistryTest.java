@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsRegistryTest {
+
+  @Test
+  public void sameMeter() throws Exception {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final Counter counter = registry.counter("a", "k1", "v1", "k2", "v2");
+    assertThat(registry.counter("a", "k2", "v2", "k1", "v1")).isSameAs(counter);
+    assertThat(registry.counter("a", "k1", "other")).isNotSameAs(counter);
+    assertThat(registry.getMeters()).hasSize(2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void typeClash() throws Exception {
+    final MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("a");
+    registry.timer("a");
+  }
+
+  @Test
+  public void gaugeReplaced() throws Exception {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final Gauge gauge = registry.gauge("g", () -> 1);
+    assertThat(gauge.getValue()).isEqualTo(1d);
+    registry.gauge("g", () -> 2);
+    assertThat(gauge.getValue()).isEqualTo(2d);
+  }
+
+  @Test
+  public void timer() throws Exception {
+    final Timer timer = new MetricsRegistry().timer("t");
+    timer.record(3, TimeUnit.MILLISECONDS);
+    timer.record(2, TimeUnit.MINUTES);
+    assertThat(timer.getCount()).isEqualTo(2);
+    assertThat(timer.getMax(TimeUnit.MINUTES)).isEqualTo(2d);
+    final long[] buckets = timer.getBucketCounts();
+    assertThat(buckets[1]).isEqualTo(1);
+    assertThat(buckets[buckets.length - 1]).isEqualTo(1);
+    assertThat(timer.time(Observable.just(1, 2)).toList().toBlocking().single())
+        .containsExactly(1, 2);
+    assertThat(timer.getCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void countStream() throws Exception {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final List<Meter> registered = new ArrayList<>();
+    registry.addListener(registered::add);
+    IOUtils.toByteArray(registry.count(new ByteArrayInputStream(new byte[1000]), "bytes"));
+    assertThat(registry.counter("bytes").getCount()).isEqualTo(1000);
+    assertThat(registered).hasSize(1);
+  }
+
+  @Test
+  public void parent() throws Exception {
+    final MetricsRegistry parent = new MetricsRegistry();
+    final MetricsRegistry registry = new MetricsRegistry(parent);
+    final List<Meter> registered = new ArrayList<>();
+    registry.addListener(registered::add);
+    registry.counter("child");
+    parent.counter("parent");
+    assertThat(registry.getMeters()).hasSize(2);
+    assertThat(parent.getMeters()).hasSize(1);
+    assertThat(registered).hasSize(2);
+    //sibling registries don't share their own meters
+    new MetricsRegistry(parent).counter("other");
+    assertThat(registry.getMeters()).hasSize(2);
+  }
+
+  @Test
+  public void remove() throws Exception {
+    final MetricsRegistry parent = new MetricsRegistry();
+    final MetricsRegistry registry = new MetricsRegistry(parent);
+    final List<Meter> removed = new ArrayList<>();
+    registry.addRemovalListener(removed::add);
+    final Counter counter = registry.counter("c");
+    assertThat(registry.remove(counter)).isTrue();
+    assertThat(registry.remove(counter)).isFalse();
+    assertThat(registry.getMeters()).isEmpty();
+    final Counter other = parent.counter("p");
+    assertThat(parent.remove(other)).isTrue();
+    assertThat(removed).containsExactly(counter, other);
+    //registered again, it is a new meter
+    assertThat(registry.counter("c")).isNotSameAs(counter);
+  }
+}
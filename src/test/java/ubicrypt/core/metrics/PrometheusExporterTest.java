@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.metrics;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrometheusExporterTest {
+
+  @Test
+  public void scrape() throws Exception {
+    final MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("provider.bytes", "provider", "file://\"tmp\"").increment(10);
+    registry.gauge("transfer.pending", () -> 3, "lane", "a");
+    registry.timer("lock.acquire").record(20, TimeUnit.MILLISECONDS);
+    final String text = new PrometheusExporter(registry, 0).scrape();
+    assertThat(text)
+        .contains("# TYPE ubicrypt_provider_bytes_total counter\n")
+        .contains("ubicrypt_provider_bytes_total{provider=\"file://\\\"tmp\\\"\"} 10\n")
+        .contains("ubicrypt_transfer_pending{lane=\"a\"} 3\n")
+        .contains("# TYPE ubicrypt_lock_acquire_seconds histogram\n")
+        .contains("ubicrypt_lock_acquire_seconds_bucket{le=\"0.01\"} 0\n")
+        .contains("ubicrypt_lock_acquire_seconds_bucket{le=\"0.025\"} 1\n")
+        .contains("ubicrypt_lock_acquire_seconds_bucket{le=\"+Inf\"} 1\n")
+        .contains("ubicrypt_lock_acquire_seconds_count 1\n")
+        .contains("ubicrypt_lock_acquire_seconds_sum 0.02\n");
+  }
+
+  @Test
+  public void endpoint() throws Exception {
+    final MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("c").increment();
+    final PrometheusExporter bound = new PrometheusExporter(registry, freePort());
+    bound.start();
+    try {
+      final String text =
+          IOUtils.toString(
+              new URL("http://127.0.0.1:" + bound.getPort() + "/metrics"), StandardCharsets.UTF_8);
+      assertThat(text).contains("ubicrypt_c_total 1\n");
+    } finally {
+      bound.stop();
+    }
+    assertThat(bound.getPort()).isEqualTo(-1);
+  }
+
+  private static int freePort() throws Exception {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider;
+
+import com.google.common.primitives.Bytes;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import ubicrypt.core.TestUtils;
+import ubicrypt.core.dto.ChunkRef;
+import ubicrypt.core.dto.RemoteConfig;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.provider.file.FileProvider;
+import ubicrypt.core.util.ContentChunker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChunkStoreTest {
+  private final AtomicInteger posts = new AtomicInteger();
+  private final RemoteConfig rconfig = new RemoteConfig();
+  private FileProvider fp;
+  private ChunkStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    TestUtils.createDirs();
+    final FileProvider provider = TestUtils.fileProvider(TestUtils.tmp);
+    fp =
+        new FileProvider() {
+          {
+            setConf(provider.getConf());
+          }
+
+          @Override
+          public Observable<String> post(InputStream is) {
+            posts.incrementAndGet();
+            return super.post(is);
+          }
+        };
+    store = new ChunkStore(fp, new ContentChunker(1 << 12, 14, 1 << 16));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestUtils.deleteDirs();
+  }
+
+  @Test
+  public void storeAndRead() throws Exception {
+    final byte[] bytes = random(1 << 20, 1);
+    final RemoteFile file = add(bytes);
+    assertThat(file.getChunks().size()).isGreaterThan(1);
+    assertThat(posts.get()).isEqualTo(file.getChunks().size());
+    assertThat(rconfig.getChunkSecret()).isNotNull();
+    assertThat(IOUtils.toByteArray(store.read(file).toBlocking().first())).isEqualTo(bytes);
+    //chunks are encrypted
+    final byte[] head = new byte[64];
+    System.arraycopy(bytes, 0, head, 0, head.length);
+    for (final ChunkRef ref : file.getChunks()) {
+      assertThat(
+              Bytes.indexOf(Files.readAllBytes(TestUtils.tmp.resolve(ref.getRemoteName())), head))
+          .isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void copyUploadsNothing() throws Exception {
+    final byte[] bytes = random(1 << 20, 2);
+    final RemoteFile file = add(bytes);
+    posts.set(0);
+    final RemoteFile copy = add(bytes);
+    assertThat(posts.get()).isZero();
+    assertThat(copy.getChunks()).isEqualTo(file.getChunks());
+  }
+
+  @Test
+  public void editUploadsChangedChunks() throws Exception {
+    final byte[] bytes = random(1 << 20, 3);
+    final RemoteFile file = add(bytes);
+    posts.set(0);
+    final byte[] edited = bytes.clone();
+    System.arraycopy(random(100, 4), 0, edited, 600000, 100);
+    final RemoteFile update = add(edited);
+    assertThat(posts.get()).isBetween(1, 2);
+    assertThat(update.getChunks().size()).isEqualTo(file.getChunks().size());
+    assertThat(IOUtils.toByteArray(store.read(update).toBlocking().first())).isEqualTo(edited);
+  }
+
+  @Test
+  public void collectGarbage() throws Exception {
+    final byte[] bytes = random(1 << 20, 5);
+    final RemoteFile file = add(bytes);
+    final byte[] edited = bytes.clone();
+    System.arraycopy(random(100, 6), 0, edited, 600000, 100);
+    final RemoteFile update = add(edited);
+    //the first file is gone: only the chunks held by it alone are deleted
+    rconfig.getRemoteFiles().remove(file);
+    store.release(file.getChunks());
+    final long unique =
+        file.getChunks().stream().filter(ref -> !update.getChunks().contains(ref)).count();
+    assertThat(unique).isGreaterThan(0);
+    assertThat(store.collectGarbage(rconfig).toBlocking().first()).isEqualTo((int) unique);
+    for (final ChunkRef ref : file.getChunks()) {
+      assertThat(Files.exists(TestUtils.tmp.resolve(ref.getRemoteName())))
+          .isEqualTo(update.getChunks().contains(ref));
+    }
+    assertThat(IOUtils.toByteArray(store.read(update).toBlocking().first())).isEqualTo(edited);
+    assertThat(store.collectGarbage(rconfig).toBlocking().first()).isZero();
+    //deleted chunks are not reused
+    posts.set(0);
+    final RemoteFile again = add(bytes);
+    assertThat(posts.get()).isEqualTo((int) unique);
+    assertThat(IOUtils.toByteArray(store.read(again).toBlocking().first())).isEqualTo(bytes);
+  }
+
+  private RemoteFile add(final byte[] bytes) {
+    final List<ChunkRef> chunks =
+        store
+            .store(rconfig, Paths.get("file"), new ByteArrayInputStream(bytes))
+            .toBlocking()
+            .first();
+    final RemoteFile file = new RemoteFile();
+    file.setChunks(chunks);
+    rconfig.getRemoteFiles().add(file);
+    return file;
+  }
+
+  private static byte[] random(final int size, final long seed) {
+    final byte[] bytes = new byte[size];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+}
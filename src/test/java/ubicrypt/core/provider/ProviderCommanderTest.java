@@ -16,12 +16,11 @@ package ubicrypt.core.provider;
 import org.junit.Ignore;
 import org.junit.Test;
 
-import java.util.HashSet;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
 
+import ubicrypt.core.dto.FileCatalog;
 import ubicrypt.core.dto.LocalConfig;
 import ubicrypt.core.dto.RemoteConfig;
 import ubicrypt.core.dto.RemoteFile;
@@ -72,8 +71,8 @@ public class ProviderCommanderTest {
             Optional.of(
                 new RemoteConfig() {
                   @Override
-                  public Set<RemoteFile> getRemoteFiles() {
-                    return new HashSet<RemoteFile>() {
+                  public FileCatalog<RemoteFile> getRemoteFiles() {
+                    return new FileCatalog<RemoteFile>() {
                       {
                         add(
                             new RemoteFile() {
@@ -96,8 +95,8 @@ public class ProviderCommanderTest {
             Optional.of(
                 new RemoteConfig() {
                   @Override
-                  public Set<RemoteFile> getRemoteFiles() {
-                    return new HashSet<RemoteFile>() {
+                  public FileCatalog<RemoteFile> getRemoteFiles() {
+                    return new FileCatalog<RemoteFile>() {
                       {
                         add(
                             new RemoteFile() {
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import ubicrypt.core.TestUtils;
+import ubicrypt.core.crypto.AESGCM;
+import ubicrypt.core.provider.file.FileProvider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RangedReaderTest {
+  private final AtomicInteger ranges = new AtomicInteger();
+  private FileProvider fp;
+
+  @Before
+  public void setUp() throws Exception {
+    TestUtils.createDirs();
+    final FileProvider provider = TestUtils.fileProvider(TestUtils.tmp);
+    fp =
+        new FileProvider() {
+          {
+            setConf(provider.getConf());
+          }
+
+          @Override
+          public Observable<InputStream> get(String pid, long offset, long length) {
+            ranges.incrementAndGet();
+            return super.get(pid, offset, length);
+          }
+        };
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestUtils.deleteDirs();
+  }
+
+  @Test
+  public void positionalRead() throws Exception {
+    final byte[] bytes = random(1 << 20);
+    final String pid = fp.post(new ByteArrayInputStream(bytes)).toBlocking().last();
+    final byte[] range = IOUtils.toByteArray(fp.get(pid, 1000, 300000).toBlocking().first());
+    assertThat(range).hasSize(300000);
+    for (int i = 0; i < range.length; i++) {
+      assertThat(range[i]).isEqualTo(bytes[1000 + i]);
+    }
+    assertThat(fp.size(pid).toBlocking().first()).isEqualTo(bytes.length);
+  }
+
+  @Test
+  public void rangesInOrder() throws Exception {
+    final byte[] bytes = random((5 << 20) + 123);
+    final String pid = fp.post(new ByteArrayInputStream(bytes)).toBlocking().last();
+    final InputStream is =
+        new RangedReader(fp, 1 << 20, 3).get(pid, bytes.length).toBlocking().first();
+    assertThat(IOUtils.toByteArray(is)).isEqualTo(bytes);
+    assertThat(ranges.get()).isEqualTo(6);
+  }
+
+  @Test
+  public void smallInOneGo() throws Exception {
+    final byte[] bytes = random(1000);
+    final String pid = fp.post(new ByteArrayInputStream(bytes)).toBlocking().last();
+    final InputStream is =
+        new RangedReader(fp, 1 << 20, 3).get(pid, bytes.length).toBlocking().first();
+    assertThat(IOUtils.toByteArray(is)).isEqualTo(bytes);
+    assertThat(ranges.get()).isZero();
+  }
+
+  @Test
+  public void decryptRanges() throws Exception {
+    final byte[] key = AESGCM.rndKey();
+    final byte[] bytes = random(3 << 20);
+    final String pid =
+        fp.post(AESGCM.encryptIs(key, new ByteArrayInputStream(bytes))).toBlocking().last();
+    final InputStream is =
+        new RangedReader(fp, 100000, 4).get(pid, bytes.length).toBlocking().first();
+    assertThat(IOUtils.toByteArray(AESGCM.decryptIs(key, is))).isEqualTo(bytes);
+    assertThat(ranges.get()).isGreaterThan(30);
+  }
+
+  private static byte[] random(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+}
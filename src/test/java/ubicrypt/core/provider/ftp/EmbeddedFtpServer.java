@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider.ftp;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process FTP server, with the commands used by {@link FTProvider} in passive mode. Files are
+ * kept in memory.
+ */
+public class EmbeddedFtpServer implements AutoCloseable {
+  private final ServerSocket server;
+  private final String username;
+  private final String password;
+  private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+  private final Set<String> dirs = ConcurrentHashMap.newKeySet();
+  private final Set<Socket> sessions = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger logins = new AtomicInteger();
+  private final AtomicInteger noops = new AtomicInteger();
+  private final AtomicInteger quits = new AtomicInteger();
+  private final AtomicInteger maxSessions = new AtomicInteger();
+
+  public EmbeddedFtpServer(final String username, final String password) throws IOException {
+    this.username = username;
+    this.password = password;
+    server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    dirs.add("/");
+    final Thread acceptor =
+        new Thread(
+            () -> {
+              while (!server.isClosed()) {
+                try {
+                  final Socket socket = server.accept();
+                  connections.incrementAndGet();
+                  sessions.add(socket);
+                  maxSessions.accumulateAndGet(sessions.size(), Math::max);
+                  final Thread session = new Thread(() -> serve(socket), "ftp-session");
+                  session.setDaemon(true);
+                  session.start();
+                } catch (IOException e) {
+                  return;
+                }
+              }
+            },
+            "ftp-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  public FTPConf conf(final String folder) {
+    final FTPConf conf = new FTPConf();
+    conf.setHost("127.0.0.1");
+    conf.setPort(getPort());
+    conf.setUsername(username);
+    conf.setPassword(password.toCharArray());
+    conf.setFolder(folder);
+    return conf;
+  }
+
+  /** control connections accepted so far */
+  public int getConnections() {
+    return connections.get();
+  }
+
+  public int getLogins() {
+    return logins.get();
+  }
+
+  public int getNoops() {
+    return noops.get();
+  }
+
+  public int getQuits() {
+    return quits.get();
+  }
+
+  /** most control connections open at the same time */
+  public int getMaxSessions() {
+    return maxSessions.get();
+  }
+
+  public Map<String, byte[]> getFiles() {
+    return files;
+  }
+
+  /** closes every open control connection, as a server timeout would do */
+  public void dropSessions() {
+    sessions.forEach(IOUtils::closeQuietly);
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+    dropSessions();
+  }
+
+  private void serve(final Socket socket) {
+    String cwd = "/";
+    ServerSocket passive = null;
+    try (Socket s = socket;
+        BufferedReader in =
+            new BufferedReader(
+                new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+        Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII)) {
+      reply(out, "220 ready");
+      String user = null;
+      String line;
+      while ((line = in.readLine()) != null) {
+        final int space = line.indexOf(' ');
+        final String cmd = (space < 0 ? line : line.substring(0, space)).toUpperCase();
+        final String arg = space < 0 ? "" : line.substring(space + 1);
+        switch (cmd) {
+          case "USER":
+            user = arg;
+            reply(out, "331 password required");
+            break;
+          case "PASS":
+            if (username.equals(user) && password.equals(arg)) {
+              logins.incrementAndGet();
+              reply(out, "230 logged in");
+            } else {
+              reply(out, "530 login incorrect");
+            }
+            break;
+          case "TYPE":
+            reply(out, "200 type set");
+            break;
+          case "NOOP":
+            noops.incrementAndGet();
+            reply(out, "200 ok");
+            break;
+          case "CWD":
+            if (dirs.contains(resolve(cwd, arg))) {
+              cwd = resolve(cwd, arg);
+              reply(out, "250 directory changed");
+            } else {
+              reply(out, "550 no such directory");
+            }
+            break;
+          case "MKD":
+            dirs.add(resolve(cwd, arg));
+            reply(out, "257 \"" + resolve(cwd, arg) + "\" created");
+            break;
+          case "PASV":
+            IOUtils.closeQuietly(passive);
+            passive = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            final int port = passive.getLocalPort();
+            reply(
+                out,
+                "227 Entering Passive Mode (127,0,0,1," + (port >> 8) + "," + (port & 0xff) + ")");
+            break;
+          case "STOR":
+            reply(out, "150 opening data connection");
+            try (Socket data = passive.accept()) {
+              files.put(resolve(cwd, arg), IOUtils.toByteArray(data.getInputStream()));
+            }
+            passive = close(passive);
+            reply(out, "226 transfer complete");
+            break;
+          case "RETR":
+            final byte[] bytes = files.get(resolve(cwd, arg));
+            if (bytes == null) {
+              passive = close(passive);
+              reply(out, "550 no such file");
+              break;
+            }
+            reply(out, "150 opening data connection");
+            try (Socket data = passive.accept();
+                OutputStream os = data.getOutputStream()) {
+              os.write(bytes);
+            }
+            passive = close(passive);
+            reply(out, "226 transfer complete");
+            break;
+          case "DELE":
+            reply(
+                out, files.remove(resolve(cwd, arg)) != null ? "250 deleted" : "550 no such file");
+            break;
+          case "QUIT":
+            quits.incrementAndGet();
+            reply(out, "221 bye");
+            return;
+          default:
+            reply(out, "502 not implemented");
+        }
+      }
+    } catch (IOException e) {
+      //connection dropped
+    } finally {
+      IOUtils.closeQuietly(passive);
+      sessions.remove(socket);
+    }
+  }
+
+  private static ServerSocket close(final ServerSocket socket) {
+    IOUtils.closeQuietly(socket);
+    return null;
+  }
+
+  private static String resolve(final String cwd, final String name) {
+    if (name.startsWith("/")) {
+      return name;
+    }
+    return cwd.endsWith("/") ? cwd + name : cwd + "/" + name;
+  }
+
+  private static void reply(final Writer out, final String reply) throws IOException {
+    out.write(reply + "\r\n");
+    out.flush();
+  }
+}
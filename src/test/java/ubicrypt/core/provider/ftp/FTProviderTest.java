@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider.ftp;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import rx.Observable;
+import ubicrypt.core.exp.NotFoundException;
+import ubicrypt.core.provider.ProviderStatus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FTProviderTest {
+  private EmbeddedFtpServer server;
+  private FTProvider ftp;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EmbeddedFtpServer("user", "pass");
+    ftp = new FTProvider();
+    ftp.setConf(server.conf("ubi"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ftp.close();
+    server.close();
+  }
+
+  @Test
+  public void crud() throws Exception {
+    assertThat(ftp.init(0).toBlocking().first()).isEqualTo(ProviderStatus.initialized);
+    final String pid = ftp.post(new ByteArrayInputStream("ciao".getBytes())).toBlocking().first();
+    assertThat(server.getFiles()).containsKey("/ubi/" + pid);
+    try (InputStream is = ftp.get(pid).toBlocking().first()) {
+      assertThat(IOUtils.toString(is, "UTF-8")).isEqualTo("ciao");
+    }
+    assertThat(ftp.put(pid, new ByteArrayInputStream("ciao2".getBytes())).toBlocking().first())
+        .isTrue();
+    try (InputStream is = ftp.get(pid).toBlocking().first()) {
+      assertThat(IOUtils.toString(is, "UTF-8")).isEqualTo("ciao2");
+    }
+    assertThat(ftp.delete(pid).toBlocking().first()).isTrue();
+    assertThatThrownBy(() -> ftp.get(pid).toBlocking().first())
+        .isInstanceOf(NotFoundException.class);
+  }
+
+  @Test
+  public void reuseSession() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      final String pid =
+          ftp.post(new ByteArrayInputStream(("file" + i).getBytes())).toBlocking().first();
+      try (InputStream is = ftp.get(pid).toBlocking().first()) {
+        assertThat(IOUtils.toString(is, "UTF-8")).isEqualTo("file" + i);
+      }
+    }
+    assertThat(server.getConnections()).isEqualTo(1);
+    assertThat(server.getLogins()).isEqualTo(1);
+  }
+
+  @Test
+  public void boundedSessions() throws Exception {
+    final List<String> pids =
+        Observable.range(0, 16)
+            .flatMap(i -> ftp.post(new ByteArrayInputStream(new byte[1 << 16])))
+            .toList()
+            .toBlocking()
+            .first();
+    assertThat(pids).hasSize(16);
+    assertThat(server.getFiles()).hasSize(16);
+    assertThat(server.getMaxSessions())
+        .isGreaterThan(1)
+        .isLessThanOrEqualTo(ftp.getMaxConcurrentTransfers() + 2);
+  }
+
+  @Test
+  public void replaceBrokenSession() throws Exception {
+    final FTPSessionPool pool = new FTPSessionPool(this::connect, 2, 1, 60 * 1000, 1000);
+    pool.release(pool.lease().toBlocking().first());
+    server.dropSessions();
+    Thread.sleep(10);
+    final FTPClient client = pool.lease().toBlocking().first();
+    assertThat(client.sendNoOp()).isTrue();
+    pool.release(client);
+    assertThat(server.getConnections()).isEqualTo(2);
+    pool.close();
+  }
+
+  @Test
+  public void keepAliveAndEvict() throws Exception {
+    final FTPSessionPool pool = new FTPSessionPool(this::connect, 2, 20, 200, 1000);
+    pool.release(pool.lease().toBlocking().first());
+    Thread.sleep(100);
+    assertThat(server.getNoops()).isGreaterThan(0);
+    assertThat(pool.getIdle()).isEqualTo(1);
+    Thread.sleep(300);
+    assertThat(pool.getIdle()).isZero();
+    assertThat(server.getQuits()).isEqualTo(1);
+    pool.close();
+  }
+
+  @Test
+  public void leaseTimeout() throws Exception {
+    final FTPSessionPool pool = new FTPSessionPool(this::connect, 1, 1000, 60 * 1000, 50);
+    final FTPClient client = pool.lease().toBlocking().first();
+    assertThatThrownBy(() -> pool.lease().toBlocking().first())
+        .hasMessageContaining("no FTP session available");
+    pool.release(client);
+    pool.release(pool.lease().toBlocking().first());
+    assertThat(server.getConnections()).isEqualTo(1);
+    pool.close();
+  }
+
+  @Test
+  public void closeWhileSweeping() throws Exception {
+    final AtomicReference<FTPSessionPool> ref = new AtomicReference<>();
+    final FTPClient client =
+        new FTPClient() {
+          @Override
+          public boolean sendNoOp() throws IOException {
+            ref.get().close();
+            return super.sendNoOp();
+          }
+        };
+    final FTPSessionPool pool =
+        new FTPSessionPool(() -> connect(client), 1, 60 * 1000, 60 * 1000, 1000);
+    ref.set(pool);
+    pool.release(pool.lease().toBlocking().first());
+    pool.sweep();
+    assertThat(pool.getIdle()).isZero();
+    assertThat(client.isConnected()).isFalse();
+    assertThat(server.getQuits()).isEqualTo(1);
+  }
+
+  private FTPClient connect() throws Exception {
+    return connect(new FTPClient());
+  }
+
+  private FTPClient connect(final FTPClient client) throws Exception {
+    client.connect("127.0.0.1", server.getPort());
+    client.login("user", "pass");
+    client.enterLocalPassiveMode();
+    return client;
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.provider.s3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class S3MultipartUploadTest {
+  private final InMemoryS3 s3 = new InMemoryS3();
+
+  @Test
+  public void singlePut() throws Exception {
+    final byte[] bytes = random(1000);
+    assertThat(
+            new S3MultipartUpload(s3, 1024, 4, 0, 0)
+                .upload("bucket", "key", new ByteArrayInputStream(bytes))
+                .toBlocking()
+                .single())
+        .isTrue();
+    assertThat(s3.objects.get("bucket:key")).isEqualTo(bytes);
+    assertThat(s3.initiated.get()).isZero();
+  }
+
+  @Test
+  public void parallelParts() throws Exception {
+    final byte[] bytes = random(10 * 1024 + 500);
+    s3.delayMs = 20;
+    assertThat(
+            new S3MultipartUpload(s3, 1024, 3, 0, 0)
+                .upload("bucket", "key", new ByteArrayInputStream(bytes))
+                .toBlocking()
+                .single())
+        .isTrue();
+    assertThat(s3.objects.get("bucket:key")).isEqualTo(bytes);
+    assertThat(s3.uploaded.get()).isEqualTo(11);
+    assertThat(s3.maxInFlight.get()).isGreaterThan(1).isLessThanOrEqualTo(3);
+  }
+
+  @Test
+  public void exactMultipleOfPartSize() throws Exception {
+    final byte[] bytes = random(4 * 1024);
+    new S3MultipartUpload(s3, 1024, 2, 0, 0)
+        .upload("bucket", "key", new ByteArrayInputStream(bytes))
+        .toBlocking()
+        .single();
+    assertThat(s3.objects.get("bucket:key")).isEqualTo(bytes);
+    assertThat(s3.uploaded.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void retryFailedPart() throws Exception {
+    final byte[] bytes = random(5 * 1024);
+    s3.failures.put(3, new AtomicInteger(2));
+    new S3MultipartUpload(s3, 1024, 2, 2, 1)
+        .upload("bucket", "key", new ByteArrayInputStream(bytes))
+        .toBlocking()
+        .single();
+    assertThat(s3.objects.get("bucket:key")).isEqualTo(bytes);
+    assertThat(s3.uploaded.get()).isEqualTo(5 + 2);
+  }
+
+  @Test
+  public void abortAfterRetries() throws Exception {
+    s3.failures.put(2, new AtomicInteger(3));
+    final AtomicInteger closed = new AtomicInteger();
+    final InputStream is =
+        new ByteArrayInputStream(random(5 * 1024)) {
+          @Override
+          public void close() throws IOException {
+            closed.incrementAndGet();
+          }
+        };
+    try {
+      new S3MultipartUpload(s3, 1024, 2, 2, 1).upload("bucket", "key", is).toBlocking().single();
+      fail("part 2 should fail");
+    } catch (RuntimeException e) {
+      assertThat(e).hasMessageContaining("part 2");
+    }
+    assertThat(s3.aborted.get()).isEqualTo(1);
+    assertThat(s3.objects).isEmpty();
+    assertThat(closed.get()).isGreaterThan(0);
+  }
+
+  @Test
+  public void abortOnUnsubscribe() throws Exception {
+    s3.delayMs = 50;
+    final Subscription subscription =
+        new S3MultipartUpload(s3, 1024, 2, 0, 0)
+            .upload("bucket", "key", new ByteArrayInputStream(random(10 * 1024)))
+            .subscribeOn(Schedulers.io())
+            .subscribe();
+    Thread.sleep(100);
+    subscription.unsubscribe();
+    assertThat(s3.aborted.get()).isEqualTo(1);
+    assertThat(s3.uploads).isEmpty();
+    assertThat(s3.objects).isEmpty();
+  }
+
+  @Test
+  public void completedNotAborted() throws Exception {
+    new S3MultipartUpload(s3, 1024, 2, 0, 0)
+        .upload("bucket", "key", new ByteArrayInputStream(random(3 * 1024)))
+        .toBlocking()
+        .single();
+    assertThat(s3.aborted.get()).isZero();
+  }
+
+  private static byte[] random(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  /** in memory stand-in of the S3 calls used by the upload */
+  private static class InMemoryS3 extends AbstractAmazonS3 {
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger initiated = new AtomicInteger();
+    private final AtomicInteger uploaded = new AtomicInteger();
+    private final AtomicInteger aborted = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long delayMs;
+
+    @Override
+    public PutObjectResult putObject(
+        final String bucket,
+        final String key,
+        final InputStream input,
+        final ObjectMetadata metadata) {
+      objects.put(bucket + ":" + key, toBytes(input));
+      return new PutObjectResult();
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(
+        final InitiateMultipartUploadRequest request) {
+      initiated.incrementAndGet();
+      final InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+      result.setUploadId(UUID.randomUUID().toString());
+      uploads.put(result.getUploadId(), new ConcurrentHashMap<>());
+      return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(final UploadPartRequest request) {
+      uploaded.incrementAndGet();
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(delayMs);
+        final AtomicInteger failing = failures.get(request.getPartNumber());
+        if (failing != null && failing.getAndDecrement() > 0) {
+          throw new IllegalStateException("part " + request.getPartNumber() + " failed");
+        }
+        final byte[] bytes = toBytes(request.getInputStream());
+        assertThat(bytes).hasSize((int) request.getPartSize());
+        uploads.get(request.getUploadId()).put(request.getPartNumber(), bytes);
+        final UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(Integer.toString(request.getPartNumber()));
+        return result;
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      } finally {
+        inFlight.decrementAndGet();
+      }
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(
+        final CompleteMultipartUploadRequest request) {
+      final Map<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      int number = 1;
+      for (final PartETag etag : request.getPartETags()) {
+        assertThat(etag.getPartNumber()).isEqualTo(number++);
+        out.write(parts.get(etag.getPartNumber()), 0, parts.get(etag.getPartNumber()).length);
+      }
+      objects.put(request.getBucketName() + ":" + request.getKey(), out.toByteArray());
+      return new CompleteMultipartUploadResult();
+    }
+
+    @Override
+    public void abortMultipartUpload(final AbortMultipartUploadRequest request) {
+      aborted.incrementAndGet();
+      uploads.remove(request.getUploadId());
+    }
+
+    private static byte[] toBytes(final InputStream input) {
+      try {
+        return IOUtils.toByteArray(input);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
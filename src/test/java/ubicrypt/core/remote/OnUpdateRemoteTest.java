@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.remote;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+import ubicrypt.core.FileProvenience;
+import ubicrypt.core.IRepository;
+import ubicrypt.core.TestUtils;
+import ubicrypt.core.crypto.AESGCM;
+import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.dto.RemoteConfig;
+import ubicrypt.core.dto.RemoteFile;
+import ubicrypt.core.dto.UbiFile;
+import ubicrypt.core.provider.ChunkStore;
+import ubicrypt.core.provider.file.FileProvider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OnUpdateRemoteTest {
+  private final AtomicLong posted = new AtomicLong();
+  private final RemoteConfig rconfig = new RemoteConfig();
+  private final LocalFile file = new LocalFile();
+  private ChunkStore chunkStore;
+  private OnInsertRemote insert;
+  private OnUpdateRemote update;
+
+  @Before
+  public void setUp() throws Exception {
+    TestUtils.createDirs();
+    final FileProvider provider = TestUtils.fileProvider(TestUtils.tmp);
+    final FileProvider fp =
+        new FileProvider() {
+          {
+            setConf(provider.getConf());
+          }
+
+          @Override
+          public Observable<String> post(InputStream is) {
+            return super.post(
+                new CountingInputStream(is) {
+                  @Override
+                  protected synchronized void afterRead(int n) {
+                    super.afterRead(n);
+                    if (n > 0) {
+                      posted.addAndGet(n);
+                    }
+                  }
+                });
+          }
+        };
+    chunkStore = new ChunkStore(fp);
+    insert = new OnInsertRemote(fp, null, chunkStore);
+    update = new OnUpdateRemote(fp, null, chunkStore);
+    for (final RemoteAction action : Arrays.asList(insert, update)) {
+      action.setFileEvents(PublishSubject.create());
+      action.setProgressEvents(PublishSubject.create());
+    }
+    file.setPath(Paths.get("big"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestUtils.deleteDirs();
+  }
+
+  @Test
+  public void editUploadsChangedChunks() throws Exception {
+    final byte[] bytes = random(12 << 20, 1);
+    assertThat(insert.apply(provenience(bytes), rconfig).toBlocking().first()).isTrue();
+    final RemoteFile rfile = rconfig.getRemoteFiles().get(file).get();
+    assertThat(rfile.isChunked()).isTrue();
+    assertThat(posted.get()).isGreaterThan(bytes.length);
+
+    posted.set(0);
+    final byte[] edited = bytes.clone();
+    System.arraycopy(random(1000, 2), 0, edited, 6 << 20, 1000);
+    assertThat(update.apply(provenience(edited), rconfig).toBlocking().first()).isTrue();
+    assertThat(posted.get()).isLessThan(bytes.length / 2);
+    assertThat(read(rfile)).isEqualTo(edited);
+
+    posted.set(0);
+    final byte[] appended = Arrays.copyOf(edited, edited.length + (1 << 20));
+    System.arraycopy(random(1 << 20, 3), 0, appended, edited.length, 1 << 20);
+    assertThat(update.apply(provenience(appended), rconfig).toBlocking().first()).isTrue();
+    assertThat(posted.get()).isLessThan(bytes.length / 2);
+    assertThat(read(rfile)).isEqualTo(appended);
+
+    //the replaced chunks are deleted
+    final long stored = Files.list(TestUtils.tmp).count();
+    assertThat(chunkStore.collectGarbage(rconfig).toBlocking().first()).isGreaterThan(0);
+    assertThat(Files.list(TestUtils.tmp).count()).isEqualTo(rfile.getChunks().size());
+    assertThat(Files.list(TestUtils.tmp).count()).isLessThan(stored);
+    assertThat(read(rfile)).isEqualTo(appended);
+  }
+
+  @Test
+  public void shrinkToSingleObject() throws Exception {
+    assertThat(insert.apply(provenience(random(6 << 20, 4)), rconfig).toBlocking().first())
+        .isTrue();
+    final RemoteFile rfile = rconfig.getRemoteFiles().get(file).get();
+    final int chunks = rfile.getChunks().size();
+    assertThat(Files.list(TestUtils.tmp).count()).isEqualTo(chunks);
+
+    final byte[] small = random(1000, 5);
+    assertThat(update.apply(provenience(small), rconfig).toBlocking().first()).isTrue();
+    assertThat(rfile.isChunked()).isFalse();
+    assertThat(chunkStore.collectGarbage(rconfig).toBlocking().first()).isEqualTo(chunks);
+    assertThat(Files.list(TestUtils.tmp).count()).isEqualTo(1);
+    assertThat(
+            IOUtils.toByteArray(
+                rfile
+                    .getKey()
+                    .getCompression()
+                    .decompress(
+                        AESGCM.decryptIs(
+                            rfile.getKey().getBytes(),
+                            Files.newInputStream(TestUtils.tmp.resolve(rfile.getName()))))))
+        .isEqualTo(small);
+  }
+
+  private FileProvenience provenience(final byte[] bytes) {
+    file.setSize(bytes.length);
+    return new FileProvenience(
+        file,
+        new IRepository() {
+          @Override
+          public Observable<InputStream> get(final UbiFile file) {
+            return Observable.just(new ByteArrayInputStream(bytes));
+          }
+        });
+  }
+
+  private byte[] read(final RemoteFile rfile) throws Exception {
+    return IOUtils.toByteArray(chunkStore.read(rfile).toBlocking().first());
+  }
+
+  private static byte[] random(final int size, final long seed) {
+    final byte[] bytes = new byte[size];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+}
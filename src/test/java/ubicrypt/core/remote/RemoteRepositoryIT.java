@@ -23,14 +23,20 @@ import org.slf4j.Logger;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import rx.Observable;
 import rx.Subscriber;
 import rx.Subscription;
 import rx.subjects.PublishSubject;
 import ubicrypt.core.FileProvenience;
+import ubicrypt.core.IRepository;
 import ubicrypt.core.ProgressFile;
 import ubicrypt.core.RemoteIO;
 import ubicrypt.core.TestUtils;
@@ -51,8 +57,9 @@ import ubicrypt.core.provider.file.FileProvider;
 import ubicrypt.core.provider.lock.AcquirerReleaser;
 import ubicrypt.core.provider.lock.ObjectIO;
 import ubicrypt.core.util.Persist;
-import ubicrypt.core.util.QueueLiner;
+import ubicrypt.core.util.TransferScheduler;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -142,7 +149,7 @@ public class RemoteRepositoryIT {
           {
             setProgressEvents(progress);
             setFileEvents(file2Events);
-            setQueueLiner(new QueueLiner(1000));
+            setTransferScheduler(new TransferScheduler(1000));
           }
         };
     repo.setActions(
@@ -266,4 +273,65 @@ public class RemoteRepositoryIT {
     assertThat(cd3.await(2, SECONDS)).isTrue();
     sub.unsubscribe();
   }
+
+  @Test
+  public void saveAll() throws Exception {
+    final RemoteConfig remoteConfig = new RemoteConfig();
+    final AtomicInteger acquisitions = new AtomicInteger();
+    final AtomicInteger commits = new AtomicInteger();
+    Observable.OnSubscribe<AcquirerReleaser> acquirer =
+        subscriber -> {
+          acquisitions.incrementAndGet();
+          subscriber.onNext(new AcquirerReleaser(remoteConfig, empty()));
+          subscriber.onCompleted();
+        };
+    RemoteIO<RemoteConfig> configIO =
+        new RemoteIO<RemoteConfig>() {
+          @Override
+          public Observable<Boolean> apply(RemoteConfig remoteConfig) {
+            commits.incrementAndGet();
+            return Observable.just(true);
+          }
+
+          @Override
+          public void call(Subscriber<? super RemoteConfig> subscriber) {}
+        };
+    final RemoteRepository repo =
+        new RemoteRepository(acquirer, fileProvider(TestUtils.tmp), configIO) {
+          {
+            setTransferScheduler(new TransferScheduler(1000));
+          }
+        };
+    repo.setActions(
+        Collections.singletonList(
+            new IRemoteAction() {
+              @Override
+              public boolean test(FileProvenience fp, RemoteConfig rc) {
+                return true;
+              }
+
+              @Override
+              public Observable<Boolean> apply(FileProvenience fp, RemoteConfig rc) {
+                return Observable.just(true).delay(10, MILLISECONDS);
+              }
+            }));
+    repo.init();
+    final List<FileProvenience> fps =
+        IntStream.range(0, 10)
+            .mapToObj(
+                i ->
+                    new FileProvenience(
+                        new LocalFile() {
+                          {
+                            setPath(Paths.get("file" + i));
+                          }
+                        },
+                        new IRepository() {}))
+            .collect(Collectors.toList());
+
+    assertThat(repo.saveAll(fps).toList().toBlocking().last()).hasSize(10).containsOnly(true);
+    //one lock for the batch, one for the epilogue
+    assertThat(acquisitions.get()).isEqualTo(2);
+    assertThat(commits.get()).isEqualTo(1);
+  }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import reactor.fn.tuple.Tuple2;
+import ubicrypt.core.Utils;
+import ubicrypt.core.dto.Compression;
+import ubicrypt.core.dto.Key;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ubicrypt.core.util.CompressionPolicy.choose;
+
+public class CompressionPolicyTest {
+
+  private static byte[] rnd(final int size, final int alphabet) {
+    final Random random = new Random(size);
+    final byte[] bytes = new byte[size];
+    for (int i = 0; i < size; i++) {
+      bytes[i] = (byte) random.nextInt(alphabet);
+    }
+    return bytes;
+  }
+
+  @Test
+  public void extension() throws Exception {
+    assertThat(choose(Paths.get("a/photo.JPG"), "plain text".getBytes()))
+        .isEqualTo(Compression.store);
+  }
+
+  @Test
+  public void magic() throws Exception {
+    final byte[] zip = new byte[1000];
+    zip[0] = 'P';
+    zip[1] = 'K';
+    zip[2] = 3;
+    zip[3] = 4;
+    assertThat(choose(Paths.get("noext"), zip)).isEqualTo(Compression.store);
+  }
+
+  @Test
+  public void sampled() throws Exception {
+    assertThat(choose(Paths.get("a.bin"), rnd(10000, 256))).isEqualTo(Compression.store);
+    assertThat(choose(Paths.get("a.bin"), rnd(10000, 16))).isEqualTo(Compression.fast);
+    assertThat(choose(Paths.get("a.txt"), new byte[10000])).isEqualTo(Compression.best);
+    assertThat(choose(Paths.get("a.txt"), new byte[0])).isEqualTo(Compression.store);
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    final byte[] plain = rnd(3 * CompressionPolicy.sampleSize, 16);
+    final Tuple2<Compression, InputStream> compressed =
+        CompressionPolicy.compress(Paths.get("a.log"), new ByteArrayInputStream(plain));
+    assertThat(compressed.getT1()).isEqualTo(Compression.fast);
+    final byte[] bytes = IOUtils.toByteArray(compressed.getT2());
+    assertThat(bytes.length).isLessThan(plain.length);
+    assertThat(IOUtils.toByteArray(compressed.getT1().decompress(new ByteArrayInputStream(bytes))))
+        .isEqualTo(plain);
+  }
+
+  @Test
+  public void legacyKey() throws Exception {
+    final Key key = Utils.unmarshall(Utils.marshall(new Key(new byte[] {1})), Key.class);
+    assertThat(key.getCompression()).isEqualTo(Compression.best);
+    final Key legacy =
+        Utils.unmarshall(
+            Utils.marshall(ImmutableMap.of("type", "aes", "bytes", new byte[] {1})), Key.class);
+    assertThat(legacy.getCompression()).isEqualTo(Compression.best);
+  }
+}
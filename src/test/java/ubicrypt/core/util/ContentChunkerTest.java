@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import com.google.common.hash.Hashing;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContentChunkerTest {
+  private final ContentChunker chunker = new ContentChunker(1 << 10, 12, 1 << 14);
+
+  @Test
+  public void boundedChunks() throws Exception {
+    final byte[] bytes = random(1 << 20, 1);
+    final List<byte[]> chunks = split(bytes);
+    assertThat(chunks.size()).isGreaterThan(1 << 20 >> 14);
+    for (int i = 0; i < chunks.size() - 1; i++) {
+      assertThat(chunks.get(i).length).isBetween(1 << 10, 1 << 14);
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chunks.forEach(chunk -> out.write(chunk, 0, chunk.length));
+    assertThat(out.toByteArray()).isEqualTo(bytes);
+  }
+
+  @Test
+  public void empty() throws Exception {
+    assertThat(split(new byte[0])).isEmpty();
+    assertThat(split(new byte[10])).hasSize(1);
+  }
+
+  @Test
+  public void insertionMovesFewBoundaries() throws Exception {
+    final byte[] bytes = random(1 << 20, 2);
+    final byte[] edited = new byte[bytes.length + 100];
+    System.arraycopy(bytes, 0, edited, 0, 500000);
+    System.arraycopy(random(100, 3), 0, edited, 500000, 100);
+    System.arraycopy(bytes, 500000, edited, 500100, bytes.length - 500000);
+    final Set<String> original = digests(split(bytes));
+    final List<String> changed =
+        digests(split(edited))
+            .stream()
+            .filter(digest -> !original.contains(digest))
+            .collect(Collectors.toList());
+    assertThat(changed.size()).isBetween(1, 3);
+  }
+
+  private List<byte[]> split(final byte[] bytes) {
+    return chunker.split(new ByteArrayInputStream(bytes)).toList().toBlocking().first();
+  }
+
+  private static Set<String> digests(final List<byte[]> chunks) {
+    return chunks
+        .stream()
+        .map(chunk -> Hashing.sha256().hashBytes(chunk).toString())
+        .collect(Collectors.toCollection(HashSet::new));
+  }
+
+  private static byte[] random(final int size, final long seed) {
+    final byte[] bytes = new byte[size];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import com.google.common.hash.Hashing;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ubicrypt.core.TestUtils;
+import ubicrypt.core.dto.LocalFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContentHashTest {
+  private final byte[] bytes = new byte[1 << 20];
+  private Path path;
+
+  @Before
+  public void setUp() throws Exception {
+    TestUtils.createDirs();
+    new Random().nextBytes(bytes);
+    path = Files.write(TestUtils.tmp.resolve("file"), bytes);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestUtils.deleteDirs();
+  }
+
+  @Test
+  public void digest() throws Exception {
+    final AtomicReference<byte[]> sha1 = new AtomicReference<>();
+    final byte[] read =
+        IOUtils.toByteArray(ContentHash.digest(new ByteArrayInputStream(bytes), sha1::set));
+    assertThat(read).isEqualTo(bytes);
+    assertThat(sha1.get()).isEqualTo(Hashing.sha1().hashBytes(bytes).asBytes());
+    assertThat(ContentHash.of(path).toBlocking().first()).isEqualTo(sha1.get());
+  }
+
+  @Test
+  public void recorded() throws Exception {
+    final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    final LocalFile file = new LocalFile();
+    file.setLastModified(attrs.lastModifiedTime().toInstant());
+    file.setSize(attrs.size());
+    ContentHash.record(file, new byte[] {1}, attrs);
+    //same attributes, the file is not read
+    assertThat(ContentHash.of(path, file).toBlocking().first()).isEqualTo(new byte[] {1});
+    file.setSize(attrs.size() - 1);
+    assertThat(ContentHash.of(path, file).toBlocking().first())
+        .isEqualTo(Hashing.sha1().hashBytes(bytes).asBytes());
+  }
+
+  @Test(expected = IOException.class)
+  public void verify() throws Exception {
+    final LocalFile file = new LocalFile();
+    ContentHash.verify(file, new byte[] {1});
+    file.setSha1(Hashing.sha1().hashBytes(bytes).asBytes());
+    ContentHash.verify(file, Hashing.sha1().hashBytes(bytes).asBytes());
+    ContentHash.verify(file, new byte[] {1});
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class RingPipeTest {
+
+  private static byte[] rnd(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void outputStream() throws Exception {
+    final RingPipe pipe = new RingPipe(1000);
+    final byte[] data = rnd(100_000);
+    CompletableFuture.runAsync(
+        () -> {
+          try (OutputStream os = pipe.outputStream()) {
+            for (int i = 0; i < data.length; i += 777) {
+              os.write(data, i, Math.min(777, data.length - i));
+            }
+          } catch (IOException e) {
+            pipe.fail(e);
+          }
+        });
+    assertThat(IOUtils.toByteArray(pipe.inputStream())).isEqualTo(data);
+    assertThat(pipe.getStalls()).isGreaterThan(0);
+  }
+
+  @Test
+  public void claimCommit() throws Exception {
+    final RingPipe pipe = new RingPipe(100);
+    final byte[] data = rnd(1000);
+    final int[] written = {0};
+    final Runnable[] pump = new Runnable[1];
+    pump[0] =
+        () -> {
+          while (written[0] < data.length) {
+            final ByteBuffer region = pipe.claim();
+            if (!region.hasRemaining()) {
+              if (pipe.whenWritable(pump[0])) {
+                return;
+              }
+              continue;
+            }
+            final int n = Math.min(region.remaining(), data.length - written[0]);
+            region.put(data, written[0], n);
+            pipe.commit(n);
+            written[0] += n;
+          }
+          pipe.close();
+        };
+    pump[0].run();
+    assertThat(pipe.size()).isEqualTo(100);
+    assertThat(IOUtils.toByteArray(pipe.inputStream())).isEqualTo(data);
+  }
+
+  @Test
+  public void producerError() throws Exception {
+    final RingPipe pipe = new RingPipe(100);
+    pipe.outputStream().write(new byte[10]);
+    pipe.fail(new IllegalStateException("broken"));
+    final InputStream is = pipe.inputStream();
+    assertThat(is.read(new byte[10])).isEqualTo(10);
+    try {
+      is.read();
+      fail("producer error must be propagated");
+    } catch (IOException e) {
+      assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+    }
+  }
+
+  @Test
+  public void readerClosed() throws Exception {
+    final RingPipe pipe = new RingPipe(10);
+    final AtomicBoolean notified = new AtomicBoolean();
+    final CompletableFuture<Void> writer =
+        CompletableFuture.runAsync(
+            () -> {
+              try {
+                pipe.outputStream().write(new byte[100]);
+              } catch (IOException e) {
+                notified.set(true);
+              }
+            });
+    Thread.sleep(100);
+    pipe.inputStream().close();
+    writer.get(1, TimeUnit.SECONDS);
+    assertThat(notified.get()).isTrue();
+    assertThat(pipe.isReaderClosed()).isTrue();
+  }
+}
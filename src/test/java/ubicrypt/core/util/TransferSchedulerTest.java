@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.util;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import ubicrypt.core.metrics.MetricsRegistry;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.IntStream.range;
+import static org.assertj.core.api.Assertions.assertThat;
+import static rx.Observable.just;
+import static rx.Observable.timer;
+
+public class TransferSchedulerTest {
+
+  private static Observable<Integer> transfer(
+      final int val, final AtomicInteger running, final AtomicInteger maxRunning) {
+    return Observable.defer(
+        () -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          return timer(50, MILLISECONDS).map(t -> val).doOnTerminate(running::decrementAndGet);
+        });
+  }
+
+  @Test
+  public void concurrency() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(1000);
+    final TransferScheduler.Lane<Integer> lane = scheduler.createLane(3);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<Integer> vals =
+        Observable.merge(
+                range(0, 10)
+                    .mapToObj(i -> lane.call(transfer(i, running, maxRunning)))
+                    .collect(Collectors.toList()))
+            .toList()
+            .toBlocking()
+            .first();
+    assertThat(vals).hasSize(10);
+    assertThat(maxRunning.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void coalescedEpilogue() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(10000);
+    final AtomicInteger epilogues = new AtomicInteger();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final TransferScheduler.Lane<Integer> lane =
+        scheduler.createLane(
+            4,
+            () -> {
+              //every transfer is over before the epilogue
+              assertThat(running.get()).isEqualTo(0);
+              epilogues.incrementAndGet();
+              return just(0);
+            });
+    final List<Integer> vals =
+        Observable.merge(
+                range(0, 8)
+                    .mapToObj(i -> lane.call(transfer(i, running, maxRunning)))
+                    .collect(Collectors.toList()))
+            .toList()
+            .toBlocking()
+            .first();
+    assertThat(vals).hasSize(8);
+    assertThat(epilogues.get()).isEqualTo(1);
+    assertThat(maxRunning.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void completeAfterEpilogue() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(1000);
+    final CountDownLatch epilogue = new CountDownLatch(1);
+    final TransferScheduler.Lane<Integer> lane =
+        scheduler.createLane(
+            2, () -> Observable.defer(() -> just(0)).doOnCompleted(epilogue::countDown));
+    final TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+    lane.call(just(1)).subscribe(subscriber);
+    subscriber.awaitTerminalEvent(2, SECONDS);
+    assertThat(epilogue.getCount()).isEqualTo(0);
+    subscriber.assertValue(1);
+    subscriber.assertCompleted();
+  }
+
+  @Test
+  public void epilogueError() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(1000);
+    final TransferScheduler.Lane<Integer> lane =
+        scheduler.createLane(2, () -> Observable.error(new RuntimeException("epilogue")));
+    final TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+    lane.call(just(1)).subscribe(subscriber);
+    subscriber.awaitTerminalEvent(2, SECONDS);
+    subscriber.assertError(RuntimeException.class);
+  }
+
+  @Test
+  public void sameKeyNotConcurrent() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(1000);
+    final TransferScheduler.Lane<Integer> lane = scheduler.createLane(4);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final Object key = new Object();
+    Observable.merge(
+            range(0, 4)
+                .mapToObj(i -> lane.call(key, transfer(i, running, maxRunning)))
+                .collect(Collectors.toList()))
+        .toBlocking()
+        .last();
+    assertThat(maxRunning.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void errorDoesNotBlock() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(1000);
+    final AtomicInteger epilogues = new AtomicInteger();
+    final TransferScheduler.Lane<Integer> lane =
+        scheduler.createLane(
+            1,
+            () -> {
+              epilogues.incrementAndGet();
+              return just(0);
+            });
+    final TestSubscriber<Integer> failed = new TestSubscriber<>();
+    lane.call(
+            timer(50, MILLISECONDS)
+                .flatMap(t -> Observable.<Integer>error(new RuntimeException("ehe"))))
+        .subscribe(failed);
+    assertThat(lane.call(just(1)).toBlocking().last()).isEqualTo(1);
+    failed.assertError(RuntimeException.class);
+    assertThat(epilogues.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void whenReady() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(1000, 2);
+    final TransferScheduler.Lane<Integer> lane = scheduler.createLane(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Observable<Integer> blocking =
+        Observable.fromCallable(
+            () -> {
+              release.await(5, SECONDS);
+              return 0;
+            });
+    assertThat(lane.whenReady().toBlocking().first()).isTrue();
+    range(0, 3).forEach(i -> lane.call(blocking).subscribe());
+    final TestSubscriber<Boolean> ready = new TestSubscriber<>();
+    lane.whenReady().subscribe(ready);
+    Thread.sleep(100);
+    ready.assertNoValues();
+    release.countDown();
+    ready.awaitTerminalEvent(2, SECONDS);
+    ready.assertValue(true);
+  }
+
+  @Test
+  public void stop() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(1000);
+    final AtomicInteger epilogues = new AtomicInteger();
+    final TransferScheduler.Lane<Integer> lane =
+        scheduler.createLane(
+            1,
+            () -> {
+              epilogues.incrementAndGet();
+              return just(0);
+            });
+    final TestSubscriber<Integer> first = new TestSubscriber<>();
+    final TestSubscriber<Integer> second = new TestSubscriber<>();
+    lane.call(timer(100, MILLISECONDS).map(t -> 1)).subscribe(first);
+    lane.call(just(2)).subscribe(second);
+    Thread.sleep(20);
+    scheduler.stop().toBlocking().lastOrDefault(null);
+    first.assertValue(1);
+    first.assertCompleted();
+    second.assertNoValues();
+    second.assertCompleted();
+    assertThat(epilogues.get()).isEqualTo(1);
+    assertThat(lane.call(just(3)).toBlocking().firstOrDefault(null)).isNull();
+  }
+
+  @Test
+  public void removeLane() throws Exception {
+    final TransferScheduler scheduler = new TransferScheduler(1000);
+    final MetricsRegistry metrics = new MetricsRegistry();
+    scheduler.setMetrics(metrics);
+    final AtomicInteger epilogues = new AtomicInteger();
+    final TransferScheduler.Lane<Integer> lane =
+        scheduler.createLane(
+            1,
+            () -> {
+              epilogues.incrementAndGet();
+              return just(0);
+            });
+    final TestSubscriber<Integer> first = new TestSubscriber<>();
+    final TestSubscriber<Integer> second = new TestSubscriber<>();
+    lane.call(timer(100, MILLISECONDS).map(t -> 1)).subscribe(first);
+    lane.call(just(2)).subscribe(second);
+    Thread.sleep(20);
+    assertThat(metrics.getMeters()).hasSize(3);
+    scheduler.removeLane(lane);
+    //meters of a removed lane are not exported anymore
+    assertThat(metrics.getMeters()).isEmpty();
+    second.assertNoValues();
+    second.assertCompleted();
+    first.awaitTerminalEvent(2, SECONDS);
+    first.assertValue(1);
+    first.assertCompleted();
+    assertThat(epilogues.get()).isEqualTo(1);
+    assertThat(lane.call(just(3)).toBlocking().firstOrDefault(null)).isNull();
+    //a removed lane does not hold the shutdown
+    scheduler.createLane(1).call(just(4)).toBlocking().last();
+    scheduler.stop().toBlocking().lastOrDefault(null);
+  }
+}
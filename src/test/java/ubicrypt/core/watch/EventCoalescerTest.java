@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Giancarlo Frison <giancarlo@gfrison.com>
+ *
+ * Licensed under the UbiCrypt License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://github.com/gfrison/ubicrypt/LICENSE.md
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ubicrypt.core.watch;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import rx.schedulers.TestScheduler;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static ubicrypt.core.watch.PathEvent.Event.create;
+import static ubicrypt.core.watch.PathEvent.Event.delete;
+import static ubicrypt.core.watch.PathEvent.Event.update;
+
+public class EventCoalescerTest {
+  private final TestScheduler scheduler = new TestScheduler();
+  private final LinkedBlockingQueue<List<PathEvent>> batches = new LinkedBlockingQueue<>();
+  private final Path a = Paths.get("a");
+  private final Path b = Paths.get("b");
+  private final EventCoalescer coalescer =
+      new EventCoalescer(
+          50, scheduler, (deleted, created) -> deleted.equals(a) && created.equals(b), batches::add);
+
+  @Test
+  public void merge() throws Exception {
+    assertThat(EventCoalescer.merge(null, update)).isEqualTo(update);
+    assertThat(EventCoalescer.merge(update, update)).isEqualTo(update);
+    assertThat(EventCoalescer.merge(create, update)).isEqualTo(create);
+    assertThat(EventCoalescer.merge(create, delete)).isNull();
+    assertThat(EventCoalescer.merge(delete, create)).isEqualTo(update);
+    assertThat(EventCoalescer.merge(update, delete)).isEqualTo(delete);
+    assertThat(EventCoalescer.merge(update, create)).isEqualTo(update);
+  }
+
+  @Test
+  public void quietPeriod() throws Exception {
+    //events keep coming every 5ms for 200ms, the quiet period is 50ms
+    for (int i = 0; i < 40; i++) {
+      coalescer.offer(update, a);
+      scheduler.advanceTimeBy(5, MILLISECONDS);
+    }
+    assertThat(batches).isEmpty();
+    scheduler.advanceTimeBy(44, MILLISECONDS);
+    assertThat(batches).isEmpty();
+    scheduler.advanceTimeBy(1, MILLISECONDS);
+    assertThat(batches.poll()).containsExactly(new PathEvent(update, a));
+    scheduler.advanceTimeBy(100, MILLISECONDS);
+    assertThat(batches).isEmpty();
+    assertThat(coalescer.getPending()).isZero();
+  }
+
+  @Test
+  public void batch() throws Exception {
+    coalescer.offer(update, Paths.get("x"));
+    coalescer.offer(create, Paths.get("y"));
+    coalescer.offer(update, Paths.get("y"));
+    coalescer.offer(create, Paths.get("z"));
+    coalescer.offer(delete, Paths.get("z"));
+    scheduler.advanceTimeBy(50, MILLISECONDS);
+    assertThat(batches.poll())
+        .containsOnly(new PathEvent(update, Paths.get("x")), new PathEvent(create, Paths.get("y")));
+    assertThat(batches).isEmpty();
+  }
+
+  @Test
+  public void rename() throws Exception {
+    coalescer.offer(delete, a);
+    coalescer.offer(create, b);
+    coalescer.offer(delete, Paths.get("c"));
+    scheduler.advanceTimeBy(50, MILLISECONDS);
+    assertThat(batches.poll())
+        .containsOnly(new PathEvent(b, a), new PathEvent(delete, Paths.get("c")));
+  }
+}
@@ -25,6 +25,7 @@ import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.io.IOException;
@@ -40,6 +41,7 @@ import rx.Observable;
 import rx.subjects.PublishSubject;
 import rx.subjects.Subject;
 import ubicrypt.core.BaseConf;
+import ubicrypt.core.BatchProgress;
 import ubicrypt.core.IFileCommander;
 import ubicrypt.core.TestUtils;
 import ubicrypt.core.Utils;
@@ -49,8 +51,10 @@ import ubicrypt.core.local.LocalRepository;
 import ubicrypt.core.local.OnNewLocal;
 import ubicrypt.core.provider.RemoteCtxConf;
 
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -64,6 +68,7 @@ import static ubicrypt.core.TestUtils.tmp;
   value = {BaseConf.class, RemoteCtxConf.class, WatchReactorIT.TestConf.class, WatchConf.class}
 )
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@TestPropertySource(properties = "watcher.quietMs=10")
 public class WatchReactorIT {
 
   private static final Logger log = getLogger(WatchReactorIT.class);
@@ -88,11 +93,13 @@ public class WatchReactorIT {
 
   @Test
   public void updateFile() throws Exception {
-    when(fc.updateFile(any(Path.class))).thenReturn(Observable.just(true));
-    when(fc.deleteFile(any(Path.class))).thenReturn(Observable.just(true));
+    when(fc.updateFiles(anyCollectionOf(Path.class)))
+        .thenReturn(Observable.just(new BatchProgress(1, 1, 0)));
+    when(fc.deleteFiles(anyCollectionOf(Path.class)))
+        .thenReturn(Observable.just(new BatchProgress(1, 1, 0)));
     Files.write(tmp.resolve("file"), "ciao2".getBytes());
     Thread.sleep(50);
-    verify(fc).updateFile(eq(tmp.resolve("file")));
+    verify(fc).updateFiles(eq(singletonList(tmp.resolve("file"))));
   }
 
   @Test
@@ -101,7 +108,7 @@ public class WatchReactorIT {
     Thread.sleep(10);
     Files.delete(tmp.resolve("file"));
     Thread.sleep(50);
-    verify(fc).deleteFile(eq(tmp.resolve("file")));
+    verify(fc).deleteFiles(eq(singletonList(tmp.resolve("file"))));
   }
 
   @Test
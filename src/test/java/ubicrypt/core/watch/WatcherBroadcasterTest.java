@@ -15,54 +15,144 @@ package ubicrypt.core.watch;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.Mockito;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
 
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 import ubicrypt.core.TestUtils;
+import ubicrypt.core.dto.LocalConfig;
+import ubicrypt.core.dto.LocalFile;
+import ubicrypt.core.util.ContentHash;
 
-import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.doNothing;
-import static org.mockito.Mockito.verify;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class WatcherBroadcasterTest {
+  private static final long quietMs = 10;
   private final Path path = Paths.get("ciao");
+  private final LinkedBlockingQueue<List<PathEvent>> batches = new LinkedBlockingQueue<>();
+  private final TestScheduler scheduler = new TestScheduler();
   private WatcherBroadcaster watcher;
 
   @Before
   public void setUp() throws Exception {
-    watcher = Mockito.spy(new WatcherBroadcaster(TestUtils.tmp));
-    doNothing().when(watcher).dispatch(any(), any());
+    watcher = new WatcherBroadcaster(TestUtils.tmp, quietMs, scheduler);
+    watcher.localConfig = new LocalConfig();
+    watcher
+        .localConfig
+        .getLocalFiles()
+        .add(
+            new LocalFile() {
+              {
+                setPath(Paths.get("ciao"));
+              }
+            });
+    watcher.pathStream = PublishSubject.create();
+    watcher.pathStream.subscribe(batches::add);
   }
 
   @Test
   public void deleteThenCreate() throws Exception {
     watcher.filterDeleteThenCreate(PathEvent.Event.delete, path);
-    Thread.sleep(5);
+    scheduler.advanceTimeBy(quietMs / 2, MILLISECONDS);
     watcher.filterDeleteThenCreate(PathEvent.Event.create, path);
-    Thread.sleep(15);
-    verify(watcher).dispatch(PathEvent.Event.update, path);
+    assertEvent(PathEvent.Event.update);
   }
 
   @Test
   public void onlyDelete() throws Exception {
     watcher.filterDeleteThenCreate(PathEvent.Event.delete, path);
-    Thread.sleep(15);
-    verify(watcher).dispatch(PathEvent.Event.delete, path);
+    assertEvent(PathEvent.Event.delete);
   }
 
   @Test
   public void onlyCreate() throws Exception {
     watcher.filterDeleteThenCreate(PathEvent.Event.create, path);
-    Thread.sleep(15);
-    verify(watcher).dispatch(PathEvent.Event.create, path);
+    assertEvent(PathEvent.Event.create);
   }
 
   @Test
   public void onlyUpdate() throws Exception {
-    watcher.filterDeleteThenCreate(PathEvent.Event.create, path);
-    Thread.sleep(15);
-    verify(watcher).dispatch(PathEvent.Event.create, path);
+    watcher.filterDeleteThenCreate(PathEvent.Event.update, path);
+    assertEvent(PathEvent.Event.update);
+  }
+
+  @Test
+  public void burst() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      watcher.filterDeleteThenCreate(PathEvent.Event.update, path);
+    }
+    assertEvent(PathEvent.Event.update);
+    scheduler.advanceTimeBy(10 * quietMs, MILLISECONDS);
+    assertThat(batches).isEmpty();
+  }
+
+  @Test
+  public void untracked() throws Exception {
+    watcher.filterDeleteThenCreate(PathEvent.Event.update, Paths.get("other"));
+    scheduler.advanceTimeBy(10 * quietMs, MILLISECONDS);
+    assertThat(batches).isEmpty();
+  }
+
+  @Test
+  public void rename() throws Exception {
+    final Path created =
+        Files.write(TestUtils.tmp.resolve(folder()).resolve("a"), "abc".getBytes());
+    final LocalFile deleted = tracked(created);
+    watcher.filterDeleteThenCreate(PathEvent.Event.delete, deleted.getPath());
+    watcher.filterDeleteThenCreate(PathEvent.Event.create, TestUtils.tmp.relativize(created));
+    scheduler.advanceTimeBy(quietMs, MILLISECONDS);
+    assertThat(batches.poll())
+        .containsExactly(new PathEvent(created, TestUtils.tmp.resolve(deleted.getPath())));
+  }
+
+  @Test
+  public void inodeReused() throws Exception {
+    final Path created =
+        Files.write(TestUtils.tmp.resolve(folder()).resolve("b"), "abc".getBytes());
+    //the deleted file had the same inode but another content
+    final LocalFile deleted = tracked(created);
+    deleted.setSize(10);
+    watcher.filterDeleteThenCreate(PathEvent.Event.delete, deleted.getPath());
+    watcher.filterDeleteThenCreate(PathEvent.Event.create, TestUtils.tmp.relativize(created));
+    scheduler.advanceTimeBy(quietMs, MILLISECONDS);
+    assertThat(batches.poll())
+        .containsOnly(
+            new PathEvent(PathEvent.Event.create, created),
+            new PathEvent(PathEvent.Event.delete, TestUtils.tmp.resolve(deleted.getPath())));
+  }
+
+  /** a tracked folder, so the files created in it are tracked */
+  private Path folder() throws Exception {
+    final Path folder = Paths.get(UUID.randomUUID().toString());
+    Files.createDirectories(TestUtils.tmp.resolve(folder));
+    watcher.localConfig.getTrackedFolders().add(folder);
+    return folder;
+  }
+
+  /** a deleted local file with the attributes of the given one */
+  private LocalFile tracked(final Path file) throws Exception {
+    final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+    final LocalFile ret = new LocalFile();
+    ret.setPath(TestUtils.tmp.relativize(file).resolveSibling("deleted"));
+    ret.setSize(attrs.size());
+    ret.setLastModified(attrs.lastModifiedTime().toInstant());
+    ret.setFileKey(ContentHash.fileKey(attrs));
+    watcher.localConfig.getLocalFiles().add(ret);
+    return ret;
+  }
+
+  private void assertEvent(final PathEvent.Event event) {
+    scheduler.advanceTimeBy(quietMs - 1, MILLISECONDS);
+    assertThat(batches).isEmpty();
+    scheduler.advanceTimeBy(1, MILLISECONDS);
+    assertThat(batches.poll()).containsExactly(new PathEvent(event, TestUtils.tmp.resolve(path)));
   }
 }